@@ -0,0 +1,120 @@
+package gov.ny.its.hs.maslow.access.command;
+
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.access.service.BulkEligibilityService;
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Screens a file of households from the command line, then exits. The command runs when the
+ * {@code maslow.access.bulk.input} property is set, typically without the web server:
+ *
+ * <pre>
+ * java -jar maslow-access.jar --spring.main.web-application-type=none \
+ *   --maslow.access.bulk.input=households.csv \
+ *   --maslow.access.bulk.output=results.csv
+ * </pre>
+ *
+ * The format is chosen by the extension of the input file: {@code .csv} for CSV, {@code .jsonl}
+ * or {@code .ndjson} for JSON Lines (see {@link BulkEligibilityService.Format}). If no output file
+ * is provided, the results are written next to the input file (such as
+ * {@code households-eligibility.csv}).
+ *
+ * The command runs before the application is ready, and therefore before the services file is
+ * watched, so it refreshes the catalog itself before screening (see
+ * {@link CatalogService#refreshServices()}). Households are screened against the services file, or
+ * the newest valid generation of the snapshot store, rather than the default catalog.
+ */
+@Component
+@ConditionalOnProperty("maslow.access.bulk.input")
+public class BulkEligibilityCommand implements ApplicationRunner {
+  private static final Logger log = LoggerFactory.getLogger(BulkEligibilityCommand.class);
+
+  private final BulkEligibilityService bulkEligibilityService;
+  private final CatalogService catalogService;
+  private final ConfigurableApplicationContext context;
+  private final String input;
+  private final String output;
+
+  /**
+   * Constructs an instance of BulkEligibilityCommand.
+   *
+   * @param bulkEligibilityService the service that screens the file
+   * @param catalogService the service that refreshes the catalog the file is screened against
+   * @param context the application context, which is closed once the file is screened
+   * @param input the path of the file to screen
+   * @param output the path of the results, or empty to write them next to the input file
+   */
+  public BulkEligibilityCommand(
+    BulkEligibilityService bulkEligibilityService,
+    CatalogService catalogService,
+    ConfigurableApplicationContext context,
+    @Value("${maslow.access.bulk.input}") String input,
+    @Value("${maslow.access.bulk.output:}") String output
+  ) {
+    super();
+    this.bulkEligibilityService = bulkEligibilityService;
+    this.catalogService = catalogService;
+    this.context = context;
+    this.input = input;
+    this.output = output;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    Path inputPath = Paths.get(input);
+    String name = inputPath.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+
+    BulkEligibilityService.Format format;
+    switch (extension) {
+      case "csv":
+        format = BulkEligibilityService.Format.CSV;
+        break;
+      case "jsonl":
+      case "ndjson":
+        format = BulkEligibilityService.Format.JSON_LINES;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown format of file: " + input);
+    }
+
+    Path outputPath = output.isEmpty()
+      ? inputPath.resolveSibling(name.substring(0, dot) + "-eligibility." + extension)
+      : Paths.get(output);
+
+    catalogService.refreshServices();
+    CatalogSnapshot catalog = catalogService.getCatalog();
+    String hash = catalogService.getServicesHash();
+    log.info(
+      "Screening {} to {} against catalog version {} (services hash {})",
+      inputPath,
+      outputPath,
+      catalog.getVersion(),
+      hash == null ? "none, default services" : hash
+    );
+    try (
+      InputStream in = Files.newInputStream(inputPath);
+      OutputStream out = Files.newOutputStream(outputPath)
+    ) {
+      bulkEligibilityService.screen(in, out, format);
+    }
+
+    SpringApplication.exit(context);
+  }
+}
@@ -0,0 +1,123 @@
+package gov.ny.its.hs.maslow.access.config;
+
+import io.micrometer.core.instrument.Counter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Retries idempotent requests that fail with an I/O error (such as a refused connection or a
+ * timeout) or a server error (5xx), up to a maximum number of attempts. Attempts are spaced by an
+ * exponential backoff with jitter, so that many instances of Maslow Access retrying at once do
+ * not hit Maslow Author in lockstep.
+ *
+ * The interceptor must be the last interceptor of its RestTemplate, because each attempt executes
+ * the rest of the chain again.
+ */
+public class RetryInterceptor implements ClientHttpRequestInterceptor {
+  private static final Logger log = LoggerFactory.getLogger(RetryInterceptor.class);
+
+  private final int maxAttempts;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private final Counter retries;
+
+  /**
+   * Constructs an instance of RetryInterceptor.
+   *
+   * @param maxAttempts the maximum number of attempts of each request, including the first
+   * @param initialBackoff the backoff before the first retry, in milliseconds; it doubles with
+   *        each retry
+   * @param maxBackoff the maximum backoff before any retry, in milliseconds
+   * @param retries the counter of retries
+   */
+  public RetryInterceptor(int maxAttempts, long initialBackoff, long maxBackoff, Counter retries) {
+    super();
+    this.maxAttempts = Math.max(maxAttempts, 1);
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = maxBackoff;
+    this.retries = retries;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(
+    HttpRequest request,
+    byte[] body,
+    ClientHttpRequestExecution execution
+  )
+    throws IOException {
+    if (!isIdempotent(request.getMethod())) {
+      return execution.execute(request, body);
+    }
+
+    for (int attempt = 1;; attempt++) {
+      try {
+        ClientHttpResponse response = execution.execute(request, body);
+        if (response.getRawStatusCode() < 500 || attempt >= maxAttempts) {
+          return response;
+        }
+
+        log.warn(
+          "Request to {} failed with status {} (attempt {} of {})",
+          request.getURI(),
+          response.getRawStatusCode(),
+          attempt,
+          maxAttempts
+        );
+        response.close();
+      } catch (IOException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+
+        log.warn(
+          "Request to {} failed with exception: {} (attempt {} of {})",
+          request.getURI(),
+          e.getMessage(),
+          attempt,
+          maxAttempts
+        );
+      }
+
+      retries.increment();
+      sleep(backoff(attempt));
+    }
+  }
+
+  private static boolean isIdempotent(HttpMethod method) {
+    return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+  }
+
+  /**
+   * Returns the backoff before retrying a failed attempt, in milliseconds. The backoff is half of
+   * the exponential delay plus a random amount up to the other half ("equal jitter"), so that it
+   * is never shorter than half the delay.
+   *
+   * @param attempt the number of the failed attempt, starting at 1
+   */
+  long backoff(int attempt) {
+    long delay = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+  }
+
+  private static void sleep(long millis) throws IOException {
+    if (millis <= 0) {
+      return;
+    }
+
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry");
+    }
+  }
+}
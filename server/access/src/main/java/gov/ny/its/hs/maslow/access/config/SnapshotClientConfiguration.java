@@ -0,0 +1,133 @@
+package gov.ny.its.hs.maslow.access.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.MicrometerHttpRequestExecutor;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configures the HTTP client that fetches services snapshots from Maslow Author (see
+ * {@link gov.ny.its.hs.maslow.access.service.CatalogService}).
+ *
+ * The client keeps a small pool of keep-alive connections, so that each fetch does not open a new
+ * connection, and bounds every fetch with timeouts, so that a slow instance of Maslow Author cannot
+ * hang the scheduled thread. Responses are requested and decompressed with gzip. Fetches that fail
+ * with an I/O error or a server error are retried with exponential backoff (see
+ * {@link RetryInterceptor}).
+ *
+ * This functionality is configured via application properties:
+ *
+ * - {@code maslow.access.snapshot-client.connect-timeout-ms}: the time to establish a connection
+ * - {@code maslow.access.snapshot-client.read-timeout-ms}: the time without any data from an open
+ *   connection
+ * - {@code maslow.access.snapshot-client.pool-timeout-ms}: the time to wait for a pooled connection
+ * - {@code maslow.access.snapshot-client.max-connections}: the size of the pool
+ * - {@code maslow.access.snapshot-client.idle-timeout-ms}: the time after which idle connections
+ *   are closed
+ * - {@code maslow.access.snapshot-client.max-attempts}: the maximum attempts of each fetch
+ * - {@code maslow.access.snapshot-client.backoff-ms}: the backoff before the first retry, which
+ *   doubles with each retry up to {@code maslow.access.snapshot-client.max-backoff-ms}
+ *
+ * The pool is reported by the {@code httpcomponents.httpclient.pool.*} metrics, the latency of
+ * each fetch by the {@code httpcomponents.httpclient.request} timer, and the number of retries by
+ * the {@code maslow.snapshot.client.retries} counter, all tagged with {@code client=snapshot}.
+ */
+@Configuration
+public class SnapshotClientConfiguration {
+  private static final String CLIENT_NAME = "snapshot";
+
+  /**
+   * Returns the pool of connections to Maslow Author.
+   */
+  @Bean(destroyMethod = "shutdown")
+  PoolingHttpClientConnectionManager snapshotConnectionManager(
+    MeterRegistry meterRegistry,
+    @Value("${maslow.access.snapshot-client.max-connections:4}") int maxConnections
+  ) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    // A connection closed by the server while idle in the pool is detected before it is reused.
+    connectionManager.setValidateAfterInactivity(2000);
+
+    new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, CLIENT_NAME)
+      .bindTo(meterRegistry);
+    return connectionManager;
+  }
+
+  /**
+   * Returns the HTTP client that fetches services snapshots from Maslow Author.
+   */
+  @Bean
+  CloseableHttpClient snapshotHttpClient(
+    PoolingHttpClientConnectionManager snapshotConnectionManager,
+    MeterRegistry meterRegistry,
+    @Value("${maslow.access.snapshot-client.connect-timeout-ms:2000}") int connectTimeout,
+    @Value("${maslow.access.snapshot-client.read-timeout-ms:10000}") int readTimeout,
+    @Value("${maslow.access.snapshot-client.pool-timeout-ms:2000}") int poolTimeout,
+    @Value("${maslow.access.snapshot-client.idle-timeout-ms:30000}") long idleTimeout
+  ) {
+    RequestConfig requestConfig = RequestConfig
+      .custom()
+      .setConnectTimeout(connectTimeout)
+      .setSocketTimeout(readTimeout)
+      .setConnectionRequestTimeout(poolTimeout)
+      .build();
+
+    // The client sends Accept-Encoding and decompresses gzip responses by default. The URI of the
+    // latency metrics omits the query string, such as the version of a delta, to bound their tags.
+    return HttpClients
+      .custom()
+      .setConnectionManager(snapshotConnectionManager)
+      .setDefaultRequestConfig(requestConfig)
+      .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+      .evictExpiredConnections()
+      .setRequestExecutor(
+        MicrometerHttpRequestExecutor
+          .builder(meterRegistry)
+          .tags(Tags.of("client", CLIENT_NAME))
+          .uriMapper(request -> URI.create(request.getRequestLine().getUri()).getPath())
+          .build()
+      )
+      .build();
+  }
+
+  /**
+   * Returns a configured implementation of the RestOperations interface for dependency injection.
+   */
+  @Bean
+  RestOperations restOperations(
+    CloseableHttpClient snapshotHttpClient,
+    MeterRegistry meterRegistry,
+    @Value("${maslow.access.snapshot-client.max-attempts:3}") int maxAttempts,
+    @Value("${maslow.access.snapshot-client.backoff-ms:500}") long backoff,
+    @Value("${maslow.access.snapshot-client.max-backoff-ms:5000}") long maxBackoff
+  ) {
+    Counter retries = Counter
+      .builder("maslow.snapshot.client.retries")
+      .description("The number of retried requests to Maslow Author")
+      .tag("client", CLIENT_NAME)
+      .register(meterRegistry);
+
+    RestTemplate restTemplate = new RestTemplate(
+      new HttpComponentsClientHttpRequestFactory(snapshotHttpClient)
+    );
+    restTemplate
+      .getInterceptors()
+      .add(new RetryInterceptor(maxAttempts, backoff, maxBackoff, retries));
+    return restTemplate;
+  }
+}
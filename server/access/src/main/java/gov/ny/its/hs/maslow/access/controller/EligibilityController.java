@@ -0,0 +1,125 @@
+package gov.ny.its.hs.maslow.access.controller;
+
+import gov.ny.its.hs.maslow.access.dto.EligibilityDto;
+import gov.ny.its.hs.maslow.access.dto.EligibilityUpdateDto;
+import gov.ny.its.hs.maslow.access.dto.PartialEligibilityDto;
+import gov.ny.its.hs.maslow.access.service.BulkEligibilityService;
+import gov.ny.its.hs.maslow.access.service.EligibilityService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Provides REST endpoints to evaluate the eligibility formulas of the catalog on the server, for
+ * one household or for a file of many households.
+ */
+@RestController
+public class EligibilityController {
+  /** The media type of CSV files. */
+  public static final String TEXT_CSV = "text/csv";
+
+  /** The media type of JSON Lines files. */
+  public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+  private EligibilityService eligibilityService;
+  private BulkEligibilityService bulkEligibilityService;
+
+  /**
+   * Constructs an EligibilityController instance.
+   *
+   * @param eligibilityService the eligibility service that evaluates the formulas
+   * @param bulkEligibilityService the service that screens files of households
+   */
+  public EligibilityController(
+    EligibilityService eligibilityService,
+    BulkEligibilityService bulkEligibilityService
+  ) {
+    super();
+    this.eligibilityService = eligibilityService;
+    this.bulkEligibilityService = bulkEligibilityService;
+  }
+
+  /**
+   * Returns the enabled services that a resident may be eligible for, in order of rank.
+   *
+   * @param responses maps the key of each question to the resident's response, a boolean or a
+   *     number
+   */
+  @PostMapping("/api/explore/v1/eligibility")
+  public EligibilityDto eligibility(@RequestBody Map<String, Object> responses) {
+    EligibilityDto eligibility = new EligibilityDto();
+    eligibility.setServices(eligibilityService.findEligibleServices(responses));
+    return eligibility;
+  }
+
+  /**
+   * Updates the enabled services that a resident may be eligible for after they answered or
+   * changed some questions, in order of rank. Only the formulas that depend on the changed
+   * questions are evaluated again (see {@link EligibilityService}).
+   *
+   * @param update the current responses, the questions that changed and the previous state
+   */
+  @PostMapping("/api/explore/v1/eligibility/update")
+  public EligibilityDto update(@RequestBody EligibilityUpdateDto update) {
+    return eligibilityService.updateEligibleServices(
+      update.getResponses(),
+      update.getChanged(),
+      update.getState()
+    );
+  }
+
+  /**
+   * Returns the enabled services that a resident is eligible for, is not eligible for, or may be
+   * eligible for, given the responses to the questions answered so far, along with the unanswered
+   * questions that could still change any result.
+   *
+   * @param responses maps the key of each question answered so far to the resident's response, a
+   *     boolean or a number
+   */
+  @PostMapping("/api/explore/v1/eligibility/partial")
+  public PartialEligibilityDto partial(@RequestBody Map<String, Object> responses) {
+    return eligibilityService.findPartialEligibility(responses);
+  }
+
+  /**
+   * Screens a CSV file of households and streams back the results as CSV, one row per household.
+   * See {@link BulkEligibilityService} for the format of the file and the results.
+   *
+   * @param input the body of the request
+   * @param response the response to which the results are streamed
+   */
+  @PostMapping(value = "/api/explore/v1/eligibility/bulk", consumes = TEXT_CSV, produces = TEXT_CSV)
+  public void bulkCsv(InputStream input, HttpServletResponse response) throws IOException {
+    response.setContentType(TEXT_CSV);
+    bulkEligibilityService.screen(
+      input,
+      response.getOutputStream(),
+      BulkEligibilityService.Format.CSV
+    );
+  }
+
+  /**
+   * Screens a JSON Lines file of households and streams back the results as JSON Lines, one line
+   * per household. See {@link BulkEligibilityService} for the format of the file and the results.
+   *
+   * @param input the body of the request
+   * @param response the response to which the results are streamed
+   */
+  @PostMapping(
+    value = "/api/explore/v1/eligibility/bulk",
+    consumes = APPLICATION_NDJSON,
+    produces = APPLICATION_NDJSON
+  )
+  public void bulkJsonLines(InputStream input, HttpServletResponse response) throws IOException {
+    response.setContentType(APPLICATION_NDJSON);
+    bulkEligibilityService.screen(
+      input,
+      response.getOutputStream(),
+      BulkEligibilityService.Format.JSON_LINES
+    );
+  }
+}
@@ -1,42 +1,43 @@
 package gov.ny.its.hs.maslow.access.controller;
 
-import com.google.common.collect.Maps;
-import gov.ny.its.hs.maslow.access.dto.CatalogDto;
-import gov.ny.its.hs.maslow.access.service.CatalogService;
-import org.modelmapper.ModelMapper;
+import gov.ny.its.hs.maslow.access.service.ExploreService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Provides a REST endpoint to retrieve the catalog of questions and services.
  */
 @RestController
 public class ExploreController {
-  private CatalogService catalogService;
+  private ExploreService exploreService;
 
   /**
    * Constructs an ExploreController instance.
    *
-   * @param catalogService the catalog service that manages the state of the catalog
+   * @param exploreService the explore service that renders the responses of this controller
    */
-  public ExploreController(CatalogService catalogService) {
+  public ExploreController(ExploreService exploreService) {
     super();
-    this.catalogService = catalogService;
+    this.exploreService = exploreService;
   }
 
   /**
    * Returns all data (other than translation strings) required by the client application at
-   * startup.
+   * startup. The response is rendered and compressed by {@link ExploreService} once per version of
+   * the catalog; this method only selects the encoding and writes the rendered bytes.
+   *
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
    */
   @GetMapping("/api/explore/v1/catalog")
-  public CatalogDto catalog() {
-    CatalogDto catalogDto = new ModelMapper().map(catalogService.getCatalog(), CatalogDto.class);
-
-    // we only want this endpoint to return services that are enabled
-    catalogDto.setServices(
-      Maps.filterEntries(catalogDto.getServices(), service -> service.getValue().getEnabled())
-    );
-
-    return catalogDto;
+  public ResponseEntity<byte[]> catalog(
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    return Payloads.respond(request, exploreService.getCatalogPayload(), acceptEncoding);
   }
 }
@@ -1,75 +1,138 @@
 package gov.ny.its.hs.maslow.access.controller;
 
-import com.google.common.collect.Maps;
 import gov.ny.its.hs.maslow.access.model.Catalog;
-import gov.ny.its.hs.maslow.access.service.CatalogService;
-import gov.ny.its.hs.maslow.shared.model.QuestionResources;
-import gov.ny.its.hs.maslow.shared.model.SectionResources;
-import gov.ny.its.hs.maslow.shared.model.ServiceResources;
-import java.util.HashMap;
-import java.util.Map;
+import gov.ny.its.hs.maslow.access.model.Payload;
+import gov.ny.its.hs.maslow.access.service.ExploreService;
+import gov.ny.its.hs.maslow.access.service.LocaleNegotiator;
+import java.util.Collections;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Provides a REST endpoint to retrieve localized translations of text in the {@link Catalog} in a
- * JSON format compatible with <a href="https://www.i18next.com/">i18next</a>.
+ * JSON format compatible with <a href="https://www.i18next.com/">i18next</a>. The responses are
+ * rendered and compressed by {@link ExploreService} once per version of the catalog.
  * @see <a href="https://www.i18next.com/misc/json-format">i18next JSON Format</a>
  */
 @RestController
 public class LocalesController {
-  private final CatalogService catalogService;
+  private final ExploreService exploreService;
+  private final LocaleNegotiator localeNegotiator;
 
   /**
    * Constructs an instance of the LocalesController.
-   * @param catalogService an instance of {@link CatalogService}
+   * @param exploreService an instance of {@link ExploreService}
+   * @param localeNegotiator an instance of {@link LocaleNegotiator}
    */
-  public LocalesController(CatalogService catalogService) {
+  public LocalesController(ExploreService exploreService, LocaleNegotiator localeNegotiator) {
     super();
-    this.catalogService = catalogService;
+    this.exploreService = exploreService;
+    this.localeNegotiator = localeNegotiator;
+  }
+
+  /**
+   * Gets the localized translations of text for a resource bundle in the supported locale that best
+   * matches the Accept-Language header. The chosen locale is returned in the Content-Language
+   * header.
+   * @param bundle the name of the resource bundle ("sections", "questions", "services" or
+   * "catalog")
+   * @param acceptLanguage the value of the Accept-Language header, if any
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
+   */
+  @GetMapping("/api/explore/v1/locales/{bundle:sections|questions|services|catalog}.json")
+  public ResponseEntity<byte[]> getNegotiatedResources(
+    @PathVariable String bundle,
+    @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    String language = localeNegotiator.negotiate(acceptLanguage);
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.CONTENT_LANGUAGE, language);
+    headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_LANGUAGE));
+
+    return Payloads.respond(
+      request,
+      exploreService.getLocalePayload(language, bundle),
+      acceptEncoding,
+      headers
+    );
   }
 
   /**
    * Gets the concatenated localized translations of text for the entire catalog
    * @param language the locale (such as "en" or "es")
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
    */
   @GetMapping("/api/explore/v1/locales/{language}/catalog.json")
-  public Map<String, Object> getCatalogResources(@PathVariable String language) {
-    Map<String, Object> catalog = new HashMap<>();
-    catalog.putAll(getSectionResources(language));
-    catalog.putAll(getQuestionResources(language));
-    catalog.putAll(getServiceResources(language));
-    return catalog;
+  public ResponseEntity<byte[]> getCatalogResources(
+    @PathVariable String language,
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    return respond(language, ExploreService.CATALOG, acceptEncoding, request);
   }
 
   /**
    * Gets the localized translations of text for sections
    * @param language the locale (such as "en" or "es")
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
    */
   @GetMapping("/api/explore/v1/locales/{language}/sections.json")
-  public Map<String, SectionResources> getSectionResources(@PathVariable String language) {
-    Catalog catalog = catalogService.getCatalog();
-    return Maps.transformValues(catalog.getSections(), item -> item.getResources().get(language));
+  public ResponseEntity<byte[]> getSectionResources(
+    @PathVariable String language,
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    return respond(language, ExploreService.SECTIONS, acceptEncoding, request);
   }
 
   /**
    * Gets the localized translations of text for questions
    * @param language the locale (such as "en" or "es")
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
    */
   @GetMapping("/api/explore/v1/locales/{language}/questions.json")
-  public Map<String, QuestionResources> getQuestionResources(@PathVariable String language) {
-    Catalog catalog = catalogService.getCatalog();
-    return Maps.transformValues(catalog.getQuestions(), item -> item.getResources().get(language));
+  public ResponseEntity<byte[]> getQuestionResources(
+    @PathVariable String language,
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    return respond(language, ExploreService.QUESTIONS, acceptEncoding, request);
   }
 
   /**
    * Gets the localized translations of text for services
    * @param language the locale (such as "en" or "es")
+   * @param acceptEncoding the value of the Accept-Encoding header, if any
+   * @param request the current request, used to evaluate conditional headers
    */
   @GetMapping("/api/explore/v1/locales/{language}/services.json")
-  public Map<String, ServiceResources> getServiceResources(@PathVariable String language) {
-    Catalog catalog = catalogService.getCatalog();
-    return Maps.transformValues(catalog.getServices(), item -> item.getResources().get(language));
+  public ResponseEntity<byte[]> getServiceResources(
+    @PathVariable String language,
+    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+    WebRequest request
+  ) {
+    return respond(language, ExploreService.SERVICES, acceptEncoding, request);
+  }
+
+  private ResponseEntity<byte[]> respond(
+    String language,
+    String bundle,
+    String acceptEncoding,
+    WebRequest request
+  ) {
+    Payload payload = exploreService.getLocalePayload(language, bundle);
+    return Payloads.respond(request, payload, acceptEncoding);
   }
 }
@@ -0,0 +1,73 @@
+package gov.ny.its.hs.maslow.access.controller;
+
+import gov.ny.its.hs.maslow.access.model.Payload;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Builds responses from rendered {@link Payload} objects, shared by the controllers of the explore
+ * API.
+ */
+final class Payloads {
+
+  private Payloads() {}
+
+  /**
+   * Returns a response that serves the variant of {@code payload} selected for the request's
+   * Accept-Encoding header. The response always varies by Accept-Encoding, even when the payload has
+   * no compressed variants, so that shared caches never serve one client's encoding to another.
+   *
+   * If the request's If-None-Match or If-Modified-Since header shows that the client already has
+   * the selected variant, the response is 304 (Not Modified) without a body.
+   *
+   * @param request the current request
+   * @param payload the rendered payload
+   * @param acceptEncoding the value of the Accept-Encoding header, which may be null
+   */
+  static ResponseEntity<byte[]> respond(WebRequest request, Payload payload, String acceptEncoding) {
+    return respond(request, payload, acceptEncoding, new HttpHeaders());
+  }
+
+  /**
+   * Returns a response as {@link #respond(WebRequest, Payload, String)} that also includes
+   * {@code headers}. Any Vary header in {@code headers} is combined with Accept-Encoding.
+   *
+   * @param request the current request
+   * @param payload the rendered payload
+   * @param acceptEncoding the value of the Accept-Encoding header, which may be null
+   * @param headers additional headers to include in the response
+   */
+  static ResponseEntity<byte[]> respond(
+    WebRequest request,
+    Payload payload,
+    String acceptEncoding,
+    HttpHeaders headers
+  ) {
+    Payload.Variant variant = payload.select(acceptEncoding);
+
+    List<String> vary = new ArrayList<>(headers.getVary());
+    vary.add(HttpHeaders.ACCEPT_ENCODING);
+    String[] varyBy = vary.toArray(new String[0]);
+
+    // checkNotModified sets the ETag and Last-Modified headers of the response itself
+    if (request.checkNotModified(variant.getETag(), payload.getLastModified())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).varyBy(varyBy).build();
+    }
+
+    ResponseEntity.BodyBuilder builder = ResponseEntity
+      .ok()
+      .headers(headers)
+      .contentType(payload.getContentType())
+      .eTag(variant.getETag())
+      .lastModified(payload.getLastModified())
+      .varyBy(varyBy);
+    if (variant.isEncoded()) {
+      builder.header(HttpHeaders.CONTENT_ENCODING, variant.getEncoding());
+    }
+    return builder.body(variant.getBody());
+  }
+}
@@ -0,0 +1,67 @@
+package gov.ny.its.hs.maslow.access.controller;
+
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import gov.ny.its.hs.maslow.access.service.SnapshotStore;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Provides an actuator endpoint to list the generations of services snapshots kept by
+ * {@link CatalogService} (see {@link SnapshotStore}) and to roll back to any of them without
+ * fetching anything. The endpoint is not exposed over HTTP by default; it is exposed by adding
+ * {@code snapshots} to {@code management.endpoints.web.exposure.include}, preferably on a separate
+ * {@code management.server.port}.
+ *
+ * - /actuator/snapshots
+ *   - GET: the hash of the current services and the generations, newest first
+ *   - POST: restores the generation with the {@code hash} of the request body
+ */
+@Component
+@Endpoint(id = "snapshots")
+public class SnapshotsEndpoint {
+  private final CatalogService catalogService;
+
+  /**
+   * Constructs an instance of the SnapshotsEndpoint.
+   * @param catalogService an instance of {@link CatalogService}
+   */
+  public SnapshotsEndpoint(CatalogService catalogService) {
+    super();
+    this.catalogService = catalogService;
+  }
+
+  /**
+   * Gets the hash of the current services and the generations of the snapshot store.
+   */
+  @ReadOperation
+  public Map<String, Object> snapshots() {
+    Map<String, Object> snapshots = new LinkedHashMap<>();
+    snapshots.put("current", catalogService.getServicesHash());
+    try {
+      snapshots.put("generations", catalogService.getGenerations());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return snapshots;
+  }
+
+  /**
+   * Restores the services of a generation of the snapshot store.
+   * @param hash the SHA-256 hash of the generation, as listed by {@link #snapshots()}
+   * @return whether the generation was restored, along with the current services and generations
+   */
+  @WriteOperation
+  public Map<String, Object> rollback(String hash) {
+    boolean restored = catalogService.restoreServices(hash);
+    Map<String, Object> snapshots = new LinkedHashMap<>();
+    snapshots.put("restored", restored);
+    snapshots.putAll(snapshots());
+    return snapshots;
+  }
+}
@@ -0,0 +1,44 @@
+package gov.ny.its.hs.maslow.access.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the services that a resident may be eligible for.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EligibilityDto {
+  private List<String> services = new ArrayList<>();
+  private String state;
+
+  /**
+   * Gets the keys of the enabled services whose formulas evaluated to true for the responses of
+   * the resident, in order of rank.
+   */
+  public List<String> getServices() {
+    return services;
+  }
+
+  /**
+   * Sets the value of {@link #getServices()}
+   */
+  public void setServices(List<String> services) {
+    this.services = services;
+  }
+
+  /**
+   * Gets the opaque state to provide with the next incremental update of the services, or null if
+   * the services were not evaluated incrementally.
+   */
+  public String getState() {
+    return state;
+  }
+
+  /**
+   * Sets the value of {@link #getState()}
+   */
+  public void setState(String state) {
+    this.state = state;
+  }
+}
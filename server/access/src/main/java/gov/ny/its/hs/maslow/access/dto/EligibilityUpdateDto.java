@@ -0,0 +1,60 @@
+package gov.ny.its.hs.maslow.access.dto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Defines an incremental update of the services that a resident may be eligible for, after they
+ * have answered or changed some of the questions of the survey.
+ */
+public class EligibilityUpdateDto {
+  private Map<String, Object> responses = new HashMap<>();
+  private List<String> changed = new ArrayList<>();
+  private String state;
+
+  /**
+   * Gets the current responses of the resident, keyed by question. Questions that have not been
+   * answered yet are omitted.
+   */
+  public Map<String, Object> getResponses() {
+    return responses;
+  }
+
+  /**
+   * Sets the value of {@link #getResponses()}
+   */
+  public void setResponses(Map<String, Object> responses) {
+    this.responses = responses;
+  }
+
+  /**
+   * Gets the keys of the questions whose responses were added, changed or removed since the
+   * previous update.
+   */
+  public List<String> getChanged() {
+    return changed;
+  }
+
+  /**
+   * Sets the value of {@link #getChanged()}
+   */
+  public void setChanged(List<String> changed) {
+    this.changed = changed;
+  }
+
+  /**
+   * Gets the state returned by the previous update, or null for the first update.
+   */
+  public String getState() {
+    return state;
+  }
+
+  /**
+   * Sets the value of {@link #getState()}
+   */
+  public void setState(String state) {
+    this.state = state;
+  }
+}
@@ -0,0 +1,75 @@
+package gov.ny.its.hs.maslow.access.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the services that a resident may be eligible for before they have answered every
+ * question of the survey.
+ */
+public class PartialEligibilityDto {
+  private List<String> eligible = new ArrayList<>();
+  private List<String> ineligible = new ArrayList<>();
+  private List<String> undecided = new ArrayList<>();
+  private List<String> remainingQuestions = new ArrayList<>();
+
+  /**
+   * Gets the keys of the enabled services that the resident is eligible for whatever their
+   * remaining responses are, in order of rank.
+   */
+  public List<String> getEligible() {
+    return eligible;
+  }
+
+  /**
+   * Sets the value of {@link #getEligible()}
+   */
+  public void setEligible(List<String> eligible) {
+    this.eligible = eligible;
+  }
+
+  /**
+   * Gets the keys of the enabled services that the resident is not eligible for whatever their
+   * remaining responses are, in order of rank.
+   */
+  public List<String> getIneligible() {
+    return ineligible;
+  }
+
+  /**
+   * Sets the value of {@link #getIneligible()}
+   */
+  public void setIneligible(List<String> ineligible) {
+    this.ineligible = ineligible;
+  }
+
+  /**
+   * Gets the keys of the enabled services whose eligibility depends on the remaining responses, in
+   * order of rank.
+   */
+  public List<String> getUndecided() {
+    return undecided;
+  }
+
+  /**
+   * Sets the value of {@link #getUndecided()}
+   */
+  public void setUndecided(List<String> undecided) {
+    this.undecided = undecided;
+  }
+
+  /**
+   * Gets the keys of the unanswered questions that could still decide an undecided service, in
+   * order of the survey. Any other unanswered question can be skipped.
+   */
+  public List<String> getRemainingQuestions() {
+    return remainingQuestions;
+  }
+
+  /**
+   * Sets the value of {@link #getRemainingQuestions()}
+   */
+  public void setRemainingQuestions(List<String> remainingQuestions) {
+    this.remainingQuestions = remainingQuestions;
+  }
+}
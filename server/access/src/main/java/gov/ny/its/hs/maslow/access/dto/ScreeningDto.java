@@ -0,0 +1,60 @@
+package gov.ny.its.hs.maslow.access.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the services that one household of a bulk screening may be eligible for.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScreeningDto {
+  private long row;
+  private List<String> services = new ArrayList<>();
+  private String error;
+
+  /**
+   * Gets the number of the household's row in the screened file, starting at 1 (excluding the
+   * header row of a CSV file).
+   */
+  public long getRow() {
+    return row;
+  }
+
+  /**
+   * Sets the value of {@link #getRow()}
+   */
+  public void setRow(long row) {
+    this.row = row;
+  }
+
+  /**
+   * Gets the keys of the enabled services whose formulas evaluated to true for the household's
+   * responses, in order of rank. Empty if the row has an error.
+   */
+  public List<String> getServices() {
+    return services;
+  }
+
+  /**
+   * Sets the value of {@link #getServices()}
+   */
+  public void setServices(List<String> services) {
+    this.services = services;
+  }
+
+  /**
+   * Gets the reason the household could not be screened (such as a missing response), or null if
+   * it was screened.
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Sets the value of {@link #getError()}
+   */
+  public void setError(String error) {
+    this.error = error;
+  }
+}
@@ -1,11 +1,15 @@
 package gov.ny.its.hs.maslow.access.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
 /**
  * Defines a service that can be recommended to a resident.
  */
 public class ServiceDto {
   private Boolean enabled;
   private String formula;
+  private Map<String, Object> formulaAst;
   private String applicationUrl;
   private String informationUrl;
 
@@ -39,6 +43,23 @@ public class ServiceDto {
     this.formula = formula;
   }
 
+  /**
+   * Gets the parsed formula, encoded as a compact tree along with the version of its format (see
+   * {@link gov.ny.its.hs.maslow.shared.formula.FormulaAst}), so that the client does not need to
+   * parse the formula. Absent if the formula cannot be parsed.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public Map<String, Object> getFormulaAst() {
+    return formulaAst;
+  }
+
+  /**
+   * Sets the value of {@link #getFormulaAst()}
+   */
+  public void setFormulaAst(Map<String, Object> formulaAst) {
+    this.formulaAst = formulaAst;
+  }
+
   /**
    * Gets the application URL for this service.
    */
@@ -1,31 +1,40 @@
 package gov.ny.its.hs.maslow.access.event;
 
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
 import java.nio.file.attribute.FileTime;
 import org.springframework.context.ApplicationEvent;
 
 /**
  * An application event that is raised when the {@link CatalogService} successfully refreshes the
- * state of the {@link Catalog}.
+ * state of the {@link Catalog}. The event carries the newly published {@link CatalogSnapshot}, so
+ * listeners act upon exactly the version of the catalog that raised the event.
  */
 public class CatalogUpdatedEvent extends ApplicationEvent {
   private static final long serialVersionUID = 1L;
 
-  private final FileTime lastModifiedTime;
+  private final transient CatalogSnapshot catalog;
 
   /**
    * Constructs a CatalogUpdatedEvent instance.
    * @param source the object that published the event
-   * @param lastModifiedTime the last modified time of the JSON file that updated the catalog
+   * @param catalog the snapshot of the catalog that was published
    */
-  public CatalogUpdatedEvent(Object source, FileTime lastModifiedTime) {
+  public CatalogUpdatedEvent(Object source, CatalogSnapshot catalog) {
     super(source);
-    this.lastModifiedTime = lastModifiedTime;
+    this.catalog = catalog;
+  }
+
+  /**
+   * Returns the snapshot of the catalog that was published
+   */
+  public CatalogSnapshot getCatalog() {
+    return this.catalog;
   }
 
   /**
    * Returns the last modified time of the JSON file that updated the catalog
    */
   public FileTime getLastModifiedTime() {
-    return this.lastModifiedTime;
+    return this.catalog.getLastModifiedTime();
   }
 }
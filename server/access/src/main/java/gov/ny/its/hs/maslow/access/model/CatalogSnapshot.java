@@ -0,0 +1,163 @@
+package gov.ny.its.hs.maslow.access.model;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.shared.model.Question;
+import gov.ny.its.hs.maslow.shared.model.Section;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Defines one immutable version of the {@link Catalog}. A snapshot is fully built before it is
+ * published by {@link gov.ny.its.hs.maslow.access.service.CatalogService}, and is never modified
+ * afterwards, so it can be read concurrently from any number of threads without locking. Replacing
+ * the catalog means publishing a new snapshot, never modifying an existing one.
+ *
+ * The collections of a snapshot are immutable copies. The sections, questions and services within
+ * them are shared with the objects they were copied from; by convention, they are not modified
+ * after they have been copied into a snapshot.
+ *
+ * The getters of a snapshot match those of {@link Catalog}, so the two can be mapped to the same
+ * DTOs.
+ */
+public final class CatalogSnapshot {
+  private final long version;
+  private final FileTime lastModifiedTime;
+  private final ImmutableList<Map<String, List<String>>> survey;
+  private final ImmutableMap<String, Section> sections;
+  private final ImmutableMap<String, Question> questions;
+  private final ImmutableList<String> rank;
+  private final ImmutableMap<String, Service> services;
+
+  private CatalogSnapshot(
+    long version,
+    FileTime lastModifiedTime,
+    List<Map<String, List<String>>> survey,
+    Map<String, Section> sections,
+    Map<String, Question> questions,
+    List<String> rank,
+    Map<String, Service> services
+  ) {
+    this.version = version;
+    this.lastModifiedTime = Preconditions.checkNotNull(lastModifiedTime);
+    this.survey = copyOfSurvey(survey);
+    this.sections = ImmutableMap.copyOf(sections);
+    this.questions = ImmutableMap.copyOf(questions);
+    this.rank = ImmutableList.copyOf(rank);
+    this.services = ImmutableMap.copyOf(services);
+  }
+
+  /**
+   * Returns the initial snapshot (version 0) of the catalog loaded from configuration.
+   *
+   * @param catalog the default state of the catalog loaded from configuration
+   */
+  public static CatalogSnapshot of(Catalog catalog) {
+    return new CatalogSnapshot(
+      0L,
+      FileTime.fromMillis(0),
+      catalog.getSurvey(),
+      catalog.getSections(),
+      catalog.getQuestions(),
+      catalog.getRank(),
+      catalog.getServices()
+    );
+  }
+
+  /**
+   * Returns the next version of this snapshot with its rank and services replaced. This snapshot
+   * is not modified.
+   *
+   * @param rank the priority order of the services
+   * @param services the dictionary of all services
+   * @param lastModifiedTime the last modified time of the file that the services were read from
+   */
+  public CatalogSnapshot withServices(
+    List<String> rank,
+    Map<String, Service> services,
+    FileTime lastModifiedTime
+  ) {
+    return new CatalogSnapshot(
+      version + 1,
+      lastModifiedTime,
+      survey,
+      sections,
+      questions,
+      rank,
+      services
+    );
+  }
+
+  private static ImmutableList<Map<String, List<String>>> copyOfSurvey(
+    List<Map<String, List<String>>> survey
+  ) {
+    ImmutableList.Builder<Map<String, List<String>>> builder = ImmutableList.builder();
+    for (Map<String, List<String>> section : survey) {
+      ImmutableMap.Builder<String, List<String>> sectionBuilder = ImmutableMap.builder();
+      for (Map.Entry<String, List<String>> entry : section.entrySet()) {
+        sectionBuilder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+      }
+      builder.add(sectionBuilder.build());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Gets the version of this snapshot. The initial snapshot loaded from configuration is version 0
+   * and each subsequent snapshot increments the version by one.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the last modified time of the file that the services of this snapshot were read from, or
+   * the epoch if the services were loaded from configuration.
+   */
+  public FileTime getLastModifiedTime() {
+    return lastModifiedTime;
+  }
+
+  /**
+   * Gets the structure definition of the survey.
+   * @see Catalog#getSurvey()
+   */
+  public List<Map<String, List<String>>> getSurvey() {
+    return survey;
+  }
+
+  /**
+   * Gets the dictionary of sections.
+   * @see Catalog#getSections()
+   */
+  public Map<String, Section> getSections() {
+    return sections;
+  }
+
+  /**
+   * Gets the dictionary of questions.
+   * @see Catalog#getQuestions()
+   */
+  public Map<String, Question> getQuestions() {
+    return questions;
+  }
+
+  /**
+   * Gets the priority order of services.
+   * @see Catalog#getRank()
+   */
+  public List<String> getRank() {
+    return rank;
+  }
+
+  /**
+   * Gets the dictionary of services.
+   * @see Catalog#getServices()
+   */
+  public Map<String, Service> getServices() {
+    return services;
+  }
+}
@@ -0,0 +1,222 @@
+package gov.ny.its.hs.maslow.access.model;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.MediaType;
+
+/**
+ * Defines a response body that has been rendered ahead of time. A payload is rendered once per
+ * version of the catalog and then served as-is to every request, so the per-request cost of serving
+ * it is limited to writing the bytes to the socket.
+ *
+ * A payload may carry several precompressed variants of the same body, one per content coding
+ * (such as "br" or "gzip"), in addition to the uncompressed ("identity") body. The variant to serve
+ * is chosen from the request's Accept-Encoding header by {@link #select(String)}.
+ *
+ * Each variant carries a strong ETag derived from the content of the uncompressed body. Two payloads
+ * with identical bytes will always have identical ETags, regardless of when or where they were
+ * rendered. The ETags of compressed variants are suffixed with their content coding, since a strong
+ * ETag must identify a specific representation.
+ *
+ * A payload also carries the time at which it was last modified, for the Last-Modified header.
+ * Since HTTP dates have a precision of one second, the time is truncated to whole seconds.
+ */
+public class Payload {
+  /** The content coding of the uncompressed body. */
+  public static final String IDENTITY = "identity";
+
+  private final MediaType contentType;
+  private final Map<String, Variant> variants;
+  private final long lastModified;
+
+  /**
+   * Constructs a Payload instance with only an uncompressed body. The caller must not modify
+   * {@code body} after construction.
+   *
+   * @param contentType the media type of the body
+   * @param body the rendered bytes of the body
+   * @param lastModified the time the body was last modified, in milliseconds since the epoch
+   */
+  public Payload(MediaType contentType, byte[] body, long lastModified) {
+    this(contentType, body, Collections.emptyMap(), lastModified);
+  }
+
+  /**
+   * Constructs a Payload instance with an uncompressed body and precompressed variants of it. The
+   * caller must not modify {@code body} or {@code encodedBodies} after construction.
+   *
+   * @param contentType the media type of the body
+   * @param body the rendered bytes of the body
+   * @param encodedBodies the compressed bytes of the body mapped by content coding, in order of
+   * server preference
+   * @param lastModified the time the body was last modified, in milliseconds since the epoch
+   */
+  public Payload(
+    MediaType contentType,
+    byte[] body,
+    Map<String, byte[]> encodedBodies,
+    long lastModified
+  ) {
+    Preconditions.checkNotNull(contentType);
+    Preconditions.checkNotNull(body);
+    Preconditions.checkNotNull(encodedBodies);
+
+    String hash = Hashing.sha256().hashBytes(body).toString().substring(0, 32);
+
+    Map<String, Variant> variants = new LinkedHashMap<>();
+    for (Map.Entry<String, byte[]> entry : encodedBodies.entrySet()) {
+      String eTag = "\"" + hash + "-" + entry.getKey() + "\"";
+      variants.put(entry.getKey(), new Variant(entry.getKey(), entry.getValue(), eTag));
+    }
+    variants.put(IDENTITY, new Variant(IDENTITY, body, "\"" + hash + "\""));
+
+    this.contentType = contentType;
+    this.variants = Collections.unmodifiableMap(variants);
+    this.lastModified = lastModified / 1000 * 1000;
+  }
+
+  /**
+   * Gets the media type of the body.
+   */
+  public MediaType getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Gets the rendered bytes of the uncompressed body. The returned array is shared and must not be
+   * modified.
+   */
+  public byte[] getBody() {
+    return getIdentity().getBody();
+  }
+
+  /**
+   * Gets the strong ETag (including quotes) of the uncompressed body.
+   */
+  public String getETag() {
+    return getIdentity().getETag();
+  }
+
+  /**
+   * Gets the time the body was last modified, in milliseconds since the epoch and truncated to
+   * whole seconds.
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Gets the available variants of the body mapped by content coding, in order of server
+   * preference. The uncompressed variant is always present and always last.
+   */
+  public Map<String, Variant> getVariants() {
+    return variants;
+  }
+
+  /**
+   * Gets the uncompressed variant of the body.
+   */
+  public Variant getIdentity() {
+    return variants.get(IDENTITY);
+  }
+
+  /**
+   * Selects the variant to serve for the provided Accept-Encoding header. The first variant (in
+   * order of server preference) whose content coding is acceptable to the client is selected. A
+   * content coding is acceptable if it is listed, or matched by "*", with a non-zero quality value.
+   * If no compressed variant is acceptable, the uncompressed variant is selected.
+   *
+   * @param acceptEncoding the value of the Accept-Encoding header, which may be null
+   */
+  public Variant select(String acceptEncoding) {
+    if (Strings.isNullOrEmpty(acceptEncoding) || variants.size() == 1) {
+      return getIdentity();
+    }
+
+    Map<String, Boolean> accepted = new LinkedHashMap<>();
+    for (String coding : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+      List<String> parts = Splitter.on(';').trimResults().splitToList(coding);
+      accepted.put(parts.get(0).toLowerCase(), !isZeroQuality(parts));
+    }
+
+    for (Variant variant : variants.values()) {
+      Boolean acceptable = accepted.get(variant.getEncoding());
+      if (acceptable == null) {
+        acceptable = accepted.get("*");
+      }
+      if (Boolean.TRUE.equals(acceptable)) {
+        return variant;
+      }
+    }
+
+    return getIdentity();
+  }
+
+  /**
+   * Returns true if the parameters of a content coding in an Accept-Encoding header include a
+   * quality value of zero (that is, "not acceptable").
+   */
+  private static boolean isZeroQuality(List<String> parts) {
+    for (String parameter : parts.subList(1, parts.size())) {
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2)) <= 0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Defines one representation of the body of a {@link Payload}, encoded with a specific content
+   * coding.
+   */
+  public static class Variant {
+    private final String encoding;
+    private final byte[] body;
+    private final String eTag;
+
+    Variant(String encoding, byte[] body, String eTag) {
+      this.encoding = encoding;
+      this.body = body;
+      this.eTag = eTag;
+    }
+
+    /**
+     * Gets the content coding of this variant (such as "br", "gzip" or "identity").
+     */
+    public String getEncoding() {
+      return encoding;
+    }
+
+    /**
+     * Gets the encoded bytes of this variant. The returned array is shared and must not be
+     * modified.
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    /**
+     * Gets the strong ETag (including quotes) of this variant.
+     */
+    public String getETag() {
+      return eTag;
+    }
+
+    /**
+     * Returns true if this variant is compressed (that is, its encoding is not "identity").
+     */
+    public boolean isEncoded() {
+      return !IDENTITY.equals(encoding);
+    }
+  }
+}
@@ -0,0 +1,494 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import gov.ny.its.hs.maslow.access.dto.ScreeningDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A service that screens many households at once, such as the caseload of a caseworker partner.
+ * Each household is a row of survey responses, keyed by the question keys of the survey, in a CSV
+ * file (with a header row) or a JSON Lines file (with one JSON object per line). Each household is
+ * screened by {@link EligibilityService}, exactly as a single request would be. Every household of
+ * a file is screened against the version of the catalog that is current when the screening starts,
+ * even if the catalog is updated before it ends (see {@link EligibilityService#screener()}).
+ *
+ * Files are streamed: rows are read in batches of {@link #BATCH_SIZE}, and each batch is screened
+ * in parallel on a dedicated fork-join pool while the next batch is read. Results are written in
+ * the order of the rows as soon as their batch completes, so no more than two batches are held in
+ * memory regardless of the size of the file.
+ *
+ * The number of households screened is reported by the {@code maslow.eligibility.bulk.households}
+ * counter, and the throughput of each screening (in households per second) by the
+ * {@code maslow.eligibility.bulk.throughput} distribution summary.
+ */
+@Service
+public class BulkEligibilityService {
+  private static final Logger log = LoggerFactory.getLogger(BulkEligibilityService.class);
+
+  /** The number of rows read and screened together. */
+  static final int BATCH_SIZE = 1024;
+
+  /** The number of rows below which a batch is screened by a single fork-join task. */
+  private static final int SPLIT_THRESHOLD = 64;
+
+  private static final TypeReference<Map<String, Object>> RESPONSES =
+    new TypeReference<Map<String, Object>>() {};
+
+  /**
+   * Defines the formats of the files that can be screened. The results are written in the same
+   * format as the file.
+   */
+  public enum Format {
+    /**
+     * Comma-separated values, with a header row of question keys. Responses are TRUE, FALSE or a
+     * number; an empty value is a missing response. Results have the columns row, services (the
+     * eligible service keys separated by spaces) and error.
+     */
+    CSV,
+
+    /**
+     * JSON Lines, with one JSON object per line that maps question keys to responses. Each result
+     * is a {@link ScreeningDto} on its own line.
+     */
+    JSON_LINES,
+  }
+
+  private final EligibilityService eligibilityService;
+  private final ObjectWriter jsonWriter;
+  private final ObjectMapper objectMapper;
+  private final CsvMapper csvMapper;
+  private final ForkJoinPool pool;
+  private final Counter households;
+  private final DistributionSummary throughput;
+
+  /**
+   * Constructs an instance of BulkEligibilityService.
+   *
+   * @param eligibilityService the eligibility service that screens each household
+   * @param objectMapper the ObjectMapper used to read and write JSON Lines
+   * @param meterRegistry the registry of the throughput metrics
+   * @param parallelism the number of threads that screen households, or 0 for one per processor
+   */
+  public BulkEligibilityService(
+    EligibilityService eligibilityService,
+    ObjectMapper objectMapper,
+    MeterRegistry meterRegistry,
+    @Value("${maslow.access.bulk.parallelism:0}") int parallelism
+  ) {
+    super();
+    this.eligibilityService = eligibilityService;
+    this.objectMapper = objectMapper;
+    this.jsonWriter =
+      objectMapper.writerFor(ScreeningDto.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.csvMapper = new CsvMapper();
+    this.csvMapper.enable(CsvParser.Feature.WRAP_AS_ARRAY);
+    this.csvMapper.enable(CsvParser.Feature.SKIP_EMPTY_LINES);
+    this.csvMapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.pool =
+      new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+
+    this.households =
+      Counter
+        .builder("maslow.eligibility.bulk.households")
+        .description("The number of households screened in bulk")
+        .baseUnit("households")
+        .register(meterRegistry);
+    this.throughput =
+      DistributionSummary
+        .builder("maslow.eligibility.bulk.throughput")
+        .description("The number of households screened per second by each bulk screening")
+        .baseUnit("households/s")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Screens every household in {@code input} and writes the results to {@code output}, one per
+   * row and in the same order. A row that cannot be screened (such as one with a missing or
+   * invalid response) does not stop the screening; its result has an error instead. Neither
+   * stream is closed.
+   *
+   * @param input the file of survey responses
+   * @param output the stream to which the results are written
+   * @param format the format of both the file and the results
+   * @return the number of households screened
+   * @throws ResponseStatusException with status 400 (Bad Request) if the header of a CSV file
+   *     contains a column that is not a question of the survey
+   * @throws IOException if the file cannot be read (such as a CSV file with an unterminated quoted
+   *     value) or the results cannot be written
+   */
+  public long screen(InputStream input, OutputStream output, Format format) throws IOException {
+    long start = System.nanoTime();
+    EligibilityService.Screener screener = eligibilityService.screener();
+    OutputStream buffered = new BufferedOutputStream(output);
+    RowReader reader = format == Format.CSV
+      ? new CsvRowReader(input, screener.getQuestions())
+      : new JsonLinesRowReader(input);
+    RowWriter writer = format == Format.CSV
+      ? new CsvRowWriter(buffered)
+      : new JsonLinesRowWriter(buffered);
+
+    long count = 0;
+    ScreenTask pending = null;
+    while (true) {
+      // read the next batch while the previous batch is screened
+      List<Row> batch = reader.read(BATCH_SIZE);
+      ScreenTask next = null;
+      if (!batch.isEmpty()) {
+        next =
+          new ScreenTask(
+            screener,
+            reader,
+            batch,
+            new ScreeningDto[batch.size()],
+            0,
+            batch.size()
+          );
+        pool.execute(next);
+      }
+
+      if (pending != null) {
+        pending.join();
+        writer.write(pending.results);
+        buffered.flush();
+        households.increment(pending.results.length);
+        count += pending.results.length;
+      }
+
+      if (next == null) {
+        break;
+      }
+      pending = next;
+    }
+    writer.finish();
+    buffered.flush();
+
+    double seconds = Math.max(System.nanoTime() - start, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+    throughput.record(count / seconds);
+    log.info(
+      "Screened {} households against catalog version {} in {} ms ({} households per second)",
+      count,
+      screener.getVersion(),
+      Math.round(seconds * 1000),
+      Math.round(count / seconds)
+    );
+    return count;
+  }
+
+  /**
+   * Shuts down the pool that screens households.
+   */
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private static ScreeningDto screenRow(
+    EligibilityService.Screener screener,
+    RowReader reader,
+    Row row
+  ) {
+    ScreeningDto screening = new ScreeningDto();
+    screening.setRow(row.number);
+    try {
+      screening.setServices(screener.findEligibleServices(reader.decode(row.value)));
+    } catch (ResponseStatusException e) {
+      screening.setError(e.getReason());
+    } catch (IllegalArgumentException e) {
+      screening.setError(e.getMessage());
+    }
+    return screening;
+  }
+
+  /**
+   * Parses a CSV value: TRUE or FALSE (in any case) as a boolean, anything else as a number.
+   */
+  private static Object parseValue(String key, String value) {
+    if (value.equalsIgnoreCase("TRUE")) {
+      return Boolean.TRUE;
+    } else if (value.equalsIgnoreCase("FALSE")) {
+      return Boolean.FALSE;
+    }
+
+    try {
+      return Double.valueOf(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+        String.format(
+          "RESPONSE_NOT_VALID: The response to %s must be TRUE, FALSE or a number.",
+          key
+        )
+      );
+    }
+  }
+
+  /**
+   * Screens a range of a batch, splitting it in two until it is small enough.
+   */
+  private class ScreenTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final transient EligibilityService.Screener screener;
+    final transient RowReader reader;
+    final transient List<Row> rows;
+    final ScreeningDto[] results;
+    final int from;
+    final int to;
+
+    ScreenTask(
+      EligibilityService.Screener screener,
+      RowReader reader,
+      List<Row> rows,
+      ScreeningDto[] results,
+      int from,
+      int to
+    ) {
+      this.screener = screener;
+      this.reader = reader;
+      this.rows = rows;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          results[i] = screenRow(screener, reader, rows.get(i));
+        }
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(
+        new ScreenTask(screener, reader, rows, results, from, middle),
+        new ScreenTask(screener, reader, rows, results, middle, to)
+      );
+    }
+  }
+
+  /**
+   * A row of a file, numbered from 1, before its responses are decoded.
+   */
+  private static class Row {
+    final long number;
+    final Object value;
+
+    Row(long number, Object value) {
+      this.number = number;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Reads the rows of a file. Reading happens on the calling thread, while decoding the responses
+   * of each row happens in parallel on the pool.
+   */
+  private interface RowReader {
+    /**
+     * Reads up to {@code max} rows, returning an empty list at the end of the file.
+     */
+    List<Row> read(int max) throws IOException;
+
+    /**
+     * Decodes the responses of a row.
+     *
+     * @throws IllegalArgumentException if the row is not valid
+     */
+    Map<String, Object> decode(Object value);
+  }
+
+  private class CsvRowReader implements RowReader {
+    private final MappingIterator<String[]> rows;
+    private final String[] header;
+    private long number;
+
+    CsvRowReader(InputStream input, Set<String> questions) throws IOException {
+      rows = csvMapper.readerFor(String[].class).readValues(input);
+      header = rows.hasNextValue() ? trim(rows.nextValue()) : new String[0];
+
+      Set<String> unknown = new TreeSet<>();
+      for (String key : header) {
+        if (!questions.contains(key)) {
+          unknown.add(key);
+        }
+      }
+
+      try {
+        Preconditions.checkArgument(
+          unknown.isEmpty(),
+          "HEADER_NOT_VALID: The columns %s are not questions of the survey.",
+          unknown
+        );
+      } catch (IllegalArgumentException e) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+      }
+    }
+
+    @Override
+    public List<Row> read(int max) throws IOException {
+      List<Row> batch = new ArrayList<>(max);
+      while (batch.size() < max && rows.hasNextValue()) {
+        batch.add(new Row(++number, rows.nextValue()));
+      }
+      return batch;
+    }
+
+    @Override
+    public Map<String, Object> decode(Object value) {
+      String[] values = (String[]) value;
+      Preconditions.checkArgument(
+        values.length <= header.length,
+        "ROW_NOT_VALID: The row has %s values but the header has %s columns.",
+        values.length,
+        header.length
+      );
+
+      Map<String, Object> responses = new HashMap<>();
+      for (int i = 0; i < values.length; i++) {
+        String response = values[i].trim();
+        if (!response.isEmpty()) {
+          responses.put(header[i], parseValue(header[i], response));
+        }
+      }
+      return responses;
+    }
+
+    private String[] trim(String[] values) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = values[i].trim();
+      }
+      return values;
+    }
+  }
+
+  private class JsonLinesRowReader implements RowReader {
+    private final BufferedReader lines;
+    private long number;
+
+    JsonLinesRowReader(InputStream input) {
+      lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public List<Row> read(int max) throws IOException {
+      List<Row> batch = new ArrayList<>(max);
+      String line;
+      while (batch.size() < max && (line = lines.readLine()) != null) {
+        number++;
+        // blank lines are skipped, but still counted so that rows match line numbers
+        if (!Strings.isNullOrEmpty(line.trim())) {
+          batch.add(new Row(number, line));
+        }
+      }
+      return batch;
+    }
+
+    @Override
+    public Map<String, Object> decode(Object value) {
+      try {
+        return objectMapper.readValue((String) value, RESPONSES);
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException("ROW_NOT_VALID: " + e.getOriginalMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Writes the results of a screening.
+   */
+  private interface RowWriter {
+    void write(ScreeningDto[] results) throws IOException;
+
+    void finish() throws IOException;
+  }
+
+  private class CsvRowWriter implements RowWriter {
+    private final SequenceWriter writer;
+
+    CsvRowWriter(OutputStream output) throws IOException {
+      CsvSchema schema = CsvSchema
+        .builder()
+        .addColumn("row")
+        .addColumn("services")
+        .addColumn("error")
+        .setUseHeader(true)
+        .build();
+      writer = csvMapper.writer(schema).writeValues(output);
+    }
+
+    @Override
+    public void write(ScreeningDto[] results) throws IOException {
+      for (ScreeningDto result : results) {
+        writer.write(
+          new Object[] {
+            result.getRow(),
+            String.join(" ", result.getServices()),
+            Strings.nullToEmpty(result.getError()),
+          }
+        );
+      }
+      writer.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+      writer.close();
+    }
+  }
+
+  private class JsonLinesRowWriter implements RowWriter {
+    private final OutputStream output;
+
+    JsonLinesRowWriter(OutputStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public void write(ScreeningDto[] results) throws IOException {
+      for (ScreeningDto result : results) {
+        jsonWriter.writeValue(output, result);
+        output.write('\n');
+      }
+    }
+
+    @Override
+    public void finish() {}
+  }
+}
@@ -1,38 +1,70 @@
 package gov.ny.its.hs.maslow.access.service;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
 import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
 import gov.ny.its.hs.maslow.shared.model.Services;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import gov.ny.its.hs.maslow.shared.model.ServicesDelta;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.annotation.Bean;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * A service that manages the state of the catalog. The default state of the catalog is loaded from
@@ -43,12 +75,38 @@ import org.springframework.web.client.RestTemplate;
  * request via {@link #refreshServices()}. The location of the services file is configured using the
  * `maslow.access.services-location` property. If the file does not exist or is not readable,
  * refresh will be skipped -- it is not an error. If the file does exist, it will be mapped to the
- * {@link Service} configuration object and will replace any existing values in {@link Catalog}.
+ * {@link Services} configuration object and will replace the rank and services of the catalog.
+ * The file is also watched, so that the catalog is refreshed as soon as the file is replaced (see
+ * {@link ServicesFileWatcher}).
  *
  * In effect, the CatalogService will return a catalog updated with the latest service if the
  * external JSON exists and is readable, otherwise it will fallback to the default state loaded from
  * configuration.
  *
+ * The catalog is held as an immutable {@link CatalogSnapshot}. A refresh reads and parses the file
+ * and builds a complete new snapshot before publishing it with a single atomic write, so readers
+ * never lock and never observe a partially updated catalog (such as a new rank with old services).
+ * Refreshes themselves are serialized with each other.
+ *
+ * Once a complete snapshot has been fetched from Maslow Author, later fetches ask only for the
+ * changes since its version (see {@link ServicesDelta}), and fall back to fetching the snapshot in
+ * full whenever the changes cannot be applied. Snapshots are fetched as soon as Maslow Author
+ * announces them (see {@link SnapshotSubscriptionService}), and polled only while it cannot.
+ *
+ * Replicas of Maslow Access whose services file is on a shared volume may coordinate, so that only
+ * one of them fetches snapshots and the others refresh from the file it writes (see
+ * {@link SnapshotLease}). Coordination is enabled by setting
+ * {@code maslow.access.snapshot-fetch-coordinated} to true. The leader renews the lease upon each
+ * successful fetch and each heartbeat of its subscription; a follower takes over once the renewals
+ * are older than {@code maslow.access.snapshot-lease-stale-ms}, and the leader hands the lease over
+ * after {@code maslow.access.snapshot-lease-handover-failures} consecutive failed fetches.
+ *
+ * The last generations of fetched snapshots are kept in a store next to the services file (see
+ * {@link SnapshotStore}). Upon application start, services are restored from the newest valid
+ * generation if the services file is missing or invalid, and any generation can be restored on
+ * request via {@link #restoreServices(String)}. The number of generations is configured with the
+ * property {@code maslow.access.snapshot-store-generations}.
+ *
  * The service publishes an {@link ApplicationEvent} of type {@link CatalogUpdatedEvent} when the
  * catalog is updated.
  */
@@ -56,14 +114,72 @@ import org.springframework.web.client.RestTemplate;
 public class CatalogService {
   private static final Logger log = LoggerFactory.getLogger(CatalogService.class);
 
+  private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+  private static final long DEFAULT_OPEN_DURATION = 30000L;
+  private static final long DEFAULT_HEDGE_DELAY = 2000L;
+  private static final int DEFAULT_GENERATIONS = 5;
+  private static final long DEFAULT_LEASE_STALE_AFTER = 180000L;
+  private static final int DEFAULT_HANDOVER_FAILURES = 3;
+
   private ApplicationEventPublisher publisher;
-  private Catalog catalog;
+  private final ObjectMapper objectMapper;
+  private final AtomicReference<CatalogSnapshot> catalog;
   private RestOperations restapi;
   private Path servicesPath;
-  private URI snapshotFetchUri;
-  private FileTime lastModifiedTime = FileTime.fromMillis(0);
-  private FileTime nextModifiedTime = FileTime.fromMillis(0);
-  private long snapshotLastModified = 0L;
+  private final List<SnapshotUpstream> upstreams;
+  private final SnapshotLease lease;
+  private final int handoverFailures;
+  private final SnapshotStore store;
+  private final long hedgeDelay;
+  private final ExecutorService fetchExecutor;
+  private final Object fetchLock = new Object();
+  private int preferredUpstream;
+  private int failedFetches;
+  private volatile long snapshotLastModified = 0L;
+  private volatile boolean subscribed;
+
+  /** The SHA-256 hash of the content of the services last published, or null if none. */
+  private volatile HashCode servicesHash;
+
+  /**
+   * The version of the last snapshot fetched from Maslow Author and its rank and services as JSON,
+   * which the next delta is applied to; null until a snapshot has been fetched in full.
+   */
+  private volatile String snapshotVersion;
+  private volatile ObjectNode snapshotTree;
+
+  /**
+   * Constructs an instance of CatalogService with the default health checks of upstreams, without
+   * coordinating with other replicas or storing generations of snapshots.
+   *
+   * @param publisher an ApplicationEventPublisher used to publish the CatalogUpdatedEvent
+   * @param catalog the default state of the catalog loaded from configuration
+   * @param servicesLocation the path to the external JSON file that contains service data
+   * @param snapshotFetchUriString the comma-separated URLs of the latest snapshot of each instance
+   *        of Maslow Author, in order of preference
+   */
+  public CatalogService(
+    ApplicationEventPublisher publisher,
+    Catalog catalog,
+    RestOperations restOperations,
+    final String servicesLocation,
+    final String snapshotFetchUriString
+  ) {
+    this(
+      publisher,
+      catalog,
+      restOperations,
+      servicesLocation,
+      snapshotFetchUriString,
+      DEFAULT_FAILURE_THRESHOLD,
+      DEFAULT_OPEN_DURATION,
+      DEFAULT_HEDGE_DELAY,
+      false,
+      DEFAULT_LEASE_STALE_AFTER,
+      DEFAULT_HANDOVER_FAILURES,
+      0
+    );
+  }
 
   /**
    * Constructs an instance of CatalogService.
@@ -71,185 +187,914 @@ public class CatalogService {
    * @param publisher an ApplicationEventPublisher used to publish the CatalogUpdatedEvent
    * @param catalog the default state of the catalog loaded from configuration
    * @param servicesLocation the path to the external JSON file that contains service data
+   * @param snapshotFetchUriString the comma-separated URLs of the latest snapshot of each instance
+   *        of Maslow Author, in order of preference
+   * @param failureThreshold the number of consecutive failed fetches after which an upstream is
+   *        skipped
+   * @param openDuration the time for which an upstream is skipped, in milliseconds
+   * @param hedgeDelay the time after which a slow fetch is hedged to the next upstream, in
+   *        milliseconds, or 0 to never hedge
+   * @param coordinated whether only the replica that holds the lease on the services file fetches
+   *        snapshots
+   * @param leaseStaleAfter the time after the last renewal of the lease at which another replica
+   *        takes over, in milliseconds
+   * @param handoverFailures the number of consecutive failed fetches after which the lease is
+   *        handed over to another replica
+   * @param generations the number of generations of fetched snapshots to keep, or 0 to keep none
    */
+  @Autowired
   public CatalogService(
     ApplicationEventPublisher publisher,
     Catalog catalog,
     RestOperations restOperations,
     @Value("${maslow.access.services-location}") final String servicesLocation,
-    @Value("${maslow.access.snapshot-fetch-uri}") final String snapshotFetchUriString
+    @Value("${maslow.access.snapshot-fetch-uri}") final String snapshotFetchUriString,
+    @Value(
+      "${maslow.access.snapshot-fetch-failure-threshold:" + DEFAULT_FAILURE_THRESHOLD + "}"
+    ) int failureThreshold,
+    @Value(
+      "${maslow.access.snapshot-fetch-circuit-open-ms:" + DEFAULT_OPEN_DURATION + "}"
+    ) long openDuration,
+    @Value("${maslow.access.snapshot-fetch-hedge-delay-ms:" + DEFAULT_HEDGE_DELAY + "}")
+    long hedgeDelay,
+    @Value("${maslow.access.snapshot-fetch-coordinated:false}") boolean coordinated,
+    @Value(
+      "${maslow.access.snapshot-lease-stale-ms:" + DEFAULT_LEASE_STALE_AFTER + "}"
+    ) long leaseStaleAfter,
+    @Value(
+      "${maslow.access.snapshot-lease-handover-failures:" + DEFAULT_HANDOVER_FAILURES + "}"
+    ) int handoverFailures,
+    @Value(
+      "${maslow.access.snapshot-store-generations:" + DEFAULT_GENERATIONS + "}"
+    ) int generations
   ) {
     super();
     this.publisher = publisher;
-    this.catalog = catalog;
+    this.catalog = new AtomicReference<>(CatalogSnapshot.of(catalog));
     this.restapi = restOperations;
     this.servicesPath = Paths.get(servicesLocation);
 
-    try {
-      this.snapshotFetchUri = new URL(snapshotFetchUriString).toURI();
-    } catch (MalformedURLException | URISyntaxException e) {
+    // Note that we configure the {@code ObjectMapper} to ignore unknown fields. The data fetched
+    // from Maslow Author currently has extra fields such as {@code created}. To make this code less
+    // brittle, we simply ignore these extra fields and any others that might crop up. If a new
+    // field is needed, it should be added to {@link Services}.
+    this.objectMapper = new ObjectMapper();
+    this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    ImmutableList.Builder<SnapshotUpstream> upstreams = ImmutableList.builder();
+    for (String uri : Splitter.on(',').trimResults().omitEmptyStrings().split(
+      Strings.nullToEmpty(snapshotFetchUriString)
+    )) {
+      try {
+        upstreams.add(new SnapshotUpstream(new URL(uri).toURI(), failureThreshold, openDuration));
+      } catch (MalformedURLException | URISyntaxException e) {
+        log.warn("Invalid URI provided from maslow.access.snapshot-fetch-uri: {}", uri);
+      }
+    }
+    this.upstreams = upstreams.build();
+    if (this.upstreams.isEmpty()) {
       log.warn(
         "Invalid URI provided from maslow.access.snapshot-fetch-uri: {}",
         Strings.nullToEmpty(snapshotFetchUriString)
       );
     }
+    this.lease = coordinated ? new SnapshotLease(servicesPath, leaseStaleAfter) : null;
+    this.handoverFailures = Math.max(handoverFailures, 1);
+    this.store = generations > 0 ? new SnapshotStore(servicesPath, generations) : null;
+    this.hedgeDelay = hedgeDelay;
+    this.fetchExecutor =
+      Executors.newCachedThreadPool(
+        runnable -> {
+          Thread thread = new Thread(runnable, "snapshot-fetch");
+          thread.setDaemon(true);
+          return thread;
+        }
+      );
+  }
+
+  /**
+   * Stops the threads that fetch snapshots and releases the lease, if held.
+   */
+  @PreDestroy
+  public void shutdown() {
+    fetchExecutor.shutdown();
+    if (lease != null) {
+      lease.release();
+    }
   }
 
   /**
-   * Returns a configured implementation of the RestOperations interface for dependency injection.
+   * Returns the current snapshot of the {@link Catalog}. The snapshot is immutable and remains
+   * consistent for as long as the caller holds it, even if the catalog is refreshed in the meantime.
    */
-  @Bean
-  static RestOperations restOperations() {
-    return new RestTemplate();
+  public CatalogSnapshot getCatalog() {
+    return catalog.get();
   }
 
   /**
-   * Returns the current state of the {@link Catalog}
+   * Gets the path of the external JSON file that contains service data.
    */
-  public Catalog getCatalog() {
-    return catalog;
+  public Path getServicesPath() {
+    return servicesPath;
   }
 
   /**
-   * Attempts to refresh the services subset of {@link Catalog} from an external JSON file
+   * Attempts to refresh the services subset of {@link Catalog} from an external JSON file. The
+   * file is read in full and only parsed if its content differs from the services last published,
+   * which is detected by its SHA-256 hash rather than its modification time, so that successive
+   * writes within the granularity of the file system clock are not missed.
+   *
+   * If no services have been published yet, such as upon application start, and the file is
+   * missing or invalid, the services are restored from the newest valid generation of the snapshot
+   * store instead (see {@link #restoreServices(String)}).
+   *
    * @return true if services were updated, false if not
    */
-  public boolean refreshServices() {
+  public synchronized boolean refreshServices() {
+    Boolean refreshed = refreshServicesFile();
+    if (refreshed == null && servicesHash == null && store != null) {
+      log.info("Restoring services from newest valid generation: {}", store.getDirectory());
+      return restoreServices(null);
+    }
+    return Boolean.TRUE.equals(refreshed);
+  }
+
+  /**
+   * Refreshes services from the external JSON file.
+   *
+   * @return true if services were updated, false if the file has not been modified, or null if it
+   *         is missing or invalid
+   */
+  private Boolean refreshServicesFile() {
     log.info("Refreshing services from file: {}", servicesPath);
 
+    FileTime nextModifiedTime;
+
     try {
       if (!Files.exists(servicesPath)) {
         log.warn("Refresh failed because file not found: {}", servicesPath);
-        return false;
+        return null;
       }
 
       if (!Files.isReadable(servicesPath)) {
         log.warn("Refresh failed because file not readable: {}", servicesPath);
-        return false;
+        return null;
       }
 
-      // We read the lastModifiedTime of the external JSON file and only update the catalog if the
-      // file has been modified since the last time we updated the catalog.
       nextModifiedTime = Files.getLastModifiedTime(servicesPath);
-      if (nextModifiedTime.compareTo(lastModifiedTime) <= 0) {
-        log.debug("Refresh skipped because file not modified: {}", servicesPath);
-        return false;
-      }
     } catch (IOException e) {
       log.error("Refresh failed because file not accessible: {}", e.getMessage());
+      return null;
+    }
+
+    // We do not lock the external JSON file, so that reading never blocks a writer. Any process
+    // that writes to the file must therefore replace it atomically, as we do when fetching; a file
+    // that is read while being written in place fails to parse and is refreshed again.
+    byte[] content;
+    try {
+      content = Files.readAllBytes(servicesPath);
+    } catch (IOException e) {
+      log.error("Refresh failed with exception: {}", e.getMessage());
+      return null;
+    }
+
+    // We only update the catalog if the content of the file differs from the services last
+    // published, whether they were refreshed or fetched.
+    HashCode nextHash = Hashing.sha256().hashBytes(content);
+    if (nextHash.equals(servicesHash)) {
+      log.debug("Refresh skipped because file not modified: {}", servicesPath);
       return false;
     }
 
-    try (FileInputStream stream = new FileInputStream(servicesPath.toFile())) {
-      // We create a shared read lock on the external JSON file. Any process that writes to that
-      // file should create an exclusive write lock on the file to ensure consistent behavior.
-      stream.getChannel().lock(0, Long.MAX_VALUE, true);
+    Services services;
+    try {
+      services = objectMapper.readValue(content, Services.class);
+    } catch (IOException e) {
+      log.error("Refresh failed with exception: {}", e.getMessage());
+      return null;
+    }
 
-      // Note that we configured the {@code ObjectMapper} to ignore unknown fields. The data fetched
-      // from Maslow Author currently has an extra field {@code created}. To make this code less
-      // brittle, we simply ignore this extra field and any others that might crop up. If a new
-      // field is needed, it should be added to {@link Services}.
+    if (!isComplete(services)) {
+      log.error("Refresh failed because file is missing rank or services: {}", servicesPath);
+      return null;
+    }
 
-      ObjectMapper objectMapper = new ObjectMapper();
-      objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-      Services services = objectMapper.readValue(stream, Services.class);
+    // The file may have been written by another process, so the next fetch cannot be a delta.
+    snapshotVersion = null;
+    snapshotTree = null;
 
-      catalog.setRank(services.getRank());
-      catalog.setServices(services.getServices());
-      lastModifiedTime = nextModifiedTime;
+    publishServices(services, nextModifiedTime);
+    servicesHash = nextHash;
+    return true;
+  }
 
-      // We publish a CatalogUpdatedEvent in case any listener within the application would like to
-      // act upon this event.
-      publisher.publishEvent(new CatalogUpdatedEvent(this, lastModifiedTime));
+  /**
+   * Restores services from a generation of the snapshot store (see {@link SnapshotStore}), which
+   * replaces the services file and publishes its services without fetching anything. Generations
+   * whose content does not match their hash, or is not a complete snapshot, are skipped.
+   *
+   * Restoring a previous generation rolls services back until Maslow Author creates a newer
+   * snapshot, since the next fetch is still conditional on the last snapshot fetched.
+   *
+   * @param hash the SHA-256 hash of the generation, or null for the newest valid generation
+   * @return true if services were restored, false if there is no such valid generation
+   */
+  public synchronized boolean restoreServices(String hash) {
+    if (store == null) {
+      log.warn("Restore skipped because snapshot store disabled");
+      return false;
+    }
 
-      log.info("Refresh succeeded from file modified on {}", lastModifiedTime);
+    List<SnapshotStore.Generation> generations;
+    try {
+      generations = store.list();
     } catch (IOException e) {
-      log.error("Refresh failed with exception", e.getMessage());
+      log.error("Restore failed because store not accessible: {}", e.getMessage());
+      return false;
+    }
+
+    for (SnapshotStore.Generation generation : generations) {
+      if (hash != null && !hash.equals(generation.getHash())) {
+        continue;
+      }
+
+      try {
+        if (restoreGeneration(generation)) {
+          return true;
+        }
+      } catch (IOException e) {
+        log.warn(
+          "Restore skipped generation {} with exception: {}",
+          generation.getNumber(),
+          e.getMessage()
+        );
+      }
+    }
+
+    log.warn("Restore failed because no valid generation found: {}", Strings.nullToEmpty(hash));
+    return false;
+  }
+
+  /**
+   * Restores services from a generation of the snapshot store.
+   *
+   * @return true if services were restored, false if the generation is not valid
+   */
+  private boolean restoreGeneration(SnapshotStore.Generation generation) throws IOException {
+    byte[] content = store.read(generation);
+    if (content == null) {
+      log.warn("Restore skipped corrupt generation {}", generation.getNumber());
       return false;
     }
+    Services services = objectMapper.readValue(content, Services.class);
+    if (!isComplete(services)) {
+      log.warn("Restore skipped incomplete generation {}", generation.getNumber());
+      return false;
+    }
+
+    Path temporaryPath = writeTemporaryFile(new ByteArrayInputStream(content));
+    try {
+      moveServicesFile(temporaryPath);
+    } finally {
+      Files.deleteIfExists(temporaryPath);
+    }
+
+    // The restored snapshot is not the last one fetched, so the next fetch cannot be a delta.
+    snapshotVersion = null;
+    snapshotTree = null;
 
+    publishServices(services, Files.getLastModifiedTime(servicesPath));
+    servicesHash = HashCode.fromString(generation.getHash());
+    log.info("Restored services from generation {}", generation.getNumber());
     return true;
   }
 
   /**
-   * Fetches the latest services snapshot from Maslow Author and writes it to a file. This file is
-   * subsequently read by {@link #refreshServices()}. If there are any issues fetching the latest
-   * data, this method simply returns false and Maslow Access soldiers on using either previously
-   * fetched data or the data embedded into the binary in {@code application.yaml}.
+   * Gets the SHA-256 hash of the services last published, in hexadecimal, or null if none.
+   */
+  public String getServicesHash() {
+    HashCode hash = servicesHash;
+    return hash == null ? null : hash.toString();
+  }
+
+  /**
+   * Lists the generations of the snapshot store, newest first, or none if it is disabled.
+   */
+  public List<SnapshotStore.Generation> getGenerations() throws IOException {
+    return store == null ? Collections.emptyList() : store.list();
+  }
+
+  private static boolean isComplete(Services services) {
+    return services != null && services.getRank() != null && services.getServices() != null;
+  }
+
+  /**
+   * Publishes the next snapshot of the catalog with the given services.
+   */
+  private void publishServices(Services services, FileTime lastModifiedTime) {
+    // We build the next snapshot in full before publishing it, so that readers only ever see the
+    // previous snapshot or the next one.
+    CatalogSnapshot next = catalog
+      .get()
+      .withServices(services.getRank(), services.getServices(), lastModifiedTime);
+    catalog.set(next);
+
+    // We publish a CatalogUpdatedEvent in case any listener within the application would like to
+    // act upon this event.
+    publisher.publishEvent(new CatalogUpdatedEvent(this, next));
+
+    log.info(
+      "Refresh succeeded from file modified on {} (version {})",
+      next.getLastModifiedTime(),
+      next.getVersion()
+    );
+  }
+
+  /**
+   * Gets the version of the last snapshot fetched from Maslow Author, or null if no snapshot has
+   * been fetched since the application started.
+   */
+  public String getSnapshotVersion() {
+    return snapshotVersion;
+  }
+
+  /**
+   * Returns true if this replica fetches snapshots from Maslow Author, which is always the case
+   * unless replicas coordinate and another replica holds the lease (see {@link SnapshotLease}).
+   * If no replica holds the lease, this replica acquires it.
+   */
+  public boolean isLeader() {
+    return lease == null || lease.acquire();
+  }
+
+  /**
+   * Renews the lease, if replicas coordinate and this replica fetches snapshots, such as upon a
+   * heartbeat of the subscription to new snapshots.
+   */
+  public void renewLease() {
+    if (lease != null) {
+      lease.renew();
+    }
+  }
+
+  /**
+   * Sets whether Maslow Access is subscribed to new snapshots (see
+   * {@link SnapshotSubscriptionService}), in which case snapshots are not polled.
+   */
+  public void setSubscribed(boolean subscribed) {
+    this.subscribed = subscribed;
+  }
+
+  /**
+   * Polls Maslow Author for the latest services snapshot (see {@link #fetchServicesSnapshot()}),
+   * unless Maslow Access is subscribed to new snapshots and is told of them as soon as they are
+   * created. Polling resumes as soon as the subscription drops.
+   *
+   * This method is scheduled to repeat after a fixed delay. The delay (measured in milliseconds) is
+   * configured with the property {@code maslow.access.snapshot-fetch-rate-ms}.
+   */
+  @Scheduled(fixedDelayString = "${maslow.access.snapshot-fetch-rate-ms}")
+  public void pollServicesSnapshot() {
+    if (subscribed) {
+      log.debug("Poll skipped because subscribed to services snapshots");
+      return;
+    }
+
+    fetchServicesSnapshot();
+  }
+
+  /**
+   * Fetches the latest services snapshot from Maslow Author and writes it to a file, which is read
+   * by {@link #refreshServices()} upon the next application start. If there are any issues
+   * fetching the latest data, this method simply returns false and Maslow Access soldiers on using
+   * either previously fetched data or the data embedded into the binary in
+   * {@code application.yaml}.
+   *
+   * The response is streamed as is to a temporary file next to the services file, without being
+   * deserialized and serialized again, and the temporary file is synced to disk. It is then parsed
+   * once, and only if it holds a complete snapshot is it atomically renamed over the services file
+   * and published as the next catalog. The services file is therefore never truncated or partially
+   * written, whether the fetch fails or the process dies midway.
+   *
+   * After a snapshot has been fetched in full, its version is sent to the delta endpoint next to
+   * the fetch URL, and only the services that were added, changed or removed since are received.
+   * They are applied to the JSON of the previous snapshot, which is then verified against the
+   * checksum of the delta and written like a full snapshot. If the version is too old, the checksum
+   * does not match or the delta cannot be fetched, the snapshot is fetched in full instead.
+   *
+   * Snapshots may be fetched from several instances of Maslow Author (upstreams), which share the
+   * same snapshots. Fetches go to the upstream that last succeeded, and fail over to the others in
+   * order. An upstream that fails repeatedly is skipped for a while (see {@link SnapshotUpstream}).
+   * If an upstream has not answered after the hedge delay, the fetch is also sent to the next
+   * upstream, and the first answer wins; the other is discarded, even if it arrives after this
+   * method has returned. A snapshot is also discarded if it was fetched against a snapshot that is
+   * no longer the last one fetched.
+   *
+   * Fetches are serialized with each other, whether they are polled or pushed. If replicas
+   * coordinate and another replica holds the lease, the snapshot is not fetched; services are
+   * refreshed from the file written by that replica instead (see {@link #refreshServices()}).
    *
    * This functionality is configured via application properties:
    *
-   * - This method is scheduled to repeat after a fixed delay. The delay (measured in milliseconds)
-   *   is configured with the property {@code maslow.access.snapshot-fetch-rate-ms}.
-   * - The URL that will be fetched is configured with the property
+   * - The comma-separated URLs that will be fetched are configured with the property
    *   {@code maslow.access.snapshot-fetch-uri}.
+   * - The number of consecutive failures after which an upstream is skipped, and the time for
+   *   which it is skipped (measured in milliseconds), are configured with the properties
+   *   {@code maslow.access.snapshot-fetch-failure-threshold} and
+   *   {@code maslow.access.snapshot-fetch-circuit-open-ms}.
+   * - The hedge delay (measured in milliseconds) is configured with the property
+   *   {@code maslow.access.snapshot-fetch-hedge-delay-ms}.
+   * - Coordination is enabled with the property {@code maslow.access.snapshot-fetch-coordinated}.
    * - The file that will be written to and read by {@link #refreshServices()} is configured with
    *   the property {@maslow.access.services-location}.
    *
    * @return true if data was fetched and services refreshed, otherwise false
    */
-  @Scheduled(fixedDelayString = "${maslow.access.snapshot-fetch-rate-ms}")
   public boolean fetchServicesSnapshot() {
-    log.info("Fetching latest services snapshot from URL: {}", snapshotFetchUri);
+    synchronized (fetchLock) {
+      if (!isLeader()) {
+        log.debug("Fetch skipped because another replica holds the lease");
+        return refreshServices();
+      }
 
-    if (snapshotFetchUri == null) {
-      log.warn("Fetch skipped because of invalid URI.");
-      return false;
+      if (upstreams.isEmpty()) {
+        log.warn("Fetch skipped because of invalid URI.");
+        return false;
+      }
+
+      List<SnapshotUpstream> candidates = selectUpstreams();
+      if (candidates.isEmpty()) {
+        log.warn("Fetch skipped because every upstream is failing: {}", upstreams);
+        recordFetch(false);
+        return false;
+      }
+
+      Boolean refreshed = fetchHedged(candidates);
+      recordFetch(refreshed != null);
+      return Boolean.TRUE.equals(refreshed);
+    }
+  }
+
+  /**
+   * Renews the lease upon a successful fetch, whether or not the snapshot was modified, and hands
+   * it over after too many consecutive failed fetches.
+   */
+  private void recordFetch(boolean succeeded) {
+    if (lease == null) {
+      return;
+    }
+
+    if (succeeded) {
+      failedFetches = 0;
+      lease.renew();
+    } else if (++failedFetches >= handoverFailures) {
+      log.warn("Handing over lease after {} consecutive failed fetches", failedFetches);
+      failedFetches = 0;
+      lease.handOver();
+    }
+  }
+
+  /**
+   * Returns the upstreams whose circuit is not open, starting with the one that last succeeded.
+   */
+  private List<SnapshotUpstream> selectUpstreams() {
+    List<SnapshotUpstream> candidates = new ArrayList<>(upstreams.size());
+    for (int i = 0; i < upstreams.size(); i++) {
+      SnapshotUpstream upstream = upstreams.get((preferredUpstream + i) % upstreams.size());
+      if (!upstream.isOpen()) {
+        candidates.add(upstream);
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Fetches from the candidate upstreams in order until one answers, hedging once to the next
+   * upstream if the first is slow.
+   *
+   * @return true if services were refreshed, false if they have not been modified, or null if
+   *         every upstream failed
+   */
+  private Boolean fetchHedged(List<SnapshotUpstream> candidates) {
+    // Only the first attempt to finish writing a snapshot replaces the services file.
+    AtomicBoolean claimed = new AtomicBoolean();
+    CompletionService<Boolean> attempts = new ExecutorCompletionService<>(fetchExecutor);
+    Map<Future<Boolean>, SnapshotUpstream> pending = new HashMap<>();
+    Iterator<SnapshotUpstream> next = candidates.iterator();
+    boolean hedged = false;
+
+    SnapshotUpstream first = next.next();
+    pending.put(attempts.submit(() -> fetchFrom(first, claimed)), first);
+    try {
+      while (!pending.isEmpty()) {
+        Future<Boolean> done;
+        if (!hedged && hedgeDelay > 0 && next.hasNext()) {
+          done = attempts.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+          if (done == null) {
+            hedged = true;
+            SnapshotUpstream hedge = next.next();
+            log.info("Hedging fetch to upstream {} because {} is slow", hedge, first);
+            pending.put(attempts.submit(() -> fetchFrom(hedge, claimed)), hedge);
+            continue;
+          }
+        } else {
+          done = attempts.take();
+        }
+
+        SnapshotUpstream upstream = pending.remove(done);
+        Boolean refreshed = getAttempt(done);
+        if (refreshed != null) {
+          preferredUpstream = upstreams.indexOf(upstream);
+          // A slower attempt runs to completion, bounded by the timeouts of the client.
+          pending.keySet().forEach(attempt -> attempt.cancel(false));
+          return refreshed;
+        }
+        if (next.hasNext()) {
+          SnapshotUpstream failover = next.next();
+          log.info("Failing over fetch to upstream {}", failover);
+          pending.put(attempts.submit(() -> fetchFrom(failover, claimed)), failover);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // An attempt that is still running must not replace the services once we have returned,
+      // even if no attempt claimed them, such as when the first answer was not modified.
+      claimed.set(true);
+    }
+    return null;
+  }
+
+  private static Boolean getAttempt(Future<Boolean> attempt) throws InterruptedException {
+    try {
+      return attempt.get();
+    } catch (ExecutionException e) {
+      log.warn("Fetch failed with exception: {}", e.getCause().getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Fetches the latest services snapshot from an upstream, as a delta if possible, and records the
+   * health of the upstream.
+   *
+   * @return true if services were refreshed, false if they have not been modified, or null if the
+   *         fetch failed or the upstream was skipped
+   */
+  private Boolean fetchFrom(SnapshotUpstream upstream, AtomicBoolean claimed) {
+    // The circuit may have opened, or a trial started, since the upstream was selected.
+    if (!upstream.tryFetch()) {
+      log.info("Fetch skipped because the circuit of upstream {} is open", upstream);
+      return null;
     }
 
+    Boolean refreshed = null;
     try {
-      HttpHeaders headers = new HttpHeaders();
-      headers.setIfModifiedSince(snapshotLastModified);
+      if (snapshotVersion != null && upstream.isDeltaSupported()) {
+        refreshed = fetchServicesDelta(upstream, claimed);
+      }
+      if (refreshed == null) {
+        refreshed = fetchFullSnapshot(upstream, claimed);
+      }
+    } finally {
+      // Any exception, such as from a listener of the catalog, counts as a failure, so that a trial
+      // is always recorded and the circuit does not stay open.
+      if (refreshed == null) {
+        upstream.recordFailure();
+      } else {
+        upstream.recordSuccess();
+      }
+    }
+    return refreshed;
+  }
 
-      log.debug(
-        "Fetch request (If-Modified-Since: {})",
-        Instant.ofEpochMilli(snapshotLastModified).toString()
+  /**
+   * Fetches the latest services snapshot from an upstream in full.
+   *
+   * @return true if services were refreshed, false if they have not been modified, or null if the
+   *         fetch failed
+   */
+  private Boolean fetchFullSnapshot(SnapshotUpstream upstream, AtomicBoolean claimed) {
+    log.info("Fetching latest services snapshot from URL: {}", upstream.getFetchUri());
+
+    String base = snapshotVersion;
+
+    try {
+      return restapi.execute(
+        upstream.getFetchUri(),
+        HttpMethod.GET,
+        request -> {
+          request.getHeaders().setIfModifiedSince(snapshotLastModified);
+
+          log.debug(
+            "Fetch request (If-Modified-Since: {})",
+            Instant.ofEpochMilli(snapshotLastModified).toString()
+          );
+        },
+        response -> receiveServicesSnapshot(response, base, claimed)
       );
+    } catch (RestClientException e) {
+      log.warn("Fetch failed with exception: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Receives the response to a fetch of the latest services snapshot.
+   *
+   * @param base the version of the last snapshot fetched when the fetch started, or null if none
+   * @return true if the services file was replaced and services refreshed, false if it has not
+   *         been modified, or null if the fetch failed
+   */
+  private Boolean receiveServicesSnapshot(
+    ClientHttpResponse response,
+    String base,
+    AtomicBoolean claimed
+  )
+    throws IOException {
+    log.debug(
+      "Fetch response (Status: {}, Last-Modified: {})",
+      response.getRawStatusCode(),
+      Instant.ofEpochMilli(response.getHeaders().getLastModified()).toString()
+    );
+
+    switch (response.getStatusCode()) {
+      case OK:
+        break;
+      case NOT_MODIFIED:
+        log.info(
+          "Fetch skipped because services snapshot has not been modified since {}",
+          Instant.ofEpochMilli(snapshotLastModified).toString()
+        );
+        return false;
+      default:
+        log.warn("Fetch failed with status: {}", response.getStatusCode());
+        return null;
+    }
+
+    log.info("Writing services snapshot to file: {}", servicesPath);
+
+    Path temporaryPath;
+    try (InputStream body = response.getBody()) {
+      temporaryPath = writeTemporaryFile(body);
+    }
+    try {
+      JsonNode tree;
+      Services services;
+      try {
+        tree = objectMapper.readTree(temporaryPath.toFile());
+        services = objectMapper.treeToValue(tree, Services.class);
+      } catch (IOException e) {
+        log.warn("Fetch failed because snapshot could not be parsed: {}", e.getMessage());
+        return null;
+      }
+      if (!isComplete(services)) {
+        log.warn("Fetch failed because snapshot is missing rank or services");
+        return null;
+      }
+      if (!claimed.compareAndSet(false, true)) {
+        log.info("Fetch discarded because another upstream answered first");
+        return false;
+      }
 
-      ResponseEntity<Services> entity = restapi.exchange(
-        snapshotFetchUri,
+      // We keep only the rank and services, which are all that a delta changes.
+      ObjectNode snapshot = objectMapper.createObjectNode();
+      snapshot.set("rank", tree.get("rank"));
+      snapshot.set("services", tree.get("services"));
+
+      return replaceServices(
+        temporaryPath,
+        services,
+        base,
+        parseVersion(response),
+        snapshot,
+        response.getHeaders().getLastModified()
+      );
+    } finally {
+      Files.deleteIfExists(temporaryPath);
+    }
+  }
+
+  /**
+   * Fetches the changes since the last snapshot fetched from Maslow Author and applies them.
+   *
+   * @return true if services were refreshed, false if they have not been modified, or null if the
+   *         snapshot should be fetched in full instead
+   */
+  private Boolean fetchServicesDelta(SnapshotUpstream upstream, AtomicBoolean claimed) {
+    URI uri = UriComponentsBuilder
+      .fromUri(upstream.getDeltaUri())
+      .queryParam("since", snapshotVersion)
+      .build()
+      .toUri();
+
+    log.info("Fetching services snapshot delta from URL: {}", uri);
+
+    try {
+      return restapi.execute(
+        uri,
         HttpMethod.GET,
-        new HttpEntity<Object>(headers),
-        Services.class
+        request -> log.debug("Delta request (since: {})", snapshotVersion),
+        response -> receiveServicesDelta(response, claimed)
       );
+    } catch (HttpStatusCodeException e) {
+      if (
+        e.getStatusCode() == HttpStatus.NOT_FOUND ||
+        e.getStatusCode() == HttpStatus.METHOD_NOT_ALLOWED
+      ) {
+        // The upstream predates the delta endpoint, so we stop asking it for deltas.
+        log.warn("Delta not supported, fetching in full from now on: {}", e.getMessage());
+        upstream.setDeltaSupported(false);
+      } else {
+        log.info("Delta failed with status {}, fetching in full", e.getStatusCode());
+      }
+      return null;
+    } catch (RestClientException e) {
+      log.warn("Delta failed with exception, fetching in full: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Receives the response to a fetch of the changes since the last snapshot.
+   *
+   * @return true if services were refreshed, false if they have not been modified, or null if the
+   *         snapshot should be fetched in full instead
+   */
+  private Boolean receiveServicesDelta(ClientHttpResponse response, AtomicBoolean claimed)
+    throws IOException {
+    switch (response.getStatusCode()) {
+      case OK:
+        break;
+      case NOT_MODIFIED:
+        log.info("Delta skipped because services snapshot {} is the latest", snapshotVersion);
+        return false;
+      default:
+        log.info("Delta failed with status {}, fetching in full", response.getStatusCode());
+        return null;
+    }
+
+    ServicesDelta delta;
+    try (InputStream body = response.getBody()) {
+      delta = objectMapper.readValue(body, ServicesDelta.class);
+    } catch (IOException e) {
+      log.warn("Delta failed because it could not be parsed, fetching in full: {}", e.getMessage());
+      return null;
+    }
+
+    String version = snapshotVersion;
+    ObjectNode tree = snapshotTree;
+    if (version == null || tree == null || !version.equals(delta.getBase())) {
+      log.warn("Delta failed because its base {} is not {}", delta.getBase(), version);
+      return null;
+    }
+
+    // We apply the delta to a copy, so that the previous snapshot is intact if the result does not
+    // match the checksum.
+    ObjectNode snapshot = tree.deepCopy();
+    ObjectNode services = snapshot.with("services");
+    services.remove(delta.getRemoved());
+    services.setAll(delta.getServices());
+    if (delta.getRank() != null) {
+      snapshot.set("rank", objectMapper.valueToTree(delta.getRank()));
+    }
+
+    String checksum = ServicesDelta.checksum(snapshot.get("rank"), services);
+    if (!checksum.equals(delta.getChecksum())) {
+      log.warn("Delta failed because checksum {} does not match, fetching in full", checksum);
+      return null;
+    }
+
+    Services next = objectMapper.treeToValue(snapshot, Services.class);
+    if (!isComplete(next)) {
+      log.warn("Delta failed because snapshot is missing rank or services, fetching in full");
+      return null;
+    }
+    if (!claimed.compareAndSet(false, true)) {
+      log.info("Delta discarded because another upstream answered first");
+      return false;
+    }
+
+    log.info(
+      "Writing services snapshot {} with {} changed and {} removed services to file: {}",
+      delta.getVersion(),
+      delta.getServices().size(),
+      delta.getRemoved().size(),
+      servicesPath
+    );
 
-      log.debug(
-        "Fetch response (Status: {}, Last-Modified: {})",
-        entity.getStatusCodeValue(),
-        Instant.ofEpochMilli(entity.getHeaders().getLastModified()).toString()
+    Path temporaryPath = writeTemporaryFile(
+      new ByteArrayInputStream(objectMapper.writeValueAsBytes(snapshot))
+    );
+    try {
+      return replaceServices(
+        temporaryPath,
+        next,
+        delta.getBase(),
+        delta.getVersion(),
+        snapshot,
+        response.getHeaders().getLastModified()
       );
+    } finally {
+      Files.deleteIfExists(temporaryPath);
+    }
+  }
 
-      switch (entity.getStatusCode()) {
-        case OK:
-          log.info("Writing services snapshot to file: {}", servicesPath);
+  /**
+   * Gets the version of a fetched snapshot from the ETag of the response, or null if it has none.
+   */
+  private static String parseVersion(ClientHttpResponse response) {
+    String eTag = response.getHeaders().getETag();
+    if (eTag == null) {
+      return null;
+    }
 
-          try (FileOutputStream stream = new FileOutputStream(servicesPath.toFile())) {
-            stream.getChannel().lock();
+    String version = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+      version = version.substring(1, version.length() - 1);
+    }
+    return version;
+  }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.writeValue(stream, entity.getBody());
+  /**
+   * Writes content to a temporary file next to the services file and syncs it to disk.
+   *
+   * @return the path of the temporary file, which the caller must delete
+   */
+  private Path writeTemporaryFile(InputStream content) throws IOException {
+    Path temporaryPath = Files.createTempFile(
+      servicesPath.toAbsolutePath().getParent(),
+      servicesPath.getFileName().toString(),
+      ".tmp"
+    );
+    try (
+      ReadableByteChannel source = Channels.newChannel(content);
+      FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)
+    ) {
+      channel.transferFrom(source, 0, Long.MAX_VALUE);
+      channel.force(true);
+    } catch (IOException e) {
+      Files.deleteIfExists(temporaryPath);
+      throw e;
+    }
+    return temporaryPath;
+  }
 
-            snapshotLastModified = entity.getHeaders().getLastModified();
-          } catch (IOException e) {
-            log.warn("Write to file failed: {}", e.getMessage());
-            return false;
-          }
-          break;
-        case NOT_MODIFIED:
-          log.info(
-            "Fetch skipped because services snapshot has not been modified since {}",
-            Instant.ofEpochMilli(snapshotLastModified).toString()
-          );
-          return false;
-        default:
-          log.warn("Fetch failed with status: {}", entity.getStatusCode());
-          return false;
+  /**
+   * Renames a complete, synced services file over the services file and publishes its services,
+   * so that {@link #refreshServices()} does not parse the file again. The version and JSON of the
+   * snapshot are kept for applying the next delta.
+   *
+   * The snapshot is discarded if its base is no longer the last snapshot fetched, such as when a
+   * slow upstream answers after a newer snapshot has been fetched from another one.
+   *
+   * @param base the version of the last snapshot fetched when the fetch started, or null if none
+   * @param lastModified the time at which the snapshot was last modified, in milliseconds
+   * @return true if services were replaced, false if the snapshot was discarded
+   */
+  private synchronized boolean replaceServices(
+    Path temporaryPath,
+    Services services,
+    String base,
+    String version,
+    ObjectNode snapshot,
+    long lastModified
+  )
+    throws IOException {
+    if (!Objects.equals(base, snapshotVersion)) {
+      log.info("Fetch discarded because its base {} is no longer {}", base, snapshotVersion);
+      return false;
+    }
+
+    HashCode hash = MoreFiles.asByteSource(temporaryPath).hash(Hashing.sha256());
+    if (store != null) {
+      // The generation is stored before the services file is replaced, so that the newest
+      // generation is never older than the services file.
+      try {
+        store.add(temporaryPath, hash);
+      } catch (IOException e) {
+        log.warn("Snapshot could not be stored with exception: {}", e.getMessage());
       }
+    }
+    moveServicesFile(temporaryPath);
 
-      return refreshServices();
-    } catch (ResourceAccessException e) {
-      log.warn("Fetch failed with exception: {}", e.getMessage());
-      return false;
+    publishServices(services, Files.getLastModifiedTime(servicesPath));
+    servicesHash = hash;
+    snapshotVersion = version;
+    snapshotTree = snapshot;
+    snapshotLastModified = lastModified;
+    return true;
+  }
+
+  /**
+   * Atomically renames a complete, synced file over the services file.
+   */
+  private void moveServicesFile(Path temporaryPath) throws IOException {
+    try {
+      Files.move(temporaryPath, servicesPath, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      log.warn("Atomic move not supported, replacing file: {}", servicesPath);
+      Files.move(temporaryPath, servicesPath, StandardCopyOption.REPLACE_EXISTING);
     }
   }
 }
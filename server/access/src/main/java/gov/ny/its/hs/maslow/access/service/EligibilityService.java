@@ -0,0 +1,506 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import gov.ny.its.hs.maslow.access.dto.EligibilityDto;
+import gov.ny.its.hs.maslow.access.dto.PartialEligibilityDto;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.shared.formula.CompiledFormulas;
+import gov.ny.its.hs.maslow.shared.formula.DecisionDiagram;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import gov.ny.its.hs.maslow.shared.formula.ResponseEncoder;
+import gov.ny.its.hs.maslow.shared.model.Question;
+import gov.ny.its.hs.maslow.shared.model.QuestionType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A service that decides which services a resident may be eligible for, given their responses to
+ * the survey. This is the server-side equivalent of the evaluation done by the client: the same
+ * formulas are evaluated with the same semantics (see {@link Formula}).
+ *
+ * Formulas are parsed once per version of the catalog, when the application starts and again each
+ * time {@link CatalogService} publishes a {@link CatalogUpdatedEvent}, and compiled together into
+ * one {@link DecisionDiagram}. A request then decides every service with a single traversal of the
+ * diagram, which evaluates each comparison shared by several formulas (such as an income limit)
+ * only once. The compiled formulas of each version are published through a volatile field, so
+ * request threads always evaluate a consistent set of formulas.
+ *
+ * Complete responses, which are the most common, are decided faster still by
+ * {@link CompiledFormulas}: each formula is also compiled into a tree of closures over the
+ * responses encoded as an array of numbers, with every conversion between booleans and numbers
+ * resolved from the types of the questions. Compiling happens along with the decision diagram, on
+ * the thread that updates the catalog, never on a request thread.
+ *
+ * Since the survey has few questions, and most of them are booleans, many residents give responses
+ * that are equivalent for every formula. Results are therefore cached in a bounded cache (evicting
+ * the least recently used entries), keyed by the version of the catalog and a canonical encoding of
+ * the responses (see {@link ResponseEncoder}) in which NUMBER and CURRENCY responses are bucketed
+ * between the limits that formulas test them against. The cache is cleared when the catalog is
+ * updated, and its hit ratio is published as the {@code maslow.eligibility.cache.hit.ratio} metric
+ * (along with the standard cache metrics, tagged with {@code cache=eligibility}).
+ *
+ * Residents answer the survey one question at a time, so results can also be updated
+ * incrementally (see {@link #updateEligibleServices(Map, Collection, String)}). The service stays
+ * stateless: each result includes an opaque state (the result of each formula and the value of
+ * each test evaluated to decide it), which the client returns along with the questions whose
+ * responses changed. Only the formulas and tests that depend on those questions are evaluated
+ * again, following the dependency graph from questions to formulas in the decision diagram.
+ *
+ * Before the survey is finished, many formulas are already decided by the responses so far (see
+ * {@link #findPartialEligibility(Map)}), so the client can show early results and skip the
+ * questions that cannot change any result.
+ */
+@Service
+public class EligibilityService {
+  private static final Logger log = LoggerFactory.getLogger(EligibilityService.class);
+
+  private final Cache<CacheKey, List<String>> cache;
+  private volatile Compilation compilation;
+
+  /**
+   * Constructs an instance of EligibilityService and compiles the formulas of the initial catalog.
+   *
+   * @param catalogService the catalog service that manages the state of the catalog
+   * @param meterRegistry the registry of the cache metrics
+   * @param cacheSize the maximum number of cached results, or 0 to disable the cache
+   */
+  public EligibilityService(
+    CatalogService catalogService,
+    MeterRegistry meterRegistry,
+    @Value("${maslow.access.eligibility.cache-size:10000}") long cacheSize
+  ) {
+    super();
+    this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "eligibility");
+    Gauge
+      .builder("maslow.eligibility.cache.hit.ratio", cache, c -> c.stats().hitRate())
+      .description("The ratio of eligibility requests answered from the cache")
+      .register(meterRegistry);
+
+    compile(catalogService.getCatalog());
+  }
+
+  /**
+   * Returns the keys of the enabled services whose formulas evaluate to a truthy value, in order of
+   * rank. A service without a formula, or whose formula cannot be parsed or fails to evaluate, is
+   * never included.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number. There
+   *     must be a response to each question referred to by the formula of an enabled service.
+   * @throws ResponseStatusException with status 400 (Bad Request) if a response is not a boolean
+   *     or a number, or a response is missing
+   */
+  public List<String> findEligibleServices(Map<String, ?> responses) {
+    return findEligibleServices(compilation, responses);
+  }
+
+  /**
+   * Returns a screener bound to the formulas of the current version of the catalog, so that many
+   * households can be screened against the same version even if the catalog is updated meanwhile
+   * (see {@link BulkEligibilityService}).
+   */
+  public Screener screener() {
+    return new Screener(compilation);
+  }
+
+  /**
+   * Screens households against the formulas of one version of the catalog, exactly as
+   * {@link #findEligibleServices(Map)} does for the version that is current at the time.
+   */
+  public final class Screener {
+    private final Compilation current;
+
+    private Screener(Compilation current) {
+      this.current = current;
+    }
+
+    /**
+     * Gets the version of the catalog whose formulas the households are screened against.
+     */
+    public long getVersion() {
+      return current.version;
+    }
+
+    /**
+     * Gets the keys of the questions of the survey of that version of the catalog.
+     */
+    public Set<String> getQuestions() {
+      return current.survey;
+    }
+
+    /**
+     * Returns the keys of the enabled services whose formulas evaluate to a truthy value, in order
+     * of rank (see {@link EligibilityService#findEligibleServices(Map)}).
+     */
+    public List<String> findEligibleServices(Map<String, ?> responses) {
+      return EligibilityService.this.findEligibleServices(current, responses);
+    }
+  }
+
+  private List<String> findEligibleServices(Compilation current, Map<String, ?> responses) {
+    try {
+      checkResponses(responses);
+      if (!responses.keySet().containsAll(current.questions)) {
+        Set<String> missing = new TreeSet<>(current.questions);
+        missing.removeAll(responses.keySet());
+        throw new IllegalArgumentException(
+          String.format("RESPONSES_INCOMPLETE: Missing responses to %s.", missing)
+        );
+      }
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    CacheKey key = new CacheKey(current.version, current.encoder.encode(responses));
+    List<String> eligible = cache.getIfPresent(key);
+    if (eligible == null) {
+      eligible = evaluate(current, responses);
+      cache.put(key, eligible);
+    }
+    return eligible;
+  }
+
+  /**
+   * Updates the enabled services that a resident may be eligible for after some of their responses
+   * have changed, in order of rank. Unlike {@link #findEligibleServices(Map)}, the responses may be
+   * incomplete: a service whose formula refers to a question without a response is not included.
+   *
+   * If {@code state} was returned for a different version of the formulas (because the catalog has
+   * been updated since), or is null, every formula is evaluated.
+   *
+   * @param responses maps the key of each question to its current response, a boolean or a number
+   * @param changed the keys of the questions whose responses were added, changed or removed since
+   *     {@code state} was returned
+   * @param state the state returned with the previous result, or null for the first result
+   * @return the eligible services and the state to provide with the next update
+   * @throws ResponseStatusException with status 400 (Bad Request) if a response is not a boolean
+   *     or a number, or the state is not valid
+   */
+  public EligibilityDto updateEligibleServices(
+    Map<String, ?> responses,
+    Collection<String> changed,
+    String state
+  ) {
+    Compilation current = compilation;
+    try {
+      checkResponses(responses);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    DecisionDiagram.Evaluation previous = null;
+    if (state != null) {
+      // the state is the fingerprint of the formulas and the serialized evaluation
+      int separator = state.indexOf('.');
+      try {
+        Preconditions.checkArgument(separator > 0);
+        if (state.substring(0, separator).equals(current.fingerprint)) {
+          byte[] bytes = Base64.getUrlDecoder().decode(state.substring(separator + 1));
+          previous = current.diagram.restore(bytes);
+        }
+      } catch (IllegalArgumentException e) {
+        throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST,
+          "STATE_NOT_VALID: The state must be provided as it was returned.",
+          e
+        );
+      }
+    }
+
+    DecisionDiagram.Evaluation evaluation = current.diagram.evaluate(
+      responses,
+      previous,
+      changed
+    );
+    EligibilityDto eligibility = new EligibilityDto();
+    eligibility.setServices(keysOf(current, evaluation.getTruthy()));
+    eligibility.setState(
+      current.fingerprint +
+      "." +
+      Base64.getUrlEncoder().withoutPadding().encodeToString(evaluation.toByteArray())
+    );
+    return eligibility;
+  }
+
+  /**
+   * Returns the enabled services that a resident is eligible for, is not eligible for, or may be
+   * eligible for depending on their remaining responses, along with the unanswered questions that
+   * could still change any result. This assumes that every question will eventually be answered.
+   *
+   * @param responses maps the key of each question answered so far to its response, a boolean or a
+   *     number
+   * @throws ResponseStatusException with status 400 (Bad Request) if a response is not a boolean
+   *     or a number
+   */
+  public PartialEligibilityDto findPartialEligibility(Map<String, ?> responses) {
+    Compilation current = compilation;
+    try {
+      checkResponses(responses);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    DecisionDiagram.PartialEvaluation evaluation = current.diagram.evaluatePartially(responses);
+    List<String> remaining = new ArrayList<>();
+    for (String question : current.survey) {
+      if (evaluation.getRemainingQuestions().contains(question)) {
+        remaining.add(question);
+      }
+    }
+    // questions that are not part of the survey (which only a misconfigured catalog would have)
+    // are listed last
+    for (String question : new TreeSet<>(evaluation.getRemainingQuestions())) {
+      if (!current.survey.contains(question)) {
+        remaining.add(question);
+      }
+    }
+
+    PartialEligibilityDto eligibility = new PartialEligibilityDto();
+    eligibility.setEligible(keysOf(current, evaluation.getTruthy()));
+    eligibility.setIneligible(keysOf(current, evaluation.getFalsy()));
+    eligibility.setUndecided(keysOf(current, evaluation.getUndecided()));
+    eligibility.setRemainingQuestions(remaining);
+    return eligibility;
+  }
+
+  private static void checkResponses(Map<String, ?> responses) {
+    for (Map.Entry<String, ?> response : responses.entrySet()) {
+      Object value = response.getValue();
+      Preconditions.checkArgument(
+        value instanceof Boolean || value instanceof Number,
+        "RESPONSE_NOT_VALID: The response to %s must be a boolean or a number.",
+        response.getKey()
+      );
+    }
+  }
+
+  private static List<String> evaluate(Compilation current, Map<String, ?> responses) {
+    CompiledFormulas compiled = current.compiled;
+    double[] answers = new double[compiled.getQuestions().size()];
+    if (!current.typed || !compiled.encode(responses, answers)) {
+      // a response does not match the type of its question, which only the diagram can evaluate
+      return keysOf(current, current.diagram.evaluate(responses));
+    }
+
+    ImmutableList.Builder<String> eligible = ImmutableList.builder();
+    for (int i = 0; i < current.keys.size(); i++) {
+      if (compiled.test(i, answers)) {
+        eligible.add(current.keys.get(i));
+      }
+    }
+    return eligible.build();
+  }
+
+  private static List<String> keysOf(Compilation current, BitSet truthy) {
+    ImmutableList.Builder<String> eligible = ImmutableList.builder();
+    for (int i = truthy.nextSetBit(0); i >= 0; i = truthy.nextSetBit(i + 1)) {
+      eligible.add(current.keys.get(i));
+    }
+    return eligible.build();
+  }
+
+  /**
+   * Compiles the formulas again whenever the catalog is updated.
+   */
+  @EventListener
+  public void onCatalogUpdated(CatalogUpdatedEvent event) {
+    compile(event.getCatalog());
+  }
+
+  /**
+   * Parses the formulas of the enabled services of a snapshot of the catalog and compiles them into
+   * a decision diagram and into closures, unless a newer snapshot has already been compiled.
+   *
+   * @param catalog the snapshot of the catalog
+   */
+  synchronized void compile(CatalogSnapshot catalog) {
+    if (compilation != null && compilation.version > catalog.getVersion()) {
+      log.debug("Compile skipped because version {} is outdated", catalog.getVersion());
+      return;
+    }
+
+    ImmutableList.Builder<String> keys = ImmutableList.builder();
+    ImmutableList.Builder<Formula> formulas = ImmutableList.builder();
+    ImmutableSet.Builder<String> questions = ImmutableSet.builder();
+    Hasher fingerprint = Hashing.murmur3_128().newHasher();
+    for (String key : catalog.getRank()) {
+      gov.ny.its.hs.maslow.shared.model.Service service = catalog.getServices().get(key);
+      if (
+        service == null ||
+        !Boolean.TRUE.equals(service.getEnabled()) ||
+        Strings.isNullOrEmpty(service.getFormula())
+      ) {
+        continue;
+      }
+
+      Formula formula;
+      try {
+        formula = Formula.parse(service.getFormula());
+      } catch (FormulaException e) {
+        log.warn("Formula of {} is not valid: {}", key, e.getMessage());
+        continue;
+      }
+      if (!formula.getParseErrors().isEmpty()) {
+        log.warn("Formula of {} has syntax errors: {}", key, formula.getParseErrors());
+      }
+
+      keys.add(key);
+      formulas.add(formula);
+      fingerprint.putString(key, StandardCharsets.UTF_8).putByte((byte) 0);
+      fingerprint.putString(formula.getText(), StandardCharsets.UTF_8).putByte((byte) 0);
+      questions.addAll(formula.getIdentifiers());
+    }
+
+    DecisionDiagram diagram = DecisionDiagram.compile(formulas.build());
+    ResponseEncoder encoder = ResponseEncoder.of(diagram, bucketedQuestions(catalog));
+    Map<String, QuestionType> questionTypes = new LinkedHashMap<>();
+    for (Map.Entry<String, Question> question : catalog.getQuestions().entrySet()) {
+      if (question.getValue().getType() != null) {
+        questionTypes.put(question.getKey(), question.getValue().getType());
+      }
+    }
+    CompiledFormulas compiled = CompiledFormulas.compile(formulas.build(), questionTypes);
+    ImmutableSet.Builder<String> survey = ImmutableSet.builder();
+    for (Map<String, List<String>> section : catalog.getSurvey()) {
+      section.values().forEach(survey::addAll);
+    }
+
+    compilation =
+      new Compilation(
+        catalog.getVersion(),
+        fingerprint.hash().toString(),
+        keys.build(),
+        diagram,
+        encoder,
+        compiled,
+        questionTypes.keySet().containsAll(questions.build()),
+        questions.build(),
+        survey.build()
+      );
+    // entries of previous versions can never be hit again
+    cache.invalidateAll();
+    log.info(
+      "Compiled {} formulas of catalog version {} into {} nodes over {} tests ({} interpreted) " +
+      "and into closures ({} interpreted)",
+      compilation.keys.size(),
+      catalog.getVersion(),
+      diagram.getNodeCount(),
+      diagram.getTestCount(),
+      diagram.getInterpretedCount(),
+      compiled.getInterpretedCount()
+    );
+  }
+
+  /**
+   * Returns the keys of the CURRENCY questions and then the NUMBER questions, which are the
+   * questions whose responses have too many values to be cached individually.
+   */
+  private static List<String> bucketedQuestions(CatalogSnapshot catalog) {
+    List<String> bucketed = new ArrayList<>();
+    for (QuestionType type : new QuestionType[] { QuestionType.CURRENCY, QuestionType.NUMBER }) {
+      for (Map.Entry<String, Question> question : catalog.getQuestions().entrySet()) {
+        if (question.getValue().getType() == type) {
+          bucketed.add(question.getKey());
+        }
+      }
+    }
+    return bucketed;
+  }
+
+  /**
+   * Holds the compiled formulas of one version of the catalog, along with the keys of their
+   * services in order of rank, the questions they refer to, the questions of the survey in order
+   * and a fingerprint of their text, so that they can be published together with a single volatile
+   * write. The closures are only used if every question the formulas refer to has a type.
+   */
+  private static class Compilation {
+    final long version;
+    final String fingerprint;
+    final List<String> keys;
+    final DecisionDiagram diagram;
+    final ResponseEncoder encoder;
+    final CompiledFormulas compiled;
+    final boolean typed;
+    final Set<String> questions;
+    final Set<String> survey;
+
+    Compilation(
+      long version,
+      String fingerprint,
+      List<String> keys,
+      DecisionDiagram diagram,
+      ResponseEncoder encoder,
+      CompiledFormulas compiled,
+      boolean typed,
+      Set<String> questions,
+      Set<String> survey
+    ) {
+      this.version = version;
+      this.fingerprint = fingerprint;
+      this.keys = keys;
+      this.diagram = diagram;
+      this.encoder = encoder;
+      this.compiled = compiled;
+      this.typed = typed;
+      this.questions = questions;
+      this.survey = survey;
+    }
+  }
+
+  /**
+   * The key of a cached result: the version of the catalog and the encoded responses. Including the
+   * version ensures that a result computed from a previous version (by a request that was already
+   * in progress when the catalog was updated) is never returned for the current version.
+   */
+  private static class CacheKey {
+    final long version;
+    final List<Object> responses;
+
+    CacheKey(long version, List<Object> responses) {
+      this.version = version;
+      this.responses = responses;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey key = (CacheKey) other;
+      return version == key.version && responses.equals(key.responses);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(version, responses);
+    }
+  }
+}
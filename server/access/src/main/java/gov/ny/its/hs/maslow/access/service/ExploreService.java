@@ -0,0 +1,293 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import gov.ny.its.hs.maslow.access.dto.CatalogDto;
+import gov.ny.its.hs.maslow.access.dto.ServiceDto;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.access.model.Payload;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaAst;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import gov.ny.its.hs.maslow.shared.model.ResourcesProvider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.modelmapper.ModelMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A service that renders the responses of the explore API ahead of time. The catalog only changes
+ * when {@link CatalogService} publishes a {@link CatalogUpdatedEvent}, so rather than mapping and
+ * serializing the catalog on every request, we render it once when the application starts and
+ * again each time the catalog is updated. Requests are then served from the rendered bytes.
+ *
+ * The rendered responses include the catalog itself and the i18next resource bundles (sections,
+ * questions, services and their concatenation) for each supported locale (see
+ * {@link LocaleNegotiator}) and each other language found in the catalog. Each response is
+ * precompressed with brotli and gzip by {@link PayloadEncoder}.
+ *
+ * Rendering happens on the thread that publishes the event (that is, the thread that refreshed the
+ * catalog), never on a request thread. Each rendering is derived from exactly one
+ * {@link CatalogSnapshot} and is published through a volatile field, so request threads always see
+ * either the previous payloads or the next ones in their entirety.
+ *
+ * Every payload of a rendering shares the same last modified time: the time at which the
+ * {@link CatalogUpdatedEvent} was published, or the time the application started for the initial
+ * rendering. Along with the ETag of each payload, this lets the controllers answer conditional
+ * requests without any rendering work.
+ *
+ * Unless disabled with {@code maslow.access.explore.formula-ast}, the catalog also includes the
+ * parsed formula of each service (see {@link FormulaAst}), so that browsers can evaluate formulas
+ * without lexing and parsing them first.
+ */
+@Service
+public class ExploreService {
+  private static final Logger log = LoggerFactory.getLogger(ExploreService.class);
+
+  /** The name of the resource bundle for sections. */
+  public static final String SECTIONS = "sections";
+
+  /** The name of the resource bundle for questions. */
+  public static final String QUESTIONS = "questions";
+
+  /** The name of the resource bundle for services. */
+  public static final String SERVICES = "services";
+
+  /** The name of the resource bundle that concatenates sections, questions and services. */
+  public static final String CATALOG = "catalog";
+
+  private final ObjectMapper objectMapper;
+  private final LocaleNegotiator localeNegotiator;
+  private final boolean formulaAst;
+  private volatile Rendering rendering;
+
+  /**
+   * Constructs an instance of ExploreService and renders the initial state of the catalog.
+   *
+   * @param catalogService the catalog service that manages the state of the catalog
+   * @param localeNegotiator the negotiator that defines the supported locales
+   * @param objectMapper the ObjectMapper used to serialize the rendered responses
+   * @param formulaAst whether the catalog includes the parsed formula of each service
+   */
+  public ExploreService(
+    CatalogService catalogService,
+    LocaleNegotiator localeNegotiator,
+    ObjectMapper objectMapper,
+    @Value("${maslow.access.explore.formula-ast:true}") boolean formulaAst
+  ) {
+    super();
+    this.localeNegotiator = localeNegotiator;
+    this.objectMapper = objectMapper;
+    this.formulaAst = formulaAst;
+
+    render(catalogService.getCatalog(), System.currentTimeMillis());
+  }
+
+  /**
+   * Returns the rendered response for the catalog endpoint.
+   */
+  public Payload getCatalogPayload() {
+    return rendering.catalog;
+  }
+
+  /**
+   * Returns the rendered resource bundle {@code bundle} (one of {@link #SECTIONS},
+   * {@link #QUESTIONS}, {@link #SERVICES} or {@link #CATALOG}) for {@code language}.
+   *
+   * Bundles are rendered ahead of time for every supported locale and every language found in the
+   * catalog, so this costs a single map lookup. Any other language is not found, so that requests
+   * never render (or hash) a bundle for a language chosen by the client.
+   *
+   * @param language the locale (such as "en" or "es")
+   * @param bundle the name of the resource bundle
+   * @throws ResponseStatusException with status 404 (Not Found) if no bundles are rendered for
+   *         {@code language}
+   */
+  public Payload getLocalePayload(String language, String bundle) {
+    Map<String, Payload> bundles = rendering.locales.get(language);
+    if (bundles == null) {
+      throw new ResponseStatusException(
+        HttpStatus.NOT_FOUND,
+        "LANGUAGE_NOT_SUPPORTED: The language is neither supported nor found in the catalog."
+      );
+    }
+    return bundles.get(bundle);
+  }
+
+  /**
+   * Re-renders all responses whenever the catalog is updated.
+   */
+  @EventListener
+  public void onCatalogUpdated(CatalogUpdatedEvent event) {
+    render(event.getCatalog(), event.getTimestamp());
+  }
+
+  /**
+   * Renders all responses from a snapshot of the catalog, unless a newer snapshot has already been
+   * rendered.
+   *
+   * @param catalog the snapshot of the catalog to render
+   * @param lastModified the time the catalog was updated, in milliseconds since the epoch
+   */
+  synchronized void render(CatalogSnapshot catalog, long lastModified) {
+    if (rendering != null && rendering.source.getVersion() > catalog.getVersion()) {
+      log.debug("Render skipped because version {} is outdated", catalog.getVersion());
+      return;
+    }
+
+    try {
+      Map<String, Map<String, Payload>> locales = new HashMap<>();
+      Set<String> languages = new TreeSet<>(localeNegotiator.getSupportedLocales());
+      languages.addAll(findLanguages(catalog));
+      for (String language : languages) {
+        Map<String, Payload> bundles = new HashMap<>();
+        for (Map.Entry<String, Object> bundle : renderLocale(catalog, language).entrySet()) {
+          bundles.put(bundle.getKey(), encode(bundle.getValue(), lastModified));
+        }
+        locales.put(language, Collections.unmodifiableMap(bundles));
+      }
+
+      rendering =
+        new Rendering(
+          catalog,
+          lastModified,
+          encode(renderCatalog(catalog, formulaAst), lastModified),
+          Collections.unmodifiableMap(locales)
+        );
+    } catch (JsonProcessingException e) {
+      // Serializing plain maps, lists and strings should never fail. If it somehow does, we keep
+      // serving the previously rendered payloads rather than failing every request.
+      log.error("Render failed with exception: {}", e.getMessage());
+      if (rendering == null) {
+        throw new IllegalStateException("Unable to render initial catalog", e);
+      }
+      return;
+    }
+
+    log.info(
+      "Rendered catalog version {} (ETag: {}, {} bytes) and resource bundles for languages {}",
+      catalog.getVersion(),
+      rendering.catalog.getETag(),
+      rendering.catalog.getBody().length,
+      rendering.locales.keySet()
+    );
+  }
+
+  private Payload encode(Object value, long lastModified) throws JsonProcessingException {
+    byte[] body = objectMapper.writeValueAsBytes(value);
+    return PayloadEncoder.encode(MediaType.APPLICATION_JSON, body, lastModified);
+  }
+
+  /**
+   * Maps the catalog to the DTO returned by the catalog endpoint.
+   */
+  private static CatalogDto renderCatalog(CatalogSnapshot catalog, boolean formulaAst) {
+    CatalogDto catalogDto = new ModelMapper().map(catalog, CatalogDto.class);
+
+    // we only want this endpoint to return services that are enabled
+    catalogDto.setServices(
+      new LinkedHashMap<>(
+        Maps.filterEntries(catalogDto.getServices(), service -> service.getValue().getEnabled())
+      )
+    );
+
+    if (formulaAst) {
+      for (ServiceDto service : catalogDto.getServices().values()) {
+        service.setFormulaAst(parseFormula(service.getFormula()));
+      }
+    }
+
+    return catalogDto;
+  }
+
+  /**
+   * Parses {@code formula} into its compact tree, or returns null if it cannot be parsed (in which
+   * case the client reports the syntax error as it always has).
+   */
+  private static Map<String, Object> parseFormula(String formula) {
+    if (formula == null || formula.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return FormulaAst.encode(Formula.parse(formula));
+    } catch (FormulaException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Maps the catalog to the i18next resource bundles for {@code language}, keyed by bundle name.
+   */
+  private static Map<String, Object> renderLocale(CatalogSnapshot catalog, String language) {
+    Map<String, Object> sections = resourcesOf(catalog.getSections(), language);
+    Map<String, Object> questions = resourcesOf(catalog.getQuestions(), language);
+    Map<String, Object> services = resourcesOf(catalog.getServices(), language);
+
+    Map<String, Object> concatenated = new LinkedHashMap<>();
+    concatenated.putAll(sections);
+    concatenated.putAll(questions);
+    concatenated.putAll(services);
+
+    Map<String, Object> bundles = new HashMap<>();
+    bundles.put(SECTIONS, sections);
+    bundles.put(QUESTIONS, questions);
+    bundles.put(SERVICES, services);
+    bundles.put(CATALOG, concatenated);
+    return bundles;
+  }
+
+  private static Map<String, Object> resourcesOf(
+    Map<String, ? extends ResourcesProvider<?>> items,
+    String language
+  ) {
+    return new LinkedHashMap<>(Maps.transformValues(items, item -> item.getResources().get(language)));
+  }
+
+  /**
+   * Returns the set of languages for which any section, question or service has resources.
+   */
+  private static Set<String> findLanguages(CatalogSnapshot catalog) {
+    Set<String> languages = new TreeSet<>();
+    catalog.getSections().values().forEach(item -> languages.addAll(item.getResources().keySet()));
+    catalog.getQuestions().values().forEach(item -> languages.addAll(item.getResources().keySet()));
+    catalog.getServices().values().forEach(item -> languages.addAll(item.getResources().keySet()));
+    return languages;
+  }
+
+  /**
+   * Holds all payloads rendered from one version of the catalog, so that they can be published
+   * together with a single volatile write.
+   */
+  private static class Rendering {
+    final CatalogSnapshot source;
+    final long lastModified;
+    final Payload catalog;
+    final Map<String, Map<String, Payload>> locales;
+
+    Rendering(
+      CatalogSnapshot source,
+      long lastModified,
+      Payload catalog,
+      Map<String, Map<String, Payload>> locales
+    ) {
+      this.source = source;
+      this.lastModified = lastModified;
+      this.catalog = catalog;
+      this.locales = locales;
+    }
+  }
+}
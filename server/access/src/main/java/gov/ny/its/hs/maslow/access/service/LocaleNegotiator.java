@@ -0,0 +1,128 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the best supported locale for an Accept-Language header. The supported locales are
+ * configured with the {@code maslow.access.supported-locales} property; the first supported locale
+ * is the fallback when no other locale matches.
+ *
+ * Matching follows the "lookup" scheme of RFC 4647: language ranges are considered in order of
+ * quality, and each range is progressively truncated (such as "zh-Hant-TW" to "zh-Hant" to "zh")
+ * until it matches a supported locale. The match table from language tag to supported locale is
+ * computed once at construction, and the outcome for each distinct header is remembered, since
+ * browsers send only a handful of distinct Accept-Language headers.
+ */
+@Component
+public class LocaleNegotiator {
+  private static final int MAX_CACHED_HEADERS = 1024;
+
+  private final List<String> supportedLocales;
+  private final Map<String, String> matchTable;
+  private final Cache<String, String> negotiated = CacheBuilder
+    .newBuilder()
+    .maximumSize(MAX_CACHED_HEADERS)
+    .build();
+
+  /**
+   * Constructs an instance of LocaleNegotiator.
+   *
+   * @param supportedLocales the supported locales (such as "en" or "es") in order of preference
+   */
+  public LocaleNegotiator(@Value("${maslow.access.supported-locales}") String[] supportedLocales) {
+    super();
+    Preconditions.checkArgument(supportedLocales.length > 0, "No supported locales configured");
+
+    ImmutableMap.Builder<String, String> matchTable = ImmutableMap.builder();
+    for (String locale : supportedLocales) {
+      matchTable.put(locale.toLowerCase(Locale.ROOT), locale);
+    }
+
+    this.supportedLocales = ImmutableList.copyOf(supportedLocales);
+    this.matchTable = matchTable.build();
+  }
+
+  /**
+   * Gets the supported locales in order of preference.
+   */
+  public List<String> getSupportedLocales() {
+    return supportedLocales;
+  }
+
+  /**
+   * Gets the locale used when no supported locale matches.
+   */
+  public String getFallbackLocale() {
+    return supportedLocales.get(0);
+  }
+
+  /**
+   * Returns the supported locale that best matches the provided Accept-Language header, or the
+   * fallback locale if none match or the header is missing or malformed.
+   *
+   * @param acceptLanguage the value of the Accept-Language header, which may be null
+   */
+  public String negotiate(String acceptLanguage) {
+    if (Strings.isNullOrEmpty(acceptLanguage)) {
+      return getFallbackLocale();
+    }
+
+    String locale = negotiated.getIfPresent(acceptLanguage);
+    if (locale == null) {
+      locale = lookup(acceptLanguage);
+      negotiated.put(acceptLanguage, locale);
+    }
+    return locale;
+  }
+
+  private String lookup(String acceptLanguage) {
+    List<Locale.LanguageRange> ranges;
+    try {
+      // the ranges are returned in descending order of quality
+      ranges = Locale.LanguageRange.parse(acceptLanguage);
+    } catch (IllegalArgumentException e) {
+      return getFallbackLocale();
+    }
+
+    for (Locale.LanguageRange range : ranges) {
+      if (range.getWeight() <= 0) {
+        continue;
+      }
+
+      String tag = range.getRange();
+      if (tag.equals("*")) {
+        return getFallbackLocale();
+      }
+
+      while (true) {
+        String locale = matchTable.get(tag);
+        if (locale != null) {
+          return locale;
+        }
+
+        int index = tag.lastIndexOf('-');
+        if (index < 0) {
+          break;
+        }
+
+        // skip a single-character subtag left behind by truncation (such as "x" in "en-x-foo")
+        tag = tag.substring(0, index);
+        if (tag.length() > 2 && tag.charAt(tag.length() - 2) == '-') {
+          tag = tag.substring(0, tag.length() - 2);
+        }
+      }
+    }
+
+    return getFallbackLocale();
+  }
+}
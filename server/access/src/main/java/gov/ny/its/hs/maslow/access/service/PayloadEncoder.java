@@ -0,0 +1,119 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import gov.ny.its.hs.maslow.access.model.Payload;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+
+/**
+ * Encodes rendered response bodies as {@link Payload} objects with precompressed variants. Since a
+ * payload is compressed once per version of the catalog rather than once per request, we can
+ * afford the slowest and most effective compression settings for both brotli and gzip.
+ *
+ * Brotli compression requires a native library that is bundled for common platforms. If the
+ * library cannot be loaded on the current platform, payloads are encoded with gzip only.
+ */
+public final class PayloadEncoder {
+  private static final Logger log = LoggerFactory.getLogger(PayloadEncoder.class);
+
+  /** The content coding for brotli, as used in the Accept-Encoding header. */
+  public static final String BROTLI = "br";
+
+  /** The content coding for gzip, as used in the Accept-Encoding header. */
+  public static final String GZIP = "gzip";
+
+  /** Bodies smaller than this rarely shrink enough to be worth a compressed variant. */
+  private static final int MIN_COMPRESSIBLE_LENGTH = 256;
+
+  private static final boolean BROTLI_AVAILABLE = Brotli4jLoader.isAvailable();
+
+  static {
+    if (!BROTLI_AVAILABLE) {
+      log.warn(
+        "Brotli compression unavailable, falling back to gzip only: {}",
+        Brotli4jLoader.getUnavailabilityCause().getMessage()
+      );
+    }
+  }
+
+  private PayloadEncoder() {}
+
+  /**
+   * Returns a payload for {@code body} with a brotli variant (if available) and a gzip variant. A
+   * compressed variant is omitted if it is not smaller than the uncompressed body.
+   *
+   * @param contentType the media type of the body
+   * @param body the rendered bytes of the body
+   * @param lastModified the time the body was last modified, in milliseconds since the epoch
+   */
+  public static Payload encode(MediaType contentType, byte[] body, long lastModified) {
+    Map<String, byte[]> encodedBodies = new LinkedHashMap<>();
+
+    if (body.length >= MIN_COMPRESSIBLE_LENGTH) {
+      try {
+        if (BROTLI_AVAILABLE) {
+          putIfSmaller(encodedBodies, BROTLI, brotli(body), body);
+        }
+        putIfSmaller(encodedBodies, GZIP, gzip(body), body);
+      } catch (IOException e) {
+        // Compression of an in-memory buffer should never fail. If it somehow does, we simply serve
+        // the uncompressed body.
+        log.warn("Compression failed with exception: {}", e.getMessage());
+      }
+    }
+
+    return new Payload(contentType, body, encodedBodies, lastModified);
+  }
+
+  private static void putIfSmaller(
+    Map<String, byte[]> encodedBodies,
+    String encoding,
+    byte[] encodedBody,
+    byte[] body
+  ) {
+    if (encodedBody.length < body.length) {
+      encodedBodies.put(encoding, encodedBody);
+    }
+  }
+
+  /**
+   * Returns {@code body} compressed with brotli at maximum quality.
+   */
+  static byte[] brotli(byte[] body) throws IOException {
+    Encoder.Parameters parameters = new Encoder.Parameters()
+      .setQuality(11)
+      .setMode(Encoder.Mode.TEXT);
+    return Encoder.compress(body, parameters);
+  }
+
+  /**
+   * Returns {@code body} compressed with gzip at maximum compression level.
+   */
+  static byte[] gzip(byte[] body) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+    try (GZIPOutputStream stream = new BestCompressionGZIPOutputStream(buffer)) {
+      stream.write(body);
+    }
+    return buffer.toByteArray();
+  }
+
+  /**
+   * A GZIPOutputStream that uses the best (slowest) compression level rather than the default.
+   */
+  private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+    BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+      super(out);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that watches the directory of the services file, so that {@link CatalogService}
+ * refreshes the catalog as soon as the file is replaced, whether by a fetch, by another replica of
+ * Maslow Access or by an operator, rather than on the next poll.
+ *
+ * Writing a file usually raises several events, so the catalog is only refreshed once no event
+ * about the services file has been raised for the debounce delay. A file that is still incomplete
+ * then fails to parse and is refreshed again upon its next event. Events about other files in the
+ * directory, such as the temporary files of a fetch, are ignored. The catalog is also refreshed
+ * once upon application start.
+ *
+ * The events of a file system are not always raised for writes by other hosts (such as on NFS), so
+ * replicas that coordinate still refresh on each poll (see {@link CatalogService#isLeader()}).
+ * This functionality is configured via application properties:
+ *
+ * - Watching is disabled by setting {@code maslow.access.services-watch-enabled} to false.
+ * - The debounce delay (measured in milliseconds) is configured with the property
+ *   {@code maslow.access.services-watch-debounce-ms}.
+ */
+@Service
+public class ServicesFileWatcher {
+  private static final Logger log = LoggerFactory.getLogger(ServicesFileWatcher.class);
+
+  private final CatalogService catalogService;
+  private final boolean enabled;
+  private final long debounce;
+  private final ExecutorService executor;
+  private volatile WatchService watchService;
+
+  /**
+   * Constructs an instance of ServicesFileWatcher.
+   *
+   * @param catalogService the service that refreshes the catalog from the services file
+   * @param enabled whether to watch the services file at all
+   * @param debounce the time without any event after which the catalog is refreshed, in
+   *        milliseconds
+   */
+  @Autowired
+  public ServicesFileWatcher(
+    CatalogService catalogService,
+    @Value("${maslow.access.services-watch-enabled:true}") boolean enabled,
+    @Value("${maslow.access.services-watch-debounce-ms:500}") long debounce
+  ) {
+    super();
+    this.catalogService = catalogService;
+    this.enabled = enabled;
+    this.debounce = debounce;
+    this.executor =
+      Executors.newSingleThreadExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, "services-watcher");
+          thread.setDaemon(true);
+          return thread;
+        }
+      );
+  }
+
+  /**
+   * Refreshes the catalog and starts watching the services file once the application is ready, on
+   * a dedicated thread.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      log.info("Watching services file disabled, refreshing on start only");
+      catalogService.refreshServices();
+      return;
+    }
+
+    Path servicesPath = catalogService.getServicesPath().toAbsolutePath();
+    Path directory = servicesPath.getParent();
+    try {
+      watchService = directory.getFileSystem().newWatchService();
+      directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    } catch (IOException e) {
+      log.warn("Services file could not be watched: {}", e.getMessage());
+    }
+
+    // The directory is registered before refreshing, so that a file replaced in between raises an
+    // event rather than being missed.
+    catalogService.refreshServices();
+    if (watchService != null) {
+      log.info("Watching services file: {}", servicesPath);
+      WatchService watcher = watchService;
+      executor.execute(() -> watch(watcher, servicesPath.getFileName()));
+    }
+  }
+
+  /**
+   * Stops watching.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+    try {
+      if (watchService != null) {
+        watchService.close();
+      }
+    } catch (IOException e) {
+      log.debug("Services watcher could not be closed: {}", e.getMessage());
+    }
+  }
+
+  private void watch(WatchService watcher, Path fileName) {
+    long debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounce);
+    try {
+      while (true) {
+        if (!isServicesEvent(watcher.take(), fileName)) {
+          continue;
+        }
+
+        // We wait until the services file has been quiet for the debounce delay.
+        long deadline = System.nanoTime() + debounceNanos;
+        for (long wait; (wait = deadline - System.nanoTime()) > 0;) {
+          WatchKey key = watcher.poll(wait, TimeUnit.NANOSECONDS);
+          if (key != null && isServicesEvent(key, fileName)) {
+            deadline = System.nanoTime() + debounceNanos;
+          }
+        }
+
+        try {
+          catalogService.refreshServices();
+        } catch (RuntimeException e) {
+          log.error("Refresh failed with exception", e);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      log.debug("Stopped watching services file");
+    }
+  }
+
+  /**
+   * Returns true if any event of the key is about the services file, or if events were lost.
+   */
+  private static boolean isServicesEvent(WatchKey key, Path fileName) {
+    boolean servicesEvent = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      servicesEvent |= event.kind() == OVERFLOW || fileName.equals(event.context());
+    }
+    key.reset();
+    return servicesEvent;
+  }
+}
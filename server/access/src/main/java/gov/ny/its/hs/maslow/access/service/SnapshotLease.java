@@ -0,0 +1,213 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A lease on fetching services snapshots, shared by the replicas of Maslow Access whose services
+ * file is on the same volume. The replica that holds the lease (the leader) fetches snapshots from
+ * Maslow Author and replaces the services file, and the others (followers) only refresh from it.
+ *
+ * The lease is an exclusive lock on a lock file next to the services file. The lock is held until
+ * it is released or the process exits, in which case the operating system releases the lock, so
+ * that the next follower to try the lease becomes the leader. The lock file is never deleted, since
+ * a replica could otherwise lock a new file while another still holds the lock on the old one.
+ *
+ * A leader that is alive but no longer fetches would otherwise keep the lock forever, so the lease
+ * is also renewed: the leader writes its name (such as {@code pid@hostname#1}) and the time of its
+ * last successful fetch or heartbeat to the lock file. A follower that finds a renewal older than
+ * the stale duration takes over without the lock, fetching and renewing in turn, until the
+ * renewals of another replica are current again. A leader whose fetches keep failing also hands
+ * the lease over, and does not try it again for the stale duration. Renewals are compared across
+ * hosts, so their clocks must be synchronized to well within the stale duration.
+ *
+ * The lock is taken with {@link FileChannel#tryLock()}, which is advisory on most systems and only
+ * excludes other processes. On NFS, it relies on the locking of the protocol: NFSv3 needs the
+ * separate lock manager (NLM), which is often disabled or unreliable, while NFSv4 locks expire if
+ * the server does not hear from the client within its lease period. A host that loses contact with
+ * the server can therefore lose the lock without the process knowing, so there may briefly be two
+ * leaders. Both fetch the same snapshots and replace the services file atomically, so this only
+ * costs requests to Maslow Author.
+ */
+public class SnapshotLease {
+  private static final Logger log = LoggerFactory.getLogger(SnapshotLease.class);
+
+  /** Distinguishes the leases of a process, such as in tests. */
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+  private final Path lockPath;
+  private final long staleAfter;
+  private final String holder;
+  private FileChannel channel;
+  private FileLock lock;
+  private boolean takenOver;
+  private long heldOffUntil;
+
+  /**
+   * Constructs an instance of SnapshotLease.
+   *
+   * @param servicesPath the path of the services file, next to which the lock file is created
+   * @param staleAfter the time after the last renewal of the leader at which a follower takes
+   *        over, in milliseconds
+   */
+  public SnapshotLease(Path servicesPath, long staleAfter) {
+    super();
+    this.lockPath = servicesPath.resolveSibling(servicesPath.getFileName() + ".lock");
+    this.staleAfter = staleAfter;
+    this.holder =
+      ManagementFactory.getRuntimeMXBean().getName() + "#" + INSTANCES.incrementAndGet();
+  }
+
+  /**
+   * Gets the path of the lock file.
+   */
+  public Path getLockPath() {
+    return lockPath;
+  }
+
+  /**
+   * Returns true if this replica holds the lease, trying to acquire it without waiting if not, or
+   * has taken over from a leader whose renewals are stale.
+   */
+  public synchronized boolean acquire() {
+    if (lock != null && lock.isValid()) {
+      return true;
+    }
+    if (System.currentTimeMillis() < heldOffUntil) {
+      return false;
+    }
+
+    try {
+      if (channel == null || !channel.isOpen()) {
+        channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // The lease is held by another CatalogService within this process.
+      lock = null;
+    } catch (IOException e) {
+      log.warn("Lease could not be acquired with exception: {}", e.getMessage());
+      lock = null;
+    }
+    if (lock != null) {
+      log.info("Lease acquired, fetching snapshots for all replicas: {}", lockPath);
+      takenOver = false;
+      writeRenewal();
+      return true;
+    }
+
+    boolean stale = isStale();
+    if (stale != takenOver) {
+      if (stale) {
+        log.warn("Lease renewals stale, fetching snapshots instead of leader: {}", lockPath);
+      } else {
+        log.info("Lease renewed by another replica, no longer fetching snapshots: {}", lockPath);
+      }
+      takenOver = stale;
+    }
+    return takenOver;
+  }
+
+  /**
+   * Renews the lease upon a successful fetch or heartbeat, if this replica holds the lease or has
+   * taken over.
+   */
+  public synchronized void renew() {
+    if ((lock != null && lock.isValid()) || takenOver) {
+      writeRenewal();
+    }
+  }
+
+  /**
+   * Releases the lease and does not try to acquire it again for the stale duration, so that
+   * another replica takes over.
+   */
+  public synchronized void handOver() {
+    release();
+    takenOver = false;
+    heldOffUntil = System.currentTimeMillis() + staleAfter;
+    log.warn("Lease handed over to another replica: {}", lockPath);
+  }
+
+  /**
+   * Releases the lease, if held, so that another replica can acquire it.
+   */
+  public synchronized void release() {
+    try {
+      if (lock != null && lock.isValid()) {
+        lock.release();
+        log.info("Lease released: {}", lockPath);
+      }
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      log.warn("Lease could not be released with exception: {}", e.getMessage());
+    } finally {
+      lock = null;
+      channel = null;
+    }
+  }
+
+  /**
+   * Writes the holder and the current time to the lock file.
+   */
+  private void writeRenewal() {
+    String renewal = holder + " " + System.currentTimeMillis();
+    try {
+      if (channel == null || !channel.isOpen()) {
+        channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      channel.truncate(0);
+      channel.write(ByteBuffer.wrap(renewal.getBytes(UTF_8)), 0);
+      // The renewal is flushed, so that followers on other hosts see it.
+      channel.force(false);
+    } catch (IOException e) {
+      log.debug("Lease renewal could not be written: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Returns true if this replica has taken over and the last renewal is its own, or if the last
+   * renewal is older than the stale duration. A lock file without a renewal, such as one being
+   * written, is not stale.
+   */
+  private boolean isStale() {
+    String renewal;
+    try {
+      renewal = new String(Files.readAllBytes(lockPath), UTF_8).trim();
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      log.debug("Lease renewal could not be read: {}", e.getMessage());
+      return false;
+    }
+
+    int separator = renewal.lastIndexOf(' ');
+    if (separator < 0) {
+      return false;
+    }
+    if (takenOver && holder.equals(renewal.substring(0, separator))) {
+      return true;
+    }
+    try {
+      long renewedAt = Long.parseLong(renewal.substring(separator + 1));
+      return System.currentTimeMillis() - renewedAt > staleAfter;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A store of the last generations of the services snapshots fetched from Maslow Author, so that
+ * {@link CatalogService} can fall back to a previous snapshot upon application start if the
+ * services file is missing or invalid, and roll back to one on request.
+ *
+ * Each generation is an immutable file in a directory next to the services file, named after its
+ * number and the SHA-256 hash of its content (for example {@code 0000000042-1f2e....json}). A
+ * generation is written to a temporary file, synced to disk and atomically renamed, so a crash
+ * leaves either no generation or a complete one. Generations are verified against their hash when
+ * read, and are never locked: readers never block the writer and the writer never blocks readers.
+ * Only the newest generations are kept, up to the configured number.
+ */
+public class SnapshotStore {
+  private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+  private static final Pattern GENERATION = Pattern.compile("(\\d+)-([0-9a-f]{64})\\.json");
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final Path directory;
+  private final int generations;
+
+  /**
+   * A generation of the store.
+   */
+  public static class Generation {
+    private final long number;
+    private final String hash;
+    private final Instant created;
+    private final Path path;
+
+    Generation(long number, String hash, Instant created, Path path) {
+      super();
+      this.number = number;
+      this.hash = hash;
+      this.created = created;
+      this.path = path;
+    }
+
+    /**
+     * Gets the number of the generation, which increases with each generation.
+     */
+    public long getNumber() {
+      return number;
+    }
+
+    /**
+     * Gets the SHA-256 hash of the content of the generation, in hexadecimal.
+     */
+    public String getHash() {
+      return hash;
+    }
+
+    /**
+     * Gets the time at which the generation was written.
+     */
+    public Instant getCreated() {
+      return created;
+    }
+
+    Path getPath() {
+      return path;
+    }
+  }
+
+  /**
+   * Constructs an instance of SnapshotStore.
+   *
+   * @param servicesPath the path of the services file, next to which the store is created
+   * @param generations the number of generations to keep
+   */
+  public SnapshotStore(Path servicesPath, int generations) {
+    super();
+    this.directory = servicesPath.resolveSibling(servicesPath.getFileName() + ".generations");
+    this.generations = Math.max(generations, 1);
+  }
+
+  /**
+   * Gets the path of the directory of the store.
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Lists the generations of the store, newest first, or none if the store does not exist yet.
+   */
+  public List<Generation> list() throws IOException {
+    List<Generation> list = new ArrayList<>();
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths.forEach(
+        path -> {
+          Matcher matcher = GENERATION.matcher(path.getFileName().toString());
+          if (!matcher.matches()) {
+            return;
+          }
+          try {
+            list.add(
+              new Generation(
+                Long.parseLong(matcher.group(1)),
+                matcher.group(2),
+                Files.getLastModifiedTime(path).toInstant(),
+                path
+              )
+            );
+          } catch (IOException e) {
+            // The generation was pruned while listing.
+          }
+        }
+      );
+    } catch (NoSuchFileException e) {
+      return list;
+    }
+    list.sort(Comparator.comparingLong(Generation::getNumber).reversed());
+    return list;
+  }
+
+  /**
+   * Reads the content of a generation.
+   *
+   * @return the content, or null if it does not match the hash of the generation
+   */
+  public byte[] read(Generation generation) throws IOException {
+    byte[] content = Files.readAllBytes(generation.getPath());
+    if (!Hashing.sha256().hashBytes(content).toString().equals(generation.getHash())) {
+      return null;
+    }
+    return content;
+  }
+
+  /**
+   * Adds a complete services file as the next generation, unless it is the same as the newest
+   * generation, and prunes the generations beyond the configured number.
+   *
+   * @param source the services file, which is copied
+   * @param hash the SHA-256 hash of the content of the services file
+   */
+  public synchronized void add(Path source, HashCode hash) throws IOException {
+    Files.createDirectories(directory);
+    List<Generation> list = list();
+    if (!list.isEmpty() && list.get(0).getHash().equals(hash.toString())) {
+      return;
+    }
+
+    // A crash while writing a generation leaves a temporary file, which we clean up here.
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths
+        .filter(path -> path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+        .forEach(path -> path.toFile().delete());
+    }
+
+    long number = list.isEmpty() ? 1L : list.get(0).getNumber() + 1L;
+    Path path = directory.resolve(String.format("%010d-%s.json", number, hash));
+    Path temporaryPath = Files.createTempFile(directory, "generation", TEMPORARY_SUFFIX);
+    try (
+      FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+      FileChannel output = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)
+    ) {
+      output.transferFrom(input, 0, Long.MAX_VALUE);
+      output.force(true);
+    } catch (IOException e) {
+      Files.deleteIfExists(temporaryPath);
+      throw e;
+    }
+    try {
+      Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    log.info("Stored generation {} of services snapshot: {}", number, hash);
+
+    // The new generation counts towards the generations kept.
+    List<Generation> pruned = list.subList(Math.min(generations - 1, list.size()), list.size());
+    for (Generation generation : pruned) {
+      Files.deleteIfExists(generation.getPath());
+    }
+  }
+}
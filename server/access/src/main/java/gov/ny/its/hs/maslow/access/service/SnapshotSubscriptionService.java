@@ -0,0 +1,278 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * A service that subscribes to the services snapshots of Maslow Author, so that a new snapshot is
+ * fetched by {@link CatalogService} as soon as it is created rather than on the next poll.
+ *
+ * Maslow Author sends the version of each new snapshot as a `snapshot` Server-Sent Event, and the
+ * version of the latest snapshot upon subscribing, so that snapshots created while the subscription
+ * was down are fetched when it is restored. A snapshot is only fetched if its version differs from
+ * the one held by {@link CatalogService}.
+ *
+ * While subscribed, {@link CatalogService} does not poll. The subscription is considered dropped
+ * if the connection fails or no heartbeat arrives within the timeout, in which case polling
+ * resumes and the subscription is retried after a delay. If several instances of Maslow Author are
+ * configured, each retry subscribes to the next one in turn, so that the subscription survives the
+ * loss of any of them. If replicas of Maslow Access coordinate, only the replica that fetches
+ * snapshots subscribes (see {@link CatalogService#isLeader()}), and the others try again after
+ * the delay. Each heartbeat renews the lease of that replica (see {@link SnapshotLease}), since it
+ * does not poll while subscribed. This functionality is configured via application properties:
+ *
+ * - The subscription is disabled by setting {@code maslow.access.snapshot-events-enabled} to
+ *   false.
+ * - The timeout (measured in milliseconds) is configured with the property
+ *   {@code maslow.access.snapshot-events-timeout-ms}.
+ * - The delay (measured in milliseconds) is configured with the property
+ *   {@code maslow.access.snapshot-events-retry-ms}.
+ */
+@Service
+public class SnapshotSubscriptionService {
+  private static final Logger log = LoggerFactory.getLogger(SnapshotSubscriptionService.class);
+
+  /** The name of the events that announce a snapshot. */
+  static final String SNAPSHOT_EVENT = "snapshot";
+
+  private final CatalogService catalogService;
+  private final RestOperations restapi;
+  private final List<URI> snapshotEventsUris;
+  private final long retryDelay;
+  private final ExecutorService executor;
+  private volatile boolean running;
+  private int nextUpstream;
+
+  /**
+   * Constructs an instance of SnapshotSubscriptionService.
+   *
+   * @param catalogService the service that fetches snapshots
+   * @param snapshotFetchUriString the comma-separated URLs of the latest snapshot of each instance
+   *        of Maslow Author, next to which snapshots are subscribed to
+   * @param enabled whether to subscribe to snapshots at all
+   * @param timeout the time without any event or heartbeat after which the subscription is
+   *        considered dropped, in milliseconds
+   * @param retryDelay the delay before subscribing again after the subscription drops, in
+   *        milliseconds
+   */
+  @Autowired
+  public SnapshotSubscriptionService(
+    CatalogService catalogService,
+    @Value("${maslow.access.snapshot-fetch-uri}") final String snapshotFetchUriString,
+    @Value("${maslow.access.snapshot-events-enabled:true}") boolean enabled,
+    @Value("${maslow.access.snapshot-events-timeout-ms:45000}") int timeout,
+    @Value("${maslow.access.snapshot-events-retry-ms:5000}") long retryDelay
+  ) {
+    this(
+      catalogService,
+      restOperations(timeout),
+      enabled ? parseEventsUris(snapshotFetchUriString) : Collections.emptyList(),
+      retryDelay
+    );
+  }
+
+  /**
+   * Constructs an instance of SnapshotSubscriptionService that subscribes to the given URIs in
+   * turn with the given RestOperations, or never subscribes if there are none.
+   */
+  SnapshotSubscriptionService(
+    CatalogService catalogService,
+    RestOperations restOperations,
+    List<URI> snapshotEventsUris,
+    long retryDelay
+  ) {
+    super();
+    this.catalogService = catalogService;
+    this.restapi = restOperations;
+    this.snapshotEventsUris = ImmutableList.copyOf(snapshotEventsUris);
+    this.retryDelay = retryDelay;
+    this.executor =
+      Executors.newSingleThreadExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, "snapshot-subscription");
+          thread.setDaemon(true);
+          return thread;
+        }
+      );
+  }
+
+  private static RestOperations restOperations(int timeout) {
+    // A subscription is a single long-lived response, so the read timeout bounds the time between
+    // events (including heartbeats) rather than the time of the whole response.
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(timeout);
+    requestFactory.setReadTimeout(timeout);
+    return new RestTemplate(requestFactory);
+  }
+
+  private static List<URI> parseEventsUris(String snapshotFetchUriString) {
+    ImmutableList.Builder<URI> uris = ImmutableList.builder();
+    for (String uri : Splitter.on(',').trimResults().omitEmptyStrings().split(
+      Strings.nullToEmpty(snapshotFetchUriString)
+    )) {
+      try {
+        uris.add(new URL(uri).toURI().resolve("events"));
+      } catch (MalformedURLException | URISyntaxException e) {
+        // CatalogService warns of the invalid URI, and does not fetch from it either.
+      }
+    }
+    return uris.build();
+  }
+
+  /**
+   * Starts subscribing once the application is ready, on a dedicated thread.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (snapshotEventsUris.isEmpty()) {
+      log.info("Subscription to services snapshots disabled, polling instead");
+      return;
+    }
+
+    running = true;
+    executor.execute(
+      () -> {
+        while (running) {
+          if (catalogService.isLeader()) {
+            subscribe();
+          }
+          try {
+            Thread.sleep(retryDelay);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    );
+  }
+
+  /**
+   * Stops subscribing.
+   */
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    executor.shutdownNow();
+  }
+
+  /**
+   * Subscribes to the services snapshots of the next instance of Maslow Author and fetches each
+   * announced snapshot, until the subscription drops.
+   */
+  void subscribe() {
+    URI snapshotEventsUri = snapshotEventsUris.get(nextUpstream);
+    nextUpstream = (nextUpstream + 1) % snapshotEventsUris.size();
+    log.info("Subscribing to services snapshots at URL: {}", snapshotEventsUri);
+
+    try {
+      restapi.execute(
+        snapshotEventsUri,
+        HttpMethod.GET,
+        request ->
+          request.getHeaders().setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM)),
+        this::receiveEvents
+      );
+    } catch (RestClientException e) {
+      log.warn("Subscription failed with exception: {}", e.getMessage());
+    } finally {
+      catalogService.setSubscribed(false);
+    }
+
+    log.info("Subscription to services snapshots dropped, polling until it is restored");
+  }
+
+  /**
+   * Receives the events of a subscription, as defined by the Server-Sent Events specification,
+   * until the response ends.
+   */
+  private Void receiveEvents(ClientHttpResponse response) throws IOException {
+    if (response.getStatusCode() != HttpStatus.OK) {
+      log.warn("Subscription failed with status: {}", response.getStatusCode());
+      return null;
+    }
+
+    catalogService.setSubscribed(true);
+    log.info("Subscribed to services snapshots");
+
+    try (
+      BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), UTF_8))
+    ) {
+      String name = null;
+      StringBuilder data = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          // A blank line dispatches the event.
+          if (SNAPSHOT_EVENT.equals(name) && data.length() > 0) {
+            receiveSnapshot(data.toString());
+          }
+          name = null;
+          data.setLength(0);
+          continue;
+        }
+        if (line.startsWith(":")) {
+          // A comment, such as a heartbeat, only keeps the subscription and the lease alive.
+          catalogService.renewLease();
+          continue;
+        }
+
+        int colon = line.indexOf(':');
+        String field = colon < 0 ? line : line.substring(0, colon);
+        String value = colon < 0 ? "" : line.substring(colon + 1);
+        if (value.startsWith(" ")) {
+          value = value.substring(1);
+        }
+        if ("event".equals(field)) {
+          name = value;
+        } else if ("data".equals(field)) {
+          if (data.length() > 0) {
+            data.append('\n');
+          }
+          data.append(value);
+        }
+      }
+    }
+    return null;
+  }
+
+  private void receiveSnapshot(String version) {
+    if (version.equals(catalogService.getSnapshotVersion())) {
+      log.debug("Snapshot {} already fetched", version);
+      return;
+    }
+
+    log.info("Snapshot {} announced, fetching", version);
+    catalogService.fetchServicesSnapshot();
+  }
+}
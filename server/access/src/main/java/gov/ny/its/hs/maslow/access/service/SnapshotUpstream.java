@@ -0,0 +1,131 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An instance of Maslow Author that services snapshots are fetched from, along with its health.
+ *
+ * Each upstream has a circuit breaker. The circuit opens after a number of consecutive failed
+ * fetches, after which the upstream is skipped until the circuit has been open for a while. The
+ * next fetch from the upstream is then a trial: if it succeeds the circuit closes, and if it fails
+ * the circuit opens again for another while. The upstream is skipped while a trial is in flight,
+ * so there is never more than one trial at once, even though a hedged fetch that lost keeps
+ * running after {@link CatalogService#fetchServicesSnapshot()} has returned.
+ */
+public class SnapshotUpstream {
+  private static final Logger log = LoggerFactory.getLogger(SnapshotUpstream.class);
+
+  private final URI fetchUri;
+  private final URI deltaUri;
+  private final int failureThreshold;
+  private final long openDuration;
+
+  private volatile boolean deltaSupported = true;
+  private int failures;
+  private long openedAt;
+  private boolean trialInFlight;
+
+  /**
+   * Constructs an instance of SnapshotUpstream.
+   *
+   * @param fetchUri the URI of the latest snapshot of the upstream
+   * @param failureThreshold the number of consecutive failures after which the circuit opens
+   * @param openDuration the time after which an open circuit allows a trial, in milliseconds
+   */
+  public SnapshotUpstream(URI fetchUri, int failureThreshold, long openDuration) {
+    super();
+    this.fetchUri = fetchUri;
+    this.deltaUri = fetchUri.resolve("delta");
+    this.failureThreshold = Math.max(failureThreshold, 1);
+    this.openDuration = openDuration;
+  }
+
+  /**
+   * Gets the URI of the latest snapshot of the upstream.
+   */
+  public URI getFetchUri() {
+    return fetchUri;
+  }
+
+  /**
+   * Gets the URI of the snapshot deltas of the upstream (see
+   * {@link gov.ny.its.hs.maslow.shared.model.ServicesDelta}).
+   */
+  public URI getDeltaUri() {
+    return deltaUri;
+  }
+
+  /**
+   * Returns true unless the upstream is known not to serve snapshot deltas.
+   */
+  public boolean isDeltaSupported() {
+    return deltaSupported;
+  }
+
+  /**
+   * Sets the value for {@link #isDeltaSupported()}
+   */
+  public void setDeltaSupported(boolean deltaSupported) {
+    this.deltaSupported = deltaSupported;
+  }
+
+  /**
+   * Returns true if the circuit is open or a trial is in flight, so that the upstream is skipped.
+   */
+  public synchronized boolean isOpen() {
+    return failures >= failureThreshold && (trialInFlight || now() - openedAt < openDuration);
+  }
+
+  /**
+   * Starts a fetch from the upstream, which is a trial if the circuit has been open for a while.
+   * The fetch must then be recorded with {@link #recordSuccess()} or {@link #recordFailure()}.
+   *
+   * @return false if the upstream must be skipped (see {@link #isOpen()}), otherwise true
+   */
+  public synchronized boolean tryFetch() {
+    if (isOpen()) {
+      return false;
+    }
+    trialInFlight = failures >= failureThreshold;
+    return true;
+  }
+
+  /**
+   * Records a successful fetch, which closes the circuit.
+   */
+  public synchronized void recordSuccess() {
+    if (failures >= failureThreshold) {
+      log.info("Circuit closed for upstream {}", fetchUri);
+    }
+    failures = 0;
+    trialInFlight = false;
+  }
+
+  /**
+   * Records a failed fetch, which opens the circuit once the failures reach the threshold.
+   */
+  public synchronized void recordFailure() {
+    failures++;
+    trialInFlight = false;
+    if (failures >= failureThreshold) {
+      openedAt = now();
+      log.warn(
+        "Circuit opened for upstream {} after {} consecutive failures",
+        fetchUri,
+        failures
+      );
+    }
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  @Override
+  public String toString() {
+    return fetchUri.toString();
+  }
+}
@@ -0,0 +1,113 @@
+package gov.ny.its.hs.maslow.access.command;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.service.BulkEligibilityService;
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import gov.ny.its.hs.maslow.access.service.EligibilityService;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestOperations;
+
+public class BulkEligibilityCommandTests {
+  private Path directory;
+  private BulkEligibilityService bulkEligibilityService;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory(getClass().getSimpleName());
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    if (bulkEligibilityService != null) {
+      bulkEligibilityService.shutdown();
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void run_screensAgainstServicesFile() throws Exception {
+    // the default catalog, as configured in application.yaml, only has the INCOME service
+    Service income = new Service();
+    income.setEnabled(true);
+    income.setFormula("=TRUE");
+    Catalog catalog = new Catalog();
+    catalog.setSurvey(
+      Collections.singletonList(
+        ImmutableMap.of("SECTION_HOUSEHOLD", Collections.singletonList("IS_DISABLED"))
+      )
+    );
+    catalog.setRank(Collections.singletonList("INCOME"));
+    catalog.setServices(Collections.singletonMap("INCOME", income));
+
+    // the services file only has the DISABLED service
+    Path servicesPath = directory.resolve("services.json");
+    Files.write(
+      servicesPath,
+      (
+        "{\"rank\":[\"DISABLED\"]," +
+        "\"services\":{\"DISABLED\":{\"enabled\":true,\"formula\":\"=IS_DISABLED\"}}}"
+      ).getBytes(UTF_8)
+    );
+    Path inputPath = directory.resolve("households.csv");
+    Files.write(inputPath, "IS_DISABLED\nTRUE\n".getBytes(UTF_8));
+
+    // the updated catalog is published to the eligibility service like the application context
+    AtomicReference<EligibilityService> eligibilityService = new AtomicReference<>();
+    ApplicationEventPublisher publisher = event ->
+      eligibilityService.get().onCatalogUpdated((CatalogUpdatedEvent) event);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    CatalogService catalogService = new CatalogService(
+      publisher,
+      catalog,
+      Mockito.mock(RestOperations.class),
+      servicesPath.toString(),
+      null
+    );
+    eligibilityService.set(new EligibilityService(catalogService, meterRegistry, 0));
+    bulkEligibilityService =
+      new BulkEligibilityService(
+        eligibilityService.get(),
+        new ObjectMapper(),
+        meterRegistry,
+        1
+      );
+    BulkEligibilityCommand command = new BulkEligibilityCommand(
+      bulkEligibilityService,
+      catalogService,
+      Mockito.mock(ConfigurableApplicationContext.class),
+      inputPath.toString(),
+      ""
+    );
+
+    command.run(new DefaultApplicationArguments());
+
+    String results = new String(
+      Files.readAllBytes(directory.resolve("households-eligibility.csv")),
+      UTF_8
+    );
+    assertThat(results.split("\n")).containsExactly("row,services,error", "1,DISABLED,");
+  }
+}
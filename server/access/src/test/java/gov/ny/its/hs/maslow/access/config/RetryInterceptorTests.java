@@ -0,0 +1,105 @@
+package gov.ny.its.hs.maslow.access.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+public class RetryInterceptorTests {
+  private final URI SNAPSHOTS_URI = URI.create("http://localhost:8081/api/author/v1/snapshots");
+  private final byte[] BODY = new byte[0];
+
+  private Counter retries;
+  private RetryInterceptor interceptor;
+  private ClientHttpRequestExecution execution;
+
+  private static MockClientHttpResponse response(HttpStatus status) {
+    return new MockClientHttpResponse(new byte[0], status);
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    retries = new SimpleMeterRegistry().counter("retries");
+    interceptor = new RetryInterceptor(3, 0L, 0L, retries);
+    execution = Mockito.mock(ClientHttpRequestExecution.class);
+  }
+
+  @Test
+  void intercept_retriesServerErrors() throws IOException {
+    MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, SNAPSHOTS_URI);
+    when(execution.execute(any(), any()))
+      .thenReturn(response(HttpStatus.SERVICE_UNAVAILABLE), response(HttpStatus.OK));
+
+    assertThat(interceptor.intercept(request, BODY, execution).getStatusCode())
+      .isEqualTo(HttpStatus.OK);
+    assertThat(retries.count()).isEqualTo(1.0);
+  }
+
+  @Test
+  void intercept_retriesExceptions() throws IOException {
+    MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, SNAPSHOTS_URI);
+    when(execution.execute(any(), any()))
+      .thenThrow(new SocketTimeoutException("Read timed out"))
+      .thenReturn(response(HttpStatus.NOT_MODIFIED));
+
+    assertThat(interceptor.intercept(request, BODY, execution).getStatusCode())
+      .isEqualTo(HttpStatus.NOT_MODIFIED);
+  }
+
+  @Test
+  void intercept_withMaxAttempts_returnsLastFailure() throws IOException {
+    MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, SNAPSHOTS_URI);
+    when(execution.execute(any(), any())).thenReturn(response(HttpStatus.BAD_GATEWAY));
+
+    assertThat(interceptor.intercept(request, BODY, execution).getStatusCode())
+      .isEqualTo(HttpStatus.BAD_GATEWAY);
+    verify(execution, times(3)).execute(any(), any());
+    assertThat(retries.count()).isEqualTo(2.0);
+
+    when(execution.execute(any(), any())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+    assertThatThrownBy(() -> interceptor.intercept(request, BODY, execution))
+      .isInstanceOf(SocketTimeoutException.class);
+  }
+
+  @Test
+  void intercept_doesNotRetryClientErrorsOrNonIdempotentRequests() throws IOException {
+    when(execution.execute(any(), any()))
+      .thenReturn(response(HttpStatus.GONE), response(HttpStatus.SERVICE_UNAVAILABLE));
+
+    MockClientHttpRequest get = new MockClientHttpRequest(HttpMethod.GET, SNAPSHOTS_URI);
+    MockClientHttpRequest post = new MockClientHttpRequest(HttpMethod.POST, SNAPSHOTS_URI);
+    interceptor.intercept(get, BODY, execution);
+    interceptor.intercept(post, BODY, execution);
+
+    verify(execution, times(2)).execute(any(), any());
+    assertThat(retries.count()).isZero();
+  }
+
+  @Test
+  void backoff_growsExponentiallyWithJitterUpToMax() {
+    RetryInterceptor backoffInterceptor = new RetryInterceptor(10, 100L, 1000L, retries);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(backoffInterceptor.backoff(1)).isBetween(50L, 100L);
+      assertThat(backoffInterceptor.backoff(3)).isBetween(200L, 400L);
+      assertThat(backoffInterceptor.backoff(8)).isBetween(500L, 1000L);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package gov.ny.its.hs.maslow.access.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import gov.ny.its.hs.maslow.access.model.Payload;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+public class PayloadsTests {
+  private static final long LAST_MODIFIED = 1600000000000L;
+
+  private Payload payload;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  @BeforeEach
+  void beforeEach() {
+    payload =
+      new Payload(
+        MediaType.APPLICATION_JSON,
+        "{}".getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap("gzip", "gzip".getBytes(StandardCharsets.UTF_8)),
+        LAST_MODIFIED
+      );
+    request = new MockHttpServletRequest("GET", "/api/explore/v1/catalog");
+    response = new MockHttpServletResponse();
+  }
+
+  private ResponseEntity<byte[]> respond(String acceptEncoding) {
+    return Payloads.respond(new ServletWebRequest(request, response), payload, acceptEncoding);
+  }
+
+  @Test
+  void respond_returnsBodyWithValidators() {
+    ResponseEntity<byte[]> entity = respond("gzip");
+
+    assertThat(entity.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(entity.getHeaders().getETag()).isEqualTo(payload.select("gzip").getETag());
+    assertThat(entity.getHeaders().getLastModified()).isEqualTo(LAST_MODIFIED);
+    assertThat(entity.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+    assertThat(entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(entity.getBody()).isEqualTo("gzip".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void respond_withMatchingIfNoneMatch_returnsNotModified() {
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, payload.getETag());
+
+    ResponseEntity<byte[]> entity = respond(null);
+
+    assertThat(entity.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(entity.getBody()).isNull();
+    assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(payload.getETag());
+  }
+
+  @Test
+  void respond_withETagOfOtherEncoding_returnsBody() {
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, payload.getETag());
+
+    assertThat(respond("gzip").getStatusCode()).isEqualTo(HttpStatus.OK);
+  }
+
+  @Test
+  void respond_withCurrentIfModifiedSince_returnsNotModified() {
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+
+    assertThat(respond(null).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+  }
+
+  @Test
+  void respond_withOutdatedIfModifiedSince_returnsBody() {
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED - 1000);
+
+    assertThat(respond(null).getStatusCode()).isEqualTo(HttpStatus.OK);
+  }
+}
@@ -0,0 +1,66 @@
+package gov.ny.its.hs.maslow.access.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+public class PayloadTests {
+  private Payload payload;
+
+  @BeforeEach
+  void beforeEach() {
+    Map<String, byte[]> encodedBodies = new LinkedHashMap<>();
+    encodedBodies.put("br", "brotli".getBytes(StandardCharsets.UTF_8));
+    encodedBodies.put("gzip", "gzip".getBytes(StandardCharsets.UTF_8));
+
+    payload =
+      new Payload(
+        MediaType.APPLICATION_JSON,
+        "{}".getBytes(StandardCharsets.UTF_8),
+        encodedBodies,
+        1234567L
+      );
+  }
+
+  @Test
+  void select_withoutHeader_returnsIdentity() {
+    assertThat(payload.select(null).getEncoding()).isEqualTo(Payload.IDENTITY);
+    assertThat(payload.select("").getEncoding()).isEqualTo(Payload.IDENTITY);
+  }
+
+  @Test
+  void select_prefersServerOrder() {
+    assertThat(payload.select("gzip, deflate, br").getEncoding()).isEqualTo("br");
+    assertThat(payload.select("gzip;q=1.0, br;q=0.5").getEncoding()).isEqualTo("br");
+    assertThat(payload.select("GZIP").getEncoding()).isEqualTo("gzip");
+  }
+
+  @Test
+  void select_skipsZeroQuality() {
+    assertThat(payload.select("br;q=0, gzip").getEncoding()).isEqualTo("gzip");
+    assertThat(payload.select("*;q=0").getEncoding()).isEqualTo(Payload.IDENTITY);
+    assertThat(payload.select("*, br;q=0").getEncoding()).isEqualTo("gzip");
+  }
+
+  @Test
+  void select_withUnsupportedEncoding_returnsIdentity() {
+    assertThat(payload.select("deflate, compress").getEncoding()).isEqualTo(Payload.IDENTITY);
+  }
+
+  @Test
+  void variants_haveDistinctStrongETags() {
+    assertThat(payload.getETag()).matches("^\"[0-9a-f]{32}\"$");
+    assertThat(payload.getVariants().get("gzip").getETag())
+      .isEqualTo(payload.getETag().replaceAll("\"$", "-gzip\""));
+  }
+
+  @Test
+  void getLastModified_isTruncatedToSeconds() {
+    assertThat(payload.getLastModified()).isEqualTo(1234000L);
+  }
+}
@@ -0,0 +1,159 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.server.ResponseStatusException;
+
+public class BulkEligibilityServiceTests {
+  private MeterRegistry meterRegistry;
+  private BulkEligibilityService service;
+
+  @BeforeEach
+  void beforeEach() {
+    Map<String, Service> services = new LinkedHashMap<>();
+    services.put("INCOME", service("=HOUSEHOLD_INCOME <= 1000 + HOUSEHOLD_SIZE * 200"));
+    services.put("DISABLED", service("=IS_DISABLED"));
+
+    Catalog initial = new Catalog();
+    initial.setSurvey(
+      Collections.singletonList(
+        ImmutableMap.of(
+          "SECTION_HOUSEHOLD",
+          Arrays.asList("HOUSEHOLD_SIZE", "HOUSEHOLD_INCOME", "IS_DISABLED")
+        )
+      )
+    );
+    initial.setRank(Arrays.asList("DISABLED", "INCOME"));
+    initial.setServices(services);
+
+    CatalogService catalogService = Mockito.mock(CatalogService.class);
+    Mockito.when(catalogService.getCatalog()).thenReturn(CatalogSnapshot.of(initial));
+
+    meterRegistry = new SimpleMeterRegistry();
+    service =
+      new BulkEligibilityService(
+        new EligibilityService(catalogService, meterRegistry, 0),
+        new ObjectMapper(),
+        meterRegistry,
+        2
+      );
+  }
+
+  @AfterEach
+  void afterEach() {
+    service.shutdown();
+  }
+
+  private static Service service(String formula) {
+    Service service = new Service();
+    service.setEnabled(true);
+    service.setFormula(formula);
+    return service;
+  }
+
+  private String screen(String input, BulkEligibilityService.Format format) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    service.screen(
+      new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+      output,
+      format
+    );
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void screen_csv() throws IOException {
+    String results = screen(
+      "HOUSEHOLD_SIZE,HOUSEHOLD_INCOME,IS_DISABLED\n" +
+      "3,1500,true\n" +
+      "3,2000,FALSE\n" +
+      "3,,FALSE\n" +
+      "3,1500,maybe\n",
+      BulkEligibilityService.Format.CSV
+    );
+
+    assertThat(results.split("\n"))
+      .containsExactly(
+        "row,services,error",
+        "1,\"DISABLED INCOME\",",
+        "2,,",
+        "3,,\"RESPONSES_INCOMPLETE: Missing responses to [HOUSEHOLD_INCOME].\"",
+        "4,,\"RESPONSE_NOT_VALID: The response to IS_DISABLED must be TRUE, FALSE or a number.\""
+      );
+  }
+
+  @Test
+  void screen_csv_withUnknownColumn_throws() {
+    assertThatThrownBy(
+        () -> screen("HOUSEHOLD_SIZE,AGE\n3,40\n", BulkEligibilityService.Format.CSV)
+      )
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("HEADER_NOT_VALID")
+      .hasMessageContaining("AGE");
+  }
+
+  @Test
+  void screen_jsonLines() throws IOException {
+    String results = screen(
+      "{\"HOUSEHOLD_SIZE\":3,\"HOUSEHOLD_INCOME\":1500,\"IS_DISABLED\":false}\n" +
+      "\n" +
+      "{\"HOUSEHOLD_SIZE\":3,\n",
+      BulkEligibilityService.Format.JSON_LINES
+    );
+
+    String[] lines = results.split("\n");
+    assertThat(lines).hasSize(2);
+    assertThat(lines[0]).isEqualTo("{\"row\":1,\"services\":[\"INCOME\"]}");
+    assertThat(lines[1]).startsWith("{\"row\":3,\"services\":[],\"error\":\"ROW_NOT_VALID: ");
+  }
+
+  @Test
+  void screen_keepsOrderAcrossBatches() throws IOException {
+    int count = BulkEligibilityService.BATCH_SIZE * 3 + 7;
+    StringBuilder input = new StringBuilder("HOUSEHOLD_SIZE,HOUSEHOLD_INCOME,IS_DISABLED\n");
+    for (int i = 0; i < count; i++) {
+      input.append("1,").append(i).append(",FALSE\n");
+    }
+
+    String[] lines = screen(input.toString(), BulkEligibilityService.Format.CSV).split("\n");
+
+    assertThat(lines).hasSize(count + 1);
+    for (int i = 0; i < count; i++) {
+      String services = i <= 1200 ? "INCOME" : "";
+      assertThat(lines[i + 1]).isEqualTo((i + 1) + "," + services + ",");
+    }
+  }
+
+  @Test
+  void screen_reportsThroughput() throws IOException {
+    screen(
+      "HOUSEHOLD_SIZE,HOUSEHOLD_INCOME,IS_DISABLED\n1,1,TRUE\n2,2,TRUE\n",
+      BulkEligibilityService.Format.CSV
+    );
+
+    assertThat(meterRegistry.get("maslow.eligibility.bulk.households").counter().count())
+      .isEqualTo(2);
+    assertThat(meterRegistry.get("maslow.eligibility.bulk.throughput").summary().count())
+      .isEqualTo(1);
+  }
+}
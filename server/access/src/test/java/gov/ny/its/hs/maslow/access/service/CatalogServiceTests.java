@@ -1,27 +1,49 @@
 package gov.ny.its.hs.maslow.access.service;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
 import gov.ny.its.hs.maslow.access.model.Catalog;
-import gov.ny.its.hs.maslow.shared.model.Services;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.shared.model.ServicesDelta;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Optional;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestOperations;
 
 public class CatalogServiceTests {
@@ -31,6 +53,8 @@ public class CatalogServiceTests {
   private CatalogService service;
   private final String SERVICES_PATH = "src/test/resources/services.json";
   private final String SNAPSHOTS_URI = "http://localhost:8081/api/author/v1/snapshots/latest";
+  private final String BACKUP_SNAPSHOTS_URI =
+    "http://localhost:8082/api/author/v1/snapshots/latest";
 
   @BeforeEach
   void beforeEach() {
@@ -71,13 +95,69 @@ public class CatalogServiceTests {
     }
 
     @Test
-    void refreshService_ignoresSameLastModified() {
-      // first time we refresh since the test data is newer than the last time we loaded (i.e. never)
+    void refreshService_publishesNewSnapshot() {
+      CatalogSnapshot initial = service.getCatalog();
+
+      assertThat(service.refreshServices()).isTrue();
+
+      // the previous snapshot is unchanged and the event carries the published snapshot
+      CatalogSnapshot next = service.getCatalog();
+      assertThat(next).isNotSameAs(initial);
+      assertThat(next.getVersion()).isEqualTo(initial.getVersion() + 1);
+      assertThat(initial.getRank()).isEmpty();
+      assertThat(initial.getServices()).isEmpty();
+
+      ArgumentCaptor<CatalogUpdatedEvent> event = ArgumentCaptor.forClass(CatalogUpdatedEvent.class);
+      verify(publisher).publishEvent(event.capture());
+      assertThat(event.getValue().getCatalog()).isSameAs(next);
+    }
+
+    @Test
+    void refreshService_publishesImmutableSnapshot() {
+      service.refreshServices();
+      CatalogSnapshot snapshot = service.getCatalog();
+
+      assertThatThrownBy(() -> snapshot.getRank().clear())
+        .isInstanceOf(UnsupportedOperationException.class);
+      assertThatThrownBy(() -> snapshot.getServices().clear())
+        .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void refreshService_ignoresSameContent() {
+      // first time we refresh since the test data differs from what we loaded (i.e. nothing)
       assertThat(service.refreshServices()).isTrue();
-      // second time we don't refresh since the test data is not newer
+      // second time we don't refresh since the test data has not changed
       assertThat(service.refreshServices()).isFalse();
     }
 
+    @Test
+    void refreshService_withSameLastModified_refreshesChangedContent() throws IOException {
+      Path servicesPath = Files.createTempFile(getClass().getSimpleName(), ".json");
+      try {
+        Files.copy(Paths.get(SERVICES_PATH), servicesPath, StandardCopyOption.REPLACE_EXISTING);
+        FileTime lastModifiedTime = Files.getLastModifiedTime(servicesPath);
+        service =
+          new CatalogService(
+            publisher,
+            catalog,
+            restOperations,
+            servicesPath.toString(),
+            SNAPSHOTS_URI
+          );
+        assertThat(service.refreshServices()).isTrue();
+
+        // a second write within the granularity of the file system clock
+        Files.write(servicesPath, "{\"rank\":[],\"services\":{}}".getBytes(UTF_8));
+        Files.setLastModifiedTime(servicesPath, lastModifiedTime);
+
+        assertThat(service.refreshServices()).isTrue();
+        assertThat(service.getCatalog().getRank()).isEmpty();
+      } finally {
+        Files.delete(servicesPath);
+      }
+    }
+
     @Test
     void refreshService_ignoresInvalidLocation() {
       String servicesLocation = "bad_file_name";
@@ -96,27 +176,570 @@ public class CatalogServiceTests {
 
   @Nested
   class FetchServicesSnapshotTests {
+    private final String SNAPSHOT =
+      "{\"created\":\"2020-10-01T00:00:00Z\",\"rank\":[\"ONE\"]," +
+      "\"services\":{\"ONE\":{\"enabled\":true,\"formula\":\"=TRUE\"}}}";
+
+    private Path servicesPath;
 
     String getTempFilePath() throws IOException {
       File tempFile = File.createTempFile(this.getClass().getCanonicalName(), ".json");
       return tempFile.getAbsolutePath();
     }
 
+    /**
+     * Mocks the response of Maslow Author, passing it to the response extractor like RestTemplate.
+     */
+    @SuppressWarnings("unchecked")
+    void respond(HttpStatus status, String body) {
+      when(
+          restOperations.execute(
+            any(URI.class),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenAnswer(
+          invocation -> {
+            invocation.<RequestCallback>getArgument(2).doWithRequest(new MockClientHttpRequest());
+            return invocation
+              .<ResponseExtractor<Boolean>>getArgument(3)
+              .extractData(new MockClientHttpResponse(body.getBytes(UTF_8), status));
+          }
+        );
+    }
+
+    /**
+     * Mocks the response of Maslow Author to requests whose URI starts with a prefix.
+     */
+    @SuppressWarnings("unchecked")
+    void respond(String uriPrefix, HttpStatus status, String body, String eTag) {
+      when(
+          restOperations.execute(
+            argThat((URI uri) -> uri != null && uri.toString().startsWith(uriPrefix)),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenAnswer(
+          invocation -> {
+            invocation.<RequestCallback>getArgument(2).doWithRequest(new MockClientHttpRequest());
+            MockClientHttpResponse response = new MockClientHttpResponse(
+              body.getBytes(UTF_8),
+              status
+            );
+            if (eTag != null) {
+              response.getHeaders().setETag("\"" + eTag + "\"");
+            }
+            return invocation.<ResponseExtractor<Boolean>>getArgument(3).extractData(response);
+          }
+        );
+    }
+
+    /**
+     * Returns a delta from version 1, which is {@link #SNAPSHOT}, that removes the only service and
+     * adds the given changes, with the checksum of the given rank and services.
+     */
+    String delta(String version, String rank, String services, String changes) throws IOException {
+      ObjectMapper mapper = new ObjectMapper();
+      ServicesDelta delta = new ServicesDelta();
+      delta.setBase("1");
+      delta.setVersion(version);
+      delta.setRank(Arrays.asList(mapper.readValue(rank, String[].class)));
+      mapper
+        .readTree(changes)
+        .fields()
+        .forEachRemaining(field -> delta.getServices().put(field.getKey(), field.getValue()));
+      delta.getRemoved().add("ONE");
+      delta.setChecksum(ServicesDelta.checksum(mapper.readTree(rank), mapper.readTree(services)));
+      return mapper.writeValueAsString(delta);
+    }
+
     @BeforeEach
     void beforeEach() throws IOException {
+      servicesPath = Paths.get(getTempFilePath());
       service =
-        new CatalogService(publisher, catalog, restOperations, getTempFilePath(), SNAPSHOTS_URI);
+        new CatalogService(
+          publisher,
+          catalog,
+          restOperations,
+          servicesPath.toString(),
+          SNAPSHOTS_URI
+        );
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+      Files.deleteIfExists(servicesPath);
+      Path storePath = new SnapshotStore(servicesPath, 1).getDirectory();
+      if (Files.exists(storePath)) {
+        try (Stream<Path> paths = Files.walk(storePath)) {
+          paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+      }
+    }
+
+    /**
+     * Gets the temporary files left next to the services file.
+     */
+    List<Path> getTemporaryFiles() throws IOException {
+      String prefix = servicesPath.getFileName().toString();
+      try (Stream<Path> paths = Files.list(servicesPath.getParent())) {
+        return paths
+          .filter(path -> path.getFileName().toString().startsWith(prefix))
+          .filter(path -> !path.equals(servicesPath))
+          .collect(Collectors.toList());
+      }
     }
 
     @Test
     void fetchServicesSnapshot_returnsTrue() {
-      Optional<Services> services = Optional.of(new Services());
-      ResponseEntity<Services> response = ResponseEntity.of(services);
+      respond(HttpStatus.OK, "{\"rank\":[],\"services\":{}}");
 
-      when(restOperations.exchange(any(URI.class), eq(HttpMethod.GET), any(), eq(Services.class)))
-        .thenReturn(response);
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+    }
+
+    @Test
+    void fetchServicesSnapshot_writesResponseAsIs() throws IOException {
+      respond(HttpStatus.OK, SNAPSHOT);
+
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      assertThat(new String(Files.readAllBytes(servicesPath), UTF_8)).isEqualTo(SNAPSHOT);
+      assertThat(getTemporaryFiles()).isEmpty();
+    }
+
+    @Test
+    void fetchServicesSnapshot_publishesServicesWithoutRefreshingAgain() {
+      respond(HttpStatus.OK, SNAPSHOT);
 
       assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+      assertThat(service.getCatalog().getServices()).containsOnlyKeys("ONE");
+      verify(publisher).publishEvent(any(CatalogUpdatedEvent.class));
+      // the file was parsed once when fetched, so it is not parsed again
+      assertThat(service.refreshServices()).isFalse();
+    }
+
+    @Test
+    void fetchServicesSnapshot_withIncompleteSnapshot_keepsFile() throws IOException {
+      respond(HttpStatus.OK, SNAPSHOT);
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      respond(HttpStatus.OK, "{\"rank\":[\"ONE\"],\"services\":{\"ONE\":");
+
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      assertThat(new String(Files.readAllBytes(servicesPath), UTF_8)).isEqualTo(SNAPSHOT);
+      assertThat(getTemporaryFiles()).isEmpty();
+
+      respond(HttpStatus.OK, "{\"rank\":null}");
+
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      assertThat(new String(Files.readAllBytes(servicesPath), UTF_8)).isEqualTo(SNAPSHOT);
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+    }
+
+    @Test
+    void fetchServicesSnapshot_appliesDeltaSinceLastSnapshot() throws IOException {
+      String services = "{\"TWO\":{\"enabled\":true,\"formula\":\"=FALSE\"}}";
+      respond(SNAPSHOTS_URI, HttpStatus.OK, SNAPSHOT, "1");
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      respond(
+        SNAPSHOTS_URI.replace("latest", "delta?since=1"),
+        HttpStatus.OK,
+        delta("2", "[\"TWO\"]", services, services),
+        "2"
+      );
+
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      assertThat(service.getCatalog().getRank()).containsExactly("TWO");
+      assertThat(service.getCatalog().getServices()).containsOnlyKeys("TWO");
+      String file = "{\"rank\":[\"TWO\"],\"services\":" + services + "}";
+      assertThat(new ObjectMapper().readTree(servicesPath.toFile()))
+        .isEqualTo(new ObjectMapper().readTree(file));
+      assertThat(getTemporaryFiles()).isEmpty();
+
+      respond(SNAPSHOTS_URI.replace("latest", "delta?since=2"), HttpStatus.NOT_MODIFIED, "", "2");
+
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+    }
+
+    @Test
+    void fetchServicesSnapshot_withMismatchedChecksum_fetchesInFull() throws IOException {
+      String services = "{\"TWO\":{\"enabled\":true}}";
+      respond(SNAPSHOTS_URI, HttpStatus.OK, SNAPSHOT, "1");
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      respond(
+        SNAPSHOTS_URI.replace("latest", "delta"),
+        HttpStatus.OK,
+        delta("2", "[\"TWO\"]", "{\"TWO\":{\"enabled\":false}}", services),
+        "2"
+      );
+      respond(SNAPSHOTS_URI, HttpStatus.OK, "{\"rank\":[],\"services\":{}}", "3");
+
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      assertThat(service.getCatalog().getRank()).isEmpty();
+      assertThat(getTemporaryFiles()).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fetchServicesSnapshot_withGoneBase_fetchesInFull() {
+      respond(SNAPSHOTS_URI, HttpStatus.OK, SNAPSHOT, "1");
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      when(
+          restOperations.execute(
+            argThat((URI uri) -> uri != null && uri.toString().contains("delta")),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenThrow(HttpClientErrorException.create(HttpStatus.GONE, "", null, null, null));
+      respond(SNAPSHOTS_URI, HttpStatus.OK, "{\"rank\":[],\"services\":{}}", "2");
+
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      assertThat(service.getCatalog().getRank()).isEmpty();
+    }
+
+    @Test
+    void pollServicesSnapshot_whileSubscribed_skipsFetch() {
+      service.setSubscribed(true);
+
+      service.pollServicesSnapshot();
+
+      Mockito.verifyNoInteractions(restOperations);
+    }
+
+    @Test
+    void pollServicesSnapshot_afterSubscriptionDrops_fetches() {
+      respond(HttpStatus.OK, SNAPSHOT);
+      service.setSubscribed(true);
+      service.setSubscribed(false);
+
+      service.pollServicesSnapshot();
+
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+    }
+
+    /**
+     * Mocks a failure of requests whose URI starts with a prefix.
+     */
+    @SuppressWarnings("unchecked")
+    void fail(String uriPrefix) {
+      when(
+          restOperations.execute(
+            argThat((URI uri) -> uri != null && uri.toString().startsWith(uriPrefix)),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenThrow(new ResourceAccessException("Connection refused"));
+    }
+
+    @SuppressWarnings("unchecked")
+    void verifyRequests(String uriPrefix, int times) {
+      verify(restOperations, Mockito.times(times))
+        .execute(
+          argThat((URI uri) -> uri != null && uri.toString().startsWith(uriPrefix)),
+          eq(HttpMethod.GET),
+          any(RequestCallback.class),
+          any(ResponseExtractor.class)
+        );
+    }
+
+    CatalogService withUpstreams(int failureThreshold, long hedgeDelay) {
+      return new CatalogService(
+        publisher,
+        catalog,
+        restOperations,
+        servicesPath.toString(),
+        SNAPSHOTS_URI + ", " + BACKUP_SNAPSHOTS_URI,
+        failureThreshold,
+        60000L,
+        hedgeDelay,
+        false,
+        180000L,
+        3,
+        0
+      );
+    }
+
+    CatalogService coordinated() {
+      return new CatalogService(
+        publisher,
+        catalog,
+        restOperations,
+        servicesPath.toString(),
+        SNAPSHOTS_URI,
+        3,
+        60000L,
+        0L,
+        true,
+        180000L,
+        3,
+        0
+      );
+    }
+
+    CatalogService withStore(int generations) {
+      return new CatalogService(
+        publisher,
+        catalog,
+        restOperations,
+        servicesPath.toString(),
+        SNAPSHOTS_URI,
+        3,
+        60000L,
+        0L,
+        false,
+        180000L,
+        3,
+        generations
+      );
+    }
+
+    @Test
+    void fetchServicesSnapshot_withStore_keepsGenerations() throws IOException {
+      service = withStore(2);
+      SnapshotStore store = new SnapshotStore(servicesPath, 2);
+      for (String rank : Arrays.asList("[]", "[\"ONE\"]", "[\"TWO\"]")) {
+        respond(HttpStatus.OK, "{\"rank\":" + rank + ",\"services\":{}}");
+        assertThat(service.fetchServicesSnapshot()).isTrue();
+      }
+
+      List<SnapshotStore.Generation> generations = store.list();
+      assertThat(generations)
+        .extracting(SnapshotStore.Generation::getNumber)
+        .containsExactly(3L, 2L);
+      assertThat(generations.get(0).getHash()).isEqualTo(service.getServicesHash());
+    }
+
+    @Test
+    void restoreServices_rollsBackToGeneration() throws IOException {
+      service = withStore(2);
+      respond(HttpStatus.OK, SNAPSHOT);
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      String hash = service.getServicesHash();
+      respond(HttpStatus.OK, "{\"rank\":[],\"services\":{}}");
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      assertThat(service.restoreServices(hash)).isTrue();
+
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+      assertThat(new String(Files.readAllBytes(servicesPath), UTF_8)).isEqualTo(SNAPSHOT);
+      assertThat(service.restoreServices("unknown")).isFalse();
+    }
+
+    @Test
+    void refreshServices_withInvalidFile_restoresNewestValidGeneration() throws IOException {
+      service = withStore(3);
+      respond(HttpStatus.OK, SNAPSHOT);
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      respond(HttpStatus.OK, "{\"rank\":[],\"services\":{}}");
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+
+      // the newest generation is corrupt and the services file was torn by a crash
+      SnapshotStore store = new SnapshotStore(servicesPath, 3);
+      Files.write(store.list().get(0).getPath(), "{}".getBytes(UTF_8));
+      Files.write(servicesPath, "{\"rank\":[".getBytes(UTF_8));
+
+      // upon the next application start
+      service = withStore(3);
+      assertThat(service.refreshServices()).isTrue();
+
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+      assertThat(new String(Files.readAllBytes(servicesPath), UTF_8)).isEqualTo(SNAPSHOT);
+    }
+
+    @Test
+    void fetchServicesSnapshot_whenCoordinated_onlyLeaderFetches() throws IOException {
+      CatalogService leader = coordinated();
+      CatalogService follower = coordinated();
+      respond(HttpStatus.OK, SNAPSHOT);
+
+      try {
+        assertThat(leader.isLeader()).isTrue();
+        assertThat(follower.isLeader()).isFalse();
+
+        assertThat(leader.fetchServicesSnapshot()).isTrue();
+        // the follower refreshes from the file written by the leader instead of fetching
+        assertThat(follower.fetchServicesSnapshot()).isTrue();
+        assertThat(follower.getCatalog().getRank()).containsExactly("ONE");
+        assertThat(follower.fetchServicesSnapshot()).isFalse();
+        verifyRequests(SNAPSHOTS_URI, 1);
+
+        // once the leader stops, the follower takes over the lease
+        leader.shutdown();
+        assertThat(follower.isLeader()).isTrue();
+        follower.fetchServicesSnapshot();
+        verifyRequests(SNAPSHOTS_URI, 2);
+      } finally {
+        leader.shutdown();
+        follower.shutdown();
+        Files.deleteIfExists(new SnapshotLease(servicesPath, 0L).getLockPath());
+      }
+    }
+
+    @Test
+    void fetchServicesSnapshot_whenLeaderKeepsFailing_handsLeaseOver() throws IOException {
+      CatalogService leader = coordinated();
+      CatalogService follower = coordinated();
+      fail(SNAPSHOTS_URI);
+
+      try {
+        assertThat(leader.isLeader()).isTrue();
+        for (int i = 0; i < 3; i++) {
+          assertThat(follower.isLeader()).isFalse();
+          assertThat(leader.fetchServicesSnapshot()).isFalse();
+        }
+
+        // the leader handed the lease over after three failed fetches in a row
+        assertThat(follower.isLeader()).isTrue();
+        assertThat(leader.isLeader()).isFalse();
+      } finally {
+        leader.shutdown();
+        follower.shutdown();
+        Files.deleteIfExists(new SnapshotLease(servicesPath, 0L).getLockPath());
+      }
+    }
+
+    @Test
+    void fetchServicesSnapshot_withFailedUpstream_failsOverAndPrefersNext() {
+      service = withUpstreams(3, 0L);
+      fail(SNAPSHOTS_URI);
+      respond(BACKUP_SNAPSHOTS_URI, HttpStatus.OK, SNAPSHOT, "1");
+
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+
+      // the next fetch goes first to the upstream that last succeeded
+      respond(BACKUP_SNAPSHOTS_URI, HttpStatus.NOT_MODIFIED, "", "1");
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      verifyRequests(SNAPSHOTS_URI, 1);
+    }
+
+    @Test
+    void fetchServicesSnapshot_withFailingUpstreams_opensCircuits() {
+      service = withUpstreams(2, 0L);
+      fail(SNAPSHOTS_URI);
+      fail(BACKUP_SNAPSHOTS_URI);
+
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      // both circuits are open, so neither upstream is requested again
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+
+      verifyRequests(SNAPSHOTS_URI, 2);
+      verifyRequests(BACKUP_SNAPSHOTS_URI, 2);
+    }
+
+    @Test
+    void fetchServicesSnapshot_withExceptionDuringTrial_recordsFailure() {
+      // the circuit opens after one failure and allows a trial right away
+      service =
+        new CatalogService(
+          publisher,
+          catalog,
+          restOperations,
+          servicesPath.toString(),
+          SNAPSHOTS_URI,
+          1,
+          0L,
+          0L,
+          false,
+          180000L,
+          3,
+          0
+        );
+      fail(SNAPSHOTS_URI);
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+
+      respond(HttpStatus.OK, SNAPSHOT);
+      Mockito
+        .doThrow(new IllegalStateException("Listener failed"))
+        .doNothing()
+        .when(publisher)
+        .publishEvent(any(CatalogUpdatedEvent.class));
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+
+      // the failed trial was recorded, so the upstream is tried again
+      assertThat(service.fetchServicesSnapshot()).isTrue();
+      verifyRequests(SNAPSHOTS_URI, 3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fetchServicesSnapshot_withSlowUpstream_hedgesToNext() {
+      service = withUpstreams(3, 50L);
+      CountDownLatch slow = new CountDownLatch(1);
+      when(
+          restOperations.execute(
+            argThat((URI uri) -> uri != null && uri.toString().startsWith(SNAPSHOTS_URI)),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenAnswer(
+          invocation -> {
+            slow.await(5, TimeUnit.SECONDS);
+            throw new ResourceAccessException("Read timed out");
+          }
+        );
+      respond(BACKUP_SNAPSHOTS_URI, HttpStatus.OK, SNAPSHOT, "1");
+
+      try {
+        assertThat(service.fetchServicesSnapshot()).isTrue();
+        assertThat(service.getCatalog().getRank()).containsExactly("ONE");
+      } finally {
+        slow.countDown();
+      }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fetchServicesSnapshot_withSlowUpstreamAnsweringLate_discardsSnapshot()
+      throws InterruptedException {
+      service = withUpstreams(3, 50L);
+      CountDownLatch slow = new CountDownLatch(1);
+      CountDownLatch answered = new CountDownLatch(1);
+      when(
+          restOperations.execute(
+            argThat((URI uri) -> uri != null && uri.toString().startsWith(SNAPSHOTS_URI)),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
+        .thenAnswer(
+          invocation -> {
+            slow.await(5, TimeUnit.SECONDS);
+            try {
+              return invocation
+                .<ResponseExtractor<Boolean>>getArgument(3)
+                .extractData(new MockClientHttpResponse(SNAPSHOT.getBytes(UTF_8), HttpStatus.OK));
+            } finally {
+              answered.countDown();
+            }
+          }
+        );
+      respond(BACKUP_SNAPSHOTS_URI, HttpStatus.NOT_MODIFIED, "", null);
+
+      assertThat(service.fetchServicesSnapshot()).isFalse();
+      slow.countDown();
+
+      // the slow upstream answers after the fetch has returned, so its snapshot is discarded
+      assertThat(answered.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(service.getCatalog().getRank()).isEmpty();
+      verify(publisher, Mockito.never()).publishEvent(any(CatalogUpdatedEvent.class));
     }
 
     @Test
@@ -142,8 +765,16 @@ public class CatalogServiceTests {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void fetchServicesSnapshot_withResourceAccessException_returnsFalse() {
-      when(restOperations.exchange(any(URI.class), eq(HttpMethod.GET), any(), eq(Services.class)))
+      when(
+          restOperations.execute(
+            any(URI.class),
+            eq(HttpMethod.GET),
+            any(RequestCallback.class),
+            any(ResponseExtractor.class)
+          )
+        )
         .thenThrow(new ResourceAccessException("mocked"));
 
       assertThat(service.fetchServicesSnapshot()).isFalse();
@@ -151,26 +782,24 @@ public class CatalogServiceTests {
 
     @Test
     void fetchServicesSnapshot_withHttpNotFound_returnsFalse() {
-      when(restOperations.exchange(any(URI.class), eq(HttpMethod.GET), any(), eq(Services.class)))
-        .thenReturn(ResponseEntity.notFound().build());
+      respond(HttpStatus.NOT_FOUND, "");
 
       assertThat(service.fetchServicesSnapshot()).isFalse();
     }
 
     @Test
     void fetchServicesSnapshot_withHttpBadRequest_returnsFalse() {
-      when(restOperations.exchange(any(URI.class), eq(HttpMethod.GET), any(), eq(Services.class)))
-        .thenReturn(ResponseEntity.badRequest().build());
+      respond(HttpStatus.BAD_REQUEST, "");
 
       assertThat(service.fetchServicesSnapshot()).isFalse();
     }
 
     @Test
-    void fetchServicesSnapshot_withHttpNotModified_returnsFalse() {
-      when(restOperations.exchange(any(URI.class), eq(HttpMethod.GET), any(), eq(Services.class)))
-        .thenReturn(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+    void fetchServicesSnapshot_withHttpNotModified_returnsFalse() throws IOException {
+      respond(HttpStatus.NOT_MODIFIED, "");
 
       assertThat(service.fetchServicesSnapshot()).isFalse();
+      assertThat(Files.size(servicesPath)).isZero();
     }
   }
 }
@@ -0,0 +1,314 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.access.dto.EligibilityDto;
+import gov.ny.its.hs.maslow.access.dto.PartialEligibilityDto;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.shared.model.Question;
+import gov.ny.its.hs.maslow.shared.model.QuestionType;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.server.ResponseStatusException;
+
+public class EligibilityServiceTests {
+  private final Map<String, Object> responses = ImmutableMap.of(
+    "HOUSEHOLD_SIZE",
+    3,
+    "HOUSEHOLD_INCOME",
+    1500.5,
+    "IS_DISABLED",
+    false
+  );
+
+  private CatalogSnapshot catalog;
+  private MeterRegistry meterRegistry;
+  private EligibilityService service;
+
+  @BeforeEach
+  void beforeEach() {
+    Map<String, Service> services = new LinkedHashMap<>();
+    services.put("INCOME", service(true, "=HOUSEHOLD_INCOME <= 1000 + HOUSEHOLD_SIZE * 200"));
+    services.put("DISABLED", service(true, "=IS_DISABLED"));
+    services.put("ALWAYS", service(true, "=TRUE"));
+    services.put("DISABLED_SERVICE", service(false, "=TRUE"));
+    services.put("WITHOUT_FORMULA", service(true, null));
+    services.put("SYNTAX_ERROR", service(true, "=AND(TRUE,"));
+    services.put("NOT_VALID", service(true, "=TRUE & FALSE"));
+    services.put("FAILS", service(true, "=MOD(1, 0)"));
+
+    Map<String, Question> questions = new LinkedHashMap<>();
+    questions.put("HOUSEHOLD_SIZE", question(QuestionType.NUMBER));
+    questions.put("HOUSEHOLD_INCOME", question(QuestionType.CURRENCY));
+    questions.put("IS_DISABLED", question(QuestionType.BOOLEAN));
+
+    Catalog initial = new Catalog();
+    initial.setQuestions(questions);
+    initial.setSurvey(
+      Arrays.asList(
+        ImmutableMap.of("SECTION_YOURSELF", Arrays.asList("IS_DISABLED")),
+        ImmutableMap.of("SECTION_HOUSEHOLD", Arrays.asList("HOUSEHOLD_SIZE", "HOUSEHOLD_INCOME"))
+      )
+    );
+    initial.setRank(
+      Arrays.asList(
+        "ALWAYS",
+        "DISABLED",
+        "WITHOUT_FORMULA",
+        "INCOME",
+        "DISABLED_SERVICE",
+        "SYNTAX_ERROR",
+        "NOT_VALID",
+        "FAILS",
+        "NOT_IN_SERVICES"
+      )
+    );
+    initial.setServices(services);
+    catalog = CatalogSnapshot.of(initial);
+
+    CatalogService catalogService = Mockito.mock(CatalogService.class);
+    Mockito.when(catalogService.getCatalog()).thenReturn(catalog);
+    meterRegistry = new SimpleMeterRegistry();
+    service = new EligibilityService(catalogService, meterRegistry, 100);
+  }
+
+  private static Question question(QuestionType type) {
+    Question question = new Question();
+    question.setType(type);
+    return question;
+  }
+
+  private static Service service(boolean enabled, String formula) {
+    Service service = new Service();
+    service.setEnabled(enabled);
+    service.setFormula(formula);
+    return service;
+  }
+
+  @Test
+  void findEligibleServices_returnsEnabledEligibleServicesInRankOrder() {
+    assertThat(service.findEligibleServices(responses)).containsExactly("ALWAYS", "INCOME");
+  }
+
+  @Test
+  void findEligibleServices_evaluatesResponses() {
+    Map<String, Object> other = new LinkedHashMap<>(responses);
+    other.put("HOUSEHOLD_INCOME", 2000);
+    other.put("IS_DISABLED", true);
+
+    assertThat(service.findEligibleServices(other)).containsExactly("ALWAYS", "DISABLED");
+  }
+
+  @Test
+  void findEligibleServices_withResponseOfOtherType_evaluatesResponses() {
+    Map<String, Object> other = new LinkedHashMap<>(responses);
+    // a number is a valid response to a BOOLEAN question, just not the expected type
+    other.put("IS_DISABLED", 1);
+
+    assertThat(service.findEligibleServices(other))
+      .containsExactly("ALWAYS", "DISABLED", "INCOME");
+  }
+
+  @Test
+  void findEligibleServices_withEquivalentResponses_hitsCache() {
+    Map<String, Object> equivalent = new LinkedHashMap<>(responses);
+    // both incomes are within the limit of 1600 for a household of 3
+    equivalent.put("HOUSEHOLD_INCOME", 1550);
+
+    assertThat(service.findEligibleServices(responses)).containsExactly("ALWAYS", "INCOME");
+    assertThat(service.findEligibleServices(equivalent)).containsExactly("ALWAYS", "INCOME");
+    assertThat(meterRegistry.get("maslow.eligibility.cache.hit.ratio").gauge().value())
+      .isEqualTo(0.5);
+  }
+
+  @Test
+  void findEligibleServices_withMissingResponse_throws() {
+    Map<String, Object> incomplete = new LinkedHashMap<>(responses);
+    incomplete.remove("IS_DISABLED");
+
+    assertThatThrownBy(() -> service.findEligibleServices(incomplete))
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("RESPONSES_INCOMPLETE")
+      .hasMessageContaining("IS_DISABLED");
+  }
+
+  @Test
+  void findEligibleServices_withResponseNotValid_throws() {
+    Map<String, Object> invalid = new LinkedHashMap<>(responses);
+    invalid.put("IS_DISABLED", "yes");
+
+    assertThatThrownBy(() -> service.findEligibleServices(invalid))
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("RESPONSE_NOT_VALID");
+  }
+
+  @Test
+  void updateEligibleServices_withPartialResponses_returnsAnsweredServices() {
+    EligibilityDto first = service.updateEligibleServices(
+      ImmutableMap.of("IS_DISABLED", true),
+      ImmutableList.of("IS_DISABLED"),
+      null
+    );
+
+    assertThat(first.getServices()).containsExactly("ALWAYS", "DISABLED");
+    assertThat(first.getState()).isNotEmpty();
+  }
+
+  @Test
+  void updateEligibleServices_withState_updatesChangedServices() {
+    Map<String, Object> current = new LinkedHashMap<>(responses);
+    EligibilityDto first = service.updateEligibleServices(current, current.keySet(), null);
+    assertThat(first.getServices()).containsExactly("ALWAYS", "INCOME");
+
+    current.put("HOUSEHOLD_SIZE", 2);
+    EligibilityDto second = service.updateEligibleServices(
+      current,
+      ImmutableList.of("HOUSEHOLD_SIZE"),
+      first.getState()
+    );
+    assertThat(second.getServices()).containsExactly("ALWAYS");
+
+    current.put("IS_DISABLED", true);
+    EligibilityDto third = service.updateEligibleServices(
+      current,
+      ImmutableList.of("IS_DISABLED"),
+      second.getState()
+    );
+    assertThat(third.getServices()).containsExactly("ALWAYS", "DISABLED");
+  }
+
+  @Test
+  void updateEligibleServices_withStateOfPreviousCatalog_evaluatesEveryFormula() {
+    EligibilityDto first = service.updateEligibleServices(responses, responses.keySet(), null);
+
+    Map<String, Service> services = new LinkedHashMap<>(catalog.getServices());
+    services.put("INCOME", service(true, "=HOUSEHOLD_INCOME <= 1000 + HOUSEHOLD_SIZE * 100"));
+    CatalogSnapshot next = catalog.withServices(
+      catalog.getRank(),
+      services,
+      FileTime.fromMillis(1000)
+    );
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, next));
+
+    EligibilityDto second = service.updateEligibleServices(
+      responses,
+      ImmutableList.of(),
+      first.getState()
+    );
+    assertThat(second.getServices()).containsExactly("ALWAYS");
+    assertThat(second.getState()).isNotEqualTo(first.getState());
+  }
+
+  @Test
+  void updateEligibleServices_withStateNotValid_throws() {
+    assertThatThrownBy(
+        () -> service.updateEligibleServices(responses, ImmutableList.of(), "not a state")
+      )
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("STATE_NOT_VALID");
+
+    String state = service.updateEligibleServices(responses, ImmutableList.of(), null).getState();
+    assertThatThrownBy(
+        () -> service.updateEligibleServices(responses, ImmutableList.of(), state + "AAAA")
+      )
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("STATE_NOT_VALID");
+  }
+
+  @Test
+  void findPartialEligibility_returnsDecidedServicesAndRemainingQuestions() {
+    PartialEligibilityDto none = service.findPartialEligibility(ImmutableMap.of());
+    assertThat(none.getEligible()).containsExactly("ALWAYS");
+    assertThat(none.getIneligible()).containsExactly("SYNTAX_ERROR", "FAILS");
+    assertThat(none.getUndecided()).containsExactly("DISABLED", "INCOME");
+    assertThat(none.getRemainingQuestions())
+      .containsExactly("IS_DISABLED", "HOUSEHOLD_SIZE", "HOUSEHOLD_INCOME");
+
+    PartialEligibilityDto some = service.findPartialEligibility(
+      ImmutableMap.of("IS_DISABLED", false, "HOUSEHOLD_SIZE", 3)
+    );
+    assertThat(some.getIneligible()).containsExactly("DISABLED", "SYNTAX_ERROR", "FAILS");
+    assertThat(some.getUndecided()).containsExactly("INCOME");
+    assertThat(some.getRemainingQuestions()).containsExactly("HOUSEHOLD_INCOME");
+  }
+
+  @Test
+  void onCatalogUpdated_parsesNewFormulas() {
+    Map<String, Service> services = new LinkedHashMap<>(catalog.getServices());
+    services.put("DISABLED_SERVICE", service(true, "=TRUE"));
+    CatalogSnapshot next = catalog.withServices(
+      catalog.getRank(),
+      services,
+      FileTime.fromMillis(1000)
+    );
+
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, next));
+
+    assertThat(service.findEligibleServices(responses))
+      .containsExactly("ALWAYS", "INCOME", "DISABLED_SERVICE");
+  }
+
+  @Test
+  void onCatalogUpdated_doesNotReturnCachedResults() {
+    assertThat(service.findEligibleServices(responses)).containsExactly("ALWAYS", "INCOME");
+
+    Map<String, Service> services = new LinkedHashMap<>(catalog.getServices());
+    services.put("INCOME", service(true, "=HOUSEHOLD_INCOME <= 1000 + HOUSEHOLD_SIZE * 100"));
+    CatalogSnapshot next = catalog.withServices(
+      catalog.getRank(),
+      services,
+      FileTime.fromMillis(1000)
+    );
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, next));
+
+    assertThat(service.findEligibleServices(responses)).containsExactly("ALWAYS");
+  }
+
+  @Test
+  void onCatalogUpdated_doesNotChangeScreener() {
+    EligibilityService.Screener screener = service.screener();
+
+    Map<String, Service> services = new LinkedHashMap<>(catalog.getServices());
+    services.put("INCOME", service(true, "=HOUSEHOLD_INCOME <= 1000 + HOUSEHOLD_SIZE * 100"));
+    CatalogSnapshot next = catalog.withServices(
+      catalog.getRank(),
+      services,
+      FileTime.fromMillis(1000)
+    );
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, next));
+
+    assertThat(screener.getVersion()).isEqualTo(catalog.getVersion());
+    assertThat(screener.findEligibleServices(responses)).containsExactly("ALWAYS", "INCOME");
+    assertThat(service.screener().getVersion()).isEqualTo(next.getVersion());
+    assertThat(service.findEligibleServices(responses)).containsExactly("ALWAYS");
+  }
+
+  @Test
+  void onCatalogUpdated_ignoresOutdatedCatalog() {
+    Map<String, Service> services = new LinkedHashMap<>();
+    services.put("ALWAYS", service(true, "=FALSE"));
+    CatalogSnapshot next = catalog.withServices(
+      catalog.getRank(),
+      services,
+      FileTime.fromMillis(1000)
+    );
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, next));
+
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, catalog));
+
+    assertThat(service.findEligibleServices(responses)).isEmpty();
+  }
+}
@@ -0,0 +1,159 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.model.Payload;
+import gov.ny.its.hs.maslow.shared.formula.FormulaAst;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.server.ResponseStatusException;
+
+public class ExploreServiceTests {
+  private final String SERVICES_PATH = "src/test/resources/services.json";
+  private final String SNAPSHOTS_URI = "http://localhost:8081/api/author/v1/snapshots/latest";
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private CatalogService catalogService;
+  private ExploreService service;
+
+  @BeforeEach
+  void beforeEach() {
+    catalogService =
+      new CatalogService(
+        Mockito.mock(ApplicationEventPublisher.class),
+        new Catalog(),
+        Mockito.mock(RestOperations.class),
+        SERVICES_PATH,
+        SNAPSHOTS_URI
+      );
+    service =
+      new ExploreService(
+        catalogService,
+        new LocaleNegotiator(new String[] { "en", "es" }),
+        objectMapper,
+        true
+      );
+  }
+
+  private void refresh() {
+    catalogService.refreshServices();
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, catalogService.getCatalog()));
+  }
+
+  @Test
+  void getCatalogPayload_isRenderedAtConstruction() {
+    Payload payload = service.getCatalogPayload();
+
+    assertThat(payload).isNotNull();
+    assertThat(payload.getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    assertThat(payload.getETag()).matches("^\"[0-9a-f]{32}\"$");
+  }
+
+  @Test
+  void getCatalogPayload_containsOnlyEnabledServices() throws IOException {
+    refresh();
+
+    JsonNode catalog = objectMapper.readTree(service.getCatalogPayload().getBody());
+
+    // note that these assertions are only true based on the current content of the test data
+    assertThat(catalog.get("rank")).extracting(JsonNode::asText).containsExactly("ONE", "TWO");
+    assertThat(catalog.get("services").has("ONE")).isTrue();
+    assertThat(catalog.get("services").has("TWO")).isFalse();
+  }
+
+  @Test
+  void getCatalogPayload_containsParsedFormulas() throws IOException {
+    refresh();
+
+    JsonNode catalog = objectMapper.readTree(service.getCatalogPayload().getBody());
+
+    JsonNode formulaAst = catalog.get("services").get("ONE").get("formulaAst");
+    assertThat(formulaAst.get("version").asInt()).isEqualTo(FormulaAst.VERSION);
+    assertThat(formulaAst.get("tree").asBoolean()).isTrue();
+  }
+
+  @Test
+  void getCatalogPayload_withoutParsedFormulas_omitsFormulaAst() throws IOException {
+    service =
+      new ExploreService(
+        catalogService,
+        new LocaleNegotiator(new String[] { "en", "es" }),
+        objectMapper,
+        false
+      );
+    refresh();
+
+    JsonNode catalog = objectMapper.readTree(service.getCatalogPayload().getBody());
+
+    assertThat(catalog.get("services").get("ONE").has("formula")).isTrue();
+    assertThat(catalog.get("services").get("ONE").has("formulaAst")).isFalse();
+  }
+
+  @Test
+  void getCatalogPayload_isReusedUntilCatalogUpdated() {
+    Payload initial = service.getCatalogPayload();
+    assertThat(service.getCatalogPayload()).isSameAs(initial);
+
+    refresh();
+
+    assertThat(service.getCatalogPayload()).isNotSameAs(initial);
+    assertThat(service.getCatalogPayload().getETag()).isNotEqualTo(initial.getETag());
+  }
+
+  @Test
+  void getCatalogPayload_hasStableETagForSameContent() {
+    refresh();
+    String eTag = service.getCatalogPayload().getETag();
+
+    service.onCatalogUpdated(new CatalogUpdatedEvent(this, catalogService.getCatalog()));
+
+    assertThat(service.getCatalogPayload().getETag()).isEqualTo(eTag);
+  }
+
+  @Test
+  void getLocalePayload_rendersBundlesForCatalogLanguages() throws IOException {
+    refresh();
+
+    Payload payload = service.getLocalePayload("en", ExploreService.SERVICES);
+    assertThat(payload).isSameAs(service.getLocalePayload("en", ExploreService.SERVICES));
+
+    JsonNode services = objectMapper.readTree(payload.getBody());
+    assertThat(services.has("ONE")).isTrue();
+    assertThat(services.has("TWO")).isTrue();
+    assertThat(services.get("ONE").isObject()).isTrue();
+
+    JsonNode catalog = objectMapper.readTree(
+      service.getLocalePayload("en", ExploreService.CATALOG).getBody()
+    );
+    assertThat(catalog.has("ONE")).isTrue();
+  }
+
+  @Test
+  void getLocalePayload_rendersBundlesForSupportedLanguages() throws IOException {
+    refresh();
+
+    // the test data has no Spanish resources, but Spanish is supported so it is prerendered
+    Payload payload = service.getLocalePayload("es", ExploreService.SERVICES);
+    assertThat(payload).isSameAs(service.getLocalePayload("es", ExploreService.SERVICES));
+    assertThat(objectMapper.readTree(payload.getBody()).get("ONE").isNull()).isTrue();
+  }
+
+  @Test
+  void getLocalePayload_withUnknownLanguage_throws() {
+    refresh();
+
+    assertThatThrownBy(() -> service.getLocalePayload("xx", ExploreService.SERVICES))
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("LANGUAGE_NOT_SUPPORTED");
+  }
+}
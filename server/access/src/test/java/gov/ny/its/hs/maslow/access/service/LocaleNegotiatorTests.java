@@ -0,0 +1,56 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class LocaleNegotiatorTests {
+  private final LocaleNegotiator negotiator = new LocaleNegotiator(
+    new String[] { "en", "es", "zh", "ru", "ko", "ht", "bn" }
+  );
+
+  @Test
+  void negotiate_withoutHeader_returnsFallback() {
+    assertThat(negotiator.negotiate(null)).isEqualTo("en");
+    assertThat(negotiator.negotiate("")).isEqualTo("en");
+  }
+
+  @Test
+  void negotiate_matchesExactLocale() {
+    assertThat(negotiator.negotiate("es")).isEqualTo("es");
+    assertThat(negotiator.negotiate("KO")).isEqualTo("ko");
+  }
+
+  @Test
+  void negotiate_truncatesRangesToSupportedLocale() {
+    assertThat(negotiator.negotiate("es-419")).isEqualTo("es");
+    assertThat(negotiator.negotiate("zh-Hant-TW")).isEqualTo("zh");
+    assertThat(negotiator.negotiate("ht-x-kreyol")).isEqualTo("ht");
+  }
+
+  @Test
+  void negotiate_respectsQualityValues() {
+    assertThat(negotiator.negotiate("fr-CA, fr;q=0.9, ru;q=0.5, es;q=0.7")).isEqualTo("es");
+    assertThat(negotiator.negotiate("bn;q=0, ko;q=0.1")).isEqualTo("ko");
+  }
+
+  @Test
+  void negotiate_withUnsupportedOrMalformedHeader_returnsFallback() {
+    assertThat(negotiator.negotiate("fr, de")).isEqualTo("en");
+    assertThat(negotiator.negotiate("*")).isEqualTo("en");
+    assertThat(negotiator.negotiate("es;q=abc")).isEqualTo("en");
+  }
+
+  @Test
+  void negotiate_returnsSameResultForRepeatedHeader() {
+    assertThat(negotiator.negotiate("ru-RU, en;q=0.5")).isEqualTo("ru");
+    assertThat(negotiator.negotiate("ru-RU, en;q=0.5")).isEqualTo("ru");
+  }
+
+  @Test
+  void constructor_withoutLocales_throws() {
+    assertThatThrownBy(() -> new LocaleNegotiator(new String[0]))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,58 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.decoder.Decoder;
+import com.google.common.base.Strings;
+import gov.ny.its.hs.maslow.access.model.Payload;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+
+public class PayloadEncoderTests {
+  private final byte[] LARGE_BODY =
+    ("{\"key\":\"" + Strings.repeat("value ", 200) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void encode_addsGzipVariantOfSameContent() throws IOException {
+    Payload payload = PayloadEncoder.encode(MediaType.APPLICATION_JSON, LARGE_BODY, 0L);
+
+    Payload.Variant gzip = payload.getVariants().get(PayloadEncoder.GZIP);
+    assertThat(gzip).isNotNull();
+    assertThat(gzip.getBody().length).isLessThan(LARGE_BODY.length);
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))) {
+      assertThat(StreamUtils.copyToByteArray(in)).isEqualTo(LARGE_BODY);
+    }
+  }
+
+  @Test
+  void encode_addsBrotliVariantOfSameContent() throws IOException {
+    Payload payload = PayloadEncoder.encode(MediaType.APPLICATION_JSON, LARGE_BODY, 0L);
+
+    // brotli relies on a native library, which may not be available on every platform
+    if (Brotli4jLoader.isAvailable()) {
+      Payload.Variant brotli = payload.getVariants().get(PayloadEncoder.BROTLI);
+      assertThat(brotli).isNotNull();
+      assertThat(Decoder.decompress(brotli.getBody()).getDecompressedData()).isEqualTo(LARGE_BODY);
+      assertThat(payload.select("gzip, br")).isSameAs(brotli);
+    } else {
+      assertThat(payload.getVariants()).doesNotContainKey(PayloadEncoder.BROTLI);
+    }
+  }
+
+  @Test
+  void encode_skipsSmallBodies() {
+    Payload payload = PayloadEncoder.encode(
+      MediaType.APPLICATION_JSON,
+      "{}".getBytes(StandardCharsets.UTF_8),
+      0L
+    );
+
+    assertThat(payload.getVariants()).containsOnlyKeys(Payload.IDENTITY);
+  }
+}
@@ -0,0 +1,108 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.client.RestOperations;
+
+public class ServicesFileWatcherTests {
+  private final String SERVICES_PATH = "src/test/resources/services.json";
+
+  private Path directory;
+  private Path servicesPath;
+  private CatalogService catalogService;
+  private ServicesFileWatcher watcher;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory(getClass().getSimpleName());
+    servicesPath = directory.resolve("services.json");
+    catalogService =
+      new CatalogService(
+        Mockito.mock(ApplicationEventPublisher.class),
+        new Catalog(),
+        Mockito.mock(RestOperations.class),
+        servicesPath.toString(),
+        null
+      );
+    watcher = new ServicesFileWatcher(catalogService, true, 50L);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    watcher.shutdown();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * Waits up to 10 seconds for a condition, since file system events are delivered asynchronously.
+   */
+  static boolean await(Supplier<Boolean> condition) throws InterruptedException {
+    for (int i = 0; i < 200 && !condition.get(); i++) {
+      Thread.sleep(50L);
+    }
+    return condition.get();
+  }
+
+  @Test
+  void start_refreshesExistingFile() throws IOException {
+    Files.copy(Paths.get(SERVICES_PATH), servicesPath);
+
+    watcher.start();
+
+    assertThat(catalogService.getCatalog().getRank()).containsExactly("ONE", "TWO");
+  }
+
+  @Test
+  void start_refreshesReplacedFile() throws IOException, InterruptedException {
+    watcher.start();
+    assertThat(catalogService.getCatalog().getRank()).isEmpty();
+
+    Path temporaryPath = directory.resolve("services.json.tmp");
+    Files.copy(Paths.get(SERVICES_PATH), temporaryPath);
+    Files.move(temporaryPath, servicesPath, StandardCopyOption.ATOMIC_MOVE);
+
+    assertThat(await(() -> catalogService.getCatalog().getRank().size() == 2)).isTrue();
+  }
+
+  @Test
+  void start_refreshesOnceFileIsComplete() throws IOException, InterruptedException {
+    watcher.start();
+
+    Files.write(servicesPath, "{\"rank\":[\"ONE\"],\"services\":".getBytes(UTF_8));
+    Files.write(
+      servicesPath,
+      "{\"rank\":[\"ONE\"],\"services\":{\"ONE\":{\"enabled\":true}}}".getBytes(UTF_8)
+    );
+
+    assertThat(await(() -> catalogService.getCatalog().getRank().size() == 1)).isTrue();
+    assertThat(catalogService.getCatalog().getRank()).containsExactly("ONE");
+  }
+
+  @Test
+  void start_ignoresOtherFiles() throws IOException, InterruptedException {
+    watcher.start();
+    long version = catalogService.getCatalog().getVersion();
+
+    Files.copy(Paths.get(SERVICES_PATH), directory.resolve("other.json"));
+    Thread.sleep(500L);
+
+    assertThat(catalogService.getCatalog().getVersion()).isEqualTo(version);
+  }
+}
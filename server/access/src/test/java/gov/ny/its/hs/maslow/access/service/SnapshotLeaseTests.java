@@ -0,0 +1,91 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotLeaseTests {
+  private static final long STALE_AFTER = 200L;
+
+  private Path directory;
+  private SnapshotLease leader;
+  private SnapshotLease follower;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory(getClass().getSimpleName());
+    Path servicesPath = directory.resolve("services.json");
+    leader = new SnapshotLease(servicesPath, STALE_AFTER);
+    follower = new SnapshotLease(servicesPath, STALE_AFTER);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    leader.release();
+    follower.release();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void acquire_whileLeaderRenews_returnsFalse() throws InterruptedException {
+    assertThat(leader.acquire()).isTrue();
+
+    for (int i = 0; i < 3; i++) {
+      Thread.sleep(STALE_AFTER / 2);
+      leader.renew();
+      assertThat(follower.acquire()).isFalse();
+    }
+  }
+
+  @Test
+  void acquire_withStaleRenewal_takesOverUntilLeaderRenews() throws InterruptedException {
+    assertThat(leader.acquire()).isTrue();
+    assertThat(follower.acquire()).isFalse();
+
+    Thread.sleep(STALE_AFTER * 2);
+
+    // the leader still holds the lock, but has not renewed the lease
+    assertThat(leader.acquire()).isTrue();
+    assertThat(follower.acquire()).isTrue();
+    follower.renew();
+    assertThat(follower.acquire()).isTrue();
+
+    leader.renew();
+    assertThat(follower.acquire()).isFalse();
+  }
+
+  @Test
+  void renew_writesHolderAndTime() throws IOException {
+    assertThat(leader.acquire()).isTrue();
+    long before = System.currentTimeMillis();
+
+    leader.renew();
+
+    String[] renewal = new String(Files.readAllBytes(leader.getLockPath()), UTF_8).split(" ");
+    assertThat(renewal[0]).contains("@");
+    assertThat(Long.parseLong(renewal[1])).isGreaterThanOrEqualTo(before);
+  }
+
+  @Test
+  void handOver_releasesLeaseToFollower() {
+    assertThat(leader.acquire()).isTrue();
+    assertThat(follower.acquire()).isFalse();
+
+    leader.handOver();
+
+    // the former leader does not take the lease back before the follower tries it
+    assertThat(leader.acquire()).isFalse();
+    assertThat(follower.acquire()).isTrue();
+    assertThat(leader.acquire()).isFalse();
+  }
+}
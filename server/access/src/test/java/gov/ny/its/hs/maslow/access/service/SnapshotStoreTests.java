@@ -0,0 +1,98 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotStoreTests {
+  private Path directory;
+  private Path servicesPath;
+  private SnapshotStore store;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory(getClass().getSimpleName());
+    servicesPath = directory.resolve("services.json");
+    store = new SnapshotStore(servicesPath, 2);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * Writes content to the services file and adds it to the store.
+   */
+  HashCode add(String content) throws IOException {
+    Files.write(servicesPath, content.getBytes(UTF_8));
+    HashCode hash = Hashing.sha256().hashBytes(content.getBytes(UTF_8));
+    store.add(servicesPath, hash);
+    return hash;
+  }
+
+  @Test
+  void list_withoutStore_returnsEmpty() throws IOException {
+    assertThat(store.list()).isEmpty();
+  }
+
+  @Test
+  void add_keepsNewestGenerations() throws IOException {
+    add("1");
+    HashCode second = add("2");
+    HashCode third = add("3");
+
+    List<SnapshotStore.Generation> generations = store.list();
+    assertThat(generations).extracting(SnapshotStore.Generation::getNumber).containsExactly(3L, 2L);
+    assertThat(generations)
+      .extracting(SnapshotStore.Generation::getHash)
+      .containsExactly(third.toString(), second.toString());
+    assertThat(new String(store.read(generations.get(0)), UTF_8)).isEqualTo("3");
+  }
+
+  @Test
+  void add_withSameContent_skipsGeneration() throws IOException {
+    add("1");
+    add("1");
+
+    assertThat(store.list()).hasSize(1);
+  }
+
+  @Test
+  void add_removesTemporaryFilesLeftByCrash() throws IOException {
+    Files.createDirectories(store.getDirectory());
+    Files.write(store.getDirectory().resolve("generation123.tmp"), "{".getBytes(UTF_8));
+
+    add("1");
+
+    try (Stream<Path> paths = Files.list(store.getDirectory())) {
+      List<String> names = paths
+        .map(path -> path.getFileName().toString())
+        .collect(Collectors.toList());
+      assertThat(names).hasSize(1).allMatch(name -> name.endsWith(".json"));
+    }
+  }
+
+  @Test
+  void read_withCorruptGeneration_returnsNull() throws IOException {
+    add("1");
+    SnapshotStore.Generation generation = store.list().get(0);
+    Files.write(generation.getPath(), "2".getBytes(UTF_8));
+
+    assertThat(store.read(generation)).isNull();
+  }
+}
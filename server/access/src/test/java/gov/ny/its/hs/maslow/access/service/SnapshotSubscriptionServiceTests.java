@@ -0,0 +1,169 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestOperations;
+
+public class SnapshotSubscriptionServiceTests {
+  private final URI EVENTS_URI = URI.create("http://localhost:8081/api/author/v1/snapshots/events");
+  private final URI BACKUP_EVENTS_URI = URI.create(
+    "http://localhost:8082/api/author/v1/snapshots/events"
+  );
+
+  private CatalogService catalogService;
+  private RestOperations restOperations;
+  private SnapshotSubscriptionService service;
+
+  @BeforeEach
+  void beforeEach() {
+    catalogService = Mockito.mock(CatalogService.class);
+    restOperations = Mockito.mock(RestOperations.class);
+    service =
+      new SnapshotSubscriptionService(
+        catalogService,
+        restOperations,
+        Arrays.asList(EVENTS_URI, BACKUP_EVENTS_URI),
+        0L
+      );
+  }
+
+  /**
+   * Mocks the stream of events of Maslow Author, passing it to the response extractor like
+   * RestTemplate.
+   */
+  @SuppressWarnings("unchecked")
+  void respond(HttpStatus status, String events) {
+    when(
+        restOperations.execute(
+          eq(EVENTS_URI),
+          eq(HttpMethod.GET),
+          any(RequestCallback.class),
+          any(ResponseExtractor.class)
+        )
+      )
+      .thenAnswer(
+        invocation -> {
+          invocation.<RequestCallback>getArgument(2).doWithRequest(new MockClientHttpRequest());
+          return invocation
+            .<ResponseExtractor<Void>>getArgument(3)
+            .extractData(new MockClientHttpResponse(events.getBytes(UTF_8), status));
+        }
+      );
+  }
+
+  @Test
+  void subscribe_fetchesAnnouncedSnapshots() {
+    when(catalogService.getSnapshotVersion()).thenReturn("1");
+    respond(
+      HttpStatus.OK,
+      "event:snapshot\nid:1\ndata:1\n\n:heartbeat\n\nevent: snapshot\nid: 2\ndata: 2\n\n"
+    );
+
+    service.subscribe();
+
+    // the latest snapshot was already fetched, so only the next one is
+    verify(catalogService, times(1)).fetchServicesSnapshot();
+    // the heartbeat renews the lease
+    verify(catalogService, times(1)).renewLease();
+  }
+
+  @Test
+  void subscribe_ignoresOtherEventsAndIncompleteEvents() {
+    respond(HttpStatus.OK, "event:other\ndata:2\n\n:heartbeat\n\nevent:snapshot\ndata:3");
+
+    service.subscribe();
+
+    verify(catalogService, never()).fetchServicesSnapshot();
+  }
+
+  @Test
+  void subscribe_pausesPollingWhileSubscribed() {
+    respond(HttpStatus.OK, ":heartbeat\n\n");
+
+    service.subscribe();
+
+    InOrder inOrder = inOrder(catalogService);
+    inOrder.verify(catalogService).setSubscribed(true);
+    inOrder.verify(catalogService).setSubscribed(false);
+  }
+
+  @Test
+  void subscribe_withHttpNotFound_keepsPolling() {
+    respond(HttpStatus.NOT_FOUND, "");
+
+    service.subscribe();
+
+    verify(catalogService, never()).setSubscribed(true);
+    verify(catalogService).setSubscribed(false);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void subscribe_withResourceAccessException_keepsPolling() {
+    when(
+        restOperations.execute(
+          eq(EVENTS_URI),
+          eq(HttpMethod.GET),
+          any(RequestCallback.class),
+          any(ResponseExtractor.class)
+        )
+      )
+      .thenThrow(new ResourceAccessException("Read timed out"));
+
+    service.subscribe();
+
+    verify(catalogService, never()).setSubscribed(true);
+    verify(catalogService).setSubscribed(false);
+    verify(catalogService, never()).fetchServicesSnapshot();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void subscribe_afterDrop_subscribesToNextUpstream() {
+    when(
+        restOperations.execute(
+          any(URI.class),
+          eq(HttpMethod.GET),
+          any(RequestCallback.class),
+          any(ResponseExtractor.class)
+        )
+      )
+      .thenThrow(new ResourceAccessException("Connection refused"));
+
+    service.subscribe();
+    service.subscribe();
+    service.subscribe();
+
+    InOrder inOrder = inOrder(restOperations);
+    for (URI uri : Arrays.asList(EVENTS_URI, BACKUP_EVENTS_URI, EVENTS_URI)) {
+      inOrder
+        .verify(restOperations)
+        .execute(
+          eq(uri),
+          eq(HttpMethod.GET),
+          any(RequestCallback.class),
+          any(ResponseExtractor.class)
+        );
+    }
+  }
+}
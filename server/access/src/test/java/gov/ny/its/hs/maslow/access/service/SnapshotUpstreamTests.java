@@ -0,0 +1,53 @@
+package gov.ny.its.hs.maslow.access.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotUpstreamTests {
+  private SnapshotUpstream upstream;
+
+  @BeforeEach
+  void beforeEach() {
+    // The circuit allows a trial as soon as it opens.
+    upstream = new SnapshotUpstream(URI.create("http://localhost/api/snapshots/"), 2, 0L);
+  }
+
+  @Test
+  void isOpen_afterFailuresBelowThreshold_returnsFalse() {
+    assertThat(upstream.tryFetch()).isTrue();
+    upstream.recordFailure();
+
+    assertThat(upstream.isOpen()).isFalse();
+    assertThat(upstream.tryFetch()).isTrue();
+  }
+
+  @Test
+  void tryFetch_withTrialInFlight_returnsFalse() {
+    upstream.recordFailure();
+    upstream.recordFailure();
+
+    // a hedged fetch that lost may still be running the trial
+    assertThat(upstream.tryFetch()).isTrue();
+    assertThat(upstream.isOpen()).isTrue();
+    assertThat(upstream.tryFetch()).isFalse();
+
+    upstream.recordFailure();
+    assertThat(upstream.tryFetch()).isTrue();
+  }
+
+  @Test
+  void recordSuccess_afterTrial_closesCircuit() {
+    upstream.recordFailure();
+    upstream.recordFailure();
+    assertThat(upstream.tryFetch()).isTrue();
+
+    upstream.recordSuccess();
+
+    assertThat(upstream.isOpen()).isFalse();
+    assertThat(upstream.tryFetch()).isTrue();
+    assertThat(upstream.tryFetch()).isTrue();
+  }
+}
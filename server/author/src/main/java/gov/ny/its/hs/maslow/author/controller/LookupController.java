@@ -1,25 +1,50 @@
 package gov.ny.its.hs.maslow.author.controller;
 
+import com.google.common.collect.ImmutableList;
 import gov.ny.its.hs.maslow.author.model.Survey;
-import java.util.ArrayList;
+import gov.ny.its.hs.maslow.author.service.ServiceService;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
  * Defines the REST controller for static data lookups used by Maslow Author.
+ *
+ * The API currently defines the following endpoints:
+ * - /api/author/v1/lookup/questions
+ *   - GET: returns the keys of the questions of the survey
+ * - /api/author/v1/lookup/questions/{key}/services
+ *   - GET: returns the keys of the services whose formulas refer to the question {@code key}
+ * - /api/author/v1/lookup/services/{key}/questions
+ *   - GET: returns the keys of the questions that the formula of the service {@code key} refers to
  */
 @RestController
 @RequestMapping("api/author/v1/lookup")
 @Slf4j
 public class LookupController {
-  @Autowired
-  private Survey survey;
+  private final ServiceService impl;
+
+  /** The question keys of the survey, which is configuration and therefore never changes */
+  private final List<String> questionKeys;
+
+  /**
+   * Constructs the {@link LookupController} component.
+   */
+  public LookupController(Survey survey, ServiceService impl) {
+    super();
+    this.impl = impl;
+
+    ImmutableList.Builder<String> questionKeys = ImmutableList.builder();
+    for (Map<String, List<String>> section : survey.getSurvey()) {
+      questionKeys.addAll(section.values().iterator().next());
+    }
+    this.questionKeys = questionKeys.build();
+  }
 
   /**
    * Returns the collection of question keys configured by Maslow Access. The question keys are
@@ -29,13 +54,30 @@ public class LookupController {
   public Collection<String> selectQuestionKeys() {
     log.debug("selecting question keys");
 
-    List<String> questionKeys = new ArrayList<>();
+    return questionKeys;
+  }
 
-    for (Map<String, List<String>> section : survey.getSurvey()) {
-      Collection<String> values = section.values().iterator().next();
-      questionKeys.addAll(values);
-    }
+  /**
+   * Returns the keys of the services whose formulas refer to the question identified by
+   * {@code key}, that is, the services affected by a change to the question.
+   *
+   * @param key the key of the question
+   * @return the keys of the services, sorted by key
+   */
+  @GetMapping("questions/{key}/services")
+  public Collection<String> selectQuestionServices(@PathVariable("key") String key) {
+    return impl.selectQuestionServices(key);
+  }
 
-    return questionKeys;
+  /**
+   * Returns the keys of the questions that the formula of the service identified by {@code key}
+   * refers to.
+   *
+   * @param key the key of the service
+   * @return the keys of the questions, in the order in which they appear in the formula
+   */
+  @GetMapping("services/{key}/questions")
+  public Collection<String> selectServiceQuestions(@PathVariable("key") String key) {
+    return impl.selectServiceQuestions(key);
   }
 }
@@ -0,0 +1,76 @@
+package gov.ny.its.hs.maslow.author.controller;
+
+import gov.ny.its.hs.maslow.author.model.PersonaMatrix;
+import gov.ny.its.hs.maslow.author.model.PersonaMatrixDiff;
+import gov.ny.its.hs.maslow.author.service.PersonaMatrixService;
+import java.util.Map;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Defines the REST controller for the test personas of Maslow Author, which show the effect of
+ * edits on the eligibility of realistic households.
+ *
+ * The API currently defines the following endpoints:
+ * - /api/author/v1/personas
+ *   - GET: returns the responses of each persona
+ * - /api/author/v1/personas/matrix
+ *   - GET: returns the eligibility of every persona for the latest version of the services
+ * - /api/author/v1/personas/matrix/diff
+ *   - GET: returns the changes in eligibility since the previous version of the services
+ */
+@RestController
+@RequestMapping("api/author/v1/personas")
+public class PersonaController {
+  private final PersonaMatrixService impl;
+
+  /**
+   * Constructs the {@link PersonaController} component.
+   */
+  public PersonaController(PersonaMatrixService impl) {
+    super();
+    this.impl = impl;
+  }
+
+  /**
+   * Returns the responses of each persona, by name.
+   */
+  @GetMapping
+  public Map<String, Map<String, Object>> selectPersonas() {
+    return impl.selectPersonas();
+  }
+
+  /**
+   * Returns the eligibility of every persona for the latest version of the services.
+   *
+   * @return the {@link PersonaMatrix} as a {@link ResponseEntity}, tagged with its version
+   */
+  @GetMapping("matrix")
+  public ResponseEntity<PersonaMatrix> selectMatrix() {
+    PersonaMatrix matrix = impl.selectMatrix();
+    return ResponseEntity
+      .ok()
+      .cacheControl(CacheControl.noCache())
+      .eTag(String.valueOf(matrix.getVersion()))
+      .body(matrix);
+  }
+
+  /**
+   * Returns the changes in eligibility of the personas between the latest version of the services
+   * and the version before it.
+   *
+   * @return the {@link PersonaMatrixDiff} as a {@link ResponseEntity}, tagged with its version
+   */
+  @GetMapping("matrix/diff")
+  public ResponseEntity<PersonaMatrixDiff> selectDiff() {
+    PersonaMatrixDiff diff = impl.selectDiff();
+    return ResponseEntity
+      .ok()
+      .cacheControl(CacheControl.noCache())
+      .eTag(String.valueOf(diff.getVersion()))
+      .body(diff);
+  }
+}
@@ -1,69 +1,128 @@
 package gov.ny.its.hs.maslow.author.controller;
 
 import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.service.SnapshotDeltaService;
+import gov.ny.its.hs.maslow.author.service.SnapshotEventService;
+import gov.ny.its.hs.maslow.shared.model.ServicesDelta;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
-import org.springframework.data.domain.Sort.Direction;
-import org.springframework.data.mongodb.core.MongoOperations;
-import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Defines a REST controller for Maslow Author that returns the latest snapshot of services data.
  * This API is primarily used by Maslow Access to retrieve the edits made in Maslow Author.
  *
- * The API currently defines the following endpoint:
- * - /api/author/v1/snapshots
- *   - GET: returns the latest snapshot
+ * The API currently defines the following endpoints:
+ * - /api/author/v1/snapshots/latest
+ *   - GET: returns the latest snapshot, tagged with its version
+ * - /api/author/v1/snapshots/delta?since={version}
+ *   - GET: returns the changes from the snapshot of a version to the latest snapshot
+ * - /api/author/v1/snapshots/events
+ *   - GET: subscribes to the versions of new snapshots, as Server-Sent Events
  */
 @RestController
 @RequestMapping("api/author/v1/snapshots")
 @Slf4j
 public class SnapshotController {
-  /** The configured MongoOperations for database operations */
-  private final MongoOperations mongo;
+  private final SnapshotDeltaService impl;
+  private final SnapshotEventService events;
 
   /**
-   * Constructs the {@link ServiceController} component.
-   *
-   * @param mongoOperations the MongoOperations for database operations; injected by Spring Boot.
+   * Constructs the {@link SnapshotController} component.
    */
-  public SnapshotController(MongoOperations mongoOperations) {
+  public SnapshotController(SnapshotDeltaService impl, SnapshotEventService events) {
     super();
-    this.mongo = mongoOperations;
+    this.impl = impl;
+    this.events = events;
   }
 
   /**
    * Returns the latest snapshot of the database. The response format is a {@link SnapshotDocument},
-   * which is a subset of {@link Catalog} and is compatible with what Maslow Access expects.
+   * which is a subset of {@link Catalog} and is compatible with what Maslow Access expects. The
+   * ETag of the response is the version of the snapshot, which Maslow Access passes to
+   * {@link #selectSnapshotDelta(String)}. The ETag is weak, since Tomcat does not compress
+   * responses with a strong ETag, and a compressed response is not byte-for-byte the snapshot.
    */
   @GetMapping("latest")
   public ResponseEntity<SnapshotDocument> selectLatestSnapshot() {
     log.debug("Selecting the latest services snapshot...");
 
-    // The maslow.servicesSnapshots collection is configured as a capped collection, meaning it is
-    // effectively a fixed-size circular deque. We leverage this fact to efficiently query the tail
-    // of the collection by "db.servicesSnapshots.find().sort({$natural: -1}).limit(1)".
+    SnapshotDocument document = selectLatest();
+    return ResponseEntity
+      .ok()
+      .cacheControl(CacheControl.noCache())
+      .eTag(eTag(document.getId().toHexString()))
+      .lastModified(document.getCreated())
+      .body(document);
+  }
+
+  /**
+   * Returns the changes from the snapshot of a version to the latest snapshot. The response is 304
+   * (Not Modified) if the version is the latest, and 410 (Gone) if the snapshot of the version is
+   * no longer available, in which case the latest snapshot should be fetched in full.
+   *
+   * @param since the version of the snapshot held by the client
+   * @return the {@link ServicesDelta} as a {@link ResponseEntity}, tagged with the latest version
+   *         as a weak ETag
+   */
+  @GetMapping("delta")
+  public ResponseEntity<ServicesDelta> selectSnapshotDelta(@RequestParam("since") String since) {
+    log.debug("Selecting the services snapshot delta since {}...", since);
+
+    SnapshotDocument latest = selectLatest();
+    String version = latest.getId().toHexString();
+    if (version.equals(since)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(version)).build();
+    }
+
+    SnapshotDocument base = impl.selectSnapshot(since);
+    if (base == null) {
+      log.debug("Snapshot {} not found.", since);
 
-    SnapshotDocument document = mongo.findOne(
-      new Query().with(Sort.by(Direction.DESC, "$natural")),
-      SnapshotDocument.class
-    );
+      throw new ResponseStatusException(
+        HttpStatus.GONE,
+        "SNAPSHOT_GONE: The snapshot of the version was no longer available."
+      );
+    }
+
+    return ResponseEntity
+      .ok()
+      .cacheControl(CacheControl.noCache())
+      .eTag(eTag(version))
+      .lastModified(latest.getCreated())
+      .body(impl.diff(base, latest));
+  }
+
+  /**
+   * Subscribes to the versions of new snapshots. A `snapshot` event is sent with the version of
+   * the latest snapshot upon subscribing, and again whenever a snapshot is created (see
+   * {@link SnapshotEventService}).
+   */
+  @GetMapping(path = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter subscribeSnapshots() {
+    log.debug("Subscribing to services snapshots...");
+
+    return events.subscribe();
+  }
+
+  /**
+   * Formats the version of a snapshot as a weak ETag (see {@link #selectLatestSnapshot()}).
+   */
+  private static String eTag(String version) {
+    return String.format("W/\"%s\"", version);
+  }
 
-    if (document != null) {
-      return ResponseEntity
-        .ok()
-        .cacheControl(CacheControl.noCache())
-        .eTag(Integer.toHexString(document.hashCode()))
-        .lastModified(document.getCreated())
-        .body(document);
-    } else {
+  private SnapshotDocument selectLatest() {
+    SnapshotDocument document = impl.selectLatestSnapshot();
+    if (document == null) {
       log.debug("Snapshot not found.");
 
       throw new ResponseStatusException(
@@ -71,5 +130,6 @@ public class SnapshotController {
         "SNAPSHOT_NOT_FOUND: No snapshot of services data was available."
       );
     }
+    return document;
   }
 }
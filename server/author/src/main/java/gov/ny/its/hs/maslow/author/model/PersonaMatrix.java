@@ -0,0 +1,40 @@
+package gov.ny.its.hs.maslow.author.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Singular;
+
+/**
+ * Represents the eligibility of every test persona for every enabled service of a version of the
+ * {@link ServiceDocument}, so that editors can see the effect of an edit on realistic households
+ * before it reaches Maslow Access.
+ */
+@Builder(toBuilder = true)
+@Data
+public class PersonaMatrix {
+  /**
+   * The version of the {@link ServiceDocument} that was evaluated.
+   */
+  private Long version;
+
+  /**
+   * The date when the evaluated {@link ServiceDocument} was last modified.
+   */
+  private Instant modified;
+
+  /**
+   * The keys of the enabled services in order of their rank.
+   */
+  @Singular
+  private List<String> services;
+
+  /**
+   * Maps the name of each persona to the keys of the services it is eligible for, in order of
+   * their rank.
+   */
+  @Singular("eligibleEntry")
+  private Map<String, List<String>> eligible;
+}
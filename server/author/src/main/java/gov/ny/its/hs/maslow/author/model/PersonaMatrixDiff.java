@@ -0,0 +1,52 @@
+package gov.ny.its.hs.maslow.author.model;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Singular;
+
+/**
+ * Represents the changes in eligibility of the test personas between two versions of the
+ * {@link ServiceDocument}. Only the personas whose eligibility changed are included.
+ */
+@Builder(toBuilder = true)
+@Data
+public class PersonaMatrixDiff {
+  /**
+   * The version of the {@link ServiceDocument} after the changes.
+   */
+  private Long version;
+
+  /**
+   * The version of the {@link ServiceDocument} before the changes, or null if no previous version
+   * was evaluated (in which case there are no changes).
+   */
+  private Long previousVersion;
+
+  /**
+   * Maps the name of each persona whose eligibility changed to its changes.
+   */
+  @Singular
+  private Map<String, Change> personas;
+
+  /**
+   * Represents the changes in eligibility of a single persona.
+   */
+  @Builder
+  @Data
+  public static class Change {
+    /**
+     * The keys of the services the persona became eligible for, in order of their rank.
+     */
+    @Singular("gainedEntry")
+    private List<String> gained;
+
+    /**
+     * The keys of the services the persona is no longer eligible for, in order of their previous
+     * rank.
+     */
+    @Singular("lostEntry")
+    private List<String> lost;
+  }
+}
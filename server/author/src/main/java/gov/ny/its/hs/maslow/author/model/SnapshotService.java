@@ -24,6 +24,13 @@ public class SnapshotService {
    */
   private String formula;
 
+  /**
+   * The parsed {@link #formula}, encoded as a compact tree along with the version of its format
+   * (see {@link gov.ny.its.hs.maslow.shared.formula.FormulaAst}), so that residents' browsers do
+   * not need to parse it. Absent if the service has no formula, or a formula that cannot be parsed.
+   */
+  private Map<String, Object> formulaAst;
+
   /**
    * The URL where residents can apply for the service.
    */
@@ -0,0 +1,154 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import gov.ny.its.hs.maslow.author.model.Service;
+import gov.ny.its.hs.maslow.author.model.ServiceDocument;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indexes the questions that the formula of each service refers to, and the services whose
+ * formulas refer to each question, so that lookups are served from memory rather than by scanning
+ * and parsing every formula of the {@link ServiceDocument}.
+ *
+ * The index is updated from each saved version of the document. Only the formulas whose text
+ * changed since the previous version are parsed again, and a version that is already indexed is
+ * skipped. The index itself is immutable and replaced as a whole, so that lookups never lock.
+ */
+@Component
+@Slf4j
+public class FormulaDependencyIndex {
+  /**
+   * An immutable version of the index.
+   */
+  private static final class Entries {
+    static final Entries EMPTY = new Entries(
+      null,
+      ImmutableMap.of(),
+      ImmutableSetMultimap.of(),
+      ImmutableSetMultimap.of()
+    );
+
+    /** The version of the indexed document, or null if no document has been indexed. */
+    final Long version;
+    /** Maps the key of each service to its formula, or to an empty string if it has none. */
+    final Map<String, String> formulas;
+    final ImmutableSetMultimap<String, String> questionsByService;
+    final ImmutableSetMultimap<String, String> servicesByQuestion;
+
+    Entries(
+      Long version,
+      Map<String, String> formulas,
+      ImmutableSetMultimap<String, String> questionsByService,
+      ImmutableSetMultimap<String, String> servicesByQuestion
+    ) {
+      this.version = version;
+      this.formulas = formulas;
+      this.questionsByService = questionsByService;
+      this.servicesByQuestion = servicesByQuestion;
+    }
+  }
+
+  private volatile Entries entries = Entries.EMPTY;
+  private volatile boolean indexed;
+
+  /**
+   * Gets whether a document has been indexed yet.
+   */
+  public boolean isIndexed() {
+    return indexed;
+  }
+
+  /**
+   * Gets the version of the indexed document, or null if no document has been indexed.
+   */
+  public Long getVersion() {
+    return entries.version;
+  }
+
+  /**
+   * Updates the index with the services of {@code document}.
+   *
+   * @param document the saved document
+   */
+  public synchronized void update(ServiceDocument document) {
+    Entries current = entries;
+    if (indexed && document.getVersion() != null && document.getVersion().equals(current.version)) {
+      return;
+    }
+
+    // services are indexed in key order, so that the services of a question are sorted by key
+    Map<String, Service> services = new TreeMap<>(document.getServices());
+    ImmutableMap.Builder<String, String> formulas = ImmutableMap.builder();
+    ImmutableSetMultimap.Builder<String, String> questionsByService =
+      ImmutableSetMultimap.builder();
+    int parsed = 0;
+    for (Map.Entry<String, Service> entry : services.entrySet()) {
+      String key = entry.getKey();
+      String formula = Strings.nullToEmpty(entry.getValue().getFormula());
+      formulas.put(key, formula);
+
+      if (Objects.equals(current.formulas.get(key), formula)) {
+        questionsByService.putAll(key, current.questionsByService.get(key));
+      } else {
+        questionsByService.putAll(key, questionsOf(formula));
+        parsed++;
+      }
+    }
+
+    ImmutableSetMultimap<String, String> questions = questionsByService.build();
+    entries =
+      new Entries(document.getVersion(), formulas.build(), questions, questions.inverse());
+    indexed = true;
+
+    log.debug("Indexed formulas of version {} (parsed {} formulas)", document.getVersion(), parsed);
+  }
+
+  /**
+   * Gets the keys of the questions that the formula of a service refers to, in the order in which
+   * they first appear in the formula.
+   *
+   * @param key the key of the service
+   * @return the keys of the questions, or null if the service is not indexed
+   */
+  public Set<String> selectQuestions(String key) {
+    Entries current = entries;
+    return current.formulas.containsKey(key) ? current.questionsByService.get(key) : null;
+  }
+
+  /**
+   * Gets the keys of the services whose formulas refer to a question, sorted by key.
+   *
+   * @param key the key of the question
+   * @return the keys of the services, empty if no formula refers to the question
+   */
+  public Set<String> selectServices(String key) {
+    return entries.servicesByQuestion.get(key);
+  }
+
+  /**
+   * Gets the keys of the questions that {@code formula} refers to. Formulas saved before they were
+   * validated may not parse, in which case they refer to no question (or to the questions of the
+   * expression that the parser recovered).
+   */
+  private static Set<String> questionsOf(String formula) {
+    if (formula.isEmpty()) {
+      return ImmutableSet.of();
+    }
+
+    try {
+      return Formula.parse(formula).getIdentifiers();
+    } catch (FormulaException e) {
+      return ImmutableSet.of();
+    }
+  }
+}
@@ -0,0 +1,441 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.author.model.PersonaMatrix;
+import gov.ny.its.hs.maslow.author.model.PersonaMatrixDiff;
+import gov.ny.its.hs.maslow.author.model.Service;
+import gov.ny.its.hs.maslow.author.model.ServiceDocument;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Defines a service that evaluates every enabled service against a library of test personas (sets
+ * of responses to the survey) anytime the singleton {@link ServiceDocument} is saved, so that
+ * editors can see the effect of an edit on realistic households before it reaches Maslow Access.
+ *
+ * The personas are loaded once from the JSON file at {@code maslow.author.personas.location},
+ * which maps the name of each persona to its responses. After each save, the new version of the
+ * document is evaluated on a background thread: the formulas whose text changed since the
+ * previous version are evaluated against every persona in parallel on a dedicated fork-join pool,
+ * while the results of the other formulas are reused. The resulting {@link PersonaMatrix} and its
+ * {@link PersonaMatrixDiff} against the previous version are kept in memory, so that they are
+ * served without any evaluation. If the evaluation of a version fails, the last successful
+ * evaluation is served instead, and the document in the database is evaluated again upon the next
+ * request.
+ */
+@org.springframework.stereotype.Service
+@Slf4j
+public class PersonaMatrixService extends AbstractMongoEventListener<ServiceDocument> {
+  /** The number of personas below which a formula is evaluated by a single fork-join task. */
+  private static final int SPLIT_THRESHOLD = 64;
+
+  private static final TypeReference<LinkedHashMap<String, Map<String, Object>>> PERSONAS =
+    new TypeReference<LinkedHashMap<String, Map<String, Object>>>() {};
+
+  /**
+   * The personas that are eligible for a service, by the index of each persona in the library.
+   */
+  private static final class Column {
+    final String formula;
+    final BitSet eligible;
+
+    Column(String formula, BitSet eligible) {
+      this.formula = formula;
+      this.eligible = eligible;
+    }
+  }
+
+  /**
+   * An evaluated version of the document.
+   */
+  private static final class Evaluation {
+    final PersonaMatrix matrix;
+    final PersonaMatrixDiff diff;
+    /** Maps the key of each enabled service to its column, in order of rank. */
+    final Map<String, Column> columns;
+
+    Evaluation(PersonaMatrix matrix, PersonaMatrixDiff diff, Map<String, Column> columns) {
+      this.matrix = matrix;
+      this.diff = diff;
+      this.columns = columns;
+    }
+  }
+
+  /** The configured MongoOperations for database operations */
+  private final MongoOperations mongo;
+
+  private final List<String> names;
+  private final List<Map<String, Object>> responses;
+  private final ForkJoinPool pool;
+
+  /** Evaluates saved versions one at a time, in the order in which they were saved. */
+  private final ExecutorService executor;
+
+  private volatile Evaluation latest;
+  private final AtomicReference<CompletableFuture<Evaluation>> pending = new AtomicReference<>();
+
+  /**
+   * Constructs the {@link PersonaMatrixService} component.
+   *
+   * @param mongoOperations the MongoOperations for database operations; injected by Spring Boot.
+   * @param objectMapper the ObjectMapper used to read the personas
+   * @param location the JSON file of personas; no persona is evaluated if it does not exist
+   * @param parallelism the number of threads that evaluate personas, or 0 for one per processor
+   */
+  @Autowired
+  public PersonaMatrixService(
+    MongoOperations mongoOperations,
+    ObjectMapper objectMapper,
+    @Value("${maslow.author.personas.location:classpath:personas.json}") Resource location,
+    @Value("${maslow.author.personas.parallelism:0}") int parallelism
+  ) {
+    this(mongoOperations, readPersonas(objectMapper, location), parallelism);
+  }
+
+  /**
+   * Constructs a {@link PersonaMatrixService} with the given personas.
+   */
+  PersonaMatrixService(
+    MongoOperations mongoOperations,
+    Map<String, Map<String, Object>> personas,
+    int parallelism
+  ) {
+    super();
+    this.mongo = mongoOperations;
+    this.names = ImmutableList.copyOf(personas.keySet());
+    this.responses = new ArrayList<>(personas.values());
+    this.pool =
+      new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    this.executor = Executors.newSingleThreadExecutor();
+  }
+
+  private static Map<String, Map<String, Object>> readPersonas(
+    ObjectMapper objectMapper,
+    Resource location
+  ) {
+    if (!location.exists()) {
+      log.info("No personas found at {}", location);
+      return ImmutableMap.of();
+    }
+
+    try (InputStream input = location.getInputStream()) {
+      Map<String, Map<String, Object>> personas = objectMapper.readValue(input, PERSONAS);
+      log.info("Read {} personas from {}", personas.size(), location);
+      return personas;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Personas could not be read from " + location, e);
+    }
+  }
+
+  /**
+   * Shuts down the threads that evaluate personas.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    pool.shutdown();
+  }
+
+  /**
+   * Registers an event handler that evaluates the personas anytime the singleton
+   * {@link ServiceDocument} is saved.
+   */
+  @Override
+  public void onAfterSave(AfterSaveEvent<ServiceDocument> event) {
+    ServiceDocument document = event.getSource();
+    pending.set(CompletableFuture.supplyAsync(() -> evaluate(document), executor));
+  }
+
+  /**
+   * Returns the personas, by name.
+   */
+  public Map<String, Map<String, Object>> selectPersonas() {
+    Map<String, Map<String, Object>> personas = new LinkedHashMap<>();
+    for (int i = 0; i < names.size(); i++) {
+      personas.put(names.get(i), responses.get(i));
+    }
+    return personas;
+  }
+
+  /**
+   * Returns the eligibility of every persona for the latest saved version of the document.
+   */
+  public PersonaMatrix selectMatrix() {
+    return selectEvaluation().matrix;
+  }
+
+  /**
+   * Returns the changes in eligibility of the personas between the latest saved version of the
+   * document and the version evaluated before it.
+   */
+  public PersonaMatrixDiff selectDiff() {
+    return selectEvaluation().diff;
+  }
+
+  /**
+   * Returns the evaluation of the latest saved version, waiting for it if it is still being
+   * evaluated, or evaluating the document in the database if no version was saved since this
+   * instance started or the evaluation of the latest saved version failed. In the latter case, the
+   * last successful evaluation is returned.
+   */
+  private Evaluation selectEvaluation() {
+    CompletableFuture<Evaluation> current = pending.get();
+    if (current == null) {
+      ServiceDocument document = mongo.findById(BigInteger.ZERO, ServiceDocument.class);
+      if (document == null) {
+        throw new ResponseStatusException(
+          HttpStatus.INTERNAL_SERVER_ERROR,
+          "DATA_UNAVAILABLE: Required database document for services not found."
+        );
+      }
+      current = CompletableFuture.supplyAsync(() -> evaluate(document), executor);
+      // a save that happened meanwhile takes precedence
+      pending.compareAndSet(null, current);
+    }
+
+    try {
+      return current.join();
+    } catch (CompletionException e) {
+      log.error("Personas could not be evaluated", e.getCause());
+      // the next request evaluates the document in the database again, unless a save happened
+      pending.compareAndSet(current, null);
+      Evaluation previous = latest;
+      if (previous == null) {
+        throw new ResponseStatusException(
+          HttpStatus.INTERNAL_SERVER_ERROR,
+          "EVALUATION_FAILED: Personas could not be evaluated against the services.",
+          e.getCause()
+        );
+      }
+      return previous;
+    }
+  }
+
+  /**
+   * Evaluates the enabled services of {@code document} against every persona. Services whose
+   * formula is unchanged since the previously evaluated version are not evaluated again.
+   *
+   * @param document the saved document
+   * @return the evaluation, which is also remembered as the latest one
+   */
+  private synchronized Evaluation evaluate(ServiceDocument document) {
+    Evaluation previous = latest;
+    if (
+      previous != null &&
+      document.getVersion() != null &&
+      document.getVersion().equals(previous.matrix.getVersion())
+    ) {
+      return previous;
+    }
+
+    long start = System.nanoTime();
+    List<Service> services = document
+      .getServices()
+      .values()
+      .stream()
+      .filter(service -> Boolean.TRUE.equals(service.getEnabled()))
+      .sorted(
+        Comparator.comparing(Service::getRank, Comparator.nullsLast(Comparator.naturalOrder()))
+      )
+      .collect(Collectors.toList());
+
+    Map<String, Column> columns = new LinkedHashMap<>();
+    List<String> changedKeys = new ArrayList<>();
+    List<String> changedTexts = new ArrayList<>();
+    List<Formula> changedFormulas = new ArrayList<>();
+    for (Service service : services) {
+      String formula = Strings.nullToEmpty(service.getFormula());
+      Column column = previous == null ? null : previous.columns.get(service.getKey());
+      if (column != null && column.formula.equals(formula)) {
+        columns.put(service.getKey(), column);
+      } else {
+        // the column is filled in below, but keeps its place in rank order
+        columns.put(service.getKey(), null);
+        changedKeys.add(service.getKey());
+        changedTexts.add(formula);
+        changedFormulas.add(parse(formula));
+      }
+    }
+
+    if (!changedFormulas.isEmpty()) {
+      BitSet[] results = new BitSet[responses.size()];
+      pool.invoke(new EvaluateTask(changedFormulas, results, 0, responses.size()));
+      for (int j = 0; j < changedKeys.size(); j++) {
+        BitSet eligible = new BitSet(responses.size());
+        for (int i = 0; i < results.length; i++) {
+          eligible.set(i, results[i].get(j));
+        }
+        columns.put(changedKeys.get(j), new Column(changedTexts.get(j), eligible));
+      }
+    }
+
+    PersonaMatrix.PersonaMatrixBuilder builder = PersonaMatrix
+      .builder()
+      .version(document.getVersion())
+      .modified(document.getModified())
+      .services(columns.keySet());
+    for (int i = 0; i < names.size(); i++) {
+      List<String> eligible = new ArrayList<>();
+      for (Map.Entry<String, Column> entry : columns.entrySet()) {
+        if (entry.getValue().eligible.get(i)) {
+          eligible.add(entry.getKey());
+        }
+      }
+      builder.eligibleEntry(names.get(i), eligible);
+    }
+
+    PersonaMatrix matrix = builder.build();
+    Evaluation evaluation = new Evaluation(
+      matrix,
+      diff(previous == null ? null : previous.matrix, matrix),
+      columns
+    );
+    latest = evaluation;
+
+    log.info(
+      "Evaluated {} of {} services against {} personas for version {} in {} ms",
+      changedKeys.size(),
+      columns.size(),
+      names.size(),
+      document.getVersion(),
+      (System.nanoTime() - start) / 1_000_000
+    );
+    return evaluation;
+  }
+
+  /**
+   * Parses a formula, or returns null if the service has none or it cannot be tokenized. Either
+   * way, no persona is eligible for the service.
+   */
+  private static Formula parse(String formula) {
+    if (formula.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Formula.parse(formula);
+    } catch (FormulaException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Computes the changes in eligibility of each persona between two matrices.
+   */
+  static PersonaMatrixDiff diff(PersonaMatrix previous, PersonaMatrix current) {
+    PersonaMatrixDiff.PersonaMatrixDiffBuilder diff = PersonaMatrixDiff
+      .builder()
+      .version(current.getVersion())
+      .previousVersion(previous == null ? null : previous.getVersion());
+    if (previous == null) {
+      return diff.build();
+    }
+
+    for (Map.Entry<String, List<String>> entry : current.getEligible().entrySet()) {
+      Set<String> before = new LinkedHashSet<>(
+        previous.getEligible().getOrDefault(entry.getKey(), ImmutableList.of())
+      );
+      Set<String> after = new LinkedHashSet<>(entry.getValue());
+      if (before.equals(after)) {
+        continue;
+      }
+
+      PersonaMatrixDiff.Change.ChangeBuilder change = PersonaMatrixDiff.Change.builder();
+      after.stream().filter(key -> !before.contains(key)).forEach(change::gainedEntry);
+      before.stream().filter(key -> !after.contains(key)).forEach(change::lostEntry);
+      diff.persona(entry.getKey(), change.build());
+    }
+    return diff.build();
+  }
+
+  /**
+   * Evaluates formulas against a range of personas, splitting it in two until it is small enough.
+   * Sets bit {@code j} of {@code results[i]} if persona {@code i} is eligible for formula
+   * {@code j}.
+   */
+  private class EvaluateTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final transient List<Formula> formulas;
+    final BitSet[] results;
+    final int from;
+    final int to;
+
+    EvaluateTask(List<Formula> formulas, BitSet[] results, int from, int to) {
+      this.formulas = formulas;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          BitSet result = new BitSet(formulas.size());
+          for (int j = 0; j < formulas.size(); j++) {
+            result.set(j, test(formulas.get(j), responses.get(i)));
+          }
+          results[i] = result;
+        }
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(
+        new EvaluateTask(formulas, results, from, middle),
+        new EvaluateTask(formulas, results, middle, to)
+      );
+    }
+  }
+
+  /**
+   * Tests a formula like Maslow Access does: a persona is not eligible for a service if the
+   * formula has a syntax error or fails to evaluate, such as when a response is missing.
+   */
+  private static boolean test(Formula formula, Map<String, Object> responses) {
+    if (formula == null) {
+      return false;
+    }
+
+    try {
+      return formula.test(responses);
+    } catch (FormulaException e) {
+      return false;
+    }
+  }
+}
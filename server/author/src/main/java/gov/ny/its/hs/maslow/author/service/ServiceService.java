@@ -1,19 +1,27 @@
 package gov.ny.its.hs.maslow.author.service;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import gov.ny.its.hs.maslow.author.model.EntityTag;
 import gov.ny.its.hs.maslow.author.model.Service;
 import gov.ny.its.hs.maslow.author.model.ServiceDocument;
 import gov.ny.its.hs.maslow.author.model.ServiceLocales;
 import gov.ny.its.hs.maslow.author.model.ServiceRank;
 import gov.ny.its.hs.maslow.author.model.ServiceResource;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
 import java.math.BigInteger;
 import java.net.URI;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -29,14 +37,19 @@ public class ServiceService {
   /** The configured MongoOperations for database operations */
   private final MongoOperations mongo;
 
+  /** The index of the questions that the formulas of the services refer to */
+  private final FormulaDependencyIndex dependencyIndex;
+
   /**
    * Constructs the {@link ServiceService} component.
    *
    * @param mongoOperations the MongoOperations for database operations; injected by Spring Boot.
+   * @param dependencyIndex the index of formula dependencies; injected by Spring Boot.
    */
-  public ServiceService(MongoOperations mongoOperations) {
+  public ServiceService(MongoOperations mongoOperations, FormulaDependencyIndex dependencyIndex) {
     super();
     this.mongo = mongoOperations;
+    this.dependencyIndex = dependencyIndex;
   }
 
   /**
@@ -57,6 +70,31 @@ public class ServiceService {
     return document;
   }
 
+  /**
+   * Asserts that the formula of {@code service}, if any, can be parsed, so that a formula with a
+   * syntax error is rejected here rather than discovered in a resident's browser.
+   *
+   * @param service the service to be inserted or updated
+   */
+  private static void checkFormula(Service service) {
+    if (service.getFormula() == null || service.getFormula().isEmpty()) {
+      return;
+    }
+
+    List<String> errors;
+    try {
+      errors = Formula.parse(service.getFormula()).getParseErrors();
+    } catch (FormulaException e) {
+      errors = ImmutableList.of(e.getMessage());
+    }
+    if (!errors.isEmpty()) {
+      throw new ResponseStatusException(
+        HttpStatus.BAD_REQUEST,
+        String.format("FORMULA_NOT_VALID: Formula could not be parsed. %s.", errors.get(0))
+      );
+    }
+  }
+
   /**
    * Returns all services in the database.
    *
@@ -66,6 +104,7 @@ public class ServiceService {
     log.debug("selectServices");
 
     ServiceDocument document = selectServiceDocument();
+    dependencyIndex.update(document);
     return ResponseEntity
       .ok()
       .cacheControl(CacheControl.noCache())
@@ -80,14 +119,17 @@ public class ServiceService {
    *
    * @param service the new service to be inserted
    * @return the new service
+   * @throws ResponseStatusException with status 400 (Bad Request) if the formula cannot be parsed
    */
   public ResponseEntity<Service> insertService(Service service) {
     log.debug("insertService with {}", service);
+    checkFormula(service);
 
     try {
       ServiceDocument document = selectServiceDocument();
       document.insertService(service);
       document = mongo.save(document);
+      dependencyIndex.update(document);
 
       Service createdService = document.selectService(service.getKey());
       URI createdServiceUri = ServletUriComponentsBuilder
@@ -145,9 +187,11 @@ public class ServiceService {
    * @param key the key of the service
    * @param service the new value of the service
    * @return the updated service as a {@link ResponseEntity}
+   * @throws ResponseStatusException with status 400 (Bad Request) if the formula cannot be parsed
    */
   public ResponseEntity<Service> updateService(String key, String version, Service service) {
     log.debug("updateService for query(key={}) with {}", key, service);
+    checkFormula(service);
 
     try {
       Preconditions.checkArgument(
@@ -160,6 +204,7 @@ public class ServiceService {
       ServiceDocument document = selectServiceDocument();
       document.updateService(service, version);
       document = mongo.save(document);
+      dependencyIndex.update(document);
 
       Service updatedService = document.selectService(key);
       if (updatedService != null) {
@@ -177,6 +222,65 @@ public class ServiceService {
     }
   }
 
+  /**
+   * Returns the keys of the questions that the formula of an existing service refers to, from the
+   * in-memory {@link FormulaDependencyIndex}.
+   *
+   * @param key the key of the service
+   * @return the keys of the questions, in the order in which they appear in the formula
+   */
+  public Set<String> selectServiceQuestions(String key) {
+    log.debug("selectServiceQuestions for query(key={})", key);
+
+    Set<String> questions = selectDependencyIndex().selectQuestions(key);
+    if (questions == null) {
+      throw new ResponseStatusException(
+        HttpStatus.NOT_FOUND,
+        "SERVICE_NOT_FOUND: Service not found."
+      );
+    }
+    return questions;
+  }
+
+  /**
+   * Returns the keys of the services whose formulas refer to a question, from the in-memory
+   * {@link FormulaDependencyIndex}. These are the services affected by a change to the question.
+   *
+   * @param key the key of the question
+   * @return the keys of the services, sorted by key
+   */
+  public Set<String> selectQuestionServices(String key) {
+    log.debug("selectQuestionServices for query(key={})", key);
+
+    return selectDependencyIndex().selectServices(key);
+  }
+
+  /**
+   * Returns the {@link FormulaDependencyIndex}, indexing the services in the database first if the
+   * stored document is not the indexed version. The document may have been saved by another
+   * instance of Maslow Author or edited directly in the database, so only its version is read on
+   * every lookup, and the whole document only when the version differs.
+   */
+  private FormulaDependencyIndex selectDependencyIndex() {
+    Query query = Query.query(Criteria.where("_id").is(BigInteger.ZERO));
+    query.fields().include("version");
+    ServiceDocument stored = mongo.findOne(query, ServiceDocument.class);
+    if (stored == null) {
+      throw new ResponseStatusException(
+        HttpStatus.INTERNAL_SERVER_ERROR,
+        "DATA_UNAVAILABLE: Required database document for services not found."
+      );
+    }
+
+    if (
+      !dependencyIndex.isIndexed() ||
+      !Objects.equals(stored.getVersion(), dependencyIndex.getVersion())
+    ) {
+      dependencyIndex.update(selectServiceDocument());
+    }
+    return dependencyIndex;
+  }
+
   /**
    * Returns the resources for a specific service identified by {@code key} and {@code lng}.
    *
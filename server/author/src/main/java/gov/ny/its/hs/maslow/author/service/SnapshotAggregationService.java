@@ -1,9 +1,17 @@
 package gov.ny.its.hs.maslow.author.service;
 
+import com.google.common.base.Strings;
 import gov.ny.its.hs.maslow.author.model.ServiceDocument;
 import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.model.SnapshotService;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaAst;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import gov.ny.its.hs.maslow.shared.formula.FormulaOptimizer;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
@@ -16,7 +24,9 @@ import org.springframework.stereotype.Service;
 
 /**
  * Defines a service that creates services snapshots in the database anytime the singleton
- * ServiceDocument is saved.
+ * ServiceDocument is saved. The formulas of the snapshot are optimized (see
+ * {@link FormulaOptimizer}) and published along with their parsed trees (see {@link FormulaAst}),
+ * so that every evaluator downstream does less work per resident.
  *
  * Note that this service is currently disabled for the `test` profile. Unfortunately, the embedded
  * MongoDB we use [has not been
@@ -87,11 +97,52 @@ public class SnapshotAggregationService extends AbstractMongoEventListener<Servi
         .collect(Collectors.toList())
     );
 
-    SnapshotDocument snapshot = mongo
-      .aggregate(aggregation, SnapshotDocument.class)
-      .getUniqueMappedResult();
+    SnapshotDocument snapshot = prepareFormulas(
+      mongo.aggregate(aggregation, SnapshotDocument.class).getUniqueMappedResult()
+    );
 
     SnapshotDocument document = mongo.save(snapshot);
     return document;
   }
+
+  /**
+   * Replaces the formula of each service of a snapshot with its optimized equivalent, along with
+   * its parsed tree. Formulas that cannot be parsed are left as they are, without a tree, so that
+   * Maslow Access reports them as it always has.
+   *
+   * @param snapshot the snapshot produced by the aggregation
+   * @return a copy of the snapshot with optimized and parsed formulas
+   */
+  static SnapshotDocument prepareFormulas(SnapshotDocument snapshot) {
+    if (snapshot == null || snapshot.getServices() == null) {
+      return snapshot;
+    }
+
+    Map<String, SnapshotService> services = new LinkedHashMap<>();
+    int optimized = 0;
+    for (Map.Entry<String, SnapshotService> entry : snapshot.getServices().entrySet()) {
+      SnapshotService service = entry.getValue();
+      String formula = service == null ? null : service.getFormula();
+      if (!Strings.isNullOrEmpty(formula)) {
+        try {
+          Formula optimizedFormula = FormulaOptimizer.optimize(Formula.parse(formula));
+          if (!optimizedFormula.getText().equals(formula)) {
+            optimized++;
+          }
+          service =
+            service
+              .toBuilder()
+              .formula(optimizedFormula.getText())
+              .formulaAst(FormulaAst.encode(optimizedFormula))
+              .build();
+        } catch (FormulaException e) {
+          log.debug("Formula of {} is not optimized: {}", entry.getKey(), e.getMessage());
+        }
+      }
+      services.put(entry.getKey(), service);
+    }
+
+    log.debug("Optimized {} of {} formulas", optimized, services.size());
+    return snapshot.toBuilder().clearServices().services(services).build();
+  }
 }
@@ -0,0 +1,123 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.model.SnapshotService;
+import gov.ny.its.hs.maslow.shared.model.ServicesDelta;
+import java.util.ArrayList;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+/**
+ * Defines a service that selects services snapshots by version and computes the changes between
+ * them (see {@link ServicesDelta}), so that Maslow Access can keep its catalog current without
+ * downloading every snapshot in full.
+ *
+ * The version of a snapshot is the hexadecimal string of its id. Because snapshots are kept in a
+ * capped collection, old versions are eventually evicted, and a delta can no longer be computed
+ * from them.
+ */
+@Service
+@Slf4j
+public class SnapshotDeltaService {
+  /** The configured MongoOperations for database operations */
+  private final MongoOperations mongo;
+
+  /** The ObjectMapper that writes snapshots as JSON, exactly as they are served in full */
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Constructs the {@link SnapshotDeltaService} component.
+   *
+   * @param mongoOperations the MongoOperations for database operations; injected by Spring Boot.
+   * @param objectMapper the ObjectMapper for JSON conversions; injected by Spring Boot.
+   */
+  public SnapshotDeltaService(MongoOperations mongoOperations, ObjectMapper objectMapper) {
+    super();
+    this.mongo = mongoOperations;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Returns the latest snapshot, or null if there are no snapshots.
+   */
+  public SnapshotDocument selectLatestSnapshot() {
+    // The maslow.servicesSnapshots collection is configured as a capped collection, meaning it is
+    // effectively a fixed-size circular deque. We leverage this fact to efficiently query the tail
+    // of the collection by "db.servicesSnapshots.find().sort({$natural: -1}).limit(1)".
+
+    return mongo.findOne(
+      new Query().with(Sort.by(Direction.DESC, "$natural")),
+      SnapshotDocument.class
+    );
+  }
+
+  /**
+   * Returns the snapshot of a version, or null if the version is not valid or has been evicted.
+   *
+   * @param version the version of the snapshot
+   */
+  public SnapshotDocument selectSnapshot(String version) {
+    if (version == null || !ObjectId.isValid(version)) {
+      return null;
+    }
+
+    return mongo.findById(new ObjectId(version), SnapshotDocument.class);
+  }
+
+  /**
+   * Computes the changes from one snapshot to the next. Services are compared as the JSON that
+   * Maslow Access receives, so that fields that are not significant to Maslow Access never cause a
+   * service to be sent.
+   *
+   * @param base the snapshot that Maslow Access holds
+   * @param next the snapshot that Maslow Access should hold
+   * @return the {@link ServicesDelta} from base to next
+   */
+  public ServicesDelta diff(SnapshotDocument base, SnapshotDocument next) {
+    ServicesDelta delta = new ServicesDelta();
+    delta.setBase(base.getId().toHexString());
+    delta.setVersion(next.getId().toHexString());
+
+    Map<String, SnapshotService> baseServices = base.getServices();
+    for (Map.Entry<String, SnapshotService> entry : next.getServices().entrySet()) {
+      JsonNode service = objectMapper.valueToTree(entry.getValue());
+      SnapshotService previous = baseServices.get(entry.getKey());
+      if (previous == null || !service.equals(objectMapper.valueToTree(previous))) {
+        delta.getServices().put(entry.getKey(), service);
+      }
+    }
+    for (String key : baseServices.keySet()) {
+      if (!next.getServices().containsKey(key)) {
+        delta.getRemoved().add(key);
+      }
+    }
+    if (!next.getRank().equals(base.getRank())) {
+      delta.setRank(new ArrayList<>(next.getRank()));
+    }
+
+    delta.setChecksum(
+      ServicesDelta.checksum(
+        objectMapper.valueToTree(next.getRank()),
+        objectMapper.valueToTree(next.getServices())
+      )
+    );
+
+    log.debug(
+      "Computed the delta from snapshot {} to {} with {} changed and {} removed services.",
+      delta.getBase(),
+      delta.getVersion(),
+      delta.getServices().size(),
+      delta.getRemoved().size()
+    );
+
+    return delta;
+  }
+}
@@ -0,0 +1,161 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+/**
+ * Defines a service that pushes the version of each new services snapshot to subscribers, as
+ * Server-Sent Events, so that Maslow Access fetches a snapshot as soon as it is created rather
+ * than on its next poll.
+ *
+ * A `snapshot` event, whose data is the version of the snapshot (see
+ * {@link SnapshotDeltaService}), is sent to every subscriber as soon as a snapshot is saved, and to
+ * each new subscriber for the latest snapshot. Subscribers are also sent a heartbeat at a fixed
+ * interval (configured with {@code maslow.author.snapshots.events.heartbeat-ms}), which keeps idle
+ * connections open through proxies and lets subscribers detect a dropped connection. Each
+ * heartbeat checks the latest snapshot, so that snapshots saved by another instance of Maslow
+ * Author are announced within one interval.
+ */
+@Service
+@Slf4j
+public class SnapshotEventService extends AbstractMongoEventListener<SnapshotDocument> {
+  /** The name of the events that announce a snapshot. */
+  public static final String SNAPSHOT_EVENT = "snapshot";
+
+  private final SnapshotDeltaService snapshots;
+  private final long timeout;
+  private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService heartbeats;
+
+  /** The version of the last snapshot announced to subscribers. */
+  private volatile String version;
+
+  /**
+   * Constructs the {@link SnapshotEventService} component.
+   *
+   * @param snapshots the service that selects the latest snapshot
+   * @param timeout the time after which a subscription is closed, in milliseconds; subscribers are
+   *        expected to subscribe again
+   * @param heartbeatInterval the interval between heartbeats, in milliseconds
+   */
+  public SnapshotEventService(
+    SnapshotDeltaService snapshots,
+    @Value("${maslow.author.snapshots.events.timeout-ms:1800000}") long timeout,
+    @Value("${maslow.author.snapshots.events.heartbeat-ms:15000}") long heartbeatInterval
+  ) {
+    super();
+    this.snapshots = snapshots;
+    this.timeout = timeout;
+    this.heartbeats =
+      Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, "snapshot-heartbeats");
+          thread.setDaemon(true);
+          return thread;
+        }
+      );
+    this.heartbeats.scheduleWithFixedDelay(
+      this::sendHeartbeat,
+      heartbeatInterval,
+      heartbeatInterval,
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Closes every subscription and stops the heartbeats.
+   */
+  @PreDestroy
+  public void shutdown() {
+    heartbeats.shutdown();
+    emitters.forEach(SseEmitter::complete);
+    emitters.clear();
+  }
+
+  /**
+   * Subscribes to the versions of new snapshots.
+   *
+   * @return the {@link SseEmitter} of the subscription, which is first sent the latest version
+   */
+  public SseEmitter subscribe() {
+    SseEmitter emitter = new SseEmitter(timeout);
+    emitter.onCompletion(() -> emitters.remove(emitter));
+    emitter.onTimeout(() -> emitters.remove(emitter));
+    emitter.onError(e -> emitters.remove(emitter));
+    emitters.add(emitter);
+
+    log.debug("Subscribed to snapshots ({} subscribers)", emitters.size());
+
+    SnapshotDocument latest = snapshots.selectLatestSnapshot();
+    if (latest != null) {
+      send(emitter, snapshotEvent(latest.getId().toHexString()));
+    }
+    return emitter;
+  }
+
+  /**
+   * Registers an event handler that announces a snapshot as soon as it is saved.
+   */
+  @Override
+  public void onAfterSave(AfterSaveEvent<SnapshotDocument> event) {
+    announce(event.getSource().getId().toHexString());
+  }
+
+  private void announce(String nextVersion) {
+    version = nextVersion;
+
+    log.info("Announcing snapshot {} to {} subscribers", nextVersion, emitters.size());
+
+    for (SseEmitter emitter : emitters) {
+      send(emitter, snapshotEvent(nextVersion));
+    }
+  }
+
+  private void sendHeartbeat() {
+    if (emitters.isEmpty()) {
+      return;
+    }
+
+    try {
+      SnapshotDocument latest = snapshots.selectLatestSnapshot();
+      if (latest != null && !latest.getId().toHexString().equals(version)) {
+        announce(latest.getId().toHexString());
+        return;
+      }
+    } catch (RuntimeException e) {
+      log.warn("Heartbeat failed to select the latest snapshot: {}", e.getMessage());
+    }
+
+    for (SseEmitter emitter : emitters) {
+      send(emitter, SseEmitter.event().comment("heartbeat"));
+    }
+  }
+
+  private static SseEventBuilder snapshotEvent(String version) {
+    return SseEmitter.event().name(SNAPSHOT_EVENT).id(version).data(version);
+  }
+
+  private void send(SseEmitter emitter, SseEventBuilder event) {
+    try {
+      emitter.send(event);
+    } catch (IOException | IllegalStateException e) {
+      // The subscriber has gone away, which is not an error.
+      log.debug("Subscription closed: {}", e.getMessage());
+      emitters.remove(emitter);
+      emitter.completeWithError(e);
+    }
+  }
+}
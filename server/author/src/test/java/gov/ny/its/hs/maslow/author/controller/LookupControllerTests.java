@@ -17,6 +17,8 @@ import org.springframework.test.web.servlet.MockMvc;
 @ActiveProfiles("test")
 public class LookupControllerTests {
   private static final String QUESTIONS = "/api/author/v1/lookup/questions";
+  private static final String QUESTION_SERVICES = "/api/author/v1/lookup/questions/{key}/services";
+  private static final String SERVICE_QUESTIONS = "/api/author/v1/lookup/services/{key}/questions";
 
   @Autowired
   private MockMvc mockMvc;
@@ -28,4 +30,14 @@ public class LookupControllerTests {
   void selectQuestionKeys_returnsOk() throws Exception {
     mockMvc.perform(get(QUESTIONS)).andExpect(status().isOk());
   }
+
+  @Test
+  void selectQuestionServices_returnsOk() throws Exception {
+    mockMvc.perform(get(QUESTION_SERVICES, "HOUSEHOLD_SIZE")).andExpect(status().isOk());
+  }
+
+  @Test
+  void selectServiceQuestions_serviceMissing_returnsNotFound() throws Exception {
+    mockMvc.perform(get(SERVICE_QUESTIONS, "NOT_A_SERVICE")).andExpect(status().isNotFound());
+  }
 }
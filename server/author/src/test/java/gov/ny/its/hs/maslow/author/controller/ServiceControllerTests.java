@@ -66,7 +66,8 @@ public class ServiceControllerTests {
   }
 
   private static String getUniqueFormula() {
-    return "=" + UUID.randomUUID().toString().toUpperCase().replace('-', '_');
+    // a UUID can begin with a digit, which would not parse as a question key
+    return "=UUID_" + UUID.randomUUID().toString().toUpperCase().replace('-', '_');
   }
 
   private ServiceDocument clone(ServiceDocument document) throws Exception {
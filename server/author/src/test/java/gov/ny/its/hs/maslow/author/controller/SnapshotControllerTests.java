@@ -0,0 +1,69 @@
+package gov.ny.its.hs.maslow.author.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.model.SnapshotService;
+import gov.ny.its.hs.maslow.author.service.SnapshotDeltaService;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class SnapshotControllerTests {
+  private static final String LATEST = "/api/author/v1/snapshots/latest";
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @MockBean
+  private SnapshotDeltaService snapshots;
+
+  private SnapshotDocument SNAPSHOT;
+
+  @BeforeEach
+  void beforeEach() {
+    // the snapshot is larger than the minimum size of a compressed response
+    SnapshotDocument.SnapshotDocumentBuilder builder = SnapshotDocument
+      .builder()
+      .id(new ObjectId());
+    for (int i = 0; i < 100; i++) {
+      String key = String.format("SERVICE_%03d", i);
+      builder
+        .rankEntry(key)
+        .service(key, SnapshotService.builder().enabled(true).formula("=TRUE").build());
+    }
+    SNAPSHOT = builder.build();
+    doReturn(SNAPSHOT).when(snapshots).selectLatestSnapshot();
+  }
+
+  @Test
+  void selectLatestSnapshot_acceptingGzip_returnsCompressedSnapshot() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+    ResponseEntity<byte[]> response = restTemplate.exchange(
+      LATEST,
+      HttpMethod.GET,
+      new HttpEntity<>(headers),
+      byte[].class
+    );
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(response.getHeaders().getETag())
+      .isEqualTo("W/\"" + SNAPSHOT.getId().toHexString() + "\"");
+  }
+}
@@ -0,0 +1,94 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import gov.ny.its.hs.maslow.author.model.Service;
+import gov.ny.its.hs.maslow.author.model.ServiceDocument;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("The formula dependency index")
+public class FormulaDependencyIndexTests {
+  private FormulaDependencyIndex index;
+  private ServiceDocument DOC;
+
+  private static Service service(String key, String formula) {
+    return Service.builder().key(key).formula(formula).build();
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    index = new FormulaDependencyIndex();
+    DOC =
+      ServiceDocument
+        .builder()
+        .version(1L)
+        .service("STUDENT", service("STUDENT", "=AND(IS_STUDENT, HOUSEHOLD_INCOME <= 10000)"))
+        .service("INCOME", service("INCOME", "=HOUSEHOLD_INCOME <= 1000 * HOUSEHOLD_SIZE"))
+        .service("COVID", service("COVID", "=IS_COVID"))
+        .service("WITHOUT_FORMULA", service("WITHOUT_FORMULA", null))
+        .service("SYNTAX_ERROR", service("SYNTAX_ERROR", "=AND(TRUE,"))
+        .build();
+  }
+
+  @Test
+  @DisplayName("is empty until a document is indexed")
+  void selectServices_notIndexed_returnsEmpty() {
+    assertThat(index.isIndexed()).isFalse();
+    assertThat(index.selectServices("HOUSEHOLD_INCOME")).isEmpty();
+    assertThat(index.selectQuestions("STUDENT")).isNull();
+  }
+
+  @Test
+  @DisplayName("returns the questions of each service in formula order")
+  void selectQuestions_returnsQuestionsOfFormula() {
+    index.update(DOC);
+
+    assertThat(index.isIndexed()).isTrue();
+    assertThat(index.selectQuestions("STUDENT"))
+      .containsExactly("IS_STUDENT", "HOUSEHOLD_INCOME");
+    assertThat(index.selectQuestions("WITHOUT_FORMULA")).isEmpty();
+    assertThat(index.selectQuestions("SYNTAX_ERROR")).isEmpty();
+    assertThat(index.selectQuestions("UNKNOWN")).isNull();
+  }
+
+  @Test
+  @DisplayName("returns the services of each question in key order")
+  void selectServices_returnsServicesOfQuestion() {
+    index.update(DOC);
+
+    assertThat(index.selectServices("HOUSEHOLD_INCOME")).containsExactly("INCOME", "STUDENT");
+    assertThat(index.selectServices("IS_COVID")).containsExactly("COVID");
+    assertThat(index.selectServices("IS_MILITARY")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("updates changed, inserted and removed services")
+  void update_withNewVersion_updatesServices() {
+    index.update(DOC);
+
+    Map<String, Service> services = new LinkedHashMap<>(DOC.getServices());
+    services.put("COVID", service("COVID", "=AND(IS_COVID, HOUSEHOLD_SIZE > 2)"));
+    services.put("MILITARY", service("MILITARY", "=IS_MILITARY"));
+    services.remove("INCOME");
+    index.update(DOC.toBuilder().version(2L).clearServices().services(services).build());
+
+    assertThat(index.selectServices("HOUSEHOLD_SIZE")).containsExactly("COVID");
+    assertThat(index.selectServices("HOUSEHOLD_INCOME")).containsExactly("STUDENT");
+    assertThat(index.selectServices("IS_MILITARY")).containsExactly("MILITARY");
+    assertThat(index.selectQuestions("INCOME")).isNull();
+  }
+
+  @Test
+  @DisplayName("skips a version that is already indexed")
+  void update_withSameVersion_isSkipped() {
+    index.update(DOC);
+
+    index.update(DOC.toBuilder().clearServices().build());
+
+    assertThat(index.selectServices("IS_COVID")).containsExactly("COVID");
+  }
+}
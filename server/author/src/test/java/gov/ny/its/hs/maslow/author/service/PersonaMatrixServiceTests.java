@@ -0,0 +1,199 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.author.model.PersonaMatrix;
+import gov.ny.its.hs.maslow.author.model.PersonaMatrixDiff;
+import gov.ny.its.hs.maslow.author.model.Service;
+import gov.ny.its.hs.maslow.author.model.ServiceDocument;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.web.server.ResponseStatusException;
+
+@DisplayName("The persona matrix service")
+public class PersonaMatrixServiceTests {
+  private PersonaMatrixService impl;
+  private ServiceDocument DOC;
+
+  private static Service service(String key, int rank, boolean enabled, String formula) {
+    return Service.builder().key(key).rank(rank).enabled(enabled).formula(formula).build();
+  }
+
+  private static ServiceDocument broken(long version) {
+    ServiceDocument document = mock(ServiceDocument.class);
+    doReturn(version).when(document).getVersion();
+    doThrow(new IllegalStateException("broken")).when(document).getServices();
+    return document;
+  }
+
+  private void save(ServiceDocument document) {
+    impl.onAfterSave(new AfterSaveEvent<>(document, null, "services"));
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    Map<String, Map<String, Object>> personas = new LinkedHashMap<>();
+    personas.put("LOW_INCOME", ImmutableMap.of("HOUSEHOLD_INCOME", 1000, "IS_COVID", false));
+    personas.put("HIGH_INCOME", ImmutableMap.of("HOUSEHOLD_INCOME", 9000, "IS_COVID", true));
+    personas.put("NO_INCOME", ImmutableMap.of("IS_COVID", true));
+    impl = new PersonaMatrixService(null, personas, 2);
+
+    DOC =
+      ServiceDocument
+        .builder()
+        .version(1L)
+        .service("INCOME", service("INCOME", 2, true, "=HOUSEHOLD_INCOME <= 2000"))
+        .service("COVID", service("COVID", 1, true, "=IS_COVID"))
+        .service("DISABLED", service("DISABLED", 3, false, "=TRUE"))
+        .service("WITHOUT_FORMULA", service("WITHOUT_FORMULA", 4, true, null))
+        .build();
+  }
+
+  @AfterEach
+  void afterEach() {
+    impl.shutdown();
+  }
+
+  @Test
+  @DisplayName("evaluates every enabled service against every persona in rank order")
+  void selectMatrix_returnsEligibleServicesOfPersonas() {
+    save(DOC);
+
+    PersonaMatrix matrix = impl.selectMatrix();
+
+    assertThat(matrix.getVersion()).isEqualTo(1L);
+    assertThat(matrix.getServices()).containsExactly("COVID", "INCOME", "WITHOUT_FORMULA");
+    assertThat(matrix.getEligible().get("LOW_INCOME")).containsExactly("INCOME");
+    assertThat(matrix.getEligible().get("HIGH_INCOME")).containsExactly("COVID");
+    // a formula that refers to a missing response fails, as it does in Maslow Access
+    assertThat(matrix.getEligible().get("NO_INCOME")).containsExactly("COVID");
+  }
+
+  @Test
+  @DisplayName("has no changes for the first version")
+  void selectDiff_withoutPreviousVersion_isEmpty() {
+    save(DOC);
+
+    PersonaMatrixDiff diff = impl.selectDiff();
+
+    assertThat(diff.getVersion()).isEqualTo(1L);
+    assertThat(diff.getPreviousVersion()).isNull();
+    assertThat(diff.getPersonas()).isEmpty();
+  }
+
+  @Test
+  @DisplayName("returns the changes since the previous version")
+  void selectDiff_withPreviousVersion_returnsChangedPersonas() {
+    save(DOC);
+    Map<String, Service> services = new LinkedHashMap<>(DOC.getServices());
+    services.put("INCOME", service("INCOME", 2, true, "=HOUSEHOLD_INCOME <= 10000"));
+    services.put("DISABLED", service("DISABLED", 3, true, "=TRUE"));
+    save(DOC.toBuilder().version(2L).clearServices().services(services).build());
+
+    PersonaMatrixDiff diff = impl.selectDiff();
+
+    assertThat(diff.getVersion()).isEqualTo(2L);
+    assertThat(diff.getPreviousVersion()).isEqualTo(1L);
+    assertThat(diff.getPersonas().keySet())
+      .containsExactly("LOW_INCOME", "HIGH_INCOME", "NO_INCOME");
+    assertThat(diff.getPersonas().get("LOW_INCOME").getGained()).containsExactly("DISABLED");
+    assertThat(diff.getPersonas().get("HIGH_INCOME").getGained())
+      .containsExactly("INCOME", "DISABLED");
+    assertThat(diff.getPersonas().get("HIGH_INCOME").getLost()).isEmpty();
+  }
+
+  @Test
+  @DisplayName("returns the lost services of each persona")
+  void selectDiff_withDisabledService_returnsLostServices() {
+    save(DOC);
+    Map<String, Service> services = new LinkedHashMap<>(DOC.getServices());
+    services.put("COVID", service("COVID", 1, false, "=IS_COVID"));
+    save(DOC.toBuilder().version(2L).clearServices().services(services).build());
+
+    PersonaMatrixDiff diff = impl.selectDiff();
+
+    assertThat(diff.getPersonas().keySet()).containsExactly("HIGH_INCOME", "NO_INCOME");
+    assertThat(diff.getPersonas().get("NO_INCOME").getLost()).containsExactly("COVID");
+    assertThat(impl.selectMatrix().getServices()).containsExactly("INCOME", "WITHOUT_FORMULA");
+  }
+
+  @Test
+  @DisplayName("evaluates many personas in parallel")
+  void selectMatrix_withManyPersonas_evaluatesEveryPersona() {
+    Map<String, Map<String, Object>> personas = new LinkedHashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      personas.put("PERSONA_" + i, ImmutableMap.of("HOUSEHOLD_INCOME", i, "IS_COVID", i % 2 == 0));
+    }
+    impl.shutdown();
+    impl = new PersonaMatrixService(null, personas, 4);
+    save(DOC);
+
+    PersonaMatrix matrix = impl.selectMatrix();
+
+    assertThat(matrix.getEligible()).hasSize(5000);
+    assertThat(matrix.getEligible().get("PERSONA_2000")).containsExactly("COVID", "INCOME");
+    assertThat(matrix.getEligible().get("PERSONA_2001")).isEmpty();
+    assertThat(matrix.getEligible().get("PERSONA_1999")).containsExactly("INCOME");
+  }
+
+  @Test
+  @DisplayName("orders services without a rank last")
+  void selectMatrix_withoutRank_ordersServiceLast() {
+    Map<String, Service> services = new LinkedHashMap<>(DOC.getServices());
+    services.put(
+      "UNRANKED",
+      Service.builder().key("UNRANKED").enabled(true).formula("=TRUE").build()
+    );
+    save(DOC.toBuilder().clearServices().services(services).build());
+
+    PersonaMatrix matrix = impl.selectMatrix();
+
+    assertThat(matrix.getServices())
+      .containsExactly("COVID", "INCOME", "WITHOUT_FORMULA", "UNRANKED");
+  }
+
+  @Test
+  @DisplayName("returns the last successful evaluation if the latest one failed")
+  void selectMatrix_afterFailedEvaluation_returnsPreviousEvaluation() {
+    MongoOperations mongo = mock(MongoOperations.class);
+    doReturn(DOC.toBuilder().version(3L).build())
+      .when(mongo)
+      .findById(BigInteger.ZERO, ServiceDocument.class);
+    impl.shutdown();
+    impl = new PersonaMatrixService(mongo, ImmutableMap.of("NO_INCOME", ImmutableMap.of()), 1);
+    save(DOC);
+    impl.selectMatrix();
+    save(broken(2L));
+
+    assertThat(impl.selectMatrix().getVersion()).isEqualTo(1L);
+    // the next request evaluates the document in the database again
+    assertThat(impl.selectMatrix().getVersion()).isEqualTo(3L);
+  }
+
+  @Test
+  @DisplayName("fails if no evaluation ever succeeded, but evaluates again on the next request")
+  void selectMatrix_withoutSuccessfulEvaluation_throwsThenEvaluatesAgain() {
+    MongoOperations mongo = mock(MongoOperations.class);
+    doReturn(DOC).when(mongo).findById(BigInteger.ZERO, ServiceDocument.class);
+    impl.shutdown();
+    impl = new PersonaMatrixService(mongo, ImmutableMap.of("NO_INCOME", ImmutableMap.of()), 1);
+    save(broken(2L));
+
+    assertThatThrownBy(impl::selectMatrix)
+      .isInstanceOf(ResponseStatusException.class)
+      .hasMessageContaining("EVALUATION_FAILED");
+    assertThat(impl.selectMatrix().getVersion()).isEqualTo(1L);
+  }
+}
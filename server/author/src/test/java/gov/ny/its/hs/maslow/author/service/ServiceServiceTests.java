@@ -22,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -50,7 +51,8 @@ public class ServiceServiceTests {
   }
 
   private static String getUniqueFormula() {
-    return "=" + UUID.randomUUID().toString().toUpperCase().replace('-', '_');
+    // a UUID can begin with a digit, which would not parse as a question key
+    return "=UUID_" + UUID.randomUUID().toString().toUpperCase().replace('-', '_');
   }
 
   private ServiceDocument clone(ServiceDocument document) throws Exception {
@@ -98,6 +100,49 @@ public class ServiceServiceTests {
     assertHttpStatusOK(resp);
   }
 
+  @Test
+  void selectQuestionServices_returnsServicesOfQuestion() throws Exception {
+    Service FOO = ONE.toBuilder().key(getUniqueKey()).formula("=IS_COVID").build();
+    DOC.getServices().put(FOO.getKey(), FOO);
+    DOC.setVersion(DOC.getVersion() + 1);
+    doReturn(DOC).when(mongoTemplate).save(Mockito.any(ServiceDocument.class));
+    impl.insertService(FOO);
+    // lookups compare the index with the stored document, which the mocked save did not store
+    doReturn(DOC)
+      .when(mongoTemplate)
+      .findOne(Mockito.any(Query.class), Mockito.eq(ServiceDocument.class));
+
+    assertThat(impl.selectQuestionServices("IS_COVID")).contains(FOO.getKey());
+    assertThat(impl.selectServiceQuestions(FOO.getKey())).containsExactly("IS_COVID");
+  }
+
+  @Test
+  void selectQuestionServices_documentSavedElsewhere_reindexes() throws Exception {
+    impl.selectServices();
+
+    // another instance of Maslow Author saves a service that this instance never saw
+    Service FOO = ONE.toBuilder().key(getUniqueKey()).formula("=IS_PREGNANT").build();
+    DOC.getServices().put(FOO.getKey(), FOO);
+    DOC.setVersion(DOC.getVersion() + 1);
+    doReturn(DOC)
+      .when(mongoTemplate)
+      .findOne(Mockito.any(Query.class), Mockito.eq(ServiceDocument.class));
+    doReturn(DOC).when(mongoTemplate).findById(BigInteger.ZERO, ServiceDocument.class);
+
+    assertThat(impl.selectQuestionServices("IS_PREGNANT")).contains(FOO.getKey());
+    assertThat(impl.selectServiceQuestions(FOO.getKey())).containsExactly("IS_PREGNANT");
+  }
+
+  @Test
+  void selectServiceQuestions_serviceMissing_returnsNotFound() throws Exception {
+    ResponseStatusException thrown = catchThrowableOfType(
+      () -> impl.selectServiceQuestions(getUniqueKey()),
+      ResponseStatusException.class
+    );
+
+    assertThat(thrown.getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+  }
+
   @Test
   void insertService_serviceInvalid_returnsBadRequest() throws Exception {
     Service BAD = Service.builder().key("BAD").build();
@@ -110,6 +155,19 @@ public class ServiceServiceTests {
     assertThat(thrown.getStatus()).isEqualTo(HttpStatus.CONFLICT);
   }
 
+  @Test
+  void insertService_formulaInvalid_returnsBadRequest() throws Exception {
+    Service FOO = ONE.toBuilder().key(getUniqueKey()).formula("=AND(TRUE,").build();
+
+    ResponseStatusException thrown = catchThrowableOfType(
+      () -> impl.insertService(FOO),
+      ResponseStatusException.class
+    );
+
+    assertThat(thrown.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+    assertThat(thrown.getReason()).startsWith("FORMULA_NOT_VALID");
+  }
+
   @Test
   void insertService_servicePresent_returnsConflict() throws Exception {
     ResponseStatusException thrown = catchThrowableOfType(
@@ -152,6 +210,19 @@ public class ServiceServiceTests {
     assertHttpStatusOK(resp);
   }
 
+  @Test
+  void updateService_formulaInvalid_returnsBadRequest() throws Exception {
+    Service ONE_UP = ONE.toBuilder().formula("=1 +").build();
+
+    ResponseStatusException thrown = catchThrowableOfType(
+      () -> impl.updateService(ONE_UP.getKey(), null, ONE_UP),
+      ResponseStatusException.class
+    );
+
+    assertThat(thrown.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+    assertThat(thrown.getReason()).startsWith("FORMULA_NOT_VALID");
+  }
+
   @Test
   void updateService_serviceMissing_insertsService_returnsBadRequest() throws Exception {
     Service FOO = ONE.toBuilder().key(getUniqueKey()).build();
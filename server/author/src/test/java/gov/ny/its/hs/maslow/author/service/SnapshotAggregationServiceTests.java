@@ -0,0 +1,49 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.model.SnapshotService;
+import gov.ny.its.hs.maslow.shared.formula.FormulaAst;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("The snapshot aggregation service")
+public class SnapshotAggregationServiceTests {
+
+  private static SnapshotService service(String formula) {
+    return SnapshotService.builder().enabled(true).formula(formula).build();
+  }
+
+  @Test
+  @DisplayName("optimizes and parses the formulas of a snapshot")
+  void prepareFormulas_optimizesAndParsesFormulas() {
+    SnapshotDocument snapshot = SnapshotDocument
+      .builder()
+      .rankEntry("STUDENT")
+      .rankEntry("COVID")
+      .rankEntry("SYNTAX_ERROR")
+      .rankEntry("NOT_VALID")
+      .rankEntry("WITHOUT_FORMULA")
+      .service("STUDENT", service("=AND(IS_STUDENT, HOUSEHOLD_INCOME <= (125000 / 12))"))
+      .service("COVID", service("=IS_COVID"))
+      .service("SYNTAX_ERROR", service("=AND(TRUE,"))
+      .service("NOT_VALID", service("=TRUE & FALSE"))
+      .service("WITHOUT_FORMULA", service(null))
+      .build();
+
+    SnapshotDocument optimized = SnapshotAggregationService.prepareFormulas(snapshot);
+
+    assertThat(optimized.getRank()).isEqualTo(snapshot.getRank());
+    assertThat(optimized.getServices().get("STUDENT").getFormula())
+      .isEqualTo("=AND(IS_STUDENT,HOUSEHOLD_INCOME<=10416.666666666666)");
+    assertThat(optimized.getServices().get("STUDENT").getEnabled()).isTrue();
+    assertThat(optimized.getServices().get("COVID").getFormula()).isEqualTo("=IS_COVID");
+    assertThat(optimized.getServices().get("COVID").getFormulaAst())
+      .isEqualTo(ImmutableMap.of("version", FormulaAst.VERSION, "tree", "IS_COVID"));
+    assertThat(optimized.getServices().get("SYNTAX_ERROR")).isEqualTo(service("=AND(TRUE,"));
+    assertThat(optimized.getServices().get("NOT_VALID")).isEqualTo(service("=TRUE & FALSE"));
+    assertThat(optimized.getServices().get("WITHOUT_FORMULA")).isEqualTo(service(null));
+  }
+}
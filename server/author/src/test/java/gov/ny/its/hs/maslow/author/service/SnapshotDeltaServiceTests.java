@@ -0,0 +1,81 @@
+package gov.ny.its.hs.maslow.author.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.ny.its.hs.maslow.author.model.SnapshotDocument;
+import gov.ny.its.hs.maslow.author.model.SnapshotService;
+import gov.ny.its.hs.maslow.shared.model.ServicesDelta;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("The snapshot delta service")
+public class SnapshotDeltaServiceTests {
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final SnapshotDeltaService impl = new SnapshotDeltaService(null, mapper);
+
+  private static SnapshotService service(String formula) {
+    return SnapshotService.builder().enabled(true).formula(formula).build();
+  }
+
+  private final SnapshotDocument BASE = SnapshotDocument
+    .builder()
+    .id(new ObjectId())
+    .rankEntry("COVID")
+    .rankEntry("STUDENT")
+    .rankEntry("VETERAN")
+    .service("COVID", service("=IS_COVID"))
+    .service("STUDENT", service("=IS_STUDENT"))
+    .service("VETERAN", service("=IS_VETERAN"))
+    .build();
+
+  @Test
+  @DisplayName("returns only the added, changed and removed services")
+  void diff_returnsChangedServices() {
+    SnapshotDocument next = SnapshotDocument
+      .builder()
+      .id(new ObjectId())
+      .rankEntry("COVID")
+      .rankEntry("STUDENT")
+      .rankEntry("SENIOR")
+      .service("COVID", service("=IS_COVID"))
+      .service("STUDENT", service("=AND(IS_STUDENT, HOUSEHOLD_INCOME <= 1000)"))
+      .service("SENIOR", service("=AGE >= 65"))
+      .build();
+
+    ServicesDelta delta = impl.diff(BASE, next);
+
+    assertThat(delta.getBase()).isEqualTo(BASE.getId().toHexString());
+    assertThat(delta.getVersion()).isEqualTo(next.getId().toHexString());
+    assertThat(delta.getServices()).containsOnlyKeys("STUDENT", "SENIOR");
+    assertThat(delta.getServices().get("SENIOR").get("formula").asText()).isEqualTo("=AGE >= 65");
+    assertThat(delta.getRemoved()).containsExactly("VETERAN");
+    assertThat(delta.getRank()).containsExactly("COVID", "STUDENT", "SENIOR");
+    assertThat(delta.getChecksum())
+      .isEqualTo(
+        ServicesDelta.checksum(
+          mapper.valueToTree(next.getRank()),
+          mapper.valueToTree(next.getServices())
+        )
+      );
+  }
+
+  @Test
+  @DisplayName("omits the rank when it has not changed")
+  void diff_withSameRank_omitsRank() {
+    SnapshotDocument next = BASE
+      .toBuilder()
+      .id(new ObjectId())
+      .clearServices()
+      .services(BASE.getServices())
+      .service("VETERAN", service("=IS_VETERAN").toBuilder().enabled(false).build())
+      .build();
+
+    ServicesDelta delta = impl.diff(BASE, next);
+
+    assertThat(delta.getRank()).isNull();
+    assertThat(delta.getRemoved()).isEmpty();
+    assertThat(delta.getServices()).containsOnlyKeys("VETERAN");
+  }
+}
@@ -0,0 +1,34 @@
+package gov.ny.its.hs.maslow.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that every result reports the allocation
+ * rate (gc.alloc.rate.norm is bytes allocated per operation) alongside throughput. Accepts the same
+ * command line options as the standard JMH runner, such as a regular expression to select
+ * benchmarks or {@code -p catalogSize=500} to select parameters.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  /**
+   * Runs the benchmarks selected by the command line options.
+   *
+   * @param args the JMH command line options
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    Options options = new OptionsBuilder()
+      .parent(new CommandLineOptions(args))
+      .addProfiler(GCProfiler.class)
+      .build();
+
+    new Runner(options).run();
+  }
+}
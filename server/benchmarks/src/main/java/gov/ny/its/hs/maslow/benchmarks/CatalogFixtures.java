@@ -0,0 +1,140 @@
+package gov.ny.its.hs.maslow.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.shared.model.ResourcesProvider;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import gov.ny.its.hs.maslow.shared.model.Services;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Builds catalogs for benchmarks from the real catalog embedded in Maslow Access. The catalog is
+ * bound from the same YAML files (including the translations in {@code locales/}) that the access
+ * application loads at startup, then scaled to the requested number of services and locales.
+ */
+final class CatalogFixtures {
+
+  /** The locales supported by Maslow Access, in the order they are enabled by localeCount. */
+  static final List<String> LOCALES = ImmutableList.of("en", "es", "zh", "ru", "ko", "ht", "bn");
+
+  private CatalogFixtures() {}
+
+  /**
+   * Returns the first {@code localeCount} of {@link #LOCALES}.
+   *
+   * @param localeCount the number of locales
+   */
+  static String[] locales(int localeCount) {
+    return LOCALES.subList(0, localeCount).toArray(new String[0]);
+  }
+
+  /**
+   * Returns the real catalog scaled to {@code catalogSize} services, with resources for only the
+   * first {@code localeCount} of {@link #LOCALES}. If the real catalog has fewer services than
+   * requested, its services are cloned under new keys until the requested size is reached.
+   *
+   * @param catalogSize the number of services in the catalog
+   * @param localeCount the number of locales that have resources
+   */
+  static Catalog load(int catalogSize, int localeCount) {
+    Catalog catalog = new Binder(ConfigurationPropertySources.from(loadPropertySources()))
+      .bind("maslow.catalog", Catalog.class)
+      .get();
+
+    List<String> locales = LOCALES.subList(0, localeCount);
+    retainLocales(catalog.getSections(), locales);
+    retainLocales(catalog.getQuestions(), locales);
+    retainLocales(catalog.getServices(), locales);
+
+    List<String> keys = new ArrayList<>(catalog.getServices().keySet());
+    List<String> rank = new ArrayList<>();
+    Map<String, Service> services = new LinkedHashMap<>();
+    for (int i = 0; i < catalogSize; i++) {
+      String key = keys.get(i % keys.size());
+      String clonedKey = i < keys.size() ? key : key + "_" + (i / keys.size());
+      rank.add(clonedKey);
+      services.put(clonedKey, copyOf(catalog.getServices().get(key)));
+    }
+
+    catalog.setRank(rank);
+    catalog.setServices(services);
+    return catalog;
+  }
+
+  /**
+   * Writes the rank and services of {@code catalog} to {@code path} in the format of the services
+   * snapshot fetched from Maslow Author.
+   *
+   * @param catalog the catalog to write
+   * @param path the path of the file to write
+   */
+  static void writeServices(Catalog catalog, Path path) {
+    Services services = new Services();
+    services.setRank(catalog.getRank());
+    services.setServices(catalog.getServices());
+
+    try {
+      new ObjectMapper().writeValue(Files.newOutputStream(path), services);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static List<PropertySource<?>> loadPropertySources() {
+    List<String> locations = new ArrayList<>();
+    locations.add("application.yaml");
+    locations.add("application-survey.yaml");
+    for (String locale : LOCALES) {
+      locations.add("locales/" + locale + "/application.yaml");
+    }
+
+    YamlPropertySourceLoader loader = new YamlPropertySourceLoader();
+    List<PropertySource<?>> sources = new ArrayList<>();
+    for (String location : locations) {
+      ClassPathResource resource = new ClassPathResource(location);
+      if (!resource.exists()) {
+        continue;
+      }
+
+      try {
+        sources.addAll(loader.load(location, resource));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return sources;
+  }
+
+  private static void retainLocales(
+    Map<String, ? extends ResourcesProvider<?>> items,
+    List<String> locales
+  ) {
+    for (ResourcesProvider<?> item : items.values()) {
+      item.getResources().keySet().retainAll(locales);
+    }
+  }
+
+  private static Service copyOf(Service service) {
+    Service copy = new Service();
+    copy.setEnabled(service.getEnabled());
+    copy.setFormula(service.getFormula());
+    copy.setApplicationUrl(service.getApplicationUrl());
+    copy.setInformationUrl(service.getInformationUrl());
+    copy.setResources(new HashMap<>(service.getResources()));
+    return copy;
+  }
+}
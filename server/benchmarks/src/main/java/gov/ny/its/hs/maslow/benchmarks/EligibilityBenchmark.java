@@ -0,0 +1,167 @@
+package gov.ny.its.hs.maslow.benchmarks;
+
+import com.google.common.base.Strings;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import gov.ny.its.hs.maslow.access.service.EligibilityService;
+import gov.ny.its.hs.maslow.shared.formula.CompiledFormulas;
+import gov.ny.its.hs.maslow.shared.formula.DecisionDiagram;
+import gov.ny.its.hs.maslow.shared.formula.Formula;
+import gov.ny.its.hs.maslow.shared.formula.FormulaException;
+import gov.ny.its.hs.maslow.shared.model.Question;
+import gov.ny.its.hs.maslow.shared.model.QuestionType;
+import gov.ny.its.hs.maslow.shared.model.Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Benchmarks deciding the eligibility of a household for every enabled service of the real
+ * catalog: with one traversal of the catalog's {@link DecisionDiagram}, by testing each
+ * {@link Formula} one at a time with the interpreter, and by testing each of the
+ * {@link CompiledFormulas} with responses encoded ahead of time. Each operation screens the next
+ * of a fixed set of random households, so branch prediction cannot learn a single household.
+ * Compiling the diagram and the formulas, which happens on every catalog update, is measured as
+ * well, and so is {@link EligibilityService}, whose cache holds the results of every household
+ * once warmed up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EligibilityBenchmark {
+  private static final int HOUSEHOLDS = 1024;
+
+  @Param({ "50", "500", "5000" })
+  int catalogSize;
+
+  private List<Formula> formulas;
+  private DecisionDiagram diagram;
+  private Map<String, QuestionType> questionTypes;
+  private CompiledFormulas compiledFormulas;
+  private EligibilityService eligibilityService;
+  private List<Map<String, Object>> households;
+  private double[][] answers;
+  private int next;
+
+  @Setup
+  public void setup() {
+    Catalog catalog = CatalogFixtures.load(catalogSize, 1);
+
+    formulas = new ArrayList<>();
+    for (String key : catalog.getRank()) {
+      Service service = catalog.getServices().get(key);
+      if (service.getEnabled() && !Strings.isNullOrEmpty(service.getFormula())) {
+        formulas.add(Formula.parse(service.getFormula()));
+      }
+    }
+    diagram = DecisionDiagram.compile(formulas);
+    questionTypes = new LinkedHashMap<>();
+    catalog.getQuestions().forEach((key, question) -> questionTypes.put(key, question.getType()));
+    compiledFormulas = CompiledFormulas.compile(formulas, questionTypes);
+    eligibilityService =
+      new EligibilityService(
+        new CatalogService(
+          event -> {},
+          catalog,
+          new RestTemplate(),
+          "does-not-exist.json",
+          "http://localhost/"
+        ),
+        new SimpleMeterRegistry(),
+        10_000
+      );
+
+    Random random = new Random(42);
+    households = new ArrayList<>(HOUSEHOLDS);
+    for (int i = 0; i < HOUSEHOLDS; i++) {
+      Map<String, Object> responses = new HashMap<>();
+      for (Map.Entry<String, Question> question : catalog.getQuestions().entrySet()) {
+        QuestionType type = question.getValue().getType();
+        responses.put(
+          question.getKey(),
+          type == QuestionType.BOOLEAN
+            ? (Object) random.nextBoolean()
+            : (Object) (double) random.nextInt(type == QuestionType.CURRENCY ? 10000 : 12)
+        );
+      }
+      households.add(responses);
+    }
+
+    answers = new double[HOUSEHOLDS][compiledFormulas.getQuestions().size()];
+    for (int i = 0; i < HOUSEHOLDS; i++) {
+      compiledFormulas.encode(households.get(i), answers[i]);
+    }
+  }
+
+  private Map<String, Object> nextHousehold() {
+    next = (next + 1) % HOUSEHOLDS;
+    return households.get(next);
+  }
+
+  @Benchmark
+  public BitSet diagram() {
+    return diagram.evaluate(nextHousehold());
+  }
+
+  @Benchmark
+  public BitSet oneAtATime() {
+    Map<String, Object> responses = nextHousehold();
+    BitSet truthy = new BitSet(formulas.size());
+    for (int i = 0; i < formulas.size(); i++) {
+      try {
+        truthy.set(i, formulas.get(i).test(responses));
+      } catch (FormulaException e) {
+        // a formula that fails to evaluate is never truthy
+      }
+    }
+    return truthy;
+  }
+
+  @Benchmark
+  public BitSet compiled() {
+    next = (next + 1) % HOUSEHOLDS;
+    BitSet truthy = new BitSet(formulas.size());
+    for (int i = 0; i < formulas.size(); i++) {
+      if (compiledFormulas.test(i, answers[next])) {
+        truthy.set(i);
+      }
+    }
+    return truthy;
+  }
+
+  @Benchmark
+  public List<String> cached() {
+    return eligibilityService.findEligibleServices(nextHousehold());
+  }
+
+  @Benchmark
+  public DecisionDiagram compile() {
+    return DecisionDiagram.compile(formulas);
+  }
+
+  @Benchmark
+  public CompiledFormulas compileFormulas() {
+    return CompiledFormulas.compile(formulas, questionTypes);
+  }
+}
@@ -0,0 +1,132 @@
+package gov.ny.its.hs.maslow.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.ny.its.hs.maslow.access.controller.ExploreController;
+import gov.ny.its.hs.maslow.access.controller.LocalesController;
+import gov.ny.its.hs.maslow.access.dto.CatalogDto;
+import gov.ny.its.hs.maslow.access.model.CatalogSnapshot;
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import gov.ny.its.hs.maslow.access.service.ExploreService;
+import gov.ny.its.hs.maslow.access.service.LocaleNegotiator;
+import java.util.concurrent.TimeUnit;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Benchmarks the read path of the explore API: the catalog endpoint, the four locale endpoints and
+ * the Jackson serialization of {@link CatalogDto} that the catalog endpoint used to perform on
+ * every request. Controllers are invoked directly with mock requests, without the servlet
+ * container, so the results measure only the work done by the application.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExploreBenchmark {
+  private static final String ACCEPT_ENCODING = "gzip, deflate, br";
+
+  @Param({ "50", "500", "5000" })
+  int catalogSize;
+
+  @Param({ "1", "4", "7" })
+  int localeCount;
+
+  private ExploreController exploreController;
+  private LocalesController localesController;
+  private ObjectMapper objectMapper;
+  private CatalogSnapshot catalog;
+  private CatalogDto catalogDto;
+  private String language;
+  private String eTag;
+
+  @Setup
+  public void setup() {
+    CatalogService catalogService = new CatalogService(
+      event -> {},
+      CatalogFixtures.load(catalogSize, localeCount),
+      new RestTemplate(),
+      "does-not-exist.json",
+      "http://localhost/"
+    );
+    LocaleNegotiator localeNegotiator = new LocaleNegotiator(CatalogFixtures.locales(localeCount));
+
+    objectMapper = new ObjectMapper();
+    ExploreService exploreService = new ExploreService(
+      catalogService,
+      localeNegotiator,
+      objectMapper,
+      true
+    );
+
+    exploreController = new ExploreController(exploreService);
+    localesController = new LocalesController(exploreService, localeNegotiator);
+    catalog = catalogService.getCatalog();
+    catalogDto = new ModelMapper().map(catalog, CatalogDto.class);
+    language = CatalogFixtures.LOCALES.get(localeCount - 1);
+    eTag = exploreService.getCatalogPayload().select(ACCEPT_ENCODING).getETag();
+  }
+
+  private static ServletWebRequest request() {
+    return new ServletWebRequest(new MockHttpServletRequest());
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> catalog() {
+    return exploreController.catalog(ACCEPT_ENCODING, request());
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> catalogNotModified() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+    return exploreController.catalog(ACCEPT_ENCODING, new ServletWebRequest(request));
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> catalogResources() {
+    return localesController.getCatalogResources(language, ACCEPT_ENCODING, request());
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> sectionResources() {
+    return localesController.getSectionResources(language, ACCEPT_ENCODING, request());
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> questionResources() {
+    return localesController.getQuestionResources(language, ACCEPT_ENCODING, request());
+  }
+
+  @Benchmark
+  public ResponseEntity<byte[]> serviceResources() {
+    return localesController.getServiceResources(language, ACCEPT_ENCODING, request());
+  }
+
+  @Benchmark
+  public byte[] serializeCatalogDto() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(catalogDto);
+  }
+
+  @Benchmark
+  public byte[] mapAndSerializeCatalogDto() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(new ModelMapper().map(catalog, CatalogDto.class));
+  }
+}
@@ -0,0 +1,111 @@
+package gov.ny.its.hs.maslow.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.ny.its.hs.maslow.access.event.CatalogUpdatedEvent;
+import gov.ny.its.hs.maslow.access.model.Catalog;
+import gov.ny.its.hs.maslow.access.service.CatalogService;
+import gov.ny.its.hs.maslow.access.service.ExploreService;
+import gov.ny.its.hs.maslow.access.service.LocaleNegotiator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Benchmarks the refresh path of Maslow Access: reading and parsing the services file written from
+ * the real catalog, and rendering the explore API responses for the refreshed catalog.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefreshBenchmark {
+
+  @Param({ "50", "500", "5000" })
+  int catalogSize;
+
+  @Param({ "1", "4", "7" })
+  int localeCount;
+
+  private Path servicesPath;
+  private byte[][] payloads;
+  private int invocation;
+  private CatalogService catalogService;
+  private ExploreService exploreService;
+
+  @Setup
+  public void setup() throws IOException {
+    Catalog catalog = CatalogFixtures.load(catalogSize, localeCount);
+
+    // Two payloads that differ only in the order of their rank, so that both parse to catalogs of
+    // the same size.
+    servicesPath = Files.createTempFile("services", ".json");
+    CatalogFixtures.writeServices(catalog, servicesPath);
+    byte[] payload = Files.readAllBytes(servicesPath);
+    Catalog reversed = CatalogFixtures.load(catalogSize, localeCount);
+    List<String> rank = new ArrayList<>(reversed.getRank());
+    Collections.reverse(rank);
+    reversed.setRank(rank);
+    CatalogFixtures.writeServices(reversed, servicesPath);
+    payloads = new byte[][] { payload, Files.readAllBytes(servicesPath) };
+
+    catalogService =
+      new CatalogService(
+        event -> {},
+        catalog,
+        new RestTemplate(),
+        servicesPath.toString(),
+        "http://localhost/"
+      );
+    exploreService =
+      new ExploreService(
+        catalogService,
+        new LocaleNegotiator(CatalogFixtures.locales(localeCount)),
+        new ObjectMapper(),
+        true
+      );
+  }
+
+  /**
+   * Writes the other payload to the services file, since a refresh is skipped unless the content
+   * of the file differs from the services last published.
+   */
+  @Setup(Level.Invocation)
+  public void change() throws IOException {
+    Files.write(servicesPath, payloads[invocation++ % payloads.length]);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(servicesPath);
+  }
+
+  @Benchmark
+  public boolean refreshServices() {
+    return catalogService.refreshServices();
+  }
+
+  @Benchmark
+  public void render() {
+    exploreService.onCatalogUpdated(new CatalogUpdatedEvent(this, catalogService.getCatalog()));
+  }
+}
@@ -0,0 +1,755 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableList;
+import gov.ny.its.hs.maslow.shared.model.QuestionType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles formulas into trees of closures over a primitive array of responses, so that testing a
+ * formula neither allocates nor converts between boxed values. This is the compiled counterpart of
+ * {@link Formula#test(Map)}, with exactly the same results.
+ *
+ * Each question has an ordinal, and responses are passed as a {@code double[]} indexed by ordinal
+ * (see {@link #encode(Map, double[])}): a boolean as 1 or 0, a number as itself, and a missing
+ * response as {@link #MISSING}. Since the array does not record whether a response is a boolean or
+ * a number, the type of each response is taken from the type of its question, which lets the
+ * compiler resolve every JavaScript conversion ahead of time. Expressions whose type cannot be
+ * known ahead of time (such as an equality between an IF that returns a boolean or a number and
+ * another value) are rare; formulas that contain one are interpreted instead.
+ *
+ * The interpreter evaluates every argument of a call before calling it, so a formula fails when
+ * any part of it fails, even a part the result does not depend on. The compiled formulas preserve
+ * this: arguments that can fail (calls to MOD, QUOTIENT and SQRT) are always evaluated, while
+ * every other argument is only evaluated when it is needed.
+ */
+public final class CompiledFormulas {
+  /**
+   * The value of a missing response. It is a NaN that no response or arithmetic can produce, so it
+   * is compared by its bits.
+   */
+  public static final double MISSING = Double.longBitsToDouble(0x7ff8_0000_4d49_5353L);
+
+  private static final long MISSING_BITS = Double.doubleToRawLongBits(MISSING);
+
+  private final List<Formula> formulas;
+  private final List<String> questions;
+  private final QuestionType[] types;
+  private final BooleanNode[] roots;
+  private final int[][] ordinals;
+
+  private CompiledFormulas(
+    List<Formula> formulas,
+    List<String> questions,
+    QuestionType[] types,
+    BooleanNode[] roots,
+    int[][] ordinals
+  ) {
+    this.formulas = ImmutableList.copyOf(formulas);
+    this.questions = ImmutableList.copyOf(questions);
+    this.types = types;
+    this.roots = roots;
+    this.ordinals = ordinals;
+  }
+
+  /**
+   * Compiles {@code formulas}. Formulas that refer to a question without a type, or that contain an
+   * expression whose type cannot be known ahead of time, are interpreted instead.
+   *
+   * @param formulas the formulas to compile
+   * @param questionTypes maps the key of each question to its type, in the order of the ordinals
+   */
+  public static CompiledFormulas compile(
+    List<Formula> formulas,
+    Map<String, QuestionType> questionTypes
+  ) {
+    List<String> questions = new ArrayList<>(questionTypes.keySet());
+    Map<String, Integer> ordinals = new HashMap<>();
+    for (int i = 0; i < questions.size(); i++) {
+      ordinals.put(questions.get(i), i);
+    }
+    QuestionType[] types = questionTypes.values().toArray(new QuestionType[0]);
+
+    Compiler compiler = new Compiler(ordinals, types);
+    BooleanNode[] roots = new BooleanNode[formulas.size()];
+    int[][] formulaOrdinals = new int[formulas.size()][];
+    for (int i = 0; i < formulas.size(); i++) {
+      Formula formula = formulas.get(i);
+      formulaOrdinals[i] =
+        formula.getIdentifiers().stream().mapToInt(key -> ordinals.getOrDefault(key, -1)).toArray();
+      try {
+        roots[i] = compiler.compile(formula.getExpression());
+      } catch (NotCompilableException e) {
+        roots[i] = null;
+      }
+    }
+    return new CompiledFormulas(formulas, questions, types, roots, formulaOrdinals);
+  }
+
+  /**
+   * Gets the keys of the questions, in order of their ordinals.
+   */
+  public List<String> getQuestions() {
+    return questions;
+  }
+
+  /**
+   * Gets the number of formulas that are interpreted rather than compiled.
+   */
+  public int getInterpretedCount() {
+    int count = 0;
+    for (BooleanNode root : roots) {
+      if (root == null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Encodes {@code responses} into {@code answers}, indexed by the ordinal of each question.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number
+   * @param answers the array to fill, with at least one element per question
+   * @return false if a response does not match the type of its question (such as a number for a
+   *     BOOLEAN question), in which case the formulas must be tested with
+   *     {@link Formula#test(Map)} instead
+   */
+  public boolean encode(Map<String, ?> responses, double[] answers) {
+    for (int i = 0; i < questions.size(); i++) {
+      Object value = responses.get(questions.get(i));
+      if (value == null) {
+        answers[i] = MISSING;
+      } else if (value instanceof Boolean && types[i] == QuestionType.BOOLEAN) {
+        answers[i] = (Boolean) value ? 1 : 0;
+      } else if (value instanceof Number && types[i] != QuestionType.BOOLEAN) {
+        answers[i] = ((Number) value).doubleValue();
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tests the formula at {@code index} as {@link Formula#test(Map)} does, except that a formula
+   * that fails to evaluate (including one that refers to a missing response) is false.
+   *
+   * @param index the index of the formula in the list that was compiled
+   * @param answers the responses, as encoded by {@link #encode(Map, double[])}
+   */
+  public boolean test(int index, double[] answers) {
+    for (int ordinal : ordinals[index]) {
+      if (ordinal < 0 || isMissing(answers[ordinal])) {
+        return false;
+      }
+    }
+
+    BooleanNode root = roots[index];
+    if (root == null) {
+      return interpret(formulas.get(index), answers);
+    }
+
+    try {
+      return root.test(answers);
+    } catch (FailureException e) {
+      return false;
+    }
+  }
+
+  private static boolean isMissing(double answer) {
+    return Double.doubleToRawLongBits(answer) == MISSING_BITS;
+  }
+
+  private static boolean isTruthy(double value) {
+    return value != 0 && !Double.isNaN(value);
+  }
+
+  /**
+   * Tests {@code formula} with the interpreter, decoding the answers it refers to.
+   */
+  private boolean interpret(Formula formula, double[] answers) {
+    Map<String, Object> responses = new LinkedHashMap<>();
+    for (int i = 0; i < questions.size(); i++) {
+      if (!isMissing(answers[i])) {
+        responses.put(
+          questions.get(i),
+          types[i] == QuestionType.BOOLEAN ? (Object) (answers[i] != 0) : (Object) answers[i]
+        );
+      }
+    }
+
+    try {
+      return formula.test(responses);
+    } catch (FormulaException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A compiled expression evaluated for its truthiness.
+   */
+  @FunctionalInterface
+  private interface BooleanNode {
+    boolean test(double[] answers);
+  }
+
+  /**
+   * A compiled expression evaluated for its value as a number (a boolean being 1 or 0).
+   */
+  @FunctionalInterface
+  private interface NumberNode {
+    double apply(double[] answers);
+  }
+
+  /**
+   * The type of the value of an expression. MIXED means it is a boolean or a number depending on
+   * the responses.
+   */
+  private enum Type {
+    BOOLEAN,
+    NUMBER,
+    MIXED;
+
+    Type unify(Type other) {
+      return this == other ? this : MIXED;
+    }
+  }
+
+  /**
+   * Compiles expression trees into closures, resolving the type of every expression.
+   */
+  private static final class Compiler {
+    private final Map<String, Integer> ordinals;
+    private final QuestionType[] types;
+
+    Compiler(Map<String, Integer> ordinals, QuestionType[] types) {
+      this.ordinals = ordinals;
+      this.types = types;
+    }
+
+    BooleanNode compile(Expression expression) {
+      if (expression == null || alwaysFails(expression)) {
+        return answers -> false;
+      }
+      return truthy(expression);
+    }
+
+    private Type typeOf(Expression expression) {
+      if (expression instanceof Expression.Literal) {
+        return ((Expression.Literal) expression).getValue() instanceof Boolean
+          ? Type.BOOLEAN
+          : Type.NUMBER;
+      } else if (expression instanceof Expression.Identifier) {
+        return types[ordinalOf((Expression.Identifier) expression)] == QuestionType.BOOLEAN
+          ? Type.BOOLEAN
+          : Type.NUMBER;
+      } else if (expression instanceof Expression.Relational) {
+        return Type.BOOLEAN;
+      } else if (!(expression instanceof Expression.Call)) {
+        return Type.NUMBER;
+      }
+
+      Expression.Call call = (Expression.Call) expression;
+      List<Expression> arguments = call.getArguments();
+      switch (call.getName()) {
+        case "AND":
+        case "OR":
+        case "NOT":
+        case "XOR":
+          return Type.BOOLEAN;
+        case "IF":
+          // IF returns its second argument, its third argument if truthy, or its first argument
+          // (which a truthy literal as the third argument rules out)
+          Type type = typeOf(arguments.get(1));
+          if (arguments.size() > 2) {
+            type = type.unify(typeOf(arguments.get(2)));
+          }
+          return isTruthyLiteral(arguments, 2) ? type : type.unify(typeOf(arguments.get(0)));
+        case "IFS":
+          // IFS returns undefined (that is, NaN) when no condition is truthy
+          Type result = Type.NUMBER;
+          for (int i = 1; i < arguments.size(); i += 2) {
+            result = result.unify(typeOf(arguments.get(i)));
+          }
+          return result;
+        case "PRODUCT":
+          return arguments.size() == 1 ? typeOf(arguments.get(0)).unify(Type.NUMBER) : Type.NUMBER;
+        default:
+          return Type.NUMBER;
+      }
+    }
+
+    private static boolean isTruthyLiteral(List<Expression> arguments, int index) {
+      return (
+        index < arguments.size() &&
+        arguments.get(index) instanceof Expression.Literal &&
+        Values.isTruthy(((Expression.Literal) arguments.get(index)).getValue())
+      );
+    }
+
+    private int ordinalOf(Expression.Identifier identifier) {
+      Integer ordinal = ordinals.get(identifier.getName());
+      if (ordinal == null) {
+        throw new NotCompilableException();
+      }
+      return ordinal;
+    }
+
+    private BooleanNode truthy(Expression expression) {
+      if (expression instanceof Expression.Literal) {
+        boolean value = Values.isTruthy(((Expression.Literal) expression).getValue());
+        return answers -> value;
+      } else if (expression instanceof Expression.Identifier) {
+        int ordinal = ordinalOf((Expression.Identifier) expression);
+        return answers -> isTruthy(answers[ordinal]);
+      } else if (expression instanceof Expression.Relational) {
+        return relational((Expression.Relational) expression);
+      } else if (expression instanceof Expression.Call) {
+        return guard((Expression.Call) expression, truthyCall((Expression.Call) expression));
+      }
+      NumberNode number = number(expression);
+      return answers -> isTruthy(number.apply(answers));
+    }
+
+    private NumberNode number(Expression expression) {
+      if (expression instanceof Expression.Literal) {
+        double value = Values.toNumber(((Expression.Literal) expression).getValue());
+        return answers -> value;
+      } else if (expression instanceof Expression.Identifier) {
+        int ordinal = ordinalOf((Expression.Identifier) expression);
+        return answers -> answers[ordinal];
+      } else if (expression instanceof Expression.Unary) {
+        Expression.Unary unary = (Expression.Unary) expression;
+        NumberNode operand = number(unary.getOperand());
+        return unary.getOperator() == Expression.Operator.MINUS
+          ? answers -> -1 * operand.apply(answers)
+          : operand;
+      } else if (expression instanceof Expression.Binary) {
+        return binary((Expression.Binary) expression);
+      } else if (expression instanceof Expression.Relational) {
+        BooleanNode relational = relational((Expression.Relational) expression);
+        return answers -> relational.test(answers) ? 1 : 0;
+      }
+      Expression.Call call = (Expression.Call) expression;
+      return guard(call, numberCall(call));
+    }
+
+    private NumberNode binary(Expression.Binary binary) {
+      NumberNode left = number(binary.getLeft());
+      NumberNode right = number(binary.getRight());
+      switch (binary.getOperator()) {
+        case PLUS:
+          return answers -> left.apply(answers) + right.apply(answers);
+        case MINUS:
+          return answers -> left.apply(answers) - right.apply(answers);
+        case MULTIPLY:
+          return answers -> left.apply(answers) * right.apply(answers);
+        case DIVIDE:
+          return answers -> left.apply(answers) / right.apply(answers);
+        case POWER:
+          return answers -> Math.pow(left.apply(answers), right.apply(answers));
+        default:
+          throw new IllegalStateException("Not an arithmetic operator: " + binary.getOperator());
+      }
+    }
+
+    private BooleanNode relational(Expression.Relational relational) {
+      List<Expression> operands = relational.getOperands();
+      List<Expression.Operator> operators = relational.getOperators();
+      BooleanNode[] comparisons = new BooleanNode[operators.size()];
+      boolean[] disjunctive = new boolean[operators.size()];
+      for (int i = 0; i < operators.size(); i++) {
+        comparisons[i] = comparison(operators.get(i), operands.get(i), operands.get(i + 1));
+        disjunctive[i] = operators.get(i) == Expression.Operator.NOT_EQUAL;
+      }
+
+      if (comparisons.length == 1) {
+        return comparisons[0];
+      }
+      // every comparison is combined with AND, except for NOT_EQUAL which is combined with OR
+      boolean initial = !disjunctive[0];
+      return answers -> {
+        boolean result = initial;
+        for (int i = 0; i < comparisons.length; i++) {
+          boolean comparison = comparisons[i].test(answers);
+          result = disjunctive[i] ? result || comparison : result && comparison;
+        }
+        return result;
+      };
+    }
+
+    /**
+     * Compiles one comparison of a relational chain. For NOT_EQUAL, the comparison is true if the
+     * operands are not equal, so that it combines with OR as in {@link Interpreter#compare}.
+     */
+    private BooleanNode comparison(Expression.Operator operator, Expression lhs, Expression rhs) {
+      NumberNode left = number(lhs);
+      NumberNode right = number(rhs);
+      switch (operator) {
+        case EQUAL:
+        case NOT_EQUAL:
+          Type leftType = typeOf(lhs);
+          Type rightType = typeOf(rhs);
+          if (leftType == Type.MIXED || rightType == Type.MIXED) {
+            throw new NotCompilableException();
+          }
+          // a boolean never equals a number, and booleans are equal if their numbers are
+          boolean sameType = leftType == rightType;
+          boolean equal = operator == Expression.Operator.EQUAL;
+          return answers -> {
+            double l = left.apply(answers);
+            double r = right.apply(answers);
+            return (sameType && l == r) == equal;
+          };
+        case GREATER_THAN:
+          return answers -> left.apply(answers) > right.apply(answers);
+        case GREATER_THAN_OR_EQUAL:
+          return answers -> left.apply(answers) >= right.apply(answers);
+        case LESS_THAN:
+          return answers -> left.apply(answers) < right.apply(answers);
+        case LESS_THAN_OR_EQUAL:
+          return answers -> left.apply(answers) <= right.apply(answers);
+        default:
+          throw new IllegalStateException("Not a relational operator: " + operator);
+      }
+    }
+
+    private BooleanNode truthyCall(Expression.Call call) {
+      List<Expression> arguments = call.getArguments();
+      switch (call.getName()) {
+        case "AND":
+          BooleanNode[] all = truthies(arguments);
+          return answers -> {
+            for (BooleanNode argument : all) {
+              if (!argument.test(answers)) {
+                return false;
+              }
+            }
+            return true;
+          };
+        case "OR":
+          BooleanNode[] any = truthies(arguments);
+          return answers -> {
+            for (BooleanNode argument : any) {
+              if (argument.test(answers)) {
+                return true;
+              }
+            }
+            return false;
+          };
+        case "NOT":
+          BooleanNode operand = truthy(arguments.get(0));
+          return answers -> !operand.test(answers);
+        case "XOR":
+          BooleanNode[] parities = truthies(arguments);
+          return answers -> {
+            boolean result = false;
+            for (BooleanNode argument : parities) {
+              result ^= argument.test(answers);
+            }
+            return result;
+          };
+        case "IF":
+          BooleanNode condition = truthy(arguments.get(0));
+          BooleanNode then = truthy(arguments.get(1));
+          // when the condition is falsy, IF returns its third argument if truthy, or the condition
+          BooleanNode otherwise = arguments.size() > 2 ? truthy(arguments.get(2)) : answers -> false;
+          return answers -> condition.test(answers) ? then.test(answers) : otherwise.test(answers);
+        case "IFS":
+          BooleanNode[] conditions = new BooleanNode[arguments.size() / 2];
+          BooleanNode[] values = new BooleanNode[arguments.size() / 2];
+          for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = truthy(arguments.get(2 * i));
+            values[i] = truthy(arguments.get(2 * i + 1));
+          }
+          return answers -> {
+            for (int i = 0; i < conditions.length; i++) {
+              if (conditions[i].test(answers)) {
+                return values[i].test(answers);
+              }
+            }
+            return false;
+          };
+        default:
+          NumberNode number = numberCall(call);
+          return answers -> isTruthy(number.apply(answers));
+      }
+    }
+
+    private NumberNode numberCall(Expression.Call call) {
+      List<Expression> arguments = call.getArguments();
+      NumberNode first = number(arguments.get(0));
+      switch (call.getName()) {
+        case "AND":
+        case "OR":
+        case "NOT":
+        case "XOR":
+          BooleanNode truthy = truthyCall(call);
+          return answers -> truthy.test(answers) ? 1 : 0;
+        case "IF":
+          BooleanNode condition = truthy(arguments.get(0));
+          NumberNode then = number(arguments.get(1));
+          if (arguments.size() == 2) {
+            return answers -> condition.test(answers) ? then.apply(answers) : first.apply(answers);
+          }
+          BooleanNode truthyOtherwise = truthy(arguments.get(2));
+          NumberNode otherwise = number(arguments.get(2));
+          return answers -> {
+            if (condition.test(answers)) {
+              return then.apply(answers);
+            }
+            return truthyOtherwise.test(answers) ? otherwise.apply(answers) : first.apply(answers);
+          };
+        case "IFS":
+          BooleanNode[] conditions = new BooleanNode[arguments.size() / 2];
+          NumberNode[] values = new NumberNode[arguments.size() / 2];
+          for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = truthy(arguments.get(2 * i));
+            values[i] = number(arguments.get(2 * i + 1));
+          }
+          return answers -> {
+            for (int i = 0; i < conditions.length; i++) {
+              if (conditions[i].test(answers)) {
+                return values[i].apply(answers);
+              }
+            }
+            return Double.NaN;
+          };
+        case "POWER":
+          NumberNode exponent = number(arguments.get(1));
+          return answers -> Math.pow(first.apply(answers), exponent.apply(answers));
+        case "ABS":
+          return answers -> Math.abs(first.apply(answers));
+        case "CEILING":
+          NumberNode ceilingUnit = unit(arguments);
+          return answers -> {
+            double unit = ceilingUnit.apply(answers);
+            return Math.ceil(first.apply(answers) / unit) * unit;
+          };
+        case "FLOOR":
+          NumberNode floorUnit = unit(arguments);
+          return answers -> {
+            double unit = floorUnit.apply(answers);
+            return Math.floor(first.apply(answers) / unit) * unit;
+          };
+        case "INT":
+          return answers -> Math.floor(first.apply(answers));
+        case "MOD":
+          Type divisorType = typeOf(arguments.get(1));
+          if (divisorType == Type.MIXED) {
+            throw new NotCompilableException();
+          }
+          // only a number (not a boolean) equal to zero fails
+          boolean numeric = divisorType == Type.NUMBER;
+          NumberNode divisor = number(arguments.get(1));
+          return answers -> {
+            double value = divisor.apply(answers);
+            if (numeric && value == 0) {
+              throw FailureException.INSTANCE;
+            }
+            return first.apply(answers) % value;
+          };
+        case "PRODUCT":
+          NumberNode[] factors = numbers(arguments);
+          return answers -> {
+            double result = factors[0].apply(answers);
+            for (int i = 1; i < factors.length; i++) {
+              result *= factors[i].apply(answers);
+            }
+            return isTruthy(result) ? result : 0;
+          };
+        case "QUOTIENT":
+          NumberNode[] operands = numbers(arguments);
+          return answers -> {
+            double result = operands[0].apply(answers);
+            for (int i = 1; i < operands.length; i++) {
+              double operand = operands[i].apply(answers);
+              if (!isTruthy(operand)) {
+                throw FailureException.INSTANCE;
+              }
+              result /= operand;
+            }
+            result = Math.floor(result);
+            return isTruthy(result) ? result : 0;
+          };
+        case "ROUND":
+          NumberNode places = arguments.size() > 1 ? number(arguments.get(1)) : answers -> 0;
+          return answers -> {
+            double count = places.apply(answers);
+            double scale = Math.pow(10, isTruthy(count) ? count : 0);
+            return Functions.round(first.apply(answers) * scale) / scale;
+          };
+        case "SIGN":
+          return answers -> Math.signum(first.apply(answers));
+        case "SQRT":
+          return answers -> {
+            double value = first.apply(answers);
+            if (value < 0) {
+              throw FailureException.INSTANCE;
+            }
+            return Math.sqrt(value);
+          };
+        case "SUM":
+          NumberNode[] terms = numbers(arguments);
+          return answers -> {
+            double sum = 0;
+            for (NumberNode term : terms) {
+              sum += term.apply(answers);
+            }
+            return sum;
+          };
+        case "MAX":
+          NumberNode[] maxima = numbers(arguments);
+          return answers -> {
+            double max = Double.NEGATIVE_INFINITY;
+            for (NumberNode term : maxima) {
+              max = Math.max(max, term.apply(answers));
+            }
+            return max;
+          };
+        case "MIN":
+          NumberNode[] minima = numbers(arguments);
+          return answers -> {
+            double min = Double.POSITIVE_INFINITY;
+            for (NumberNode term : minima) {
+              min = Math.min(min, term.apply(answers));
+            }
+            return min;
+          };
+        default:
+          throw new IllegalStateException("Function not implemented: " + call.getName());
+      }
+    }
+
+    /**
+     * Compiles the unit of CEILING and FLOOR, which is 1 unless a truthy unit is provided.
+     */
+    private NumberNode unit(List<Expression> arguments) {
+      if (arguments.size() < 2) {
+        return answers -> 1;
+      }
+      NumberNode unit = number(arguments.get(1));
+      return answers -> {
+        double value = unit.apply(answers);
+        return isTruthy(value) ? value : 1;
+      };
+    }
+
+    private BooleanNode[] truthies(List<Expression> expressions) {
+      BooleanNode[] nodes = new BooleanNode[expressions.size()];
+      for (int i = 0; i < nodes.length; i++) {
+        nodes[i] = truthy(expressions.get(i));
+      }
+      return nodes;
+    }
+
+    private NumberNode[] numbers(List<Expression> expressions) {
+      NumberNode[] nodes = new NumberNode[expressions.size()];
+      for (int i = 0; i < nodes.length; i++) {
+        nodes[i] = number(expressions.get(i));
+      }
+      return nodes;
+    }
+
+    /**
+     * Evaluates the arguments of {@code call} that can fail before {@code node}, since the
+     * interpreter evaluates every argument even if the result does not depend on it.
+     */
+    private BooleanNode guard(Expression.Call call, BooleanNode node) {
+      NumberNode[] failing = failingArguments(call);
+      if (failing.length == 0) {
+        return node;
+      }
+      return answers -> {
+        for (NumberNode argument : failing) {
+          argument.apply(answers);
+        }
+        return node.test(answers);
+      };
+    }
+
+    private NumberNode guard(Expression.Call call, NumberNode node) {
+      NumberNode[] failing = failingArguments(call);
+      if (failing.length == 0) {
+        return node;
+      }
+      return answers -> {
+        for (NumberNode argument : failing) {
+          argument.apply(answers);
+        }
+        return node.apply(answers);
+      };
+    }
+
+    private NumberNode[] failingArguments(Expression.Call call) {
+      List<NumberNode> failing = new ArrayList<>();
+      for (Expression argument : call.getArguments()) {
+        if (mayFail(argument)) {
+          failing.add(number(argument));
+        }
+      }
+      return failing.toArray(new NumberNode[0]);
+    }
+
+    private static boolean mayFail(Expression expression) {
+      return anyCall(expression, true);
+    }
+
+    private static boolean alwaysFails(Expression expression) {
+      return anyCall(expression, false);
+    }
+
+    /**
+     * Gets whether {@code expression} contains a call that may fail (or always fails).
+     */
+    private static boolean anyCall(Expression expression, boolean mayFail) {
+      if (expression instanceof Expression.Call) {
+        Expression.Call call = (Expression.Call) expression;
+        boolean fails = mayFail
+          ? Functions.mayFail(call.getName())
+          : Functions.alwaysFails(call.getName(), call.getArguments().size());
+        return (
+          fails || call.getArguments().stream().anyMatch(argument -> anyCall(argument, mayFail))
+        );
+      } else if (expression instanceof Expression.Unary) {
+        return anyCall(((Expression.Unary) expression).getOperand(), mayFail);
+      } else if (expression instanceof Expression.Binary) {
+        Expression.Binary binary = (Expression.Binary) expression;
+        return anyCall(binary.getLeft(), mayFail) || anyCall(binary.getRight(), mayFail);
+      } else if (expression instanceof Expression.Relational) {
+        return ((Expression.Relational) expression).getOperands()
+          .stream()
+          .anyMatch(operand -> anyCall(operand, mayFail));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Thrown while compiling an expression whose type cannot be known ahead of time.
+   */
+  private static class NotCompilableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    NotCompilableException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Thrown when a compiled formula fails to evaluate. A single instance without a stack trace is
+   * reused, so that failing allocates nothing.
+   */
+  private static class FailureException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    static final FailureException INSTANCE = new FailureException();
+
+    private FailureException() {
+      super(null, null, false, false);
+    }
+  }
+}
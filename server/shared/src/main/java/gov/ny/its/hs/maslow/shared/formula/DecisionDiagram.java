@@ -0,0 +1,932 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Compiles many formulas (such as the formulas of every enabled service) into one shared, reduced
+ * ordered binary decision diagram, so that all of them can be decided together for a set of
+ * responses. Since only the truthiness of a formula matters for eligibility, each formula is
+ * reduced to a boolean function of "tests": the truthiness of a response (such as
+ * {@code IS_DISABLED}), a single comparison (such as {@code HOUSEHOLD_SIZE <= 6} or
+ * {@code HOUSEHOLD_INCOME * 12 <= 16140 + HOUSEHOLD_SIZE * 8840}), or any other expression whose
+ * structure is not boolean (such as a call to ROUND). AND, OR, NOT, XOR, IF and IFS, as well as
+ * chains of comparisons, become the structure of the diagram.
+ *
+ * Tests are shared between formulas: a test that appears in several formulas is a single variable
+ * of the diagram, and the diagram's nodes are shared as well. Variables are ordered by the number
+ * of formulas that use them, so the most widely shared tests are decided first. Deciding all
+ * formulas evaluates each test at most once, and only the tests on the path from each formula's
+ * root to a terminal.
+ *
+ * The results are exactly those of {@link Formula#test(Map)}, where a formula that fails to
+ * evaluate is false. Since the interpreter evaluates every part of a formula, a formula fails
+ * whenever any part of it does, even a part the diagram would not need to decide. So a formula
+ * that calls a function in a way that always fails is compiled to false, a formula that refers to a
+ * missing response is false, and a formula that calls a function which can fail depending on its
+ * arguments (MOD, QUOTIENT or SQRT) is not compiled, but interpreted on its own.
+ */
+public final class DecisionDiagram {
+  /** The maximum number of nodes in a diagram. Formulas that exceed it are interpreted instead. */
+  static final int MAX_NODES = 1 << 20;
+
+  private static final int FALSE = 0;
+  private static final int TRUE = 1;
+  private static final int NOT_COMPILED = -1;
+
+  private static final byte UNKNOWN = 0;
+  private static final byte FALSY = 1;
+  private static final byte TRUTHY = 2;
+
+  private static final byte REACHES_FALSE = 1;
+  private static final byte REACHES_TRUE = 2;
+  private static final byte REACHES_BOTH = REACHES_FALSE | REACHES_TRUE;
+
+  private final List<Formula> formulas;
+  private final Expression[] tests;
+  private final int[] nodeTests;
+  private final int[] lows;
+  private final int[] highs;
+  private final int[] roots;
+  private final String[][] identifiers;
+  private final Map<String, int[]> formulasByQuestion;
+  private final Map<String, int[]> testsByQuestion;
+  private final String[][] testIdentifiers;
+
+  private DecisionDiagram(
+    List<Formula> formulas,
+    Expression[] tests,
+    int[] nodeTests,
+    int[] lows,
+    int[] highs,
+    int[] roots
+  ) {
+    this.formulas = ImmutableList.copyOf(formulas);
+    this.tests = tests;
+    this.nodeTests = nodeTests;
+    this.lows = lows;
+    this.highs = highs;
+    this.roots = roots;
+    this.identifiers = new String[formulas.size()][];
+    for (int i = 0; i < formulas.size(); i++) {
+      identifiers[i] = formulas.get(i).getIdentifiers().toArray(new String[0]);
+    }
+
+    // the dependency graph from each question to the formulas and tests that refer to it
+    Map<String, List<Integer>> formulaDependents = new HashMap<>();
+    for (int i = 0; i < formulas.size(); i++) {
+      for (String question : identifiers[i]) {
+        formulaDependents.computeIfAbsent(question, key -> new ArrayList<>()).add(i);
+      }
+    }
+    Map<String, List<Integer>> testDependents = new HashMap<>();
+    this.testIdentifiers = new String[tests.length][];
+    for (int i = 0; i < tests.length; i++) {
+      testIdentifiers[i] = Formula.identifiersOf(tests[i]).toArray(new String[0]);
+      for (String question : testIdentifiers[i]) {
+        testDependents.computeIfAbsent(question, key -> new ArrayList<>()).add(i);
+      }
+    }
+    this.formulasByQuestion = toArrays(formulaDependents);
+    this.testsByQuestion = toArrays(testDependents);
+  }
+
+  private static Map<String, int[]> toArrays(Map<String, List<Integer>> dependents) {
+    Map<String, int[]> arrays = new HashMap<>();
+    dependents.forEach(
+      (question, indexes) ->
+        arrays.put(question, indexes.stream().mapToInt(Integer::intValue).toArray())
+    );
+    return arrays;
+  }
+
+  /**
+   * Compiles {@code formulas} into a decision diagram.
+   *
+   * @param formulas the formulas to compile
+   */
+  public static DecisionDiagram compile(List<Formula> formulas) {
+    return new Compiler().compile(formulas);
+  }
+
+  /**
+   * Decides every formula for {@code responses}.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number
+   * @return the indexes (in the list that was compiled) of the formulas that are truthy
+   */
+  public BitSet evaluate(Map<String, ?> responses) {
+    return evaluate(responses, null, Collections.emptySet()).truthy;
+  }
+
+  /**
+   * Decides the formulas for {@code responses} incrementally, given the evaluation of the same
+   * formulas for the previous responses and the questions whose responses have changed since.
+   * Only the formulas that refer to a changed question are decided again, and only the tests that
+   * refer to a changed question are evaluated again: every other test keeps its value from
+   * {@code previous}, and is only evaluated if it was not needed before.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number. A
+   *     formula that refers to a question without a response is not truthy.
+   * @param previous the previous evaluation, or null to decide every formula
+   * @param changed the keys of the questions whose responses have changed (including responses
+   *     that were added or removed) since the previous evaluation
+   * @throws IllegalArgumentException if {@code previous} is not an evaluation of this diagram
+   */
+  public Evaluation evaluate(
+    Map<String, ?> responses,
+    Evaluation previous,
+    Collection<String> changed
+  ) {
+    if (previous == null) {
+      byte[] values = new byte[tests.length];
+      BitSet truthy = new BitSet(formulas.size());
+      Interpreter interpreter = new Interpreter(responses);
+      for (int i = 0; i < roots.length; i++) {
+        truthy.set(i, decide(i, responses, interpreter, values));
+      }
+      return new Evaluation(formulas.size(), truthy, values);
+    }
+
+    Preconditions.checkArgument(
+      previous.formulaCount == formulas.size() && previous.values.length == tests.length,
+      "Evaluation is not an evaluation of this diagram"
+    );
+    byte[] values = previous.values.clone();
+    BitSet truthy = (BitSet) previous.truthy.clone();
+    BitSet affected = new BitSet(formulas.size());
+    for (String question : changed) {
+      for (int test : testsByQuestion.getOrDefault(question, new int[0])) {
+        values[test] = UNKNOWN;
+      }
+      for (int formula : formulasByQuestion.getOrDefault(question, new int[0])) {
+        affected.set(formula);
+      }
+    }
+
+    Interpreter interpreter = new Interpreter(responses);
+    for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+      truthy.set(i, decide(i, responses, interpreter, values));
+    }
+    return new Evaluation(formulas.size(), truthy, values);
+  }
+
+  /**
+   * Restores an evaluation of this diagram from {@link Evaluation#toByteArray()}.
+   *
+   * @param bytes the serialized evaluation
+   * @throws IllegalArgumentException if {@code bytes} is not an evaluation of this diagram
+   */
+  public Evaluation restore(byte[] bytes) {
+    int truthyLength = Evaluation.truthyLength(formulas.size());
+    int valuesLength = Evaluation.valuesLength(tests.length);
+    Preconditions.checkArgument(
+      bytes.length == truthyLength + valuesLength,
+      "Expected an evaluation of %s bytes but found %s bytes",
+      truthyLength + valuesLength,
+      bytes.length
+    );
+
+    BitSet truthy = BitSet.valueOf(Arrays.copyOf(bytes, truthyLength));
+    Preconditions.checkArgument(
+      truthy.length() <= formulas.size(),
+      "Evaluation has too many formulas"
+    );
+    byte[] values = new byte[tests.length];
+    for (int i = 0; i < tests.length; i++) {
+      values[i] = (byte) ((bytes[truthyLength + i / 4] >> (i % 4 * 2)) & 3);
+      Preconditions.checkArgument(values[i] <= TRUTHY, "Evaluation has an invalid test value");
+    }
+    return new Evaluation(formulas.size(), truthy, values);
+  }
+
+  /**
+   * Decides as many formulas as possible for an incomplete set of responses, assuming that every
+   * question will eventually have a response. A formula is decided if it is truthy (or falsy) for
+   * every possible value of the tests that cannot be evaluated yet, and undecided otherwise. This
+   * generalizes Kleene's three-valued logic, where an unknown value of a test is propagated
+   * through AND, OR and NOT: since the diagram considers each combination of unknown tests, a
+   * formula such as {@code OR(A, NOT(A))} is decided even though Kleene's logic leaves it unknown.
+   *
+   * Tests are considered independent of each other, so a formula may be reported as undecided even
+   * though no response could change it (for example, {@code OR(SIZE <= 6, SIZE > 6)}).
+   *
+   * @param responses maps the key of each question answered so far to its response, a boolean or a
+   *     number
+   */
+  public PartialEvaluation evaluatePartially(Map<String, ?> responses) {
+    byte[] values = new byte[tests.length];
+    byte[] reach = new byte[nodeTests.length];
+    Interpreter interpreter = new Interpreter(responses);
+    BitSet truthy = new BitSet(formulas.size());
+    BitSet falsy = new BitSet(formulas.size());
+    Set<String> remaining = new LinkedHashSet<>();
+
+    for (int i = 0; i < roots.length; i++) {
+      if (roots[i] == NOT_COMPILED) {
+        if (hasResponses(identifiers[i], responses)) {
+          (decide(i, responses, interpreter, values) ? truthy : falsy).set(i);
+        } else {
+          addMissing(identifiers[i], responses, remaining);
+        }
+        continue;
+      }
+
+      byte reachable = reach(roots[i], responses, interpreter, values, reach);
+      if (reachable == REACHES_TRUE) {
+        truthy.set(i);
+      } else if (reachable == REACHES_FALSE) {
+        falsy.set(i);
+      } else {
+        collectRemaining(roots[i], responses, values, reach, new BitSet(), remaining);
+      }
+    }
+
+    BitSet undecided = new BitSet(formulas.size());
+    undecided.set(0, formulas.size());
+    undecided.andNot(truthy);
+    undecided.andNot(falsy);
+    return new PartialEvaluation(truthy, falsy, undecided, remaining);
+  }
+
+  /**
+   * Returns which terminals can be reached from {@code node} given the tests that can be evaluated,
+   * as a combination of {@link #REACHES_FALSE} and {@link #REACHES_TRUE}.
+   */
+  private byte reach(
+    int node,
+    Map<String, ?> responses,
+    Interpreter interpreter,
+    byte[] values,
+    byte[] reach
+  ) {
+    if (node == FALSE) {
+      return REACHES_FALSE;
+    } else if (node == TRUE) {
+      return REACHES_TRUE;
+    } else if (reach[node] != 0) {
+      return reach[node];
+    }
+
+    byte value = valueOf(nodeTests[node], responses, interpreter, values);
+    if (value == UNKNOWN) {
+      reach[node] =
+        (byte) (
+          reach(lows[node], responses, interpreter, values, reach) |
+          reach(highs[node], responses, interpreter, values, reach)
+        );
+    } else {
+      int next = value == TRUTHY ? highs[node] : lows[node];
+      reach[node] = reach(next, responses, interpreter, values, reach);
+    }
+    return reach[node];
+  }
+
+  /**
+   * Collects the questions without responses that are tested on the paths from {@code node} that
+   * can still reach both terminals.
+   */
+  private void collectRemaining(
+    int node,
+    Map<String, ?> responses,
+    byte[] values,
+    byte[] reach,
+    BitSet visited,
+    Set<String> remaining
+  ) {
+    if (node <= TRUE || reach[node] != REACHES_BOTH || visited.get(node)) {
+      return;
+    }
+    visited.set(node);
+
+    int test = nodeTests[node];
+    if (values[test] == UNKNOWN) {
+      addMissing(testIdentifiers[test], responses, remaining);
+      collectRemaining(lows[node], responses, values, reach, visited, remaining);
+      collectRemaining(highs[node], responses, values, reach, visited, remaining);
+    } else {
+      int next = values[test] == TRUTHY ? highs[node] : lows[node];
+      collectRemaining(next, responses, values, reach, visited, remaining);
+    }
+  }
+
+  /**
+   * Returns the value of {@code test}, evaluating it if needed, or {@link #UNKNOWN} if it refers
+   * to a question without a response.
+   */
+  private byte valueOf(int test, Map<String, ?> responses, Interpreter interpreter, byte[] values) {
+    if (values[test] == UNKNOWN && hasResponses(testIdentifiers[test], responses)) {
+      values[test] = Values.isTruthy(tests[test].accept(interpreter)) ? TRUTHY : FALSY;
+    }
+    return values[test];
+  }
+
+  private static void addMissing(
+    String[] identifiers,
+    Map<String, ?> responses,
+    Set<String> missing
+  ) {
+    for (String identifier : identifiers) {
+      if (responses.get(identifier) == null) {
+        missing.add(identifier);
+      }
+    }
+  }
+
+  /**
+   * Decides the formula at {@code index}, evaluating only the tests whose values are still unknown
+   * in {@code values} and recording their values there.
+   */
+  private boolean decide(
+    int index,
+    Map<String, ?> responses,
+    Interpreter interpreter,
+    byte[] values
+  ) {
+    if (!hasResponses(identifiers[index], responses)) {
+      return false;
+    }
+
+    if (roots[index] == NOT_COMPILED) {
+      try {
+        return formulas.get(index).test(responses);
+      } catch (FormulaException e) {
+        // a formula that fails to evaluate is never truthy
+        return false;
+      }
+    }
+
+    int node = roots[index];
+    while (node > TRUE) {
+      int test = nodeTests[node];
+      if (values[test] == UNKNOWN) {
+        values[test] = Values.isTruthy(tests[test].accept(interpreter)) ? TRUTHY : FALSY;
+      }
+      node = values[test] == TRUTHY ? highs[node] : lows[node];
+    }
+    return node == TRUE;
+  }
+
+  /**
+   * Gets the number of decision nodes in the diagram, excluding the two terminals.
+   */
+  public int getNodeCount() {
+    return nodeTests.length - 2;
+  }
+
+  /**
+   * Gets the number of distinct tests (that is, variables) in the diagram.
+   */
+  public int getTestCount() {
+    return tests.length;
+  }
+
+  /**
+   * Gets the number of formulas that are interpreted on their own rather than compiled.
+   */
+  public int getInterpretedCount() {
+    return (int) Arrays.stream(roots).filter(root -> root == NOT_COMPILED).count();
+  }
+
+  /**
+   * Gets the compiled formulas, in the order of the indexes returned by {@link #evaluate(Map)}.
+   */
+  public List<Formula> getFormulas() {
+    return formulas;
+  }
+
+  /**
+   * Gets the tests of the diagram, in order of their level.
+   */
+  List<Expression> getTests() {
+    return ImmutableList.copyOf(tests);
+  }
+
+  /**
+   * Gets whether the formula at {@code index} is interpreted on its own rather than compiled.
+   */
+  boolean isInterpreted(int index) {
+    return roots[index] == NOT_COMPILED;
+  }
+
+  private static boolean hasResponses(String[] identifiers, Map<String, ?> responses) {
+    for (String identifier : identifiers) {
+      if (responses.get(identifier) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The result of deciding every formula of a diagram, along with the values of the tests that
+   * were evaluated to decide them, so that the formulas can be decided again incrementally (see
+   * {@link DecisionDiagram#evaluate(Map, Evaluation, Collection)}).
+   */
+  public static final class Evaluation {
+    private final int formulaCount;
+    private final BitSet truthy;
+    private final byte[] values;
+
+    private Evaluation(int formulaCount, BitSet truthy, byte[] values) {
+      this.formulaCount = formulaCount;
+      this.truthy = truthy;
+      this.values = values;
+    }
+
+    private static int truthyLength(int formulaCount) {
+      return (formulaCount + 7) / 8;
+    }
+
+    private static int valuesLength(int testCount) {
+      return (testCount + 3) / 4;
+    }
+
+    /**
+     * Gets the indexes (in the list that was compiled) of the formulas that are truthy.
+     */
+    public BitSet getTruthy() {
+      return (BitSet) truthy.clone();
+    }
+
+    /**
+     * Serializes the evaluation, so that it can be restored with
+     * {@link DecisionDiagram#restore(byte[])}. The result packs one bit per formula, followed by
+     * two bits per test.
+     */
+    public byte[] toByteArray() {
+      int truthyLength = truthyLength(formulaCount);
+      byte[] bytes = Arrays.copyOf(
+        truthy.toByteArray(),
+        truthyLength + valuesLength(values.length)
+      );
+      for (int i = 0; i < values.length; i++) {
+        bytes[truthyLength + i / 4] |= values[i] << (i % 4 * 2);
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * The result of deciding the formulas of a diagram for an incomplete set of responses (see
+   * {@link DecisionDiagram#evaluatePartially(Map)}).
+   */
+  public static final class PartialEvaluation {
+    private final BitSet truthy;
+    private final BitSet falsy;
+    private final BitSet undecided;
+    private final Set<String> remainingQuestions;
+
+    private PartialEvaluation(
+      BitSet truthy,
+      BitSet falsy,
+      BitSet undecided,
+      Set<String> remainingQuestions
+    ) {
+      this.truthy = truthy;
+      this.falsy = falsy;
+      this.undecided = undecided;
+      this.remainingQuestions = Collections.unmodifiableSet(remainingQuestions);
+    }
+
+    /**
+     * Gets the indexes of the formulas that are truthy, whatever the remaining responses are.
+     */
+    public BitSet getTruthy() {
+      return (BitSet) truthy.clone();
+    }
+
+    /**
+     * Gets the indexes of the formulas that are falsy, whatever the remaining responses are.
+     */
+    public BitSet getFalsy() {
+      return (BitSet) falsy.clone();
+    }
+
+    /**
+     * Gets the indexes of the formulas that depend on the remaining responses.
+     */
+    public BitSet getUndecided() {
+      return (BitSet) undecided.clone();
+    }
+
+    /**
+     * Gets the keys of the questions without responses that could decide an undecided formula.
+     * Any other question without a response cannot change the result of any formula.
+     */
+    public Set<String> getRemainingQuestions() {
+      return remainingQuestions;
+    }
+  }
+
+  /**
+   * Reduces formulas to boolean conditions over tests, orders the tests, and builds the diagram.
+   */
+  private static final class Compiler {
+    private final Map<String, Integer> testIds = new HashMap<>();
+    private final List<Expression> testExpressions = new ArrayList<>();
+    private final List<Integer> testUsage = new ArrayList<>();
+
+    private final List<Integer> nodeTests = new ArrayList<>();
+    private final List<Integer> lows = new ArrayList<>();
+    private final List<Integer> highs = new ArrayList<>();
+    private final Map<Node, Integer> unique = new HashMap<>();
+    private final Map<Node, Integer> computed = new HashMap<>();
+    private int[] levels;
+
+    DecisionDiagram compile(List<Formula> formulas) {
+      Condition[] conditions = new Condition[formulas.size()];
+      for (int i = 0; i < formulas.size(); i++) {
+        Expression expression = formulas.get(i).getExpression();
+        if (expression == null || CallScanner.alwaysFails(expression)) {
+          conditions[i] = Condition.constant(false);
+        } else if (!CallScanner.mayFail(expression)) {
+          Set<Integer> used = new HashSet<>();
+          conditions[i] = toCondition(expression, used);
+          used.forEach(test -> testUsage.set(test, testUsage.get(test) + 1));
+        }
+      }
+
+      // order the tests by the number of formulas that use them, then by first appearance
+      Integer[] order = new Integer[testExpressions.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, Comparator.comparing((Integer test) -> -testUsage.get(test)));
+      levels = new int[order.length];
+      Expression[] tests = new Expression[order.length];
+      for (int level = 0; level < order.length; level++) {
+        levels[order[level]] = level;
+        tests[level] = testExpressions.get(order[level]);
+      }
+
+      // the terminals are nodes 0 and 1
+      for (int terminal = 0; terminal < 2; terminal++) {
+        nodeTests.add(Integer.MAX_VALUE);
+        lows.add(terminal);
+        highs.add(terminal);
+      }
+
+      int[] roots = new int[formulas.size()];
+      for (int i = 0; i < formulas.size(); i++) {
+        try {
+          roots[i] = conditions[i] == null ? NOT_COMPILED : build(conditions[i]);
+        } catch (TooLargeException e) {
+          roots[i] = NOT_COMPILED;
+        }
+      }
+
+      return new DecisionDiagram(
+        formulas,
+        tests,
+        nodeTests.stream().mapToInt(Integer::intValue).toArray(),
+        lows.stream().mapToInt(Integer::intValue).toArray(),
+        highs.stream().mapToInt(Integer::intValue).toArray(),
+        roots
+      );
+    }
+
+    /**
+     * Reduces the truthiness of {@code expression} to a condition over tests, recording the tests
+     * it uses in {@code used}.
+     */
+    private Condition toCondition(Expression expression, Set<Integer> used) {
+      if (expression instanceof Expression.Literal) {
+        return Condition.constant(Values.isTruthy(((Expression.Literal) expression).getValue()));
+      } else if (expression instanceof Expression.Unary) {
+        // a sign converts to a number, which does not change truthiness
+        return toCondition(((Expression.Unary) expression).getOperand(), used);
+      } else if (expression instanceof Expression.Relational) {
+        return toCondition((Expression.Relational) expression, used);
+      } else if (expression instanceof Expression.Call) {
+        return toCondition((Expression.Call) expression, used);
+      }
+      return test(expression, used);
+    }
+
+    private Condition toCondition(Expression.Relational relational, Set<Integer> used) {
+      List<Expression> operands = relational.getOperands();
+      List<Expression.Operator> operators = relational.getOperators();
+      if (operators.size() == 1) {
+        return test(relational, used);
+      }
+
+      // mirrors the interpreter: comparisons are combined with AND, and NOT_EQUAL with OR
+      Condition result = Condition.constant(operators.get(0) != Expression.Operator.NOT_EQUAL);
+      for (int i = 0; i < operators.size(); i++) {
+        Expression.Operator operator = operators.get(i);
+        Condition comparison = test(
+          new Expression.Relational(
+            ImmutableList.of(operands.get(i), operands.get(i + 1)),
+            ImmutableList.of(operator)
+          ),
+          used
+        );
+        result =
+          operator == Expression.Operator.NOT_EQUAL
+            ? Condition.or(result, comparison)
+            : Condition.and(result, comparison);
+      }
+      return result;
+    }
+
+    private Condition toCondition(Expression.Call call, Set<Integer> used) {
+      List<Expression> arguments = call.getArguments();
+      List<Condition> conditions = new ArrayList<>();
+      switch (call.getName()) {
+        case "AND":
+        case "OR":
+        case "XOR":
+          for (Expression argument : arguments) {
+            conditions.add(toCondition(argument, used));
+          }
+          Condition result = conditions.get(0);
+          for (Condition condition : conditions.subList(1, conditions.size())) {
+            if (call.getName().equals("AND")) {
+              result = Condition.and(result, condition);
+            } else if (call.getName().equals("OR")) {
+              result = Condition.or(result, condition);
+            } else {
+              result = Condition.xor(result, condition);
+            }
+          }
+          return result;
+        case "NOT":
+          return Condition.not(toCondition(arguments.get(0), used));
+        case "IF":
+          // IF returns its third argument (or its falsy condition) when the condition is falsy
+          return Condition.ifThenElse(
+            toCondition(arguments.get(0), used),
+            toCondition(arguments.get(1), used),
+            arguments.size() > 2
+              ? toCondition(arguments.get(2), used)
+              : Condition.constant(false)
+          );
+        case "IFS":
+          // IFS returns undefined (which is falsy) when no condition is truthy
+          Condition otherwise = Condition.constant(false);
+          for (int i = arguments.size() - 2; i >= 0; i -= 2) {
+            otherwise =
+              Condition.ifThenElse(
+                toCondition(arguments.get(i), used),
+                toCondition(arguments.get(i + 1), used),
+                otherwise
+              );
+          }
+          return otherwise;
+        case "PRODUCT":
+          // PRODUCT returns its only argument when it is truthy, and zero otherwise
+          if (arguments.size() == 1) {
+            return toCondition(arguments.get(0), used);
+          }
+          return test(call, used);
+        default:
+          return test(call, used);
+      }
+    }
+
+    private Condition test(Expression expression, Set<Integer> used) {
+      int id = testIds.computeIfAbsent(
+        expression.toString(),
+        key -> {
+          testExpressions.add(expression);
+          testUsage.add(0);
+          return testExpressions.size() - 1;
+        }
+      );
+      used.add(id);
+      return Condition.test(id);
+    }
+
+    private int build(Condition condition) {
+      switch (condition.type) {
+        case CONSTANT:
+          return condition.test == TRUE ? TRUE : FALSE;
+        case TEST:
+          return node(levels[condition.test], FALSE, TRUE);
+        case NOT:
+          return ifThenElse(build(condition.operands[0]), FALSE, TRUE);
+        case AND:
+          return ifThenElse(build(condition.operands[0]), build(condition.operands[1]), FALSE);
+        case OR:
+          return ifThenElse(build(condition.operands[0]), TRUE, build(condition.operands[1]));
+        case XOR:
+          int right = build(condition.operands[1]);
+          return ifThenElse(build(condition.operands[0]), ifThenElse(right, FALSE, TRUE), right);
+        default:
+          return ifThenElse(
+            build(condition.operands[0]),
+            build(condition.operands[1]),
+            build(condition.operands[2])
+          );
+      }
+    }
+
+    /**
+     * Returns the node for "if f then g else h", the basic operation of a decision diagram.
+     */
+    private int ifThenElse(int f, int g, int h) {
+      if (f == TRUE) {
+        return g;
+      } else if (f == FALSE) {
+        return h;
+      } else if (g == h) {
+        return g;
+      } else if (g == TRUE && h == FALSE) {
+        return f;
+      }
+
+      Node key = new Node(f, g, h);
+      Integer cached = computed.get(key);
+      if (cached != null) {
+        return cached;
+      }
+
+      int level = Math.min(nodeTests.get(f), Math.min(nodeTests.get(g), nodeTests.get(h)));
+      int low = ifThenElse(low(f, level), low(g, level), low(h, level));
+      int high = ifThenElse(high(f, level), high(g, level), high(h, level));
+      int result = node(level, low, high);
+      computed.put(key, result);
+      return result;
+    }
+
+    private int low(int node, int level) {
+      return nodeTests.get(node) == level ? lows.get(node) : node;
+    }
+
+    private int high(int node, int level) {
+      return nodeTests.get(node) == level ? highs.get(node) : node;
+    }
+
+    /**
+     * Returns the unique node that tests {@code level}, creating it if needed.
+     */
+    private int node(int level, int low, int high) {
+      if (low == high) {
+        return low;
+      }
+
+      Node key = new Node(level, low, high);
+      Integer existing = unique.get(key);
+      if (existing != null) {
+        return existing;
+      } else if (nodeTests.size() >= MAX_NODES) {
+        throw new TooLargeException();
+      }
+
+      nodeTests.add(level);
+      lows.add(low);
+      highs.add(high);
+      unique.put(key, nodeTests.size() - 1);
+      return nodeTests.size() - 1;
+    }
+  }
+
+  /**
+   * A boolean condition over the tests of a diagram, before the diagram is built.
+   */
+  private static final class Condition {
+
+    enum Type {
+      CONSTANT,
+      TEST,
+      NOT,
+      AND,
+      OR,
+      XOR,
+      IF_THEN_ELSE,
+    }
+
+    final Type type;
+    final int test;
+    final Condition[] operands;
+
+    private Condition(Type type, int test, Condition... operands) {
+      this.type = type;
+      this.test = test;
+      this.operands = operands;
+    }
+
+    static Condition constant(boolean value) {
+      return new Condition(Type.CONSTANT, value ? TRUE : FALSE);
+    }
+
+    static Condition test(int test) {
+      return new Condition(Type.TEST, test);
+    }
+
+    static Condition not(Condition operand) {
+      return new Condition(Type.NOT, -1, operand);
+    }
+
+    static Condition and(Condition left, Condition right) {
+      return new Condition(Type.AND, -1, left, right);
+    }
+
+    static Condition or(Condition left, Condition right) {
+      return new Condition(Type.OR, -1, left, right);
+    }
+
+    static Condition xor(Condition left, Condition right) {
+      return new Condition(Type.XOR, -1, left, right);
+    }
+
+    static Condition ifThenElse(Condition condition, Condition then, Condition otherwise) {
+      return new Condition(Type.IF_THEN_ELSE, -1, condition, then, otherwise);
+    }
+  }
+
+  /**
+   * A key of the unique and computed tables: a node (test, low, high) or an operation (f, g, h).
+   */
+  private static final class Node {
+    final int a;
+    final int b;
+    final int c;
+
+    Node(int a, int b, int c) {
+      this.a = a;
+      this.b = b;
+      this.c = c;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Node)) {
+        return false;
+      }
+      Node node = (Node) other;
+      return a == node.a && b == node.b && c == node.c;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(a, b, c);
+    }
+  }
+
+  /**
+   * Finds calls that always fail, or that may fail depending on their arguments.
+   */
+  private static final class CallScanner {
+
+    static boolean alwaysFails(Expression expression) {
+      return anyCall(
+        expression,
+        call -> Functions.alwaysFails(call.getName(), call.getArguments().size())
+      );
+    }
+
+    static boolean mayFail(Expression expression) {
+      return anyCall(expression, call -> Functions.mayFail(call.getName()));
+    }
+
+    private static boolean anyCall(
+      Expression expression,
+      Predicate<Expression.Call> predicate
+    ) {
+      if (expression instanceof Expression.Call) {
+        Expression.Call call = (Expression.Call) expression;
+        return (
+          predicate.test(call) ||
+          call.getArguments().stream().anyMatch(argument -> anyCall(argument, predicate))
+        );
+      } else if (expression instanceof Expression.Unary) {
+        return anyCall(((Expression.Unary) expression).getOperand(), predicate);
+      } else if (expression instanceof Expression.Binary) {
+        Expression.Binary binary = (Expression.Binary) expression;
+        return anyCall(binary.getLeft(), predicate) || anyCall(binary.getRight(), predicate);
+      } else if (expression instanceof Expression.Relational) {
+        return ((Expression.Relational) expression).getOperands()
+          .stream()
+          .anyMatch(operand -> anyCall(operand, predicate));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Thrown when a diagram would exceed {@link #MAX_NODES}.
+   */
+  private static class TooLargeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    TooLargeException() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * A node of the abstract syntax tree of a {@link Formula}. Trees are immutable, so a formula can be
+ * parsed once and then evaluated concurrently by any number of threads.
+ *
+ * The tree preserves the (sometimes surprising) semantics of the client evaluator: a parenthesized
+ * expression or a signed identifier is always converted to a number, so it is represented as a
+ * {@link Unary} node, while a signed boolean or number literal is folded into its {@link Literal}.
+ */
+public abstract class Expression {
+
+  Expression() {}
+
+  /**
+   * Dispatches to the method of {@code visitor} for the type of this node.
+   *
+   * @param visitor the visitor
+   * @param <R> the type returned by the visitor
+   */
+  public abstract <R> R accept(Visitor<R> visitor);
+
+  /**
+   * Returns the expression as formula text, without the leading equals sign.
+   */
+  @Override
+  public String toString() {
+    return accept(ExpressionPrinter.INSTANCE);
+  }
+
+  /**
+   * Visits each type of node of an expression tree.
+   *
+   * @param <R> the type returned by the visitor
+   */
+  public interface Visitor<R> {
+    /** Visits a boolean or number literal. */
+    R visitLiteral(Literal literal);
+
+    /** Visits a reference to the response to a question. */
+    R visitIdentifier(Identifier identifier);
+
+    /** Visits a sign that converts its operand to a number. */
+    R visitUnary(Unary unary);
+
+    /** Visits an arithmetic operation. */
+    R visitBinary(Binary binary);
+
+    /** Visits a chain of comparisons. */
+    R visitRelational(Relational relational);
+
+    /** Visits a function call. */
+    R visitCall(Call call);
+  }
+
+  /**
+   * Defines the operators of an expression.
+   */
+  public enum Operator {
+    PLUS("+"),
+    MINUS("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    POWER("^"),
+    EQUAL("="),
+    NOT_EQUAL("<>"),
+    GREATER_THAN(">"),
+    GREATER_THAN_OR_EQUAL(">="),
+    LESS_THAN("<"),
+    LESS_THAN_OR_EQUAL("<=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+      this.symbol = symbol;
+    }
+
+    /**
+     * Gets the symbol of this operator as it appears in a formula.
+     */
+    public String getSymbol() {
+      return symbol;
+    }
+  }
+
+  /**
+   * A boolean or number literal. The value is either a {@link Boolean} or a {@link Double}.
+   */
+  public static final class Literal extends Expression {
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    /**
+     * Gets the value of this literal, either a {@link Boolean} or a {@link Double}.
+     */
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLiteral(this);
+    }
+  }
+
+  /**
+   * A reference to the response to a question. Evaluates to the response itself, which may be a
+   * boolean.
+   */
+  public static final class Identifier extends Expression {
+    private final String name;
+
+    Identifier(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Gets the key of the question.
+     */
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIdentifier(this);
+    }
+  }
+
+  /**
+   * Converts its operand to a number, negating it if the operator is {@link Operator#MINUS}.
+   */
+  public static final class Unary extends Expression {
+    private final Operator operator;
+    private final Expression operand;
+
+    Unary(Operator operator, Expression operand) {
+      this.operator = operator;
+      this.operand = operand;
+    }
+
+    /**
+     * Gets the operator, either {@link Operator#PLUS} or {@link Operator#MINUS}.
+     */
+    public Operator getOperator() {
+      return operator;
+    }
+
+    /**
+     * Gets the operand.
+     */
+    public Expression getOperand() {
+      return operand;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitUnary(this);
+    }
+  }
+
+  /**
+   * An arithmetic operation: {@link Operator#PLUS}, {@link Operator#MINUS},
+   * {@link Operator#MULTIPLY}, {@link Operator#DIVIDE} or {@link Operator#POWER}.
+   */
+  public static final class Binary extends Expression {
+    private final Operator operator;
+    private final Expression left;
+    private final Expression right;
+
+    Binary(Operator operator, Expression left, Expression right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * Gets the operator.
+     */
+    public Operator getOperator() {
+      return operator;
+    }
+
+    /**
+     * Gets the left operand.
+     */
+    public Expression getLeft() {
+      return left;
+    }
+
+    /**
+     * Gets the right operand.
+     */
+    public Expression getRight() {
+      return right;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitBinary(this);
+    }
+  }
+
+  /**
+   * A chain of comparisons such as {@code 16000 <= INCOME <= 50000}. Each adjacent pair of operands
+   * is compared; the comparisons are combined with AND, except that {@link Operator#NOT_EQUAL}
+   * combines with OR. There is always one more operand than there are operators.
+   */
+  public static final class Relational extends Expression {
+    private final List<Expression> operands;
+    private final List<Operator> operators;
+
+    Relational(List<Expression> operands, List<Operator> operators) {
+      this.operands = ImmutableList.copyOf(operands);
+      this.operators = ImmutableList.copyOf(operators);
+    }
+
+    /**
+     * Gets the operands.
+     */
+    public List<Expression> getOperands() {
+      return operands;
+    }
+
+    /**
+     * Gets the operators between each pair of operands.
+     */
+    public List<Operator> getOperators() {
+      return operators;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitRelational(this);
+    }
+  }
+
+  /**
+   * A function call such as {@code AND(A, B)}. Evaluates to a boolean if the function returns a
+   * boolean, or to a number otherwise.
+   */
+  public static final class Call extends Expression {
+    private final String name;
+    private final List<Expression> arguments;
+
+    Call(String name, List<Expression> arguments) {
+      this.name = name;
+      this.arguments = ImmutableList.copyOf(arguments);
+    }
+
+    /**
+     * Gets the name of the function.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the arguments.
+     */
+    public List<Expression> getArguments() {
+      return arguments;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCall(this);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import gov.ny.its.hs.maslow.shared.formula.Expression.Operator;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Prints an expression tree as formula text (without the leading equals sign). Parsing the printed
+ * text produces an equivalent tree, so the text also serves as a canonical key for an expression.
+ */
+final class ExpressionPrinter implements Expression.Visitor<String> {
+  static final ExpressionPrinter INSTANCE = new ExpressionPrinter();
+
+  private static final int RELATIONAL = 1;
+  private static final int ADDITION = 2;
+  private static final int MULTIPLICATION = 3;
+  private static final int POWER = 4;
+  private static final int ATOMIC = 5;
+
+  private ExpressionPrinter() {}
+
+  @Override
+  public String visitLiteral(Expression.Literal literal) {
+    Object value = literal.getValue();
+    if (value instanceof Boolean) {
+      return (Boolean) value ? "TRUE" : "FALSE";
+    }
+
+    double number = (Double) value;
+    if (number == 0 && 1 / number < 0) {
+      return "-0";
+    } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+      return Long.toString((long) number);
+    } else if (Double.isNaN(number) || Double.isInfinite(number)) {
+      return Double.toString(number);
+    }
+    return BigDecimal.valueOf(number).toPlainString();
+  }
+
+  @Override
+  public String visitIdentifier(Expression.Identifier identifier) {
+    return identifier.getName();
+  }
+
+  @Override
+  public String visitUnary(Expression.Unary unary) {
+    String operand = "(" + unary.getOperand().accept(this) + ")";
+    return unary.getOperator() == Operator.MINUS ? "-" + operand : operand;
+  }
+
+  @Override
+  public String visitBinary(Expression.Binary binary) {
+    int precedence = precedenceOf(binary);
+    // exponents are right associative, while the other operators are left associative
+    boolean rightAssociative = binary.getOperator() == Operator.POWER;
+    String left = print(binary.getLeft(), rightAssociative ? precedence + 1 : precedence);
+    String right = print(binary.getRight(), rightAssociative ? precedence : precedence + 1);
+    return left + binary.getOperator().getSymbol() + right;
+  }
+
+  @Override
+  public String visitRelational(Expression.Relational relational) {
+    List<Expression> operands = relational.getOperands();
+    StringBuilder builder = new StringBuilder(print(operands.get(0), ADDITION));
+    for (int i = 0; i < relational.getOperators().size(); i++) {
+      builder.append(relational.getOperators().get(i).getSymbol());
+      builder.append(print(operands.get(i + 1), ADDITION));
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String visitCall(Expression.Call call) {
+    StringBuilder builder = new StringBuilder(call.getName()).append('(');
+    for (int i = 0; i < call.getArguments().size(); i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(call.getArguments().get(i).accept(this));
+    }
+    return builder.append(')').toString();
+  }
+
+  /**
+   * Prints {@code expression}, in parentheses if its precedence is lower than {@code minimum}. The
+   * parentheses convert the value to a number, which does not change the value of an operand of an
+   * arithmetic or relational operator, since those convert their operands to numbers anyway.
+   */
+  private String print(Expression expression, int minimum) {
+    String text = expression.accept(this);
+    return precedenceOf(expression) < minimum ? "(" + text + ")" : text;
+  }
+
+  private static int precedenceOf(Expression expression) {
+    if (expression instanceof Expression.Relational) {
+      return RELATIONAL;
+    } else if (expression instanceof Expression.Binary) {
+      switch (((Expression.Binary) expression).getOperator()) {
+        case PLUS:
+        case MINUS:
+          return ADDITION;
+        case MULTIPLY:
+        case DIVIDE:
+          return MULTIPLICATION;
+        default:
+          return POWER;
+      }
+    }
+    return ATOMIC;
+  }
+}
@@ -0,0 +1,170 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A parsed eligibility formula (see
+ * {@link gov.ny.its.hs.maslow.shared.model.Service#getFormula()}). Formulas are written in a subset
+ * of Google Sheet's formula language and are evaluated by the client; this is a Java implementation
+ * of the client lexer, parser and evaluator that produces exactly the same results, so that the
+ * server can evaluate formulas as well.
+ *
+ * A formula is parsed once into an immutable expression tree, which can then be evaluated any
+ * number of times (concurrently, if need be) against different responses.
+ */
+public final class Formula {
+  private final String text;
+  private final Expression expression;
+  private final List<String> parseErrors;
+  private final Set<String> identifiers;
+
+  private Formula(String text, Expression expression, List<String> parseErrors) {
+    this.text = text;
+    this.expression = expression;
+    this.parseErrors = ImmutableList.copyOf(parseErrors);
+    this.identifiers =
+      expression == null ? ImmutableSet.of() : IdentifierCollector.collect(expression);
+  }
+
+  /**
+   * Parses a formula. Like the client, a formula with a syntax error is still returned but always
+   * evaluates to undefined (see {@link #getParseErrors()}).
+   *
+   * @param text the formula, which must begin with an equals sign
+   * @throws FormulaException if the formula is empty, does not begin with an equals sign or
+   *     contains a character that cannot be tokenized
+   */
+  public static Formula parse(String text) {
+    if (Strings.isNullOrEmpty(text)) {
+      throw new FormulaException("Formula is empty");
+    } else if (!text.startsWith("=")) {
+      throw new FormulaException("Formula does not begin with a '='");
+    }
+
+    List<Token> tokens = Lexer.tokenize(text.substring(1));
+    List<String> errors = new ArrayList<>();
+    Expression expression = Parser.parse(tokens, errors);
+    return new Formula(text, expression, errors);
+  }
+
+  /**
+   * Gets the text of the formula, including its leading equals sign.
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Gets the expression tree of the formula, or null if the formula has a syntax error that
+   * prevented it from being parsed.
+   */
+  public Expression getExpression() {
+    return expression;
+  }
+
+  /**
+   * Gets the syntax errors found when parsing the formula. The formula is valid if this is empty.
+   */
+  public List<String> getParseErrors() {
+    return parseErrors;
+  }
+
+  /**
+   * Gets the keys of the questions whose responses the formula refers to.
+   */
+  public Set<String> getIdentifiers() {
+    return identifiers;
+  }
+
+  /**
+   * Evaluates the formula.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number
+   * @return a {@link Boolean}, a {@link Double}, or null if the formula has a syntax error or
+   *     evaluates to undefined
+   * @throws FormulaException if the formula refers to a question without a response, calls an
+   *     unknown function, or a function fails
+   */
+  public Object evaluate(Map<String, ?> responses) {
+    if (expression == null) {
+      return null;
+    }
+    return expression.accept(new Interpreter(responses));
+  }
+
+  /**
+   * Evaluates the formula and returns whether the result is truthy, which is how the client
+   * decides whether a resident may be eligible for a service.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number
+   * @throws FormulaException if the formula fails to evaluate (see {@link #evaluate(Map)})
+   */
+  public boolean test(Map<String, ?> responses) {
+    return Values.isTruthy(evaluate(responses));
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  /**
+   * Gets the names of the identifiers in {@code expression}.
+   */
+  static Set<String> identifiersOf(Expression expression) {
+    return IdentifierCollector.collect(expression);
+  }
+
+  /**
+   * Collects the names of all identifiers in an expression tree.
+   */
+  private static final class IdentifierCollector implements Expression.Visitor<Void> {
+    private final ImmutableSet.Builder<String> identifiers = ImmutableSet.builder();
+
+    static Set<String> collect(Expression expression) {
+      IdentifierCollector collector = new IdentifierCollector();
+      expression.accept(collector);
+      return collector.identifiers.build();
+    }
+
+    @Override
+    public Void visitLiteral(Expression.Literal literal) {
+      return null;
+    }
+
+    @Override
+    public Void visitIdentifier(Expression.Identifier identifier) {
+      identifiers.add(identifier.getName());
+      return null;
+    }
+
+    @Override
+    public Void visitUnary(Expression.Unary unary) {
+      return unary.getOperand().accept(this);
+    }
+
+    @Override
+    public Void visitBinary(Expression.Binary binary) {
+      binary.getLeft().accept(this);
+      return binary.getRight().accept(this);
+    }
+
+    @Override
+    public Void visitRelational(Expression.Relational relational) {
+      relational.getOperands().forEach(operand -> operand.accept(this));
+      return null;
+    }
+
+    @Override
+    public Void visitCall(Expression.Call call) {
+      call.getArguments().forEach(argument -> argument.accept(this));
+      return null;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.shared.formula.Expression.Operator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes parsed formulas as compact trees of JSON values, so that a client can evaluate a formula
+ * without lexing and parsing it first. A tree is made of:
+ *
+ * <ul>
+ *   <li>a boolean or a number for a literal;
+ *   <li>a string for a reference to the response to a question, such as {@code "IS_COVID"};
+ *   <li>{@code [symbol, operand]} for a unary operator, such as {@code ["-", 3]};
+ *   <li>{@code [symbol, left, right]} for an arithmetic operator, such as {@code ["*", "X", 12]};
+ *   <li>{@code [symbol, operand, operand, symbol, operand, ...]} for a chain of relational
+ *   operators, such as {@code ["<", 1, "X", "<=", 3]} for {@code 1 < X <= 3};
+ *   <li>{@code [name, argument, ...]} for a function call, such as {@code ["NOT", "IS_COVID"]}.
+ * </ul>
+ *
+ * The tree is wrapped with the version of this format, as in {@code {"version": 1, "tree": ...}},
+ * so that a client can fall back to parsing the formula if it does not support the version.
+ */
+public final class FormulaAst {
+  /** The version of the format of the trees. */
+  public static final int VERSION = 1;
+
+  private static final Map<String, Operator> OPERATORS;
+
+  static {
+    ImmutableMap.Builder<String, Operator> operators = ImmutableMap.builder();
+    for (Operator operator : Operator.values()) {
+      operators.put(operator.getSymbol(), operator);
+    }
+    OPERATORS = operators.build();
+  }
+
+  private FormulaAst() {}
+
+  /**
+   * Encodes the expression tree of {@code formula}.
+   *
+   * @param formula the parsed formula
+   * @return the version and the tree, or null if the formula has syntax errors
+   */
+  public static Map<String, Object> encode(Formula formula) {
+    if (formula.getExpression() == null || !formula.getParseErrors().isEmpty()) {
+      return null;
+    }
+    return ImmutableMap.of("version", VERSION, "tree", encode(formula.getExpression()));
+  }
+
+  /**
+   * Encodes {@code expression} as a tree of booleans, numbers, strings and lists.
+   */
+  static Object encode(Expression expression) {
+    if (expression instanceof Expression.Literal) {
+      return ((Expression.Literal) expression).getValue();
+    } else if (expression instanceof Expression.Identifier) {
+      return ((Expression.Identifier) expression).getName();
+    } else if (expression instanceof Expression.Unary) {
+      Expression.Unary unary = (Expression.Unary) expression;
+      return Arrays.asList(unary.getOperator().getSymbol(), encode(unary.getOperand()));
+    } else if (expression instanceof Expression.Binary) {
+      Expression.Binary binary = (Expression.Binary) expression;
+      return Arrays.asList(
+        binary.getOperator().getSymbol(),
+        encode(binary.getLeft()),
+        encode(binary.getRight())
+      );
+    } else if (expression instanceof Expression.Relational) {
+      Expression.Relational relational = (Expression.Relational) expression;
+      List<Expression> operands = relational.getOperands();
+      List<Object> tree = new ArrayList<>();
+      tree.add(relational.getOperators().get(0).getSymbol());
+      tree.add(encode(operands.get(0)));
+      tree.add(encode(operands.get(1)));
+      for (int i = 1; i < relational.getOperators().size(); i++) {
+        tree.add(relational.getOperators().get(i).getSymbol());
+        tree.add(encode(operands.get(i + 1)));
+      }
+      return Collections.unmodifiableList(tree);
+    }
+
+    Expression.Call call = (Expression.Call) expression;
+    List<Object> tree = new ArrayList<>();
+    tree.add(call.getName());
+    for (Expression argument : call.getArguments()) {
+      tree.add(encode(argument));
+    }
+    return Collections.unmodifiableList(tree);
+  }
+
+  /**
+   * Decodes a tree encoded by {@link #encode(Expression)}, such as one read back from JSON.
+   *
+   * @throws FormulaException if the tree is malformed
+   */
+  static Expression decode(Object tree) {
+    if (tree instanceof Boolean) {
+      return new Expression.Literal(tree);
+    } else if (tree instanceof Number) {
+      return new Expression.Literal(((Number) tree).doubleValue());
+    } else if (tree instanceof String) {
+      return new Expression.Identifier((String) tree);
+    } else if (!(tree instanceof List) || ((List<?>) tree).isEmpty()) {
+      throw new FormulaException("Malformed tree: " + tree);
+    }
+
+    List<?> list = (List<?>) tree;
+    Object head = list.get(0);
+    Operator operator = OPERATORS.get(head);
+    if (operator == null) {
+      List<Expression> arguments = new ArrayList<>();
+      for (Object argument : list.subList(1, list.size())) {
+        arguments.add(decode(argument));
+      }
+      return new Expression.Call(String.valueOf(head), arguments);
+    } else if (list.size() == 2) {
+      return new Expression.Unary(operator, decode(list.get(1)));
+    } else if (list.size() == 3 && !isRelational(operator)) {
+      return new Expression.Binary(operator, decode(list.get(1)), decode(list.get(2)));
+    } else if (list.size() < 3 || list.size() % 2 == 0 || !isRelational(operator)) {
+      throw new FormulaException("Malformed tree: " + tree);
+    }
+
+    List<Expression> operands = new ArrayList<>();
+    List<Operator> operators = new ArrayList<>();
+    operators.add(operator);
+    operands.add(decode(list.get(1)));
+    operands.add(decode(list.get(2)));
+    for (int i = 3; i < list.size(); i += 2) {
+      Operator next = OPERATORS.get(list.get(i));
+      if (next == null || !isRelational(next)) {
+        throw new FormulaException("Malformed tree: " + tree);
+      }
+      operators.add(next);
+      operands.add(decode(list.get(i + 1)));
+    }
+    return new Expression.Relational(operands, operators);
+  }
+
+  private static boolean isRelational(Operator operator) {
+    return operator.ordinal() >= Operator.EQUAL.ordinal();
+  }
+}
@@ -0,0 +1,18 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+/**
+ * Thrown when a formula cannot be tokenized, or when a formula fails to evaluate (such as when it
+ * calls an unknown function or divides by zero with QUOTIENT).
+ */
+public class FormulaException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructs an instance of FormulaException.
+   *
+   * @param message the detail message
+   */
+  public FormulaException(String message) {
+    super(message);
+  }
+}
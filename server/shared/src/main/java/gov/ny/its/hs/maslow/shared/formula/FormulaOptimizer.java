@@ -0,0 +1,317 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.shared.formula.Expression.Operator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites formulas into simpler formulas that every evaluator (the client as well as
+ * {@link Formula}) decides in exactly the same way, with less work:
+ *
+ * <ul>
+ *   <li>subexpressions that do not refer to any question, such as {@code (125000 / 12)}, are
+ *   folded into their value;
+ *   <li>parentheses around an operand that is converted to a number anyway are removed;
+ *   <li>nested {@code AND} and {@code OR} calls are flattened, and their duplicated arguments and
+ *   arguments that cannot change their result (such as {@code TRUE} in an {@code AND}) are removed;
+ *   <li>{@code NOT(NOT(X))}, and {@code AND} or {@code OR} calls with a single argument, are
+ *   replaced by their argument where only its truthiness matters.
+ * </ul>
+ *
+ * Since the interpreter evaluates every argument of a call, a formula fails (and is therefore
+ * never truthy) when any part of it refers to a question without a response or fails to evaluate.
+ * The optimizer never removes a part of a formula that could fail, so that every formula still
+ * refers to the same questions and fails under the same conditions. The optimized formula is
+ * printed in canonical form, so that two formulas that differ only by their formatting or their
+ * constants (such as {@code X <= 125000 / 12} and {@code X <= (125000/12)}) share their tests.
+ */
+public final class FormulaOptimizer {
+  /**
+   * Maps the functions whose arguments are all converted to numbers to the number of arguments
+   * (from the first) that are. PRODUCT and MOD are absent, since PRODUCT returns a single argument
+   * as is and MOD compares its divisor with zero strictly.
+   */
+  private static final Map<String, Integer> NUMERIC_ARGUMENTS = ImmutableMap
+    .<String, Integer>builder()
+    .put("POWER", Integer.MAX_VALUE)
+    .put("ABS", Integer.MAX_VALUE)
+    .put("CEILING", Integer.MAX_VALUE)
+    .put("FLOOR", Integer.MAX_VALUE)
+    .put("INT", Integer.MAX_VALUE)
+    .put("QUOTIENT", Integer.MAX_VALUE)
+    .put("ROUND", Integer.MAX_VALUE)
+    .put("SIGN", Integer.MAX_VALUE)
+    .put("SQRT", Integer.MAX_VALUE)
+    .put("SUM", Integer.MAX_VALUE)
+    .put("MAX", Integer.MAX_VALUE)
+    .put("MIN", Integer.MAX_VALUE)
+    .put("MOD", 1)
+    .build();
+
+  private FormulaOptimizer() {}
+
+  /**
+   * How the value of an expression is used by its parent.
+   */
+  private enum Usage {
+    /** The value is used as is. */
+    VALUE,
+    /** The value is converted to a number. */
+    NUMBER,
+    /** Only the truthiness of the value matters. */
+    TRUTHINESS
+  }
+
+  /**
+   * Optimizes {@code formula}. A formula with syntax errors is returned as is, and so is a formula
+   * that cannot be optimized (even if it is not in canonical form).
+   *
+   * @param formula the formula to optimize
+   * @return the optimized formula, whose text begins with an equals sign
+   */
+  public static Formula optimize(Formula formula) {
+    if (formula.getExpression() == null || !formula.getParseErrors().isEmpty()) {
+      return formula;
+    }
+
+    // the client only uses the truthiness of the result of a formula
+    Expression optimized = optimize(formula.getExpression(), Usage.TRUTHINESS);
+    String text = optimized.toString();
+    if (text.equals(formula.getExpression().toString())) {
+      return formula;
+    }
+    return Formula.parse("=" + text);
+  }
+
+  private static Expression optimize(Expression expression, Usage usage) {
+    Expression folded = fold(expression);
+    if (folded != null) {
+      return folded;
+    } else if (expression instanceof Expression.Unary) {
+      Expression.Unary unary = (Expression.Unary) expression;
+      Expression operand = optimize(unary.getOperand(), Usage.NUMBER);
+      if (
+        unary.getOperator() == Operator.PLUS && (usage != Usage.VALUE || isNumeric(operand))
+      ) {
+        return operand;
+      }
+      return new Expression.Unary(unary.getOperator(), operand);
+    } else if (expression instanceof Expression.Binary) {
+      Expression.Binary binary = (Expression.Binary) expression;
+      return new Expression.Binary(
+        binary.getOperator(),
+        optimize(binary.getLeft(), Usage.NUMBER),
+        optimize(binary.getRight(), Usage.NUMBER)
+      );
+    } else if (expression instanceof Expression.Relational) {
+      return optimizeRelational((Expression.Relational) expression);
+    } else if (expression instanceof Expression.Call) {
+      return optimizeCall((Expression.Call) expression, usage);
+    }
+    return expression;
+  }
+
+  /**
+   * Evaluates {@code expression} if it does not refer to any question, and returns its value as a
+   * literal. Returns null if the expression refers to a question, is already a literal, or fails
+   * to evaluate or evaluates to a number that cannot be written as a literal.
+   */
+  private static Expression fold(Expression expression) {
+    if (expression instanceof Expression.Literal || !Formula.identifiersOf(expression).isEmpty()) {
+      return null;
+    }
+
+    Object value;
+    try {
+      value = expression.accept(new Interpreter(ImmutableMap.of()));
+    } catch (FormulaException e) {
+      return null;
+    }
+
+    if (value instanceof Boolean) {
+      return new Expression.Literal(value);
+    }
+    double number = Values.toNumber(value);
+    if (Double.isNaN(number) || Double.isInfinite(number)) {
+      return null;
+    } else if (number < 0 || (number == 0 && 1 / number < 0)) {
+      // the formula language has no negative literals, only negated ones
+      return new Expression.Unary(Operator.MINUS, new Expression.Literal(-number));
+    }
+    return new Expression.Literal(number);
+  }
+
+  private static Expression optimizeRelational(Expression.Relational relational) {
+    List<Expression> operands = relational.getOperands();
+    List<Operator> operators = relational.getOperators();
+    List<Expression> optimized = new ArrayList<>(operands.size());
+    for (int i = 0; i < operands.size(); i++) {
+      // equality is strict, so an operand of = or <> is not converted to a number
+      boolean strict =
+        (i > 0 && isEquality(operators.get(i - 1))) ||
+        (i < operators.size() && isEquality(operators.get(i)));
+      optimized.add(optimize(operands.get(i), strict ? Usage.VALUE : Usage.NUMBER));
+    }
+    return new Expression.Relational(optimized, operators);
+  }
+
+  private static Expression optimizeCall(Expression.Call call, Usage usage) {
+    String name = call.getName();
+    List<Expression> arguments = call.getArguments();
+    if (Functions.alwaysFails(name, arguments.size())) {
+      return call;
+    }
+
+    List<Expression> optimized = new ArrayList<>(arguments.size());
+    for (int i = 0; i < arguments.size(); i++) {
+      optimized.add(optimize(arguments.get(i), usageOf(name, i, arguments.size(), usage)));
+    }
+
+    switch (name) {
+      case "AND":
+      case "OR":
+        return optimizeJunction(name, optimized, usage);
+      case "NOT":
+        Expression operand = optimized.get(0);
+        // NOT ignores any argument after the first, but still evaluates it
+        if (
+          optimized.size() == 1 &&
+          isCall(operand, "NOT") &&
+          ((Expression.Call) operand).getArguments().size() == 1
+        ) {
+          Expression negated = ((Expression.Call) operand).getArguments().get(0);
+          if (usage == Usage.TRUTHINESS || isBoolean(negated)) {
+            return negated;
+          }
+        }
+        return new Expression.Call(name, optimized);
+      case "IF":
+        Expression condition = optimized.get(0);
+        if (condition instanceof Expression.Literal) {
+          boolean truthy = Values.isTruthy(((Expression.Literal) condition).getValue());
+          // the other arguments are only removed if they cannot fail, that is, if they are literals
+          List<Expression> others = optimized.subList(2, optimized.size());
+          if (truthy && isLiteral(others)) {
+            return optimized.get(1);
+          } else if (
+            !truthy &&
+            usage == Usage.TRUTHINESS &&
+            optimized.size() == 3 &&
+            optimized.get(1) instanceof Expression.Literal
+          ) {
+            // IF returns its third argument if truthy, or its (falsy) condition otherwise
+            return optimized.get(2);
+          }
+        }
+        return new Expression.Call(name, optimized);
+      default:
+        return new Expression.Call(name, optimized);
+    }
+  }
+
+  /**
+   * Optimizes a call to AND or OR whose arguments are already optimized.
+   */
+  private static Expression optimizeJunction(
+    String name,
+    List<Expression> arguments,
+    Usage usage
+  ) {
+    boolean conjunction = name.equals("AND");
+    // arguments are keyed by their canonical text to remove duplicates
+    Map<String, Expression> unique = new LinkedHashMap<>();
+    for (Expression argument : arguments) {
+      if (isCall(argument, name)) {
+        for (Expression nested : ((Expression.Call) argument).getArguments()) {
+          unique.putIfAbsent(nested.toString(), nested);
+        }
+      } else if (
+        !(argument instanceof Expression.Literal) ||
+        Values.isTruthy(((Expression.Literal) argument).getValue()) != conjunction
+      ) {
+        unique.putIfAbsent(argument.toString(), argument);
+      }
+    }
+
+    if (unique.isEmpty()) {
+      // every argument was TRUE in an AND, or FALSE in an OR
+      return new Expression.Literal(conjunction);
+    } else if (unique.size() == 1) {
+      Expression argument = unique.values().iterator().next();
+      if (usage == Usage.TRUTHINESS || isBoolean(argument)) {
+        return argument;
+      }
+    }
+    return new Expression.Call(name, new ArrayList<>(unique.values()));
+  }
+
+  /**
+   * Gets how the function {@code name} uses its argument at {@code index}, given how the value of
+   * the call is used.
+   */
+  private static Usage usageOf(String name, int index, int count, Usage usage) {
+    switch (name) {
+      case "AND":
+      case "OR":
+      case "NOT":
+      case "XOR":
+        return Usage.TRUTHINESS;
+      case "IF":
+        // the condition is returned when it is falsy and the third argument is not truthy
+        return index == 0 && usage != Usage.TRUTHINESS ? Usage.VALUE : usage;
+      case "IFS":
+        return index % 2 == 0 ? Usage.TRUTHINESS : usage;
+      case "PRODUCT":
+        return count > 1 ? Usage.NUMBER : Usage.VALUE;
+      default:
+        return index < NUMERIC_ARGUMENTS.getOrDefault(name, 0) ? Usage.NUMBER : Usage.VALUE;
+    }
+  }
+
+  private static boolean isCall(Expression expression, String name) {
+    return (
+      expression instanceof Expression.Call && ((Expression.Call) expression).getName().equals(name)
+    );
+  }
+
+  private static boolean isLiteral(List<Expression> expressions) {
+    return expressions.stream().allMatch(expression -> expression instanceof Expression.Literal);
+  }
+
+  private static boolean isEquality(Operator operator) {
+    return operator == Operator.EQUAL || operator == Operator.NOT_EQUAL;
+  }
+
+  /**
+   * Gets whether {@code expression} always evaluates to a boolean.
+   */
+  private static boolean isBoolean(Expression expression) {
+    if (expression instanceof Expression.Literal) {
+      return ((Expression.Literal) expression).getValue() instanceof Boolean;
+    } else if (expression instanceof Expression.Call) {
+      switch (((Expression.Call) expression).getName()) {
+        case "AND":
+        case "OR":
+        case "NOT":
+        case "XOR":
+          return true;
+        default:
+          return false;
+      }
+    }
+    return expression instanceof Expression.Relational;
+  }
+
+  /**
+   * Gets whether {@code expression} always evaluates to a number.
+   */
+  private static boolean isNumeric(Expression expression) {
+    if (expression instanceof Expression.Literal) {
+      return ((Expression.Literal) expression).getValue() instanceof Double;
+    }
+    return expression instanceof Expression.Unary || expression instanceof Expression.Binary;
+  }
+}
@@ -0,0 +1,229 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements the functions that formulas can call, with exactly the semantics of the client
+ * implementation (including its JavaScript conversions between booleans and numbers). Arguments
+ * are evaluated before the function is called, so every argument is a boolean, a number or null.
+ */
+final class Functions {
+  /** Maps the name of each function to its minimum number of arguments. */
+  private static final Map<String, Integer> MINIMUM_ARGUMENTS = ImmutableMap
+    .<String, Integer>builder()
+    .put("POWER", 2)
+    .put("AND", 1)
+    .put("OR", 1)
+    .put("NOT", 1)
+    .put("XOR", 1)
+    .put("IF", 2)
+    .put("IFS", 2)
+    .put("ABS", 1)
+    .put("CEILING", 1)
+    .put("FLOOR", 1)
+    .put("INT", 1)
+    .put("MOD", 2)
+    .put("PRODUCT", 1)
+    .put("QUOTIENT", 2)
+    .put("ROUND", 1)
+    .put("SIGN", 1)
+    .put("SQRT", 1)
+    .put("SUM", 1)
+    .put("MAX", 1)
+    .put("MIN", 1)
+    .build();
+
+  private Functions() {}
+
+  /**
+   * Gets whether a call to {@code name} with {@code argumentCount} arguments fails regardless of
+   * the values of the arguments (because the function is unknown, has too few arguments, or is
+   * IFS with an odd number of arguments).
+   */
+  static boolean alwaysFails(String name, int argumentCount) {
+    Integer minimum = MINIMUM_ARGUMENTS.get(name);
+    return (
+      minimum == null ||
+      argumentCount < minimum ||
+      (name.equals("IFS") && argumentCount % 2 != 0)
+    );
+  }
+
+  /**
+   * Gets whether a call to {@code name} can fail depending on the values of its arguments (such as
+   * MOD with a divisor of zero).
+   */
+  static boolean mayFail(String name) {
+    return name.equals("MOD") || name.equals("QUOTIENT") || name.equals("SQRT");
+  }
+
+  /**
+   * Calls the function {@code name} with {@code params}.
+   *
+   * @param name the name of the function
+   * @param params the values of the arguments
+   * @return a {@link Boolean}, a {@link Double} or null (when IFS has no true condition)
+   * @throws FormulaException if the function is unknown or fails
+   */
+  static Object apply(String name, List<Object> params) {
+    Integer minimum = MINIMUM_ARGUMENTS.get(name);
+    if (minimum == null) {
+      throw new FormulaException("Unknown function: " + name);
+    } else if (params.size() < minimum) {
+      throw new FormulaException(
+        String.format(
+          "%s requires at least %d arguments but found %d",
+          name,
+          minimum,
+          params.size()
+        )
+      );
+    }
+
+    switch (name) {
+      case "POWER":
+        return Math.pow(number(params, 0), number(params, 1));
+      case "AND":
+        for (Object param : params) {
+          if (!Values.isTruthy(param)) {
+            return false;
+          }
+        }
+        return true;
+      case "OR":
+        for (Object param : params) {
+          if (Values.isTruthy(param)) {
+            return true;
+          }
+        }
+        return false;
+      case "NOT":
+        return !Values.isTruthy(params.get(0));
+      case "XOR":
+        boolean result = false;
+        for (Object param : params) {
+          result ^= Values.isTruthy(param);
+        }
+        return result;
+      case "IF":
+        if (Values.isTruthy(params.get(0))) {
+          return params.get(1);
+        }
+        return Values.isTruthy(param(params, 2)) ? params.get(2) : params.get(0);
+      case "IFS":
+        if (params.size() % 2 != 0) {
+          throw new FormulaException("IFS requires a value for each condition");
+        }
+        for (int i = 0; i < params.size(); i += 2) {
+          if (Values.isTruthy(params.get(i))) {
+            return params.get(i + 1);
+          }
+        }
+        return null;
+      case "ABS":
+        return Math.abs(number(params, 0));
+      case "CEILING":
+        double ceilingUnit = unit(params);
+        return Math.ceil(number(params, 0) / ceilingUnit) * ceilingUnit;
+      case "FLOOR":
+        double floorUnit = unit(params);
+        return Math.floor(number(params, 0) / floorUnit) * floorUnit;
+      case "INT":
+        return Math.floor(number(params, 0));
+      case "MOD":
+        if (Values.strictEquals(params.get(1), 0.0)) {
+          throw new FormulaException("MOD cannot divide by zero");
+        }
+        return number(params, 0) % number(params, 1);
+      case "PRODUCT":
+        return product(params);
+      case "QUOTIENT":
+        return quotient(params);
+      case "ROUND":
+        Object places = Values.isTruthy(param(params, 1)) ? params.get(1) : (Object) 0.0;
+        double scale = Math.pow(10, Values.toNumber(places));
+        return round(number(params, 0) * scale) / scale;
+      case "SIGN":
+        return Math.signum(number(params, 0));
+      case "SQRT":
+        if (number(params, 0) < 0) {
+          throw new FormulaException("SQRT cannot take the square root of a negative number");
+        }
+        return Math.sqrt(number(params, 0));
+      case "SUM":
+        double sum = 0;
+        for (Object param : params) {
+          sum += Values.toNumber(param);
+        }
+        return sum;
+      case "MAX":
+        double max = Double.NEGATIVE_INFINITY;
+        for (Object param : params) {
+          max = Math.max(max, Values.toNumber(param));
+        }
+        return max;
+      case "MIN":
+        double min = Double.POSITIVE_INFINITY;
+        for (Object param : params) {
+          min = Math.min(min, Values.toNumber(param));
+        }
+        return min;
+      default:
+        throw new IllegalStateException("Function not implemented: " + name);
+    }
+  }
+
+  /**
+   * Returns the parameter at {@code index}, or null (that is, undefined) if there is none.
+   */
+  private static Object param(List<Object> params, int index) {
+    return index < params.size() ? params.get(index) : null;
+  }
+
+  private static double number(List<Object> params, int index) {
+    return Values.toNumber(param(params, index));
+  }
+
+  /**
+   * Returns the unit for CEILING and FLOOR, which is 1 unless a truthy unit is provided.
+   */
+  private static double unit(List<Object> params) {
+    Object unit = param(params, 1);
+    return Values.isTruthy(unit) ? Values.toNumber(unit) : 1;
+  }
+
+  private static Object product(List<Object> params) {
+    // a single argument is returned as is, so PRODUCT(TRUE) is TRUE
+    Object result = params.get(0);
+    for (int i = 1; i < params.size(); i++) {
+      result = Values.toNumber(result) * Values.toNumber(params.get(i));
+    }
+    return Values.isTruthy(result) ? result : (Object) 0.0;
+  }
+
+  private static Object quotient(List<Object> params) {
+    double result = Values.toNumber(params.get(0));
+    for (int i = 1; i < params.size(); i++) {
+      if (!Values.isTruthy(params.get(i))) {
+        throw new FormulaException("QUOTIENT cannot divide by zero");
+      }
+      result /= Values.toNumber(params.get(i));
+    }
+    result = Math.floor(result);
+    return Values.isTruthy(result) ? result : 0.0;
+  }
+
+  /**
+   * Rounds as JavaScript's {@code Math.round} does: to the nearest integer, with ties rounded up.
+   */
+  static double round(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 0x1p52) {
+      return value;
+    } else if (value < 0 && value >= -0.5) {
+      return -0.0;
+    }
+    return Math.round(value);
+  }
+}
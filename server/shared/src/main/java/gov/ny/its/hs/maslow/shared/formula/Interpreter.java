@@ -0,0 +1,109 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import gov.ny.its.hs.maslow.shared.formula.Expression.Operator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression tree against a set of responses, with the semantics of the client
+ * evaluator. Every value is a {@link Boolean}, a {@link Double} or null (JavaScript's undefined).
+ */
+final class Interpreter implements Expression.Visitor<Object> {
+  private final Map<String, ?> responses;
+
+  Interpreter(Map<String, ?> responses) {
+    this.responses = responses;
+  }
+
+  @Override
+  public Object visitLiteral(Expression.Literal literal) {
+    return literal.getValue();
+  }
+
+  @Override
+  public Object visitIdentifier(Expression.Identifier identifier) {
+    Object value = responses.get(identifier.getName());
+    if (value == null) {
+      throw new FormulaException("Unknown variable: " + identifier.getName());
+    } else if (value instanceof Boolean || value instanceof Double) {
+      return value;
+    }
+    return Values.toNumber(value);
+  }
+
+  @Override
+  public Object visitUnary(Expression.Unary unary) {
+    double operand = Values.toNumber(unary.getOperand().accept(this));
+    return unary.getOperator() == Operator.MINUS ? -1 * operand : operand;
+  }
+
+  @Override
+  public Object visitBinary(Expression.Binary binary) {
+    double left = Values.toNumber(binary.getLeft().accept(this));
+    double right = Values.toNumber(binary.getRight().accept(this));
+    switch (binary.getOperator()) {
+      case PLUS:
+        return left + right;
+      case MINUS:
+        return left - right;
+      case MULTIPLY:
+        return left * right;
+      case DIVIDE:
+        return left / right;
+      case POWER:
+        return Math.pow(left, right);
+      default:
+        throw new IllegalStateException("Not an arithmetic operator: " + binary.getOperator());
+    }
+  }
+
+  @Override
+  public Object visitRelational(Expression.Relational relational) {
+    List<Expression> operands = relational.getOperands();
+    List<Operator> operators = relational.getOperators();
+
+    // every comparison is combined with AND, except for NOT_EQUAL which is combined with OR
+    boolean result = operators.get(0) != Operator.NOT_EQUAL;
+    Object lhs = operands.get(0).accept(this);
+    for (int i = 0; i < operators.size(); i++) {
+      Object rhs = operands.get(i + 1).accept(this);
+      result = compare(result, operators.get(i), lhs, rhs);
+      lhs = rhs;
+    }
+    return result;
+  }
+
+  @Override
+  public Object visitCall(Expression.Call call) {
+    List<Object> params = new ArrayList<>(call.getArguments().size());
+    for (Expression argument : call.getArguments()) {
+      params.add(argument.accept(this));
+    }
+
+    Object result = Functions.apply(call.getName(), params);
+    return result instanceof Boolean ? result : (Object) Values.toNumber(result);
+  }
+
+  /**
+   * Combines {@code result} with one comparison of a relational chain.
+   */
+  static boolean compare(boolean result, Operator operator, Object lhs, Object rhs) {
+    switch (operator) {
+      case EQUAL:
+        return result && Values.strictEquals(lhs, rhs);
+      case NOT_EQUAL:
+        return result || !Values.strictEquals(lhs, rhs);
+      case GREATER_THAN:
+        return result && Values.toNumber(lhs) > Values.toNumber(rhs);
+      case GREATER_THAN_OR_EQUAL:
+        return result && Values.toNumber(lhs) >= Values.toNumber(rhs);
+      case LESS_THAN:
+        return result && Values.toNumber(lhs) < Values.toNumber(rhs);
+      case LESS_THAN_OR_EQUAL:
+        return result && Values.toNumber(lhs) <= Values.toNumber(rhs);
+      default:
+        throw new IllegalStateException("Not a relational operator: " + operator);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a formula into tokens. This mirrors the client lexer exactly: at each offset, the token
+ * patterns are tried in the order of {@link TokenType} and the first one that matches wins, even
+ * when a later pattern would match more characters (so "TRUE_X" is a boolean literal followed by
+ * the identifier "_X").
+ */
+final class Lexer {
+  private static final int MAX_IDENTIFIER_LENGTH = 250;
+
+  private Lexer() {}
+
+  /**
+   * Returns the tokens of {@code text}, skipping whitespace.
+   *
+   * @param text the text to tokenize, without its leading equals sign
+   * @throws FormulaException if any character cannot be tokenized
+   */
+  static List<Token> tokenize(String text) {
+    List<Token> tokens = new ArrayList<>();
+    int length = text.length();
+    int offset = 0;
+    while (offset < length) {
+      char c = text.charAt(offset);
+      if (isWhitespace(c)) {
+        offset++;
+        continue;
+      }
+
+      int end = offset + 1;
+      TokenType type = null;
+      switch (c) {
+        case '+':
+          type = TokenType.PLUS;
+          break;
+        case '-':
+          type = TokenType.MINUS;
+          break;
+        case '*':
+          type = TokenType.MULTIPLY;
+          break;
+        case '/':
+          type = TokenType.DIVIDE;
+          break;
+        case '(':
+          type = TokenType.LEFT_PAREN;
+          break;
+        case ')':
+          type = TokenType.RIGHT_PAREN;
+          break;
+        default:
+          break;
+      }
+
+      if (type == null) {
+        end = matchNumber(text, offset);
+        if (end > offset) {
+          type = TokenType.NUMBER_LITERAL;
+        } else {
+          end = offset + 1;
+        }
+      }
+
+      if (type == null) {
+        switch (c) {
+          case '^':
+            type = TokenType.POWER;
+            break;
+          case ',':
+            type = TokenType.COMMA;
+            break;
+          case '=':
+            type = TokenType.EQUAL;
+            break;
+          case '<':
+            if (text.startsWith(">", offset + 1)) {
+              type = TokenType.NOT_EQUAL;
+              end++;
+            } else if (text.startsWith("=", offset + 1)) {
+              type = TokenType.LESS_THAN_OR_EQUAL;
+              end++;
+            } else {
+              type = TokenType.LESS_THAN;
+            }
+            break;
+          case '>':
+            if (text.startsWith("=", offset + 1)) {
+              type = TokenType.GREATER_THAN_OR_EQUAL;
+              end++;
+            } else {
+              type = TokenType.GREATER_THAN;
+            }
+            break;
+          default:
+            break;
+        }
+      }
+
+      if (type == null) {
+        if (text.startsWith("TRUE", offset)) {
+          type = TokenType.BOOLEAN_LITERAL;
+          end = offset + 4;
+        } else if (text.startsWith("FALSE", offset)) {
+          type = TokenType.BOOLEAN_LITERAL;
+          end = offset + 5;
+        }
+      }
+
+      if (type == null) {
+        int letters = offset;
+        while (letters < length && isUpperCaseLetter(text.charAt(letters))) {
+          letters++;
+        }
+        if (letters > offset && letters < length && text.charAt(letters) == '(') {
+          // the opening parenthesis is part of the token, but not of its image
+          tokens.add(new Token(TokenType.FUNCTION_NAME, text.substring(offset, letters), offset));
+          offset = letters + 1;
+          continue;
+        }
+      }
+
+      if (type == null) {
+        end = offset;
+        while (
+          end < length &&
+          end - offset < MAX_IDENTIFIER_LENGTH &&
+          isIdentifierCharacter(text.charAt(end))
+        ) {
+          end++;
+        }
+        if (end > offset) {
+          type = TokenType.IDENTIFIER;
+        }
+      }
+
+      if (type == null) {
+        throw new FormulaException(
+          String.format("Unexpected character '%s' at offset %d", c, offset)
+        );
+      }
+
+      tokens.add(new Token(type, text.substring(offset, end), offset));
+      offset = end;
+    }
+    return tokens;
+  }
+
+  /**
+   * Returns the end of the number literal at {@code offset} (matching {@code \.\d+|\d+(\.\d*)?}),
+   * or {@code offset} if there is none.
+   */
+  private static int matchNumber(String text, int offset) {
+    int length = text.length();
+    int end = offset;
+    if (text.charAt(end) == '.') {
+      end++;
+      int digits = end;
+      while (end < length && isDigit(text.charAt(end))) {
+        end++;
+      }
+      return end > digits ? end : offset;
+    }
+
+    while (end < length && isDigit(text.charAt(end))) {
+      end++;
+    }
+    if (end > offset && end < length && text.charAt(end) == '.') {
+      end++;
+      while (end < length && isDigit(text.charAt(end))) {
+        end++;
+      }
+    }
+    return end;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isUpperCaseLetter(char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isIdentifierCharacter(char c) {
+    return isUpperCaseLetter(c) || isDigit(c) || c == '_';
+  }
+
+  /**
+   * Gets whether {@code c} is whitespace as defined by JavaScript's {@code \s}.
+   */
+  private static boolean isWhitespace(char c) {
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000b':
+      case '\f':
+      case '\r':
+      case '\u00a0':
+      case '\u1680':
+      case '\u2028':
+      case '\u2029':
+      case '\u202f':
+      case '\u205f':
+      case '\u3000':
+      case '\ufeff':
+        return true;
+      default:
+        return c >= '\u2000' && c <= '\u200a';
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import gov.ny.its.hs.maslow.shared.formula.Expression.Operator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recursive descent parser for the grammar of the client parser:
+ *
+ * <pre>
+ * expression     := relational
+ * relational     := addition (("=" | "&lt;&gt;" | "&gt;=" | "&gt;" | "&lt;=" | "&lt;") addition)*
+ * addition       := multiplication (("+" | "-") multiplication)*
+ * multiplication := power (("*" | "/") power)*
+ * power          := atomic ("^" atomic)*
+ * atomic         := ("+" | "-")? (parenthesis | BOOLEAN | NUMBER | function | IDENTIFIER)
+ * parenthesis    := "(" expression ")"
+ * function       := FUNCTION_NAME (expression ("," expression)*)? ")"
+ * </pre>
+ *
+ * Like the client, a syntax error anywhere in the formula discards the whole tree, while tokens
+ * left over after a complete expression are reported as an error but do not discard it.
+ */
+final class Parser {
+  private final List<Token> tokens;
+  private int position;
+
+  private Parser(List<Token> tokens) {
+    this.tokens = tokens;
+  }
+
+  /**
+   * Parses {@code tokens}, adding any syntax errors to {@code errors}.
+   *
+   * @param tokens the tokens to parse
+   * @param errors the list to which syntax errors are added
+   * @return the parsed expression, or null if there is a syntax error before the end of the
+   *     expression
+   */
+  static Expression parse(List<Token> tokens, List<String> errors) {
+    Parser parser = new Parser(tokens);
+    Expression expression;
+    try {
+      expression = parser.expression();
+    } catch (SyntaxError e) {
+      errors.add(e.getMessage());
+      return null;
+    }
+
+    if (parser.position < tokens.size()) {
+      errors.add(
+        String.format("Redundant input, expecting end of formula but found %s", parser.peek())
+      );
+    }
+    return expression;
+  }
+
+  private Expression expression() {
+    return relational();
+  }
+
+  private Expression relational() {
+    Expression lhs = addition();
+    if (peekType() == null || !peekType().isRelationalOperator()) {
+      return lhs;
+    }
+
+    List<Expression> operands = new ArrayList<>();
+    List<Operator> operators = new ArrayList<>();
+    operands.add(lhs);
+    while (peekType() != null && peekType().isRelationalOperator()) {
+      operators.add(operatorOf(next().type));
+      operands.add(addition());
+    }
+    return new Expression.Relational(operands, operators);
+  }
+
+  private Expression addition() {
+    Expression result = multiplication();
+    while (peekType() != null && peekType().isAdditionOperator()) {
+      Operator operator = operatorOf(next().type);
+      result = new Expression.Binary(operator, result, multiplication());
+    }
+    return result;
+  }
+
+  private Expression multiplication() {
+    Expression result = power();
+    while (peekType() != null && peekType().isMultiplicationOperator()) {
+      Operator operator = operatorOf(next().type);
+      result = new Expression.Binary(operator, result, power());
+    }
+    return result;
+  }
+
+  private Expression power() {
+    List<Expression> operands = new ArrayList<>();
+    operands.add(atomic());
+    while (peekType() == TokenType.POWER) {
+      next();
+      operands.add(atomic());
+    }
+
+    // exponents are evaluated from right to left, so 2^5^2 is 2^(5^2)
+    Expression result = operands.get(operands.size() - 1);
+    for (int i = operands.size() - 2; i >= 0; i--) {
+      result = new Expression.Binary(Operator.POWER, operands.get(i), result);
+    }
+    return result;
+  }
+
+  private Expression atomic() {
+    Operator sign = null;
+    if (peekType() != null && peekType().isAdditionOperator()) {
+      sign = operatorOf(next().type);
+    }
+
+    TokenType type = peekType();
+    if (type == null) {
+      throw new SyntaxError("Expecting an expression but found end of formula");
+    }
+
+    switch (type) {
+      case LEFT_PAREN:
+        next();
+        Expression expression = expression();
+        consume(TokenType.RIGHT_PAREN);
+        // a parenthesized expression is always converted to a number, even without a sign
+        return new Expression.Unary(sign == null ? Operator.PLUS : sign, expression);
+      case BOOLEAN_LITERAL:
+        boolean value = next().image.equals("TRUE");
+        if (sign == Operator.MINUS) {
+          return new Expression.Literal(value ? -1.0 : -0.0);
+        }
+        return new Expression.Literal(value);
+      case NUMBER_LITERAL:
+        double number = Double.parseDouble(next().image);
+        return new Expression.Literal(sign == Operator.MINUS ? -number : number);
+      case FUNCTION_NAME:
+        Expression call = function();
+        // a function that returns a boolean stays a boolean unless it is negated
+        return sign == Operator.MINUS ? new Expression.Unary(Operator.MINUS, call) : call;
+      case IDENTIFIER:
+        Expression identifier = new Expression.Identifier(next().image);
+        return sign == null ? identifier : new Expression.Unary(sign, identifier);
+      default:
+        throw new SyntaxError(
+          String.format("Expecting an expression but found %s at offset %d", peek(), peek().offset)
+        );
+    }
+  }
+
+  private Expression function() {
+    String name = next().image;
+    List<Expression> arguments = new ArrayList<>();
+    if (peekType() != null && peekType().isExpressionStart()) {
+      arguments.add(expression());
+      while (peekType() == TokenType.COMMA) {
+        next();
+        arguments.add(expression());
+      }
+    }
+    consume(TokenType.RIGHT_PAREN);
+    return new Expression.Call(name, arguments);
+  }
+
+  private void consume(TokenType type) {
+    if (peekType() != type) {
+      throw new SyntaxError(
+        String.format(
+          "Expecting %s but found %s",
+          type,
+          position < tokens.size() ? peek() : "end of formula"
+        )
+      );
+    }
+    next();
+  }
+
+  private Token peek() {
+    return tokens.get(position);
+  }
+
+  private TokenType peekType() {
+    return position < tokens.size() ? tokens.get(position).type : null;
+  }
+
+  private Token next() {
+    return tokens.get(position++);
+  }
+
+  private static Operator operatorOf(TokenType type) {
+    switch (type) {
+      case PLUS:
+        return Operator.PLUS;
+      case MINUS:
+        return Operator.MINUS;
+      case MULTIPLY:
+        return Operator.MULTIPLY;
+      case DIVIDE:
+        return Operator.DIVIDE;
+      case EQUAL:
+        return Operator.EQUAL;
+      case NOT_EQUAL:
+        return Operator.NOT_EQUAL;
+      case GREATER_THAN:
+        return Operator.GREATER_THAN;
+      case GREATER_THAN_OR_EQUAL:
+        return Operator.GREATER_THAN_OR_EQUAL;
+      case LESS_THAN:
+        return Operator.LESS_THAN;
+      case LESS_THAN_OR_EQUAL:
+        return Operator.LESS_THAN_OR_EQUAL;
+      default:
+        throw new IllegalArgumentException("Not an operator: " + type);
+    }
+  }
+
+  /**
+   * Thrown to abandon parsing at the first syntax error.
+   */
+  private static class SyntaxError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    SyntaxError(String message) {
+      super(message, null, false, false);
+    }
+  }
+}
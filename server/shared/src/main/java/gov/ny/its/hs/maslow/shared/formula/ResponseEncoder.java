@@ -0,0 +1,135 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes a set of responses into a canonical key, such that any two sets of responses with equal
+ * keys decide every formula of a {@link DecisionDiagram} in the same way. Keys can then be used to
+ * cache the results of the diagram.
+ *
+ * Most questions are encoded by their responses. A response of TRUE and a response of 1 are
+ * encoded differently, since formulas can tell them apart. Responses to the questions listed as
+ * bucketed (typically numbers and currencies) are not encoded themselves. Instead, the key records
+ * the truthiness of each test of the diagram that refers to them, so that an income of 1200 and
+ * an income of 1210 have the same key if they fall between the same limits. This is only possible
+ * for a question that is never tested together with another bucketed question and is not referred
+ * to by a formula that is interpreted on its own, so any other question is encoded by its
+ * response instead. Questions are considered for bucketing in the order they are listed.
+ */
+public final class ResponseEncoder {
+  private final String[] questions;
+  private final Expression[] tests;
+  private final String[][] testQuestions;
+
+  private ResponseEncoder(List<String> questions, List<Expression> tests) {
+    this.questions = questions.toArray(new String[0]);
+    this.tests = tests.toArray(new Expression[0]);
+    this.testQuestions = new String[tests.size()][];
+    for (int i = 0; i < tests.size(); i++) {
+      testQuestions[i] = Formula.identifiersOf(tests.get(i)).toArray(new String[0]);
+    }
+  }
+
+  /**
+   * Creates an encoder for the formulas of {@code diagram}.
+   *
+   * @param diagram the diagram whose results are keyed
+   * @param bucketed the questions that should be bucketed if possible, in order of preference
+   */
+  public static ResponseEncoder of(DecisionDiagram diagram, List<String> bucketed) {
+    List<Formula> formulas = diagram.getFormulas();
+    Set<String> questions = new LinkedHashSet<>();
+    Set<String> unbucketable = new HashSet<>();
+    for (int i = 0; i < formulas.size(); i++) {
+      questions.addAll(formulas.get(i).getIdentifiers());
+      if (diagram.isInterpreted(i)) {
+        unbucketable.addAll(formulas.get(i).getIdentifiers());
+      }
+    }
+
+    List<Set<String>> testQuestions = new ArrayList<>();
+    for (Expression test : diagram.getTests()) {
+      testQuestions.add(Formula.identifiersOf(test));
+    }
+
+    Set<String> buckets = new HashSet<>();
+    for (String question : bucketed) {
+      if (!questions.contains(question) || unbucketable.contains(question)) {
+        continue;
+      }
+
+      boolean testedWithBucket = testQuestions
+        .stream()
+        .anyMatch(
+          identifiers ->
+            identifiers.contains(question) && identifiers.stream().anyMatch(buckets::contains)
+        );
+      if (!testedWithBucket) {
+        buckets.add(question);
+      }
+    }
+
+    questions.removeAll(buckets);
+    ImmutableList.Builder<Expression> tests = ImmutableList.builder();
+    for (int i = 0; i < testQuestions.size(); i++) {
+      if (testQuestions.get(i).stream().anyMatch(buckets::contains)) {
+        tests.add(diagram.getTests().get(i));
+      }
+    }
+    return new ResponseEncoder(ImmutableList.copyOf(questions), tests.build());
+  }
+
+  /**
+   * Encodes {@code responses} into a key whose {@code equals} and {@code hashCode} compare the
+   * encoded values.
+   *
+   * @param responses maps the key of each question to its response, a boolean or a number
+   */
+  public List<Object> encode(Map<String, ?> responses) {
+    Object[] key = new Object[questions.length + tests.length];
+    for (int i = 0; i < questions.length; i++) {
+      Object value = responses.get(questions[i]);
+      // an integer and a double of the same value are the same response
+      key[i] = value instanceof Number ? (Object) ((Number) value).doubleValue() : value;
+    }
+
+    Interpreter interpreter = new Interpreter(responses);
+    for (int i = 0; i < tests.length; i++) {
+      // a test that refers to a missing response is never decided, so it is encoded as null
+      if (hasResponses(testQuestions[i], responses)) {
+        key[questions.length + i] = Values.isTruthy(tests[i].accept(interpreter));
+      }
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Gets the number of questions that are encoded by their responses.
+   */
+  public int getQuestionCount() {
+    return questions.length;
+  }
+
+  /**
+   * Gets the number of tests that are encoded by their truthiness.
+   */
+  public int getTestCount() {
+    return tests.length;
+  }
+
+  private static boolean hasResponses(String[] questions, Map<String, ?> responses) {
+    for (String question : questions) {
+      if (responses.get(question) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,21 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+/**
+ * A token of a formula. The image of a function name token excludes its opening parenthesis.
+ */
+final class Token {
+  final TokenType type;
+  final String image;
+  final int offset;
+
+  Token(TokenType type, String image, int offset) {
+    this.type = type;
+    this.image = image;
+    this.offset = offset;
+  }
+
+  @Override
+  public String toString() {
+    return type + "('" + image + "')";
+  }
+}
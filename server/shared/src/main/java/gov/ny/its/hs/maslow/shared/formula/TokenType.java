@@ -0,0 +1,65 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+/**
+ * Defines the types of tokens in a formula. The order matches the order in which the client lexer
+ * tries each token pattern; the first pattern that matches wins.
+ */
+enum TokenType {
+  PLUS,
+  MINUS,
+  MULTIPLY,
+  DIVIDE,
+  LEFT_PAREN,
+  RIGHT_PAREN,
+  NUMBER_LITERAL,
+  POWER,
+  COMMA,
+  EQUAL,
+  NOT_EQUAL,
+  GREATER_THAN_OR_EQUAL,
+  GREATER_THAN,
+  LESS_THAN_OR_EQUAL,
+  LESS_THAN,
+  BOOLEAN_LITERAL,
+  FUNCTION_NAME,
+  IDENTIFIER;
+
+  /**
+   * Gets whether this token is an addition operator (that is, a sign).
+   */
+  boolean isAdditionOperator() {
+    return this == PLUS || this == MINUS;
+  }
+
+  /**
+   * Gets whether this token is a multiplication operator.
+   */
+  boolean isMultiplicationOperator() {
+    return this == MULTIPLY || this == DIVIDE;
+  }
+
+  /**
+   * Gets whether this token is a relational operator.
+   */
+  boolean isRelationalOperator() {
+    return ordinal() >= EQUAL.ordinal() && ordinal() <= LESS_THAN.ordinal();
+  }
+
+  /**
+   * Gets whether an expression can begin with this token.
+   */
+  boolean isExpressionStart() {
+    switch (this) {
+      case PLUS:
+      case MINUS:
+      case LEFT_PAREN:
+      case NUMBER_LITERAL:
+      case BOOLEAN_LITERAL:
+      case FUNCTION_NAME:
+      case IDENTIFIER:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+/**
+ * Implements the JavaScript conversions and comparisons the client evaluator relies on, so that
+ * formulas evaluate to exactly the same results on the server. Values are {@link Boolean},
+ * {@link Number} or null (JavaScript's undefined).
+ */
+public final class Values {
+
+  private Values() {}
+
+  /**
+   * Converts {@code value} to a number as JavaScript's {@code Number(value)} does.
+   *
+   * @param value a boolean, number or null
+   */
+  public static double toNumber(Object value) {
+    if (value instanceof Double) {
+      return (Double) value;
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    } else if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    } else if (value == null) {
+      return Double.NaN;
+    }
+    throw new FormulaException("Unsupported value: " + value);
+  }
+
+  /**
+   * Gets whether {@code value} is truthy in JavaScript (that is, neither false, zero, NaN nor
+   * undefined).
+   *
+   * @param value a boolean, number or null
+   */
+  public static boolean isTruthy(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value == null) {
+      return false;
+    }
+    double number = toNumber(value);
+    return number != 0 && !Double.isNaN(number);
+  }
+
+  /**
+   * Compares two values as JavaScript's strict equality operator ({@code ===}) does: a boolean
+   * never equals a number, NaN never equals anything, and zero equals negative zero.
+   *
+   * @param a a boolean, number or null
+   * @param b a boolean, number or null
+   */
+  public static boolean strictEquals(Object a, Object b) {
+    if (a == null || b == null) {
+      return a == b;
+    } else if (a instanceof Boolean || b instanceof Boolean) {
+      return a.equals(b);
+    }
+    return toNumber(a) == toNumber(b);
+  }
+}
@@ -0,0 +1,178 @@
+package gov.ny.its.hs.maslow.shared.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Defines the changes between two snapshots of the services published by Maslow Author, so that
+ * Maslow Access only downloads the services that were added, changed or removed rather than the
+ * whole multi-locale document.
+ *
+ * Services are carried as JSON trees, exactly as they appear in a full snapshot, so that applying
+ * a delta to the JSON of the base snapshot yields the JSON of the next snapshot. The result is
+ * verified with {@link #checksum(JsonNode, JsonNode)}, which both sides compute over the canonical
+ * form of the rank and services.
+ */
+public class ServicesDelta {
+  private String base;
+  private String version;
+  private List<String> rank;
+  private Map<String, JsonNode> services = new LinkedHashMap<>();
+  private List<String> removed = new ArrayList<>();
+  private String checksum;
+
+  /**
+   * Gets the version of the snapshot that the delta applies to.
+   */
+  public String getBase() {
+    return base;
+  }
+
+  /**
+   * Sets the value for {@link #getBase()}
+   */
+  public void setBase(String base) {
+    this.base = base;
+  }
+
+  /**
+   * Gets the version of the snapshot that results from applying the delta.
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Sets the value for {@link #getVersion()}
+   */
+  public void setVersion(String version) {
+    this.version = version;
+  }
+
+  /**
+   * Gets the rank of the next snapshot, or null if it is the same as the rank of the base. The rank
+   * is small compared to the services, so it is replaced as a whole when any entry changes.
+   */
+  public List<String> getRank() {
+    return rank;
+  }
+
+  /**
+   * Sets the value for {@link #getRank()}
+   */
+  public void setRank(List<String> rank) {
+    this.rank = rank;
+  }
+
+  /**
+   * Gets the services that were added or changed since the base, as JSON trees keyed by service
+   * key.
+   */
+  public Map<String, JsonNode> getServices() {
+    return services;
+  }
+
+  /**
+   * Sets the value for {@link #getServices()}
+   */
+  public void setServices(Map<String, JsonNode> services) {
+    this.services = services;
+  }
+
+  /**
+   * Gets the keys of the services that were removed since the base.
+   */
+  public List<String> getRemoved() {
+    return removed;
+  }
+
+  /**
+   * Sets the value for {@link #getRemoved()}
+   */
+  public void setRemoved(List<String> removed) {
+    this.removed = removed;
+  }
+
+  /**
+   * Gets the checksum of the rank and services of the next snapshot (see
+   * {@link #checksum(JsonNode, JsonNode)}).
+   */
+  public String getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * Sets the value for {@link #getChecksum()}
+   */
+  public void setChecksum(String checksum) {
+    this.checksum = checksum;
+  }
+
+  /**
+   * Computes the SHA-256 checksum of the canonical form of a snapshot: its rank and services
+   * written as compact JSON with the fields of every object sorted by name and null fields
+   * omitted, so that it does not depend on how either side orders or formats the JSON.
+   *
+   * @param rank the rank of the snapshot
+   * @param services the services of the snapshot
+   * @return the checksum as lowercase hexadecimal
+   */
+  public static String checksum(JsonNode rank, JsonNode services) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (JsonGenerator generator = new JsonFactory().createGenerator(output)) {
+      generator.writeStartArray();
+      writeCanonical(generator, rank);
+      writeCanonical(generator, services);
+      generator.writeEndArray();
+    } catch (IOException e) {
+      // writing to memory never fails
+      throw new UncheckedIOException(e);
+    }
+    return Hashing.sha256().hashBytes(output.toByteArray()).toString();
+  }
+
+  private static void writeCanonical(JsonGenerator generator, JsonNode node) throws IOException {
+    if (node == null || node.isNull() || node.isMissingNode()) {
+      generator.writeNull();
+    } else if (node.isObject()) {
+      Map<String, JsonNode> fields = new TreeMap<>();
+      for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+        Map.Entry<String, JsonNode> field = it.next();
+        if (!field.getValue().isNull()) {
+          fields.put(field.getKey(), field.getValue());
+        }
+      }
+
+      generator.writeStartObject();
+      for (Map.Entry<String, JsonNode> field : fields.entrySet()) {
+        generator.writeFieldName(field.getKey());
+        writeCanonical(generator, field.getValue());
+      }
+      generator.writeEndObject();
+    } else if (node.isArray()) {
+      generator.writeStartArray();
+      for (JsonNode element : node) {
+        writeCanonical(generator, element);
+      }
+      generator.writeEndArray();
+    } else if (node.isNumber()) {
+      // integral and floating-point numbers are written alike, such as 1000 for 1000.0
+      generator.writeNumber(node.decimalValue().stripTrailingZeros().toPlainString());
+    } else if (node.isBoolean()) {
+      generator.writeBoolean(node.booleanValue());
+    } else {
+      generator.writeString(node.asText());
+    }
+  }
+}
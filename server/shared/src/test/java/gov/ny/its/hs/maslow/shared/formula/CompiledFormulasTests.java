@@ -0,0 +1,110 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.BOOLEANS;
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CATALOG;
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CORNERS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import gov.ny.its.hs.maslow.shared.model.QuestionType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompiledFormulasTests {
+  /** Formulas that exercise the conversions between booleans and numbers of every function. */
+  static final List<String> FUNCTIONS = ImmutableList.of(
+    "=POWER(HOUSEHOLD_SIZE, IS_COVID) > 3",
+    "=ABS(3 - HOUSEHOLD_SIZE) = IS_COVID",
+    "=CEILING(HOUSEHOLD_INCOME, 1000) = 2000",
+    "=FLOOR(HOUSEHOLD_INCOME, HOUSEHOLD_SIZE - 1) > 5000",
+    "=INT(HOUSEHOLD_INCOME / 1000) = 3",
+    "=MOD(HOUSEHOLD_INCOME, IS_COVID)",
+    "=MOD(HOUSEHOLD_SIZE, 4) <> 2",
+    "=PRODUCT(IS_COVID, IS_MILITARY)",
+    "=PRODUCT(HOUSEHOLD_SIZE - 1) = 3",
+    "=QUOTIENT(HOUSEHOLD_INCOME, HOUSEHOLD_SIZE, 100) >= 5",
+    "=ROUND(HOUSEHOLD_INCOME / 7, HOUSEHOLD_SIZE - 12) > 100",
+    "=SIGN(HOUSEHOLD_SIZE - 7) = -1",
+    "=SUM(IS_COVID, IS_MILITARY, IS_STUDENT) >= 2",
+    "=MAX(HOUSEHOLD_SIZE, IS_COVID * 10) < 10",
+    "=MIN(HOUSEHOLD_SIZE, 4) = 4 = IS_COVID",
+    "=IF(IS_COVID, TRUE) = TRUE",
+    "=IF(IS_COVID, 1, 2) = 1",
+    "=IFS(IS_COVID, 1, IS_MILITARY, 2) = 2",
+    "=IFS(IS_COVID, HOUSEHOLD_SIZE, IS_MILITARY, HOUSEHOLD_INCOME)",
+    "=AND(IS_COVID, IS_MILITARY) + OR(IS_STUDENT) + XOR(IS_DISABLED) + NOT(IS_PREGNANT) > 2",
+    "=IF(IS_COVID, SQRT(HOUSEHOLD_SIZE - 10), 1)",
+    "=HOUSEHOLD_SIZE / (HOUSEHOLD_SIZE - 5) > 1",
+    "=IF(IS_COVID, TRUE, 1) = 1",
+    "=UNKNOWN_QUESTION"
+  );
+
+  private static Map<String, QuestionType> questionTypes() {
+    Map<String, QuestionType> types = new LinkedHashMap<>();
+    for (String question : BOOLEANS) {
+      types.put(question, QuestionType.BOOLEAN);
+    }
+    types.put("HOUSEHOLD_SIZE", QuestionType.NUMBER);
+    types.put("HOUSEHOLD_INCOME", QuestionType.CURRENCY);
+    return types;
+  }
+
+  private static void assertEquivalent(List<Formula> formulas, CompiledFormulas compiled) {
+    double[] answers = new double[compiled.getQuestions().size()];
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      Map<String, Object> responses = DecisionDiagramTests.randomResponses(random);
+      assertThat(compiled.encode(responses, answers)).isTrue();
+      for (int j = 0; j < formulas.size(); j++) {
+        assertThat(compiled.test(j, answers))
+          .as("%s with %s", formulas.get(j), responses)
+          .isEqualTo(DecisionDiagramTests.test(formulas.get(j), responses));
+      }
+    }
+  }
+
+  @Test
+  void test_withCatalog_isEquivalentToFormulas() {
+    List<Formula> formulas = DecisionDiagramTests.parse(CATALOG);
+    CompiledFormulas compiled = CompiledFormulas.compile(formulas, questionTypes());
+
+    assertEquivalent(formulas, compiled);
+    assertThat(compiled.getInterpretedCount()).isZero();
+  }
+
+  @Test
+  void test_withCorners_isEquivalentToFormulas() {
+    List<Formula> formulas = DecisionDiagramTests.parse(CORNERS);
+    CompiledFormulas compiled = CompiledFormulas.compile(formulas, questionTypes());
+
+    assertEquivalent(formulas, compiled);
+    assertThat(compiled.getInterpretedCount()).isZero();
+  }
+
+  @Test
+  void test_withFunctions_isEquivalentToFormulas() {
+    List<Formula> formulas = DecisionDiagramTests.parse(FUNCTIONS);
+    CompiledFormulas compiled = CompiledFormulas.compile(formulas, questionTypes());
+
+    assertEquivalent(formulas, compiled);
+    // an unknown question and an equality with an IF of a boolean or a number are interpreted
+    assertThat(compiled.getInterpretedCount()).isEqualTo(2);
+  }
+
+  @Test
+  void encode_withMismatchedType_fails() {
+    CompiledFormulas compiled = CompiledFormulas.compile(
+      DecisionDiagramTests.parse(CATALOG),
+      questionTypes()
+    );
+    double[] answers = new double[compiled.getQuestions().size()];
+
+    assertThat(compiled.encode(ImmutableMap.of("IS_COVID", 1), answers)).isFalse();
+    assertThat(compiled.encode(ImmutableMap.of("HOUSEHOLD_SIZE", true), answers)).isFalse();
+    assertThat(compiled.encode(ImmutableMap.of("IS_COVID", true), answers)).isTrue();
+  }
+}
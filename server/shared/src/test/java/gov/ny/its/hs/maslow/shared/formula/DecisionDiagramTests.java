@@ -0,0 +1,265 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class DecisionDiagramTests {
+
+  /** The formulas of the catalog embedded in Maslow Access, with some of their variations. */
+  static final List<String> CATALOG = ImmutableList.of(
+    "=TRUE",
+    "=IS_COVID",
+    "=NOT(IS_EMPLOYMENT_AFFECTED)",
+    "=AND(IS_COVID, OR(CHILDREN_06_17, CHILDREN_00_05))",
+    "=AND(IS_MILITARY, IS_DISABLED)",
+    "=AND(NOT(IS_EMPLOYMENT_AFFECTED), CHILDREN_00_05)",
+    "=OR(IS_PREGNANT, CHILDREN_06_17, CHILDREN_00_05)",
+    "=AND(IS_STUDENT, HOUSEHOLD_INCOME * 12 < 50550)",
+    "=AND(IS_STUDENT, HOUSEHOLD_INCOME <= (125000 / 12))",
+    "=HOUSEHOLD_INCOME <= 1063 + (HOUSEHOLD_SIZE - 1) * 373",
+    "=AND(IS_PAY_FOR_DEPENDENT_CARE, HOUSEHOLD_INCOME * 12 <= 16140 + HOUSEHOLD_SIZE * 8840, " +
+    "OR(CHILDREN_06_17, CHILDREN_00_05))",
+    "=IFS(HOUSEHOLD_SIZE <= 6, HOUSEHOLD_INCOME <= ((HOUSEHOLD_SIZE - 1) * 768 + 2494), " +
+    "HOUSEHOLD_SIZE <= 10, HOUSEHOLD_INCOME <= ((HOUSEHOLD_SIZE - 7) * 144 + 6476), " +
+    "HOUSEHOLD_SIZE <= 11, HOUSEHOLD_INCOME <= 7086, " +
+    "HOUSEHOLD_SIZE >= 12, HOUSEHOLD_INCOME <= ((HOUSEHOLD_SIZE - 12) * 553 + 7639))",
+    "=IFS(OR(IS_PAY_FOR_DEPENDENT_CARE, IS_DISABLED, ADULTS_60_PLUS), " +
+    "HOUSEHOLD_INCOME <= (2082 + (HOUSEHOLD_SIZE - 1) * 737), " +
+    "HOUSEHOLD_EMPLOYED, HOUSEHOLD_INCOME <= (1562 + (HOUSEHOLD_SIZE - 1) * 553), " +
+    "AND(NOT(HOUSEHOLD_EMPLOYED), NOT(IS_DISABLED), NOT(ADULTS_60_PLUS), " +
+    "NOT(IS_PAY_FOR_DEPENDENT_CARE)), HOUSEHOLD_INCOME <= (1354 + (HOUSEHOLD_SIZE - 1) * 479))"
+  );
+
+  /** Formulas that exercise the corners of the formula language. */
+  static final List<String> CORNERS = ImmutableList.of(
+    "=FALSE",
+    "=AND(TRUE,",
+    "=UNKNOWN(IS_COVID)",
+    "=IFS(IS_COVID)",
+    "=IFS(IS_COVID, 1, IS_MILITARY)",
+    "=-IS_COVID",
+    "=-(HOUSEHOLD_SIZE - 4)",
+    "=1 < HOUSEHOLD_SIZE < 3",
+    "=HOUSEHOLD_SIZE <> 2 <> 3",
+    "=IS_COVID = IS_MILITARY = TRUE",
+    "=IF(IS_COVID, HOUSEHOLD_SIZE - 3)",
+    "=IF(IS_COVID, IS_MILITARY, HOUSEHOLD_SIZE - 3)",
+    "=XOR(IS_COVID, IS_MILITARY, IS_STUDENT)",
+    "=PRODUCT(IS_COVID)",
+    "=PRODUCT(IS_COVID, HOUSEHOLD_SIZE)",
+    "=ROUND(HOUSEHOLD_INCOME / 1000) >= 2",
+    "=MOD(HOUSEHOLD_INCOME, HOUSEHOLD_SIZE - 3) = 1",
+    "=OR(IS_COVID, SQRT(HOUSEHOLD_SIZE - 3) > 1)",
+    "=OR(IS_COVID, QUOTIENT(HOUSEHOLD_INCOME, CHILDREN_00_05))",
+    "=AND(IS_COVID, HOUSEHOLD_SIZE ^ 2 > 9) 1"
+  );
+
+  static final List<String> BOOLEANS = ImmutableList.of(
+    "ADULTS_60_PLUS",
+    "CHILDREN_00_05",
+    "CHILDREN_06_17",
+    "HOUSEHOLD_EMPLOYED",
+    "IS_COVID",
+    "IS_DISABLED",
+    "IS_EMPLOYMENT_AFFECTED",
+    "IS_MILITARY",
+    "IS_PAY_FOR_DEPENDENT_CARE",
+    "IS_PREGNANT",
+    "IS_STUDENT"
+  );
+
+  static List<Formula> parse(List<String> formulas) {
+    return formulas.stream().map(Formula::parse).collect(Collectors.toList());
+  }
+
+  static Map<String, Object> randomResponses(Random random) {
+    Map<String, Object> responses = new HashMap<>();
+    for (String question : BOOLEANS) {
+      responses.put(question, random.nextBoolean());
+    }
+    responses.put("HOUSEHOLD_SIZE", (double) random.nextInt(15));
+    responses.put("HOUSEHOLD_INCOME", (double) random.nextInt(12000));
+    // a response is sometimes missing, which makes every formula that refers to it false
+    if (random.nextInt(10) == 0) {
+      responses.remove(BOOLEANS.get(random.nextInt(BOOLEANS.size())));
+    }
+    return responses;
+  }
+
+  static boolean test(Formula formula, Map<String, ?> responses) {
+    try {
+      return formula.test(responses);
+    } catch (FormulaException e) {
+      return false;
+    }
+  }
+
+  private static void assertEquivalent(List<Formula> formulas, DecisionDiagram diagram) {
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      Map<String, Object> responses = randomResponses(random);
+      BitSet truthy = diagram.evaluate(responses);
+      for (int j = 0; j < formulas.size(); j++) {
+        assertThat(truthy.get(j))
+          .as("%s with %s", formulas.get(j), responses)
+          .isEqualTo(test(formulas.get(j), responses));
+      }
+    }
+  }
+
+  @Test
+  void evaluate_withCatalog_isEquivalentToFormulas() {
+    List<Formula> formulas = parse(CATALOG);
+    DecisionDiagram diagram = DecisionDiagram.compile(formulas);
+
+    assertEquivalent(formulas, diagram);
+    assertThat(diagram.getInterpretedCount()).isZero();
+  }
+
+  @Test
+  void evaluate_withCorners_isEquivalentToFormulas() {
+    List<Formula> formulas = parse(CORNERS);
+    DecisionDiagram diagram = DecisionDiagram.compile(formulas);
+
+    assertEquivalent(formulas, diagram);
+    assertThat(diagram.getInterpretedCount()).isEqualTo(3);
+  }
+
+  @Test
+  void evaluate_incrementally_isEquivalentToEvaluate() {
+    List<Formula> formulas = parse(CATALOG);
+    DecisionDiagram diagram = DecisionDiagram.compile(formulas);
+
+    Random random = new Random(42);
+    Map<String, Object> responses = new HashMap<>();
+    DecisionDiagram.Evaluation evaluation = diagram.evaluate(responses, null, ImmutableList.of());
+    for (int i = 0; i < 10_000; i++) {
+      // answer, change or clear one question at a time, as residents do in the survey
+      Map<String, Object> next = randomResponses(random);
+      String question = random.nextBoolean()
+        ? BOOLEANS.get(random.nextInt(BOOLEANS.size()))
+        : random.nextBoolean() ? "HOUSEHOLD_SIZE" : "HOUSEHOLD_INCOME";
+      if (next.containsKey(question) && random.nextInt(10) > 0) {
+        responses.put(question, next.get(question));
+      } else {
+        responses.remove(question);
+      }
+
+      DecisionDiagram.Evaluation previous = diagram.restore(evaluation.toByteArray());
+      evaluation = diagram.evaluate(responses, previous, ImmutableList.of(question));
+      assertThat(evaluation.getTruthy()).as("%s", responses).isEqualTo(diagram.evaluate(responses));
+    }
+  }
+
+  @Test
+  void evaluatePartially_decidesFormulasForEveryCompletion() {
+    List<Formula> formulas = parse(CATALOG);
+    DecisionDiagram diagram = DecisionDiagram.compile(formulas);
+
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      Map<String, Object> partial = randomResponses(random);
+      partial.keySet().removeIf(question -> random.nextInt(3) == 0);
+      DecisionDiagram.PartialEvaluation evaluation = diagram.evaluatePartially(partial);
+
+      for (int j = 0; j < 20; j++) {
+        Map<String, Object> complete = complete(partial, random);
+        BitSet truthy = diagram.evaluate(complete);
+
+        BitSet unexpected = evaluation.getTruthy();
+        unexpected.andNot(truthy);
+        assertThat(unexpected.isEmpty()).as("%s", complete).isTrue();
+        assertThat(evaluation.getFalsy().intersects(truthy)).as("%s", complete).isFalse();
+
+        // questions that are neither answered nor remaining cannot change any result
+        Map<String, Object> other = complete(partial, random);
+        for (String question : evaluation.getRemainingQuestions()) {
+          other.put(question, complete.get(question));
+        }
+        assertThat(diagram.evaluate(other)).as("%s", other).isEqualTo(truthy);
+      }
+    }
+  }
+
+  private static Map<String, Object> complete(Map<String, Object> partial, Random random) {
+    Map<String, Object> complete = randomResponses(random);
+    for (String question : BOOLEANS) {
+      complete.putIfAbsent(question, random.nextBoolean());
+    }
+    complete.putAll(partial);
+    return complete;
+  }
+
+  @Test
+  void evaluatePartially_returnsRemainingQuestions() {
+    DecisionDiagram diagram = DecisionDiagram.compile(
+      parse(
+        ImmutableList.of(
+          "=IS_COVID",
+          "=OR(IS_COVID, IS_MILITARY)",
+          "=AND(IS_COVID, HOUSEHOLD_INCOME <= 1000)",
+          "=OR(IS_STUDENT, NOT(IS_STUDENT))",
+          "=MOD(HOUSEHOLD_SIZE, 2) = 0"
+        )
+      )
+    );
+
+    DecisionDiagram.PartialEvaluation evaluation = diagram.evaluatePartially(
+      ImmutableMap.of("IS_COVID", true)
+    );
+
+    assertThat(evaluation.getTruthy().stream()).containsExactly(0, 1, 3);
+    assertThat(evaluation.getFalsy().stream()).isEmpty();
+    assertThat(evaluation.getUndecided().stream()).containsExactly(2, 4);
+    assertThat(evaluation.getRemainingQuestions())
+      .containsExactly("HOUSEHOLD_INCOME", "HOUSEHOLD_SIZE");
+
+    evaluation = diagram.evaluatePartially(ImmutableMap.of("IS_COVID", false));
+    assertThat(evaluation.getFalsy().stream()).containsExactly(0, 2);
+    assertThat(evaluation.getRemainingQuestions()).containsExactly("IS_MILITARY", "HOUSEHOLD_SIZE");
+  }
+
+  @Test
+  void restore_withOtherDiagram_throws() {
+    DecisionDiagram diagram = DecisionDiagram.compile(parse(CATALOG));
+    DecisionDiagram other = DecisionDiagram.compile(parse(CORNERS));
+    byte[] bytes = other.evaluate(ImmutableMap.of(), null, ImmutableList.of()).toByteArray();
+
+    assertThatThrownBy(() -> diagram.restore(bytes)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void compile_sharesTests() {
+    DecisionDiagram diagram = DecisionDiagram.compile(
+      parse(
+        ImmutableList.of(
+          "=AND(IS_COVID, HOUSEHOLD_SIZE <= 6)",
+          "=OR(IS_COVID, HOUSEHOLD_SIZE<=6)",
+          "=AND(IS_COVID,HOUSEHOLD_SIZE <= 6)"
+        )
+      )
+    );
+
+    assertThat(diagram.getTestCount()).isEqualTo(2);
+    // one node for each test, plus the roots of AND and OR (which the last formula shares)
+    assertThat(diagram.getNodeCount()).isEqualTo(4);
+  }
+
+  @Test
+  void evaluate_withMissingResponse_isFalse() {
+    DecisionDiagram diagram = DecisionDiagram.compile(parse(ImmutableList.of("=OR(A, B)")));
+
+    assertThat(diagram.evaluate(ImmutableMap.of("A", true)).get(0)).isFalse();
+    assertThat(diagram.evaluate(ImmutableMap.of("A", true, "B", false)).get(0)).isTrue();
+  }
+}
@@ -0,0 +1,62 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CATALOG;
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CORNERS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class FormulaAstTests {
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private void assertRoundTrips(List<String> texts) throws Exception {
+    for (Formula formula : DecisionDiagramTests.parse(texts)) {
+      Map<String, Object> ast = FormulaAst.encode(formula);
+      if (!formula.getParseErrors().isEmpty()) {
+        assertThat(ast).as("%s", formula).isNull();
+        continue;
+      }
+
+      // the tree is read back from JSON, as a client would
+      Map<?, ?> json = mapper.readValue(mapper.writeValueAsBytes(ast), Map.class);
+      assertThat(json.get("version")).isEqualTo(FormulaAst.VERSION);
+      assertThat(FormulaAst.decode(json.get("tree")).toString())
+        .as("%s", formula)
+        .isEqualTo(formula.getExpression().toString());
+    }
+  }
+
+  @Test
+  void encode_roundTrips() throws Exception {
+    assertRoundTrips(CATALOG);
+    assertRoundTrips(CORNERS);
+    assertRoundTrips(CompiledFormulasTests.FUNCTIONS);
+  }
+
+  @Test
+  void encode_isCompact() throws Exception {
+    Formula formula = Formula.parse("=AND(NOT(IS_COVID), 1 < -HOUSEHOLD_SIZE * 2 <= 3, TRUE)");
+
+    assertThat(mapper.writeValueAsString(FormulaAst.encode(formula)))
+      .isEqualTo(
+        "{\"version\":1,\"tree\":[\"AND\",[\"NOT\",\"IS_COVID\"]," +
+        "[\"<\",1.0,[\"*\",[\"-\",\"HOUSEHOLD_SIZE\"],2.0],\"<=\",3.0],true]}"
+      );
+  }
+
+  @Test
+  void decode_withMalformedTree_throws() {
+    assertThatThrownBy(() -> FormulaAst.decode(ImmutableList.of()))
+      .isInstanceOf(FormulaException.class);
+    assertThatThrownBy(() -> FormulaAst.decode(Arrays.asList("<", 1, 2, "+", 3)))
+      .isInstanceOf(FormulaException.class);
+    assertThatThrownBy(() -> FormulaAst.decode(Arrays.asList("<", 1, 2, 3)))
+      .isInstanceOf(FormulaException.class);
+  }
+}
@@ -0,0 +1,116 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CATALOG;
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CORNERS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class FormulaOptimizerTests {
+  /** Formulas that each optimization applies to, along with their counterexamples. */
+  private static final List<String> OPTIMIZABLE = ImmutableList.of(
+    "=AND(IS_STUDENT, HOUSEHOLD_INCOME <= (125000 / 12))",
+    "=HOUSEHOLD_INCOME * 12 <= 16140 + (2 * 4420) * (HOUSEHOLD_SIZE)",
+    "=HOUSEHOLD_SIZE <= 1 - 4",
+    "=(IS_COVID) = 1",
+    "=IS_COVID = (1 = 1)",
+    "=AND(TRUE, IS_COVID, AND(IS_MILITARY, IS_COVID))",
+    "=OR(FALSE, IS_COVID, OR(IS_MILITARY), TRUE)",
+    "=AND(FALSE, IS_COVID)",
+    "=AND(IS_COVID) + 1",
+    "=NOT(NOT(HOUSEHOLD_SIZE))",
+    "=NOT(NOT(HOUSEHOLD_SIZE)) = TRUE",
+    "=NOT(NOT(HOUSEHOLD_SIZE), IS_COVID)",
+    "=IF(1 < 2, IS_COVID, 3)",
+    "=IF(1 < 2, IS_COVID, IS_MILITARY)",
+    "=IF(1 > 2, 3, HOUSEHOLD_SIZE - 3)",
+    "=IF(1 > 2, 3, HOUSEHOLD_SIZE - 3) = 0",
+    "=IF(IS_COVID, (HOUSEHOLD_SIZE), 2 * 3) = 6",
+    "=MOD(HOUSEHOLD_SIZE, (IS_COVID))",
+    "=PRODUCT((IS_COVID)) = 1",
+    "=OR(IS_COVID, MOD(1, 0))",
+    "=OR(IS_COVID, SQRT(2 - 3))",
+    "=IFS(1 = 1, IS_COVID)",
+    "=0 * -1 = HOUSEHOLD_SIZE",
+    "=1 / 0 < HOUSEHOLD_SIZE"
+  );
+
+  private static void assertEquivalent(List<String> texts) {
+    List<Formula> formulas = DecisionDiagramTests.parse(texts);
+    Formula[] optimized = formulas.stream().map(FormulaOptimizer::optimize).toArray(Formula[]::new);
+    for (int j = 0; j < formulas.size(); j++) {
+      // a formula that refers to fewer questions would require fewer responses
+      assertThat(optimized[j].getIdentifiers())
+        .as("%s optimized to %s", formulas.get(j), optimized[j])
+        .isEqualTo(formulas.get(j).getIdentifiers());
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      Map<String, Object> responses = DecisionDiagramTests.randomResponses(random);
+      for (int j = 0; j < formulas.size(); j++) {
+        assertThat(DecisionDiagramTests.test(optimized[j], responses))
+          .as("%s optimized to %s with %s", formulas.get(j), optimized[j], responses)
+          .isEqualTo(DecisionDiagramTests.test(formulas.get(j), responses));
+      }
+    }
+  }
+
+  private static String optimize(String text) {
+    return FormulaOptimizer.optimize(Formula.parse(text)).getText();
+  }
+
+  @Test
+  void optimize_withCatalog_isEquivalentToFormulas() {
+    assertEquivalent(CATALOG);
+  }
+
+  @Test
+  void optimize_withCorners_isEquivalentToFormulas() {
+    assertEquivalent(CORNERS);
+    assertEquivalent(CompiledFormulasTests.FUNCTIONS);
+  }
+
+  @Test
+  void optimize_withOptimizable_isEquivalentToFormulas() {
+    assertEquivalent(OPTIMIZABLE);
+  }
+
+  @Test
+  void optimize_foldsConstants() {
+    assertThat(optimize("=AND(IS_STUDENT, HOUSEHOLD_INCOME <= (125000 / 12))"))
+      .isEqualTo("=AND(IS_STUDENT,HOUSEHOLD_INCOME<=10416.666666666666)");
+    assertThat(optimize("=HOUSEHOLD_INCOME * 12 <= 16140 + (2 * 4420) * (HOUSEHOLD_SIZE)"))
+      .isEqualTo("=HOUSEHOLD_INCOME*12<=16140+8840*HOUSEHOLD_SIZE");
+    assertThat(optimize("=HOUSEHOLD_SIZE <= 1 - 4")).isEqualTo("=HOUSEHOLD_SIZE<=-(3)");
+  }
+
+  @Test
+  void optimize_simplifiesBooleans() {
+    assertThat(optimize("=AND(TRUE, IS_COVID, AND(IS_MILITARY, IS_COVID))"))
+      .isEqualTo("=AND(IS_COVID,IS_MILITARY)");
+    assertThat(optimize("=OR(FALSE, IS_COVID)")).isEqualTo("=IS_COVID");
+    assertThat(optimize("=NOT(NOT(HOUSEHOLD_SIZE))")).isEqualTo("=HOUSEHOLD_SIZE");
+    assertThat(optimize("=IF(1 < 2, IS_COVID, 3)")).isEqualTo("=IS_COVID");
+  }
+
+  @Test
+  void optimize_keepsWhatMayFail() {
+    // an argument that refers to a question fails when the response is missing
+    assertThat(optimize("=AND(FALSE, IS_COVID)")).isEqualTo("=AND(FALSE, IS_COVID)");
+    assertThat(optimize("=OR(FALSE, IS_COVID, MOD(1, 0))")).isEqualTo("=OR(IS_COVID,MOD(1,0))");
+  }
+
+  @Test
+  void optimize_withoutOptimization_returnsFormula() {
+    Formula formula = Formula.parse("=AND(IS_COVID, HOUSEHOLD_SIZE > 2)");
+    Formula syntaxError = Formula.parse("=AND(TRUE,");
+
+    assertThat(FormulaOptimizer.optimize(formula)).isSameAs(formula);
+    assertThat(FormulaOptimizer.optimize(syntaxError)).isSameAs(syntaxError);
+  }
+}
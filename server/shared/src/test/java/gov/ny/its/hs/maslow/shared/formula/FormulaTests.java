@@ -0,0 +1,297 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Mirrors the client evaluator tests, so that both implementations produce the same results.
+ */
+public class FormulaTests {
+
+  private static Object evaluate(String formula) {
+    return evaluate(formula, Collections.emptyMap());
+  }
+
+  private static Object evaluate(String formula, Map<String, ?> responses) {
+    return Formula.parse(formula).evaluate(responses);
+  }
+
+  @Nested
+  class Parse {
+
+    @Test
+    void skipsWhitespace() {
+      assertThat(evaluate("=1 + 2")).isEqualTo(evaluate("=1+2"));
+    }
+
+    @Test
+    void withoutLeadingEquals_throws() {
+      assertThatThrownBy(() -> Formula.parse("1 + 2")).isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> Formula.parse("")).isInstanceOf(FormulaException.class);
+    }
+
+    @Test
+    void withUnexpectedCharacter_throws() {
+      assertThatThrownBy(() -> Formula.parse("=1 & 2")).isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> Formula.parse("=income")).isInstanceOf(FormulaException.class);
+    }
+
+    @Test
+    void withSyntaxError_evaluatesToUndefined() {
+      Formula formula = Formula.parse("=AND(TRUE,");
+      assertThat(formula.getParseErrors()).isNotEmpty();
+      assertThat(formula.getExpression()).isNull();
+      assertThat(formula.evaluate(Collections.emptyMap())).isNull();
+      assertThat(evaluate("=--1")).isNull();
+      assertThat(evaluate("=")).isNull();
+    }
+
+    @Test
+    void withRedundantInput_keepsExpression() {
+      Formula formula = Formula.parse("=1 2");
+      assertThat(formula.getParseErrors()).hasSize(1);
+      assertThat(formula.evaluate(Collections.emptyMap())).isEqualTo(1.0);
+    }
+
+    @Test
+    void lexesFirstMatchingToken() {
+      // the boolean pattern wins over the identifier pattern, as in the client
+      assertThat(Formula.parse("=TRUE_X").getParseErrors()).hasSize(1);
+      assertThat(evaluate("=TRUE_X")).isEqualTo(true);
+    }
+
+    @Test
+    void collectsIdentifiers() {
+      assertThat(Formula.parse("=AND(A > 1, -B, (C), A)").getIdentifiers())
+        .containsExactly("A", "B", "C");
+    }
+  }
+
+  @Nested
+  class Literals {
+
+    @Test
+    void canBeSignedNumbers() {
+      assertThat(evaluate("=2")).isEqualTo(2.0);
+      assertThat(evaluate("=+2")).isEqualTo(2.0);
+      assertThat(evaluate("=-2")).isEqualTo(-2.0);
+      assertThat(evaluate("=-2.")).isEqualTo(-2.0);
+    }
+
+    @Test
+    void canBeDecimalNumbers() {
+      assertThat(evaluate("=45.2")).isEqualTo(45.2);
+      assertThat(evaluate("=-45.2")).isEqualTo(-45.2);
+      assertThat(evaluate("=.2")).isEqualTo(0.2);
+    }
+
+    @Test
+    void canBeBooleans() {
+      assertThat(evaluate("=TRUE")).isEqualTo(true);
+      assertThat(evaluate("=FALSE")).isEqualTo(false);
+    }
+
+    @Test
+    void castToNumberWhenNegativeSignIsUsed() {
+      assertThat(evaluate("=-TRUE")).isEqualTo(-1.0);
+      assertThat(evaluate("=+TRUE")).isEqualTo(true);
+    }
+  }
+
+  @Nested
+  class Operators {
+
+    @Test
+    void addAndSubtract() {
+      assertThat(evaluate("=1 + 2")).isEqualTo(3.0);
+      assertThat(evaluate("=1 - 2")).isEqualTo(-1.0);
+      assertThat(evaluate("=1 ++2")).isEqualTo(3.0);
+      assertThat(evaluate("=1--2")).isEqualTo(3.0);
+    }
+
+    @Test
+    void multiplyAndDivide() {
+      assertThat(evaluate("=6*3")).isEqualTo(18.0);
+      assertThat(evaluate("=8/4")).isEqualTo(2.0);
+      assertThat(evaluate("=1/0")).isEqualTo(Double.POSITIVE_INFINITY);
+    }
+
+    @Test
+    void raiseExponentsFromRightToLeft() {
+      assertThat(evaluate("=2^5^2")).isEqualTo(33554432.0);
+      assertThat(evaluate("=(2^5)^2")).isEqualTo(1024.0);
+    }
+
+    @Test
+    void compareChains() {
+      assertThat(evaluate("=1=1=2")).isEqualTo(false);
+      assertThat(evaluate("=6 > 3 > 1")).isEqualTo(true);
+      assertThat(evaluate("=2 >= 0 >= 2")).isEqualTo(false);
+      assertThat(evaluate("=2 < 3 < 5")).isEqualTo(true);
+      assertThat(evaluate("=2 <= 1 <= 3")).isEqualTo(false);
+      assertThat(evaluate("=2 <> 2 <> 5")).isEqualTo(true);
+      assertThat(evaluate("=1 <> 1")).isEqualTo(false);
+    }
+
+    @Test
+    void compareStrictly() {
+      assertThat(evaluate("=TRUE = 1")).isEqualTo(false);
+      assertThat(evaluate("=TRUE > 0")).isEqualTo(true);
+    }
+
+    @Test
+    void respectPrecedence() {
+      assertThat(evaluate("=1 + 2 * 3")).isEqualTo(7.0);
+      assertThat(evaluate("=-(1 + 2) * 3")).isEqualTo(-9.0);
+      assertThat(evaluate("=6++(1 + 2) * 3")).isEqualTo(15.0);
+      assertThat(evaluate("=(1 + 2) * 3 >= 8 + 1")).isEqualTo(true);
+      assertThat(evaluate("=((((666))))")).isEqualTo(666.0);
+      assertThat(evaluate("=AND(1+2=3, OR(1=1,1=2))")).isEqualTo(true);
+    }
+
+    @Test
+    void convertParenthesizedBooleansToNumbers() {
+      assertThat(evaluate("=(TRUE)")).isEqualTo(1.0);
+    }
+  }
+
+  @Nested
+  class FunctionCalls {
+
+    @Test
+    void logical() {
+      assertThat(evaluate("=AND(TRUE,FALSE,TRUE)")).isEqualTo(false);
+      assertThat(evaluate("=AND(1,1)")).isEqualTo(true);
+      assertThat(evaluate("=-AND(TRUE,TRUE)")).isEqualTo(-1.0);
+      assertThat(evaluate("=OR(FALSE,FALSE,TRUE)")).isEqualTo(true);
+      assertThat(evaluate("=XOR(TRUE,FALSE,TRUE)")).isEqualTo(false);
+      assertThat(evaluate("=XOR(TRUE)")).isEqualTo(true);
+      assertThat(evaluate("=NOT(0)")).isEqualTo(true);
+      assertThat(evaluate("=+NOT(TRUE)")).isEqualTo(false);
+    }
+
+    @Test
+    void conditional() {
+      assertThat(evaluate("=IF(TRUE,3,4)")).isEqualTo(3.0);
+      assertThat(evaluate("=IF(3=4,15,12)")).isEqualTo(12.0);
+      assertThat(evaluate("=IF(3=4,TRUE)")).isEqualTo(false);
+      assertThat(evaluate("=IFS(FALSE,FALSE,TRUE,TRUE)")).isEqualTo(true);
+      assertThat(evaluate("=IFS(FALSE,TRUE,FALSE,TRUE)")).isEqualTo(Double.NaN);
+      assertThatThrownBy(() -> evaluate("=IF(TRUE)")).isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> evaluate("=IFS(FALSE,FALSE,TRUE)"))
+        .isInstanceOf(FormulaException.class);
+    }
+
+    @Test
+    void rounding() {
+      assertThat(evaluate("=ROUND(826.645)")).isEqualTo(827.0);
+      assertThat((Double) evaluate("=ROUND(826.645,2)")).isCloseTo(826.65, within(1e-5));
+      assertThat(evaluate("=ROUND(826.645,-2)")).isEqualTo(800.0);
+      assertThat(evaluate("=ROUND(-2.5)")).isEqualTo(-2.0);
+      assertThat(evaluate("=CEILING(126.85,10)")).isEqualTo(130.0);
+      assertThat(evaluate("=CEILING(126.85,TRUE)")).isEqualTo(127.0);
+      assertThat(evaluate("=FLOOR(126.85,100)")).isEqualTo(100.0);
+      assertThat(evaluate("=INT(-6.18)")).isEqualTo(-7.0);
+      assertThatThrownBy(() -> evaluate("=FLOOR()")).isInstanceOf(FormulaException.class);
+    }
+
+    @Test
+    void arithmetic() {
+      assertThat(evaluate("=ABS(-6/3)")).isEqualTo(2.0);
+      assertThat(evaluate("=SIGN(-200/10)")).isEqualTo(-1.0);
+      assertThat(evaluate("=1 + POWER(2,2,3)")).isEqualTo(5.0);
+      assertThat(evaluate("=MOD(5,2)")).isEqualTo(1.0);
+      assertThat(evaluate("=PRODUCT(2,-2,6,0)")).isEqualTo(0.0);
+      assertThat(evaluate("=PRODUCT(TRUE)")).isEqualTo(true);
+      assertThat(evaluate("=QUOTIENT(5,2)")).isEqualTo(2.0);
+      assertThat(evaluate("=QUOTIENT(3,TRUE)")).isEqualTo(3.0);
+      assertThat(evaluate("=SUM(-2,-1,1,40)")).isEqualTo(38.0);
+      assertThat(evaluate("=SQRT(16)")).isEqualTo(4.0);
+      assertThat(evaluate("=MAX(1,TRUE,3)")).isEqualTo(3.0);
+      assertThat(evaluate("=MIN(1,FALSE,3)")).isEqualTo(0.0);
+    }
+
+    @Test
+    void failures() {
+      assertThatThrownBy(() -> evaluate("=MOD(10,0)")).isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> evaluate("=QUOTIENT(10,FALSE)"))
+        .isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> evaluate("=SQRT(-1)")).isInstanceOf(FormulaException.class);
+      assertThatThrownBy(() -> evaluate("=NOPE(1)")).isInstanceOf(FormulaException.class);
+    }
+  }
+
+  @Nested
+  class Responses {
+    private final Map<String, Object> responses = ImmutableMap.of(
+      "INCOME",
+      25000,
+      "HOUSEHOLD_SIZE",
+      3.0,
+      "IS_PREGNANT",
+      true
+    );
+
+    @Test
+    void referToQuestions() {
+      assertThat(evaluate("=IS_PREGNANT", responses)).isEqualTo(true);
+      assertThat(evaluate("=-IS_PREGNANT", responses)).isEqualTo(-1.0);
+      assertThat(evaluate("=INCOME", responses)).isEqualTo(25000.0);
+      assertThat(evaluate("=INCOME = 25000", responses)).isEqualTo(true);
+      assertThat(evaluate("=16000 <= INCOME <= 50000", responses)).isEqualTo(true);
+      assertThat(
+        Formula.parse("=AND(HOUSEHOLD_SIZE > 2, IS_PREGNANT)").test(responses)
+      ).isTrue();
+    }
+
+    @Test
+    void withUnknownQuestion_throws() {
+      assertThatThrownBy(() -> evaluate("=AGE > 18", responses))
+        .isInstanceOf(FormulaException.class);
+    }
+  }
+
+  @Nested
+  class Printing {
+
+    private String print(String formula) {
+      return Formula.parse(formula).getExpression().toString();
+    }
+
+    @Test
+    void printsCanonicalText() {
+      assertThat(print("=AND( IS_COVID ,X<=6 )")).isEqualTo("AND(IS_COVID,X<=6)");
+      assertThat(print("=-TRUE + 1.50 * 2")).isEqualTo("-1+1.5*2");
+      assertThat(print("=(1 + 2) * -(3)")).isEqualTo("(1+2)*-(3)");
+    }
+
+    @Test
+    void printsParseableText() {
+      String[] formulas = {
+        "=2 ^ 3 ^ 2",
+        "=(2 ^ 3) ^ 2",
+        "=1 - (2 - 3)",
+        "=1 - 2 - 3",
+        "=1 / (2 * 3)",
+        "=1 < 2 = TRUE",
+        "=IFS(A > 1, -A, TRUE, 0.125)",
+        "=1 - -1",
+        "=2 * -A",
+      };
+      for (String formula : formulas) {
+        Expression expression = Formula.parse(formula).getExpression();
+        assertThat(print("=" + expression)).as(formula).isEqualTo(expression.toString());
+        assertThat(evaluate("=" + expression, ImmutableMap.of("A", 2.0)))
+          .as(formula)
+          .isEqualTo(evaluate(formula, ImmutableMap.of("A", 2.0)));
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package gov.ny.its.hs.maslow.shared.formula;
+
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.BOOLEANS;
+import static gov.ny.its.hs.maslow.shared.formula.DecisionDiagramTests.CATALOG;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class ResponseEncoderTests {
+  private static final List<String> NUMBERS = ImmutableList.of(
+    "HOUSEHOLD_INCOME",
+    "HOUSEHOLD_SIZE"
+  );
+
+  @Test
+  void encode_withEqualKeys_decidesFormulasEqually() {
+    DecisionDiagram diagram = DecisionDiagram.compile(
+      DecisionDiagramTests.parse(CATALOG)
+    );
+    ResponseEncoder encoder = ResponseEncoder.of(diagram, NUMBERS);
+
+    Map<List<Object>, BitSet> results = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      Map<String, Object> responses = DecisionDiagramTests.randomResponses(random);
+      BitSet truthy = diagram.evaluate(responses);
+      BitSet previous = results.putIfAbsent(encoder.encode(responses), truthy);
+      assertThat(previous).as("%s", responses).isIn(null, truthy);
+    }
+    // HOUSEHOLD_INCOME is bucketed, while HOUSEHOLD_SIZE is tested together with it
+    assertThat(encoder.getQuestionCount()).isEqualTo(BOOLEANS.size() + 1);
+    assertThat(encoder.getTestCount()).isGreaterThan(0);
+  }
+
+  @Test
+  void of_bucketsQuestionsNotTestedTogether() {
+    DecisionDiagram diagram = DecisionDiagram.compile(
+      DecisionDiagramTests.parse(
+        ImmutableList.of("=AND(IS_COVID, HOUSEHOLD_INCOME <= 1063 + (HOUSEHOLD_SIZE - 1) * 373)")
+      )
+    );
+    ResponseEncoder encoder = ResponseEncoder.of(diagram, NUMBERS);
+
+    // only HOUSEHOLD_INCOME is bucketed, since it is tested together with HOUSEHOLD_SIZE
+    assertThat(encoder.getQuestionCount()).isEqualTo(2);
+    assertThat(encoder.getTestCount()).isEqualTo(1);
+    assertThat(encoder.encode(responses(1200, 2)))
+      .isEqualTo(encoder.encode(responses(1210, 2)))
+      .isNotEqualTo(encoder.encode(responses(1500, 2)))
+      .isNotEqualTo(encoder.encode(responses(1200, 3)));
+  }
+
+  @Test
+  void of_withInterpretedFormula_encodesResponses() {
+    DecisionDiagram diagram = DecisionDiagram.compile(
+      DecisionDiagramTests.parse(ImmutableList.of("=MOD(HOUSEHOLD_INCOME, HOUSEHOLD_SIZE) = 0"))
+    );
+    ResponseEncoder encoder = ResponseEncoder.of(diagram, NUMBERS);
+
+    assertThat(encoder.getQuestionCount()).isEqualTo(2);
+    assertThat(encoder.getTestCount()).isZero();
+  }
+
+  private static Map<String, Object> responses(int income, int size) {
+    return ImmutableMap.of("IS_COVID", true, "HOUSEHOLD_INCOME", income, "HOUSEHOLD_SIZE", size);
+  }
+}
@@ -0,0 +1,56 @@
+package gov.ny.its.hs.maslow.shared.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+public class ServicesDeltaTests {
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private String checksum(String rank, String services) throws Exception {
+    JsonNode rankNode = mapper.readTree(rank);
+    JsonNode servicesNode = mapper.readTree(services);
+    return ServicesDelta.checksum(rankNode, servicesNode);
+  }
+
+  @Test
+  void checksum_ignoresFieldOrderAndFormatting() throws Exception {
+    String compact = checksum("[\"A\",\"B\"]", "{\"A\":{\"enabled\":true,\"formula\":\"=TRUE\"}}");
+    String spaced = checksum(
+      "[ \"A\", \"B\" ]",
+      "{ \"A\": { \"formula\": \"=TRUE\", \"enabled\": true } }"
+    );
+
+    assertThat(compact).isEqualTo(spaced).hasSize(64);
+  }
+
+  @Test
+  void checksum_ignoresNullFieldsAndNumberFormats() throws Exception {
+    assertThat(checksum("[]", "{\"A\":{\"formulaAst\":null,\"rank\":1000.0}}"))
+      .isEqualTo(checksum("[]", "{\"A\":{\"rank\":1000}}"));
+  }
+
+  @Test
+  void checksum_dependsOnRankAndServices() throws Exception {
+    String services = "{\"A\":{\"enabled\":true},\"B\":{\"enabled\":false}}";
+
+    assertThat(checksum("[\"A\",\"B\"]", services))
+      .isNotEqualTo(checksum("[\"B\",\"A\"]", services))
+      .isNotEqualTo(checksum("[\"A\",\"B\"]", "{\"A\":{\"enabled\":true},\"B\":{}}"));
+  }
+
+  @Test
+  void delta_roundTrips() throws Exception {
+    String json =
+      "{\"base\":\"1\",\"version\":\"2\",\"rank\":null," +
+      "\"services\":{\"A\":{\"enabled\":true}},\"removed\":[\"B\"],\"checksum\":\"0\"}";
+
+    ServicesDelta delta = mapper.readValue(json, ServicesDelta.class);
+
+    assertThat(delta.getServices().get("A").get("enabled").booleanValue()).isTrue();
+    assertThat(delta.getRemoved()).containsExactly("B");
+    assertThat(mapper.readTree(mapper.writeValueAsString(delta))).isEqualTo(mapper.readTree(json));
+  }
+}